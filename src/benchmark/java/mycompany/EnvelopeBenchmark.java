@@ -0,0 +1,69 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany;
+
+import java.util.concurrent.TimeUnit;
+import mycompany.geospatial.Services;
+import org.opengis.geometry.Envelope;
+import org.opengis.referencing.crs.GeographicCRS;
+import org.opengis.referencing.crs.ProjectedCRS;
+import org.opengis.referencing.operation.CoordinateOperation;
+import org.opengis.referencing.operation.TransformException;
+import org.opengis.util.FactoryException;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Compares the envelope transform of the library with the naive transform of 4 corners.
+ * Uses the same operation as {@link Referencing#printEnvelopeProjection()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EnvelopeBenchmark {
+    /**
+     * Envelope to transform from "WGS 84" to "WGS 84 / UPS North".
+     */
+    private Envelope envelope;
+
+    /**
+     * Operation from "WGS 84" to "WGS 84 / UPS North".
+     */
+    private CoordinateOperation operation;
+
+    /**
+     * Creates the envelope and the operation.
+     *
+     * @throws FactoryException if a CRS or coordinate operation cannot be created.
+     */
+    @Setup
+    public void setup() throws FactoryException {
+        final GeographicCRS sourceCRS = Services.createGeographicCRS("EPSG", "4326");
+        final ProjectedCRS  targetCRS = Services.createProjectedCRS ("EPSG", "5041");
+        operation = Services.findOperation(sourceCRS, targetCRS);
+        envelope  = Services.envelope(sourceCRS, 84, -20, 88, 50);
+    }
+
+    /**
+     * Transforms the envelope with the robust algorithm of the library.
+     *
+     * @return the transformed envelope.
+     * @throws TransformException if the envelope cannot be transformed.
+     */
+    @Benchmark
+    public Envelope library() throws TransformException {
+        return Services.transform(envelope, operation.getTargetCRS());
+    }
+
+    /**
+     * Transforms the envelope by projecting only its 4 corners.
+     *
+     * @return the transformed envelope.
+     * @throws TransformException if a corner cannot be transformed.
+     */
+    @Benchmark
+    public Envelope corners() throws TransformException {
+        return Referencing.transformCorners(envelope, operation);
+    }
+}
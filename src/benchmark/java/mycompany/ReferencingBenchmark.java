@@ -0,0 +1,126 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import mycompany.geospatial.Services;
+import javax.measure.UnitConverter;
+import javax.measure.IncommensurableException;
+import org.opengis.referencing.crs.GeographicCRS;
+import org.opengis.referencing.crs.ProjectedCRS;
+import org.opengis.referencing.operation.CoordinateOperation;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+import org.opengis.util.FactoryException;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Throughput of bulk point transforms using the same operation as {@link Referencing#printCityLocations()}.
+ * Throughput is reported in bulk operations per second, each operation transforming {@link #numPoints} points.
+ *
+ * @see EnvelopeBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ReferencingBenchmark {
+    /**
+     * Number of points to transform in a single bulk operation.
+     */
+    @Param({"6", "1000", "100000", "1000000"})
+    public int numPoints;
+
+    /**
+     * Transform from "WGS 84" to "WGS 84 / World Mercator".
+     */
+    private MathTransform pointTransform;
+
+    /**
+     * Transform from "WGS 84" to "WGS 84 / World Mercator" with coordinates in miles.
+     */
+    private MathTransform toMiles;
+
+    /**
+     * Coordinates to transform as (latitude, longitude) tuples, and array where to store the result.
+     */
+    private double[] source, target;
+
+    /**
+     * Creates the operation and random points in the domain of validity of World Mercator.
+     *
+     * @throws FactoryException if a CRS or coordinate operation cannot be created.
+     * @throws IncommensurableException if metres cannot be converted to miles.
+     */
+    @Setup
+    public void setup() throws FactoryException, IncommensurableException {
+        final GeographicCRS wgs84 = Services.createGeographicCRS("EPSG", "4326");
+        final ProjectedCRS mercator = Services.createProjectedCRS("EPSG", "3395");
+        final CoordinateOperation op = Services.findOperation(wgs84, mercator);
+        pointTransform = op.getMathTransform();
+        toMiles = Services.withTargetUnits(op, Services.mileUnit(), Services.mileUnit());
+        final var random = new Random(3395);
+        source = new double[numPoints * 2];
+        target = new double[source.length];
+        for (int i=0; i<source.length;) {
+            source[i++] = random.nextDouble() * 160 -  80;
+            source[i++] = random.nextDouble() * 360 - 180;
+        }
+    }
+
+    /**
+     * Transforms all points with a single call to the bulk method.
+     *
+     * @return the transformed coordinates.
+     * @throws TransformException if a point cannot be transformed.
+     */
+    @Benchmark
+    public double[] bulkPoints() throws TransformException {
+        pointTransform.transform(source, 0, target, 0, numPoints);
+        return target;
+    }
+
+    /**
+     * Transforms all points and converts the result to miles in a second loop,
+     * as {@link Referencing#printCityLocations()} did before the conversion was merged in the transform.
+     *
+     * @return the transformed coordinates.
+     * @throws TransformException if a point cannot be transformed.
+     * @throws IncommensurableException if metres cannot be converted to miles.
+     */
+    @Benchmark
+    public double[] bulkPointsThenMiles() throws TransformException, IncommensurableException {
+        pointTransform.transform(source, 0, target, 0, numPoints);
+        final UnitConverter uc = Services.metreUnit().getConverterToAny(Services.mileUnit());
+        for (int i=0; i<target.length; i++) {
+            target[i] = uc.convert(target[i]);
+        }
+        return target;
+    }
+
+    /**
+     * Transforms all points with the unit conversion to miles merged in the transform.
+     *
+     * @return the transformed coordinates.
+     * @throws TransformException if a point cannot be transformed.
+     */
+    @Benchmark
+    public double[] bulkPointsInMiles() throws TransformException {
+        toMiles.transform(source, 0, target, 0, numPoints);
+        return target;
+    }
+
+    /**
+     * Transforms all points with the parallel bulk method of {@link Services},
+     * which splits large arrays in chunks executed in the fork-join common pool.
+     *
+     * @return the transformed coordinates.
+     */
+    @Benchmark
+    public double[] parallelPoints() {
+        Services.transform(pointTransform, source, 0, target, 0, numPoints);
+        return target;
+    }
+}
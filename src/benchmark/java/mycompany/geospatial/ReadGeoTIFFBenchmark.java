@@ -0,0 +1,154 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial;
+
+import java.io.File;
+import java.io.IOException;
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.TimeUnit;
+import org.opengis.geometry.Envelope;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.TransformException;
+import org.opengis.util.FactoryException;
+import org.apache.sis.coverage.grid.GridCoverage;
+import org.apache.sis.coverage.grid.GridCoverageBuilder;
+import org.apache.sis.coverage.grid.GridGeometry;
+import org.apache.sis.referencing.CRS;
+import org.apache.sis.referencing.CommonCRS;
+import org.apache.sis.storage.DataStoreException;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Time for reading a GeoTIFF file and reprojecting it with {@link ReadGeoTIFF}.
+ * The GeoTIFF file is synthetic and written in a temporary directory before the benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReadGeoTIFFBenchmark {
+    /**
+     * Width and height of the synthetic image in pixels.
+     */
+    @Param({"512", "2048"})
+    public int size;
+
+    /**
+     * The synthetic GeoTIFF file.
+     */
+    private File file;
+
+    /**
+     * The file where to write the result of tiled reprojection.
+     */
+    private File output;
+
+    /**
+     * The coverage read from the file, used as the source of reprojection benchmark.
+     */
+    private GridCoverage coverage;
+
+    /**
+     * A copy of the pixel values of {@link #coverage}, for creating a new source image for each reprojection.
+     * A new image is necessary because Apache SIS caches the tiles computed for equal images.
+     */
+    private BufferedImage pixels;
+
+    /**
+     * The target CRS of reprojection ("WGS 84 / World Mercator").
+     */
+    private CoordinateReferenceSystem targetCRS;
+
+    /**
+     * Writes the synthetic GeoTIFF file and reads it once.
+     *
+     * @throws IOException if an error occurred while writing the file.
+     * @throws DataStoreException if an error occurred while reading the file.
+     * @throws FactoryException if the target CRS cannot be created.
+     */
+    @Setup
+    public void setup() throws IOException, DataStoreException, FactoryException {
+        file = File.createTempFile("synthetic", ".tiff");
+        SyntheticGeoTIFF.write(file, size, size, -10, 35, 30, 60);
+        output    = File.createTempFile("reprojected", ".tiff");
+        coverage  = ReadGeoTIFF.read(file);
+        final RenderedImage image = coverage.render(null);
+        pixels    = new BufferedImage(image.getColorModel(), (WritableRaster) image.getData(), false, null);
+        targetCRS = CRS.forCode("EPSG::3395");
+    }
+
+    /**
+     * Deletes the synthetic GeoTIFF file and the reprojection result.
+     */
+    @TearDown
+    public void deleteFile() {
+        file.delete();
+        output.delete();
+    }
+
+    /**
+     * Reads fully the synthetic GeoTIFF file.
+     *
+     * @return the coverage read.
+     * @throws DataStoreException if an error occurred while reading the file.
+     */
+    @Benchmark
+    public GridCoverage read() throws DataStoreException {
+        return ReadGeoTIFF.read(file);
+    }
+
+    /**
+     * Reprojects the coverage to World Mercator and computes all tiles.
+     *
+     * @return the reprojected image.
+     * @throws TransformException if an error occurred while transforming coordinates.
+     */
+    @Benchmark
+    public RenderedImage resample() throws TransformException {
+        final GridCoverage source = new GridCoverageBuilder()
+                .setDomain(coverage.getGridGeometry())
+                .setRanges(coverage.getSampleDimensions())
+                .setValues(new BufferedImage(pixels.getColorModel(), pixels.getRaster(), false, null))
+                .build();
+        final RenderedImage image = ReadGeoTIFF.reproject(source, targetCRS).render(null);
+        final int minX = image.getMinTileX();
+        final int minY = image.getMinTileY();
+        for (int y=0; y<image.getNumYTiles(); y++) {
+            for (int x=0; x<image.getNumXTiles(); x++) {
+                image.getTile(minX + x, minY + y);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Reads, reprojects and writes the synthetic GeoTIFF file tile by tile.
+     *
+     * @return the grid geometry of the written image.
+     * @throws DataStoreException if an error occurred while reading or writing a file.
+     * @throws TransformException if an error occurred while transforming coordinates.
+     */
+    @Benchmark
+    public GridGeometry tiledReprojection() throws DataStoreException, TransformException {
+        return new TiledReprojection(targetCRS).run(file, output);
+    }
+
+    /**
+     * Reads a preview of a part of the synthetic GeoTIFF file at a resolution of 5 km.
+     * This benchmark reads only the tiles intersecting the area of interest, with subsampling.
+     *
+     * @return the preview coverage, with all pixel values computed.
+     * @throws DataStoreException if an error occurred while reading the file.
+     * @throws TransformException if an error occurred while transforming coordinates.
+     */
+    @Benchmark
+    public RenderedImage readPreview() throws DataStoreException, TransformException {
+        final Envelope area = Services.envelope(CommonCRS.WGS84.geographic(), 40, 0, 50, 10);
+        final RenderedImage image = ReadGeoTIFF.read(file, area, targetCRS, 5000, 5000).render(null);
+        image.getData();
+        return image;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial;
+
+import java.io.File;
+import java.io.IOException;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.plugins.tiff.TIFFDirectory;
+import javax.imageio.plugins.tiff.TIFFField;
+import javax.imageio.plugins.tiff.TIFFTag;
+import javax.imageio.stream.ImageOutputStream;
+
+
+/**
+ * Writes synthetic GeoTIFF files for benchmarks.
+ * Apache SIS 1.3 cannot write GeoTIFF, so this class uses the TIFF writer of Image I/O
+ * and adds the GeoTIFF tags declaring a WGS 84 image covering the given geographic area.
+ */
+final class SyntheticGeoTIFF {
+    /**
+     * GeoTIFF tag numbers.
+     */
+    private static final int MODEL_PIXEL_SCALE = 33550, MODEL_TIEPOINT = 33922, GEO_KEY_DIRECTORY = 34735;
+
+    /**
+     * Tile size in pixels.
+     */
+    private static final int TILE_SIZE = 256;
+
+    /**
+     * Do not allow instantiation of this class.
+     */
+    private SyntheticGeoTIFF() {
+    }
+
+    /**
+     * Writes a tiled single-band image of the given size with a smooth gradient plus noise.
+     * Longitudes range from {@code west} to {@code east} and latitudes from {@code south} to {@code north}.
+     *
+     * @param  file    the file to write.
+     * @param  width   image width in pixels.
+     * @param  height  image height in pixels.
+     * @param  west    minimal longitude in degrees.
+     * @param  south   minimal latitude in degrees.
+     * @param  east    maximal longitude in degrees.
+     * @param  north   maximal latitude in degrees.
+     * @throws IOException if an error occurred while writing the file.
+     */
+    static void write(File file, int width, int height, double west, double south, double east, double north)
+            throws IOException
+    {
+        final var image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        final WritableRaster raster = image.getRaster();
+        for (int y=0; y<height; y++) {
+            for (int x=0; x<width; x++) {
+                raster.setSample(x, y, 0, (x + y + ((x * 31 + y * 17) & 15)) & 0xFF);
+            }
+        }
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName("TIFF").next();
+        file.delete();          // Because ImageOutputStream does not truncate existing files.
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(file)) {
+            writer.setOutput(out);
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setTilingMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setTiling(TILE_SIZE, TILE_SIZE, 0, 0);
+            final IIOMetadata defaults = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), param);
+            final TIFFDirectory directory = TIFFDirectory.createFromMetadata(defaults);
+            directory.addTIFFField(doubles(MODEL_PIXEL_SCALE, "ModelPixelScale",
+                    (east - west) / width, (north - south) / height, 0));
+            directory.addTIFFField(doubles(MODEL_TIEPOINT, "ModelTiepoint", 0, 0, 0, west, north, 0));
+            directory.addTIFFField(shorts(GEO_KEY_DIRECTORY, "GeoKeyDirectory",
+                    1, 1, 0, 3,             // Version 1.1.0 with 3 keys.
+                    1024, 0, 1, 2,          // GTModelTypeGeoKey = ModelTypeGeographic
+                    1025, 0, 1, 1,          // GTRasterTypeGeoKey = RasterPixelIsArea
+                    2048, 0, 1, 4326));     // GeographicTypeGeoKey = WGS 84
+            writer.write(null, new IIOImage(image, null, directory.getAsMetadata()), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Creates a TIFF field of double-precision values.
+     */
+    private static TIFFField doubles(final int number, final String name, final double... values) {
+        final var tag = new TIFFTag(name, number, 1 << TIFFTag.TIFF_DOUBLE);
+        return new TIFFField(tag, TIFFTag.TIFF_DOUBLE, values.length, values);
+    }
+
+    /**
+     * Creates a TIFF field of unsigned short values.
+     */
+    private static TIFFField shorts(final int number, final String name, final int... values) {
+        final char[] data = new char[values.length];
+        for (int i=0; i<values.length; i++) {
+            data[i] = (char) values[i];
+        }
+        final var tag = new TIFFTag(name, number, 1 << TIFFTag.TIFF_SHORT);
+        return new TIFFField(tag, TIFFTag.TIFF_SHORT, data.length, data);
+    }
+}
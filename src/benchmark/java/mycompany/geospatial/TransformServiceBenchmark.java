@@ -0,0 +1,90 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+import org.opengis.util.FactoryException;
+import org.apache.sis.referencing.CRS;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Throughput of single-point requests from concurrent threads, transformed directly
+ * or coalesced in batches by {@link TransformService}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(16)
+public class TransformServiceBenchmark {
+    /**
+     * Maximal time in microseconds that a request waits for other requests.
+     */
+    @Param({"50", "200"})
+    public int maxWait;
+
+    /**
+     * Transform from "WGS 84" to "WGS 84 / Arctic Polar Stereographic".
+     */
+    private MathTransform transform;
+
+    /**
+     * The service to benchmark.
+     */
+    private TransformService service;
+
+    /**
+     * Creates the transform and the service.
+     *
+     * @throws FactoryException if the transform cannot be created.
+     */
+    @Setup
+    public void setup() throws FactoryException {
+        transform = Services.findOperation(CRS.forCode("EPSG:4326"), CRS.forCode("EPSG:5041")).getMathTransform();
+        service = new TransformService(TransformService.DEFAULT_BATCH_SIZE, Duration.ofNanos(maxWait * 1000L));
+    }
+
+    /**
+     * Closes the service.
+     */
+    @TearDown
+    public void close() {
+        service.close();
+    }
+
+    /**
+     * Returns a random point in the domain of the transform.
+     */
+    private static double[] point() {
+        final var random = ThreadLocalRandom.current();
+        return new double[] {random.nextDouble(60, 89), random.nextDouble(-180, 180)};
+    }
+
+    /**
+     * Transforms one point with a direct call to the transform.
+     *
+     * @return the transformed point.
+     * @throws TransformException if the point cannot be transformed.
+     */
+    @Benchmark
+    public double[] direct() throws TransformException {
+        final double[] point = point();
+        transform.transform(point, 0, point, 0, 1);
+        return point;
+    }
+
+    /**
+     * Transforms one point through the batching service and waits for the result.
+     *
+     * @return the transformed point.
+     */
+    @Benchmark
+    public double[] batched() {
+        return service.transform(transform, point()).join();
+    }
+}
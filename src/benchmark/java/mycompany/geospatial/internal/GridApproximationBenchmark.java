@@ -0,0 +1,128 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial.internal;
+
+import java.awt.geom.Rectangle2D;
+import java.util.concurrent.TimeUnit;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+import org.opengis.util.FactoryException;
+import org.apache.sis.referencing.CRS;
+import org.apache.sis.referencing.CommonCRS;
+import org.apache.sis.referencing.operation.matrix.Matrix3;
+import org.apache.sis.referencing.operation.transform.MathTransforms;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Time for computing the source pixel of each target pixel with an exact transform and with {@link GridApproximation}.
+ * The transform is the conversion from pixels of a World Mercator image to pixels of a geographic image covering Europe,
+ * as in a resampling operation. The image has 2048 × 2048 pixels and coordinates are transformed row by row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GridApproximationBenchmark {
+    /**
+     * Width and height of the target image in pixels.
+     */
+    private static final int SIZE = 2048;
+
+    /**
+     * Maximal error allowed on source pixel coordinates.
+     */
+    @Param({"0.125", "0.01"})
+    public double tolerance;
+
+    /**
+     * Conversion from target pixel coordinates to source pixel coordinates.
+     */
+    private MathTransform exact;
+
+    /**
+     * Approximation of {@link #exact}.
+     */
+    private MathTransform approx;
+
+    /**
+     * Coordinates of a row of pixels, before and after transformation.
+     */
+    private double[] row, result;
+
+    /**
+     * Creates the exact transform and its approximation.
+     *
+     * @throws FactoryException if the coordinate operation cannot be created.
+     * @throws TransformException if the conversion to source pixels cannot be created.
+     */
+    @Setup
+    public void setup() throws FactoryException, TransformException {
+        final var operation = CRS.findOperation(CRS.forCode("EPSG::3395"), CommonCRS.WGS84.normalizedGeographic(), null);
+        exact = MathTransforms.concatenate(
+                MathTransforms.concatenate(
+                        MathTransforms.linear(gridToCRS(-1.1E+6, 8.4E+6, 4.4E+6 / SIZE, -4.0E+6 / SIZE)),
+                        operation.getMathTransform()),
+                MathTransforms.linear(gridToCRS(-10, 60, 40.0 / SIZE, -25.0 / SIZE)).inverse());
+        approx = GridApproximation.create(exact, new Rectangle2D.Double(-0.5, -0.5, SIZE, SIZE), tolerance);
+        row    = new double[SIZE * 2];
+        result = new double[SIZE * 2];
+    }
+
+    /**
+     * Returns the conversion from pixel centers to coordinates for an image with the given upper-left corner and resolution.
+     */
+    private static Matrix3 gridToCRS(final double xmin, final double ymax, final double sx, final double sy) {
+        return new Matrix3(sx, 0, xmin + sx/2,
+                           0, sy, ymax + sy/2,
+                           0,  0, 1);
+    }
+
+    /**
+     * Transforms all pixels with the given transform.
+     */
+    private double transformAll(final MathTransform mt) throws TransformException {
+        double sum = 0;
+        for (int y=0; y<SIZE; y++) {
+            for (int x=0; x<SIZE; x++) {
+                row[x*2  ] = x;
+                row[x*2+1] = y;
+            }
+            mt.transform(row, 0, result, 0, SIZE);
+            sum += result[SIZE];
+        }
+        return sum;
+    }
+
+    /**
+     * Transforms all pixels with the exact transform.
+     *
+     * @return a value computed from the result, for preventing dead code elimination.
+     * @throws TransformException if a coordinate cannot be transformed.
+     */
+    @Benchmark
+    public double exact() throws TransformException {
+        return transformAll(exact);
+    }
+
+    /**
+     * Transforms all pixels with the approximated transform.
+     *
+     * @return a value computed from the result, for preventing dead code elimination.
+     * @throws TransformException if a coordinate cannot be transformed.
+     */
+    @Benchmark
+    public double approximated() throws TransformException {
+        return transformAll(approx);
+    }
+
+    /**
+     * Creates the approximation, which evaluates the exact transform on the check points.
+     *
+     * @return the approximated transform.
+     */
+    @Benchmark
+    public MathTransform create() {
+        return GridApproximation.create(exact, new Rectangle2D.Double(-0.5, -0.5, SIZE, SIZE), tolerance);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial.internal;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.opengis.referencing.operation.Matrix;
+import org.opengis.referencing.operation.TransformException;
+import org.apache.sis.referencing.operation.transform.AbstractMathTransform;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Throughput of {@link TrajectoryToECEF.Transform} on synthetic trajectories.
+ * Trajectories of 10⁸ samples can be tested with {@code -p trajectorySize=100000000},
+ * provided that the JVM is given enough memory (about 4 Gb per benchmark fork).
+ * Compares the specialized bulk transform with the point-by-point path
+ * inherited from {@link AbstractMathTransform}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TrajectoryBenchmark {
+    /**
+     * Number of samples in the synthetic trajectory.
+     */
+    @Param({"1000", "1000000", "10000000"})
+    public int trajectorySize;
+
+    /**
+     * Strategy for finding the sample at the time of each point.
+     * See {@link TimeSearch} for the list of values.
+     */
+    @Param({"BINARY", "CURSOR", "ADAPTIVE"})
+    public String search;
+
+    /**
+     * Method for computing positions between two samples.
+     * See {@link TimeInterpolation} for the list of values.
+     */
+    @Param({"NONE", "LINEAR", "CUBIC"})
+    public String interpolation;
+
+    /**
+     * Maximal error allowed on positions for storing the trajectory in compact form.
+     * Zero for storing the trajectory as arrays of double-precision values.
+     */
+    @Param({"0", "0.001"})
+    public double precision;
+
+    /**
+     * Whether the points to transform are sorted by time.
+     * If {@code false}, points are shuffled for simulating random access.
+     */
+    @Param({"true", "false"})
+    public boolean sorted;
+
+    /**
+     * Number of points to transform in each benchmark invocation.
+     * Throughput is reported in points per second.
+     */
+    private static final int NUM_POINTS = 100_000;
+
+    /**
+     * The transform to benchmark.
+     */
+    private TrajectoryToECEF.Transform transform;
+
+    /**
+     * The same transform, but without the bulk method overrides.
+     */
+    private Inherited inherited;
+
+    /**
+     * Source and target coordinates as (x, y, z, t) tuples.
+     */
+    private double[] source, target;
+
+    /**
+     * The same source coordinates in single precision, and the array where to store the results.
+     */
+    private float[] sourceFloat, targetFloat;
+
+    /**
+     * Creates a synthetic trajectory with one sample per minute,
+     * and points to transform in increasing time order.
+     */
+    @Setup
+    public void setup() {
+        final var random = new Random(4326);
+        final double[] startTimes = new double[trajectorySize];
+        final double[] trajectory = new double[trajectorySize * 3];
+        for (int i=0; i<trajectorySize; i++) {
+            startTimes[i] = 19883 + i / 1440.0;
+            trajectory[i*3  ] = random.nextGaussian() * 1000;
+            trajectory[i*3+1] = random.nextGaussian() * 1000;
+            trajectory[i*3+2] = random.nextGaussian() * 1000;
+        }
+        transform = new TrajectoryToECEF.Transform(startTimes, trajectory,
+                TimeSearch.valueOf(search), TimeInterpolation.valueOf(interpolation), precision);
+        inherited = new Inherited(transform);
+        source = new double[NUM_POINTS * 4];
+        target = new double[source.length];
+        final double span = startTimes[trajectorySize - 1] - startTimes[0];
+        for (int i=0; i<NUM_POINTS; i++) {
+            source[i*4  ] = random.nextDouble() * 1E+6 + 1;
+            source[i*4+1] = random.nextDouble() * 1E+6;
+            source[i*4+2] = random.nextDouble() * 1E+6;
+            source[i*4+3] = startTimes[0] + span * (i + 0.5) / NUM_POINTS;
+        }
+        if (!sorted) {
+            for (int i = NUM_POINTS; --i > 0;) {
+                final int j = random.nextInt(i + 1) * 4;
+                final double t = source[i*4 + 3];
+                source[i*4 + 3] = source[j + 3];
+                source[j + 3] = t;
+            }
+        }
+        sourceFloat = new float[source.length];
+        targetFloat = new float[source.length];
+        for (int i=0; i<source.length; i++) {
+            sourceFloat[i] = (float) source[i];
+        }
+    }
+
+    /**
+     * Transforms all points with a single call to the bulk method.
+     *
+     * @return the transformed coordinates.
+     * @throws TransformException if a point cannot be transformed.
+     */
+    @Benchmark
+    @OperationsPerInvocation(NUM_POINTS)
+    public double[] bulk() throws TransformException {
+        transform.transform(source, 0, target, 0, NUM_POINTS);
+        return target;
+    }
+
+    /**
+     * Transforms all points with the bulk method inherited from {@link AbstractMathTransform},
+     * which delegates to the single-tuple method for each point.
+     *
+     * @return the transformed coordinates.
+     * @throws TransformException if a point cannot be transformed.
+     */
+    @Benchmark
+    @OperationsPerInvocation(NUM_POINTS)
+    public double[] inherited() throws TransformException {
+        inherited.transform(source, 0, target, 0, NUM_POINTS);
+        return target;
+    }
+
+    /**
+     * Transforms all points in single precision with a single call to the bulk method.
+     *
+     * @return the transformed coordinates.
+     * @throws TransformException if a point cannot be transformed.
+     */
+    @Benchmark
+    @OperationsPerInvocation(NUM_POINTS)
+    public float[] bulkFloat() throws TransformException {
+        transform.transform(sourceFloat, 0, targetFloat, 0, NUM_POINTS);
+        return targetFloat;
+    }
+
+    /**
+     * Transforms all points in single precision with the bulk method inherited from {@link AbstractMathTransform},
+     * which copies the coordinates in a temporary buffer and delegates to the single-tuple method for each point.
+     *
+     * @return the transformed coordinates.
+     * @throws TransformException if a point cannot be transformed.
+     */
+    @Benchmark
+    @OperationsPerInvocation(NUM_POINTS)
+    public float[] inheritedFloat() throws TransformException {
+        inherited.transform(sourceFloat, 0, targetFloat, 0, NUM_POINTS);
+        return targetFloat;
+    }
+
+    /**
+     * A transform which delegates only the single-tuple method to the transform to benchmark.
+     * All bulk methods are inherited from {@link AbstractMathTransform}.
+     */
+    private static final class Inherited extends AbstractMathTransform {
+        private final AbstractMathTransform delegate;
+
+        Inherited(final AbstractMathTransform delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override public int getSourceDimensions() {return delegate.getSourceDimensions();}
+        @Override public int getTargetDimensions() {return delegate.getTargetDimensions();}
+
+        @Override
+        public Matrix transform(double[] srcPts, int srcOff, double[] dstPts, int dstOff, boolean derivate)
+                throws TransformException
+        {
+            return delegate.transform(srcPts, srcOff, dstPts, dstOff, derivate);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Latency of range and nearest neighbor queries in {@link TrajectoryIndex} on synthetic trajectories.
+ * Each trajectory is a random walk of 1000 segments with one sample per minute.
+ * Building the index over 10⁷ segments needs about 300 Mb of memory in addition of the trajectories.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TrajectoryIndexBenchmark {
+    /**
+     * Total number of segments in all trajectories.
+     */
+    @Param({"1000000", "10000000"})
+    public int numSegments;
+
+    /**
+     * Number of segments in each trajectory.
+     */
+    private static final int TRAJECTORY_SIZE = 1000;
+
+    /**
+     * Width of the area where trajectories start, in metres.
+     */
+    private static final double AREA = 1E+6;
+
+    /**
+     * Number of queries prepared in advance, executed in rotation.
+     */
+    private static final int NUM_QUERIES = 1024;
+
+    /**
+     * The index to benchmark.
+     */
+    private TrajectoryIndex index;
+
+    /**
+     * Query points as (x, y, z, t) tuples.
+     */
+    private double[] queries;
+
+    /**
+     * Index of the next query to execute.
+     */
+    private int next;
+
+    /**
+     * Creates the synthetic trajectories, the index and the query points.
+     */
+    @Setup
+    public void setup() {
+        final var random = new Random(4326);
+        final List<Trajectory> trajectories = new ArrayList<>();
+        for (int f=0; f < numSegments / TRAJECTORY_SIZE; f++) {
+            final double[] times = new double[TRAJECTORY_SIZE + 1];
+            final double[] coordinates = new double[times.length * 3];
+            double x = random.nextDouble() * AREA;
+            double y = random.nextDouble() * AREA;
+            double z = random.nextDouble() * 1E+4;
+            final double start = 19883 + random.nextDouble() * 100;
+            for (int i=0; i<times.length; i++) {
+                times[i] = start + i / 1440.0;
+                coordinates[i*3  ] = x += random.nextGaussian() * 100;
+                coordinates[i*3+1] = y += random.nextGaussian() * 100;
+                coordinates[i*3+2] = z += random.nextGaussian() * 10;
+            }
+            trajectories.add(new Trajectory("f" + f, null, 3, times, coordinates, Map.of()));
+        }
+        index = new TrajectoryIndex(trajectories);
+        queries = new double[NUM_QUERIES * 4];
+        for (int i=0; i<queries.length; i += 4) {
+            queries[i  ] = random.nextDouble() * AREA;
+            queries[i+1] = random.nextDouble() * AREA;
+            queries[i+2] = random.nextDouble() * 1E+4;
+            queries[i+3] = 19883 + random.nextDouble() * 100;
+        }
+    }
+
+    /**
+     * Finds the objects inside a box of 60 km × 60 km × 10 km during 2 days.
+     *
+     * @return the periods during which objects are inside the box.
+     */
+    @Benchmark
+    public List<TrajectoryIndex.Hit> range() {
+        final int i = (next++ % NUM_QUERIES) * 4;
+        final double x = queries[i], y = queries[i+1], z = queries[i+2], t = queries[i+3];
+        return index.search(new double[] {x - 3E+4, y - 3E+4, z - 5E+3},
+                            new double[] {x + 3E+4, y + 3E+4, z + 5E+3}, t - 1, t + 1);
+    }
+
+    /**
+     * Finds the 10 objects passing nearest to a point during 2 days.
+     *
+     * @return the nearest objects.
+     */
+    @Benchmark
+    public List<TrajectoryIndex.Hit> nearest() {
+        final int i = (next++ % NUM_QUERIES) * 4;
+        return index.nearest(new double[] {queries[i], queries[i+1], queries[i+2]},
+                             queries[i+3] - 1, queries[i+3] + 1, 10);
+    }
+}
@@ -7,6 +7,8 @@ package mycompany;
 import javax.measure.IncommensurableException;
 import org.opengis.referencing.operation.TransformException;
 import org.opengis.util.FactoryException;
+import mycompany.geospatial.Services;
+import mycompany.geospatial.WarmUp;
 
 
 /**
@@ -14,11 +16,26 @@ import org.opengis.util.FactoryException;
  * "referencing by coordinates" or "metadata" library.
  */
 public class Main {
+    /**
+     * Application entry point. If the {@value WarmUp#PROPERTY} system property is set,
+     * the geospatial services are prepared first and the startup time is reported.
+     * If the {@code mycompany.geospatial.metrics} system property is true, measurements are reported at the end.
+     *
+     * @param  args  command-line arguments (ignored).
+     */
     public static void main(String[] args) {
         System.out.println("The application main class.");
         try {
+            WarmUp.Timing timing = WarmUp.fromSystemProperty();
+            if (timing != null) {
+                System.err.println(timing);
+            }
             Referencing.printCityLocations();
             Referencing.printEnvelopeProjection();
+            String metrics = Services.metrics();
+            if (metrics != null) {
+                System.err.print(metrics);
+            }
         } catch (FactoryException | TransformException | IncommensurableException e) {
             System.err.println("Coordinate operation failed.");
             e.printStackTrace();
@@ -7,13 +7,11 @@ import mycompany.geospatial.Services;
 
 // Implementation-neutral
 import javax.measure.Unit;
-import javax.measure.UnitConverter;
 import javax.measure.IncommensurableException;
 import org.opengis.geometry.Envelope;
 import org.opengis.metadata.extent.Extent;
 import org.opengis.metadata.extent.GeographicBoundingBox;
 import org.opengis.metadata.extent.GeographicExtent;
-import org.opengis.referencing.crs.CRSAuthorityFactory;
 import org.opengis.referencing.crs.GeographicCRS;
 import org.opengis.referencing.crs.ProjectedCRS;
 import org.opengis.referencing.cs.CoordinateSystem;
@@ -35,9 +33,8 @@ class Referencing {
      * @throws IncommensurableException if a unit of measurement can not be converted.
      */
     static void printCityLocations() throws FactoryException, TransformException, IncommensurableException {
-        CRSAuthorityFactory factory = Services.getAuthorityFactory("EPSG");
-        GeographicCRS sourceCRS = factory.createGeographicCRS("4326");
-        ProjectedCRS  targetCRS = factory.createProjectedCRS ("3395");
+        GeographicCRS sourceCRS = Services.createGeographicCRS("EPSG", "4326");
+        ProjectedCRS  targetCRS = Services.createProjectedCRS ("EPSG", "3395");
         CoordinateOperation  op = Services.findOperation(sourceCRS, targetCRS);
         /*
          * We should always check if the operation
@@ -75,9 +72,11 @@ class Referencing {
             35.666,  139.772};          // Tokyo
         /*
          * It would be possible to transform point-by-point,
-         * but bulk transforms are much faster.
+         * but bulk transforms are much faster. We keep a copy
+         * of the geographic coordinates for the next step.
          */
         int numPoints = coordinates.length / numDimensions;
+        double[] geographic = coordinates.clone();
         MathTransform mt = op.getMathTransform();
         mt.transform(coordinates, 0, coordinates, 0, numPoints);
         for (int i=0; i<numPoints; i++) {
@@ -87,14 +86,12 @@ class Referencing {
         }
         /*
          * Show again the same coordinates, but with a different unit of measurement.
-         * For making this test simpler, we assume that both axes use the same units.
-         * But a more robust code would use an `UnitConverter` for each axis.
+         * Instead of converting the projected coordinates in a second loop, the unit
+         * conversion is merged in the transform, so projection and conversion are
+         * done in a single pass. Each axis can have a different unit.
          */
-        assert xUnit.equals(yUnit) : "This tutorial assumes same unit for X and Y axes.";
-        UnitConverter uc = xUnit.getConverterToAny(Services.mileUnit());
-        for (int i=0; i<coordinates.length; i++) {
-            coordinates[i] = uc.convert(coordinates[i]);
-        }
+        MathTransform toMiles = Services.withTargetUnits(op, Services.mileUnit(), Services.mileUnit());
+        toMiles.transform(geographic, 0, coordinates, 0, numPoints);
         System.out.println();
         System.out.println("After unit conversion:");
         for (int i=0; i<numPoints; i++) {
@@ -133,9 +130,8 @@ class Referencing {
      * @throws TransformException if an error occurred while transforming coordinates to the target CRS.
      */
     static void printEnvelopeProjection() throws FactoryException, TransformException {
-        CRSAuthorityFactory factory = Services.getAuthorityFactory("EPSG");
-        GeographicCRS sourceCRS = factory.createGeographicCRS("4326");              // WGS 84
-        ProjectedCRS  targetCRS = factory.createProjectedCRS ("5041");              // Polar stereographic.
+        GeographicCRS sourceCRS = Services.createGeographicCRS("EPSG", "4326");     // WGS 84
+        ProjectedCRS  targetCRS = Services.createProjectedCRS ("EPSG", "5041");     // Polar stereographic.
         Envelope      sourceEnv = Services.envelope(sourceCRS, 84, -20, 88, 50);    // (lower, upper).
         Envelope      targetEnv = Services.transform(sourceEnv, targetCRS);
         Envelope      corners   = transformCorners(sourceEnv, Services.findOperation(sourceCRS, targetCRS));
@@ -158,7 +154,7 @@ class Referencing {
      * @return the result of transforming the 4 corners of the provided bounding box.
      * @throws TransformException if a coordinate cannot be converted.
      */
-    private static Envelope transformCorners(Envelope bbox, CoordinateOperation operation) throws TransformException {
+    static Envelope transformCorners(Envelope bbox, CoordinateOperation operation) throws TransformException {
         double[] corners = {
             bbox.getMinimum(0), bbox.getMinimum(1),
             bbox.getMaximum(0), bbox.getMinimum(1),
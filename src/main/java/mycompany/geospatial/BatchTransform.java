@@ -0,0 +1,552 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import mycompany.geospatial.internal.ChunkedTransform;
+
+// Implementation-neutral
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+import org.opengis.util.FactoryException;
+
+// Implementation-dependent
+import org.apache.sis.referencing.CRS;
+
+
+/**
+ * Transforms the coordinates of large CSV or binary files from one CRS to another.
+ * The work is done by three pipelined stages, so that reading, transforming and writing overlap:
+ *
+ * <ol>
+ *   <li>A reader thread reads chunks of coordinate tuples and submits them to the workers.</li>
+ *   <li>A pool of worker threads transforms the chunks in parallel.</li>
+ *   <li>The writer (the calling thread) writes the chunks in the order they were read.</li>
+ * </ol>
+ *
+ * The reader puts the pending results in a bounded queue in reading order, and the writer takes them
+ * from that queue, so the output order is preserved even if workers complete out of order.
+ * Chunks are recycled through a bounded pool, which limits the memory usage regardless of the file size
+ * and blocks the reader when the workers or the writer are behind.
+ *
+ * <h2>File formats</h2>
+ * CSV files contain one tuple per line. The first fields are the coordinates in source CRS axis order,
+ * and remaining fields are copied unchanged after the transformed coordinates. Lines starting with
+ * {@code '#'} and blank lines are ignored. If the first line does not begin with a number, it is
+ * considered as a header and copied unchanged.
+ *
+ * <p>Binary files contain packed double-precision coordinates, without header.
+ * The byte order is big-endian by default.</p>
+ *
+ * <p>Tuples that cannot be transformed are written with NaN coordinates and counted in the summary.</p>
+ */
+public final class BatchTransform {
+    /**
+     * Format of input and output files.
+     */
+    public enum Format {
+        /** Comma-separated values with one tuple per line. */
+        CSV,
+
+        /** Packed double-precision values. */
+        BINARY;
+
+        /**
+         * Returns the format inferred from the extension of the given file.
+         *
+         * @param  file  the file for which to infer the format.
+         * @return {@link #CSV} if the file extension is {@code ".csv"} or {@code ".txt"}, or {@link #BINARY} otherwise.
+         */
+        public static Format of(final Path file) {
+            final String name = file.getFileName().toString().toLowerCase(Locale.US);
+            return (name.endsWith(".csv") || name.endsWith(".txt")) ? CSV : BINARY;
+        }
+    }
+
+    /**
+     * Configuration of a batch transform.
+     *
+     * @param format     format of input and output files.
+     * @param order      byte order of binary files. Ignored for CSV.
+     * @param threads    number of worker threads.
+     * @param chunkSize  number of coordinate tuples in each chunk.
+     */
+    public record Options(Format format, ByteOrder order, int threads, int chunkSize) {
+        /**
+         * Creates new options.
+         *
+         * @throws IllegalArgumentException if the number of threads or the chunk size is not positive.
+         */
+        public Options {
+            if (threads <= 0 || chunkSize <= 0) {
+                throw new IllegalArgumentException("Number of threads and chunk size shall be positive.");
+            }
+        }
+
+        /**
+         * Returns the default options for the given format: big-endian binary files,
+         * one worker per processor and chunks of {@value BatchTransform#DEFAULT_CHUNK_SIZE} tuples.
+         *
+         * @param  format  format of input and output files.
+         * @return default options for the given format.
+         */
+        public static Options defaults(final Format format) {
+            return new Options(format, ByteOrder.BIG_ENDIAN, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+        }
+    }
+
+    /**
+     * Outcome of a batch transform.
+     *
+     * @param numPoints     number of coordinate tuples read.
+     * @param failedPoints  number of tuples which could not be transformed. Their coordinates are NaN in the output.
+     * @param duration      time elapsed for the whole operation.
+     */
+    public record Summary(long numPoints, long failedPoints, Duration duration) {
+        /**
+         * Returns a string representation with the throughput in points per second.
+         */
+        @Override
+        public String toString() {
+            final double seconds = Math.max(duration.toNanos(), 1) / 1E9;
+            return String.format(Locale.US, "%d points transformed (%d failed) in %.1f s: %.0f points/s",
+                                 numPoints, failedPoints, seconds, numPoints / seconds);
+        }
+    }
+
+    /**
+     * Default number of coordinate tuples in each chunk.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 65536;
+
+    /**
+     * A chunk of coordinate tuples traveling through the pipeline.
+     * Instances are recycled after they have been written.
+     */
+    private static final class Chunk {
+        /** Source coordinates, packed. */
+        final double[] source;
+
+        /** Transformed coordinates, packed. */
+        final double[] target;
+
+        /** For CSV files, the fields after the coordinates on each line, including the leading separator. */
+        final String[] suffix;
+
+        /** For binary files, the buffer used for reading and writing. */
+        final ByteBuffer bytes;
+
+        /** Number of valid tuples in this chunk. */
+        int count;
+
+        /** Number of tuples that could not be transformed. */
+        int failures;
+
+        /** Allocates a chunk for the given transform dimensions. */
+        Chunk(final Options options, final int srcDim, final int dstDim) {
+            final int n = options.chunkSize();
+            source = new double[n * srcDim];
+            target = new double[n * dstDim];
+            if (options.format() == Format.CSV) {
+                suffix = new String[n];
+                bytes  = null;
+            } else {
+                suffix = null;
+                bytes  = ByteBuffer.allocateDirect(n * Math.max(srcDim, dstDim) * Double.BYTES).order(options.order());
+            }
+        }
+    }
+
+    /**
+     * Do not allow instantiation of this class.
+     */
+    private BatchTransform() {
+    }
+
+    /**
+     * Command-line entry point.
+     * Usage: {@code BatchTransform [options] <source CRS> <target CRS> <input file> <output file>}
+     * where CRS are given by codes such as {@code "EPSG:4326"}. Options are:
+     *
+     * <ul>
+     *   <li>{@code --format csv|binary}: file format, inferred from the input file extension by default.</li>
+     *   <li>{@code --order big|little}: byte order of binary files, big-endian by default.</li>
+     *   <li>{@code --threads n}: number of worker threads, the number of processors by default.</li>
+     *   <li>{@code --chunk n}: number of tuples in each chunk.</li>
+     * </ul>
+     *
+     * @param  args  command-line arguments.
+     */
+    public static void main(String[] args) {
+        Format format = null;
+        ByteOrder order = ByteOrder.BIG_ENDIAN;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int chunkSize = DEFAULT_CHUNK_SIZE;
+        final String[] files = new String[4];
+        int n = 0;
+        try {
+            for (int i=0; i<args.length; i++) {
+                final String arg = args[i];
+                if (arg.startsWith("--")) {
+                    if (++i >= args.length) {
+                        throw new IllegalArgumentException("Missing value for " + arg);
+                    }
+                    final String value = args[i];
+                    switch (arg) {
+                        case "--format":  format    = Format.valueOf(value.toUpperCase(Locale.US)); break;
+                        case "--order":   order     = value.equalsIgnoreCase("little") ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN; break;
+                        case "--threads": threads   = Integer.parseInt(value); break;
+                        case "--chunk":   chunkSize = Integer.parseInt(value); break;
+                        default: throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                } else if (n < files.length) {
+                    files[n++] = arg;
+                } else {
+                    throw new IllegalArgumentException("Unexpected argument: " + arg);
+                }
+            }
+            if (n != files.length) {
+                throw new IllegalArgumentException("Usage: BatchTransform [options] <source CRS> <target CRS> <input file> <output file>");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        final Path input = Path.of(files[2]);
+        if (format == null) {
+            format = Format.of(input);
+        }
+        try {
+            CoordinateReferenceSystem sourceCRS = CRS.forCode(files[0]);
+            CoordinateReferenceSystem targetCRS = CRS.forCode(files[1]);
+            MathTransform mt = Services.findOperation(sourceCRS, targetCRS).getMathTransform();
+            Summary summary = run(mt, input, Path.of(files[3]), new Options(format, order, threads, chunkSize));
+            System.err.println(summary);
+        } catch (FactoryException | TransformException | IOException e) {
+            System.err.println("Batch transform failed.");
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Transforms all coordinate tuples of the given input file and writes the result to the given output file.
+     * The output file is overwritten if it already exists.
+     *
+     * @param  mt       the transform to apply, usually from {@link Services#findOperation}.
+     * @param  input    the file to read.
+     * @param  output   the file to write.
+     * @param  options  file format and pipeline configuration.
+     * @return number of points transformed and time elapsed.
+     * @throws IOException if an error occurred while reading or writing a file.
+     * @throws TransformException if the transform failed in an unrecoverable way.
+     */
+    public static Summary run(final MathTransform mt, final Path input, final Path output, final Options options)
+            throws IOException, TransformException
+    {
+        final long start = System.nanoTime();
+        final int srcDim = mt.getSourceDimensions();
+        final int dstDim = mt.getTargetDimensions();
+        final int capacity = 2 * options.threads() + 2;
+        final var free = new ArrayBlockingQueue<Chunk>(capacity);
+        for (int i=0; i<capacity; i++) {
+            free.add(new Chunk(options, srcDim, dstDim));
+        }
+        final var pending = new ArrayBlockingQueue<Future<Chunk>>(capacity + 1);
+        final var transform = new ChunkedTransform(mt, options.chunkSize(), Integer.MAX_VALUE);
+        final ExecutorService workers = Executors.newFixedThreadPool(options.threads(), (task) -> {
+            final var t = new Thread(task, "BatchTransform worker");
+            t.setDaemon(true);
+            return t;
+        });
+        long numPoints = 0, failedPoints = 0;
+        try (Stage stage = (options.format() == Format.CSV)
+                ? new CsvStage(input, output, srcDim, dstDim)
+                : new BinaryStage(input, output, srcDim, dstDim))
+        {
+            /*
+             * Reader stage: fill free chunks and submit them to the workers. The pending results are
+             * queued in reading order. A completed future with a null value marks the end of input,
+             * and a failed future reports a read error to the writer at the position where it occurred.
+             */
+            final var reader = new Thread(() -> {
+                try {
+                    while (true) {
+                        final Chunk chunk = free.take();
+                        if (!stage.read(chunk)) {
+                            pending.put(CompletableFuture.completedFuture(null));
+                            return;
+                        }
+                        pending.put(workers.submit(() -> {
+                            chunk.failures = transform.transform(chunk.source, 0, chunk.target, 0, chunk.count).failureCount();
+                            return chunk;
+                        }));
+                    }
+                } catch (InterruptedException e) {
+                    // Writer has stopped, nothing to do.
+                } catch (IOException | RuntimeException e) {
+                    pending.offer(CompletableFuture.failedFuture(e));
+                }
+            }, "BatchTransform reader");
+            reader.setDaemon(true);
+            reader.start();
+            /*
+             * Writer stage, in the current thread. Chunks are written in the order they were read,
+             * then given back to the reader.
+             */
+            try {
+                Chunk chunk;
+                while ((chunk = pending.take().get()) != null) {
+                    stage.write(chunk);
+                    numPoints    += chunk.count;
+                    failedPoints += chunk.failures;
+                    free.put(chunk);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while transforming " + input, e);
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException ex) throw ex;
+                if (cause instanceof RuntimeException ex) throw ex;
+                throw new TransformException("Cannot transform " + input, cause);
+            } finally {
+                reader.interrupt();
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        return new Summary(numPoints, failedPoints, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    /**
+     * The reader and writer of a file format. The {@code read} method is invoked by the reader thread
+     * and the {@code write} method by the writer thread, so they shall not share mutable state.
+     */
+    private interface Stage extends AutoCloseable {
+        /** Fills the given chunk with the next tuples. Returns {@code false} if there is no more tuple. */
+        boolean read(Chunk chunk) throws IOException;
+
+        /** Writes the transformed tuples of the given chunk. */
+        void write(Chunk chunk) throws IOException;
+
+        /** Closes the input and output files. */
+        @Override
+        void close() throws IOException;
+    }
+
+    /**
+     * Reader and writer of CSV files.
+     */
+    private static final class CsvStage implements Stage {
+        /** The input and output files. */
+        private final BufferedReader in;
+        private final BufferedWriter out;
+
+        /** Number of dimensions of source and target coordinates. */
+        private final int srcDim, dstDim;
+
+        /** Header line to write before the first chunk, or {@code null} if none or already written. */
+        private volatile String header;
+
+        /** Whether the first line has been examined for a header. Used by the reader thread only. */
+        private boolean started;
+
+        /** Number of lines read, for error messages. Used by the reader thread only. */
+        private long lineNumber;
+
+        /** Buffer for formatting a chunk. Used by the writer thread only. */
+        private final StringBuilder buffer = new StringBuilder();
+
+        /** Opens the given files. */
+        CsvStage(final Path input, final Path output, final int srcDim, final int dstDim) throws IOException {
+            this.srcDim = srcDim;
+            this.dstDim = dstDim;
+            in = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+            try {
+                out = Files.newBufferedWriter(output, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        /** Reads the next lines. */
+        @Override
+        public boolean read(final Chunk chunk) throws IOException {
+            final double[] coordinates = chunk.source;
+            final int capacity = chunk.suffix.length;
+            int count = 0;
+            String line;
+            while (count < capacity && (line = in.readLine()) != null) {
+                lineNumber++;
+                line = line.strip();
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                if (!started) {
+                    started = true;
+                    if (isHeader(line)) {
+                        header = line;
+                        continue;
+                    }
+                }
+                int s = 0;
+                for (int k=0; k<srcDim; k++) {
+                    int e = line.indexOf(',', s);
+                    if (e < 0) {
+                        if (k != srcDim - 1) {
+                            throw new IOException("Line " + lineNumber + " has less than " + srcDim + " fields.");
+                        }
+                        e = line.length();
+                    }
+                    try {
+                        coordinates[count * srcDim + k] = Double.parseDouble(line.substring(s, e));
+                    } catch (NumberFormatException ex) {
+                        throw new IOException("Invalid coordinate at line " + lineNumber + '.', ex);
+                    }
+                    s = e;
+                    if (k != srcDim - 1) s++;
+                }
+                chunk.suffix[count++] = line.substring(s);
+            }
+            chunk.count = count;
+            return count != 0;
+        }
+
+        /**
+         * Returns whether the given line is a header. The first data line is recognized by a first field
+         * which is a number, including {@code NaN} and {@code Infinity} but not a word beginning with the
+         * same letters such as {@code Northing}.
+         */
+        private static boolean isHeader(final String line) {
+            int e = line.indexOf(',');
+            if (e < 0) e = line.length();
+            try {
+                Double.parseDouble(line.substring(0, e));
+                return false;
+            } catch (NumberFormatException ex) {
+                return true;
+            }
+        }
+
+        /** Writes the header line if it has not already been written. */
+        private void writeHeader() throws IOException {
+            final String h = header;
+            if (h != null) {
+                header = null;
+                out.write(h);
+                out.newLine();
+            }
+        }
+
+        /** Writes the transformed lines. */
+        @Override
+        public void write(final Chunk chunk) throws IOException {
+            writeHeader();
+            final double[] coordinates = chunk.target;
+            final StringBuilder sb = buffer;
+            sb.setLength(0);
+            for (int i=0; i<chunk.count; i++) {
+                for (int k=0; k<dstDim; k++) {
+                    if (k != 0) sb.append(',');
+                    sb.append(coordinates[i * dstDim + k]);
+                }
+                sb.append(chunk.suffix[i]).append(System.lineSeparator());
+                chunk.suffix[i] = null;
+            }
+            out.append(sb);
+        }
+
+        /** Closes the input and output files. */
+        @Override
+        public void close() throws IOException {
+            try (in; out) {
+                writeHeader();
+            }
+        }
+    }
+
+    /**
+     * Reader and writer of binary files of packed double-precision values.
+     */
+    private static final class BinaryStage implements Stage {
+        /** The input and output files. */
+        private final FileChannel in, out;
+
+        /** Number of dimensions of source and target coordinates. */
+        private final int srcDim, dstDim;
+
+        /** Opens the given files. */
+        BinaryStage(final Path input, final Path output, final int srcDim, final int dstDim) throws IOException {
+            this.srcDim = srcDim;
+            this.dstDim = dstDim;
+            in = FileChannel.open(input, StandardOpenOption.READ);
+            try {
+                out = FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                                               StandardOpenOption.TRUNCATE_EXISTING);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        /** Reads the next tuples. */
+        @Override
+        public boolean read(final Chunk chunk) throws IOException {
+            final ByteBuffer bytes = chunk.bytes;
+            bytes.clear().limit(chunk.source.length * Double.BYTES);
+            while (bytes.hasRemaining() && in.read(bytes) >= 0) {
+                // Continue until the buffer is full or the end of file is reached.
+            }
+            bytes.flip();
+            final int recordLength = srcDim * Double.BYTES;
+            if (bytes.remaining() % recordLength != 0) {
+                throw new EOFException("Truncated coordinate tuple at the end of the binary file.");
+            }
+            chunk.count = bytes.remaining() / recordLength;
+            bytes.asDoubleBuffer().get(chunk.source, 0, chunk.count * srcDim);
+            return chunk.count != 0;
+        }
+
+        /** Writes the transformed tuples. */
+        @Override
+        public void write(final Chunk chunk) throws IOException {
+            final ByteBuffer bytes = chunk.bytes;
+            bytes.clear().limit(chunk.count * dstDim * Double.BYTES);
+            bytes.asDoubleBuffer().put(chunk.target, 0, chunk.count * dstDim);
+            while (bytes.hasRemaining()) {
+                out.write(bytes);
+            }
+        }
+
+        /** Closes the input and output files. */
+        @Override
+        public void close() throws IOException {
+            try (in; out) {
+                // Nothing else to do.
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial;
+
+
+/**
+ * Snapshot of the statistics of a cache.
+ * This is useful for verifying that a cache is effective.
+ *
+ * @param hits       number of requests served from the cache.
+ * @param misses     number of requests which required a computation.
+ * @param evictions  number of entries discarded because of size limit or expiration.
+ * @param size       number of entries currently in the cache.
+ */
+public record CacheStatistics(long hits, long misses, long evictions, int size) {
+    /**
+     * Returns the ratio of requests served from the cache, or NaN if there is no request yet.
+     *
+     * @return the hit ratio between 0 and 1 inclusive.
+     */
+    public double hitRatio() {
+        return hits / (double) (hits + misses);
+    }
+}
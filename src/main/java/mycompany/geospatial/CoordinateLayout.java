@@ -0,0 +1,49 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial;
+
+import java.nio.ByteOrder;
+
+
+/**
+ * Location and format of coordinate tuples in a file.
+ * Each tuple begins {@code stride} values after the beginning of the previous tuple.
+ *
+ * @param offset  position in bytes of the first coordinate of the first tuple in the file.
+ * @param stride  number of values from the beginning of a tuple to the beginning of the next one.
+ * @param floats  {@code true} if values are single-precision, or {@code false} if they are double-precision.
+ * @param order   byte order of the values.
+ */
+public record CoordinateLayout(long offset, int stride, boolean floats, ByteOrder order) {
+    /**
+     * Returns a layout for double-precision values in the native byte order.
+     *
+     * @param  offset  position in bytes of the first coordinate in the file.
+     * @param  stride  number of values from the beginning of a tuple to the beginning of the next one.
+     * @return layout of double-precision coordinates.
+     */
+    public static CoordinateLayout doubles(final long offset, final int stride) {
+        return new CoordinateLayout(offset, stride, false, ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Returns a layout for single-precision values in the native byte order.
+     *
+     * @param  offset  position in bytes of the first coordinate in the file.
+     * @param  stride  number of values from the beginning of a tuple to the beginning of the next one.
+     * @return layout of single-precision coordinates.
+     */
+    public static CoordinateLayout floats(final long offset, final int stride) {
+        return new CoordinateLayout(offset, stride, true, ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Returns the number of bytes from the beginning of a tuple to the beginning of the next one.
+     *
+     * @return number of bytes between the beginnings of two consecutive tuples.
+     */
+    public int recordLength() {
+        return stride * (floats ? Float.BYTES : Double.BYTES);
+    }
+}
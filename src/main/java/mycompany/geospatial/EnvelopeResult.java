@@ -0,0 +1,70 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial;
+
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.apache.sis.geometry.GeneralEnvelope;
+
+
+/**
+ * Outcome of a batch of envelope transforms.
+ *
+ * @param crs          the CRS of the transformed envelopes, or {@code null} if unknown.
+ * @param envelopes    transformed envelopes as
+ *                     (<var>xmin</var>, <var>ymin</var>, <var>xmax</var>, <var>ymax</var>) tuples.
+ * @param errorBounds  estimated error of each envelope, in units of the target CRS,
+ *                     or NaN if some points of the envelope could not be transformed.
+ * @param numPoints    total number of points transformed.
+ */
+public record EnvelopeResult(CoordinateReferenceSystem crs, double[] envelopes, double[] errorBounds, long numPoints) {
+    /**
+     * Returns the number of envelopes.
+     *
+     * @return number of envelopes.
+     */
+    public int size() {
+        return errorBounds.length;
+    }
+
+    /**
+     * Returns the transformed envelope at the given index.
+     *
+     * @param  i  index of the envelope.
+     * @return the transformed envelope.
+     */
+    public GeneralEnvelope envelope(final int i) {
+        final var env = (crs != null) ? new GeneralEnvelope(crs) : new GeneralEnvelope(2);
+        env.setRange(0, envelopes[i*4    ], envelopes[i*4 + 2]);
+        env.setRange(1, envelopes[i*4 + 1], envelopes[i*4 + 3]);
+        return env;
+    }
+
+    /**
+     * Returns the largest error bound of all envelopes.
+     *
+     * @return the largest estimated error, in units of the target CRS,
+     *         or NaN if some points could not be transformed.
+     */
+    public double maxErrorBound() {
+        double max = 0;
+        for (final double e : errorBounds) {
+            if (!(e <= max)) max = e;
+            if (Double.isNaN(e)) break;
+        }
+        return max;
+    }
+
+    /**
+     * Returns the number of envelopes containing points which could not be transformed.
+     *
+     * @return number of envelopes having a NaN error bound.
+     */
+    public int failureCount() {
+        int n = 0;
+        for (final double e : errorBounds) {
+            if (Double.isNaN(e)) n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial;
+
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectInputFilter;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.InvalidObjectException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import javax.xml.bind.JAXBException;
+import javax.xml.transform.stream.StreamSource;
+import mycompany.geospatial.internal.BoundedCache;
+import org.opengis.parameter.ParameterValueGroup;
+import org.opengis.referencing.IdentifiedObject;
+import org.opengis.referencing.crs.SingleCRS;
+import org.opengis.referencing.cs.CoordinateSystem;
+import org.opengis.referencing.operation.Conversion;
+import org.opengis.referencing.operation.CoordinateOperation;
+import org.opengis.referencing.operation.OperationMethod;
+
+// Implementation-specific
+import org.apache.sis.referencing.IdentifiedObjects;
+import org.apache.sis.referencing.crs.DefaultDerivedCRS;
+import org.apache.sis.referencing.operation.DefaultConversion;
+import org.apache.sis.xml.XML;
+
+
+/**
+ * Loads coordinate operations from GML files, with caching by content.
+ * Parsing GML is costly: each call to {@link XML#unmarshal(URL)} builds the CRS, datum and operation
+ * method objects again. This loader computes a SHA-256 hash of the file content and returns the
+ * operation already parsed for the same content if any, regardless of the file location.
+ *
+ * <p>For reducing the cost of application startup, the cached operations can be saved in a
+ * {@linkplain #writeSnapshot(Path) snapshot file} and {@linkplain #readSnapshot(Path) read back}
+ * in a later execution. Reading a snapshot uses Java serialization instead of XML parsing, and
+ * then {@link #load(URL)} finds the operations without parsing the GML files again, as long as
+ * their content did not change.</p>
+ *
+ * <p>This class is thread-safe. Many files can be parsed in parallel with {@link #loadAll(Collection)}.</p>
+ */
+public final class GmlOperationLoader {
+    /**
+     * Maximal number of coordinate operations to keep in the cache.
+     * Can be modified with the {@code mycompany.geospatial.gmlCacheSize} system property.
+     */
+    private static final int CACHE_SIZE = Integer.getInteger("mycompany.geospatial.gmlCacheSize", 1000);
+
+    /**
+     * Magic number at the beginning of snapshot files, including a version number in the last byte.
+     */
+    private static final int SNAPSHOT_MAGIC = 0x474D_4C01;
+
+    /**
+     * Classes allowed in snapshot files. Deserialization of any other class is rejected,
+     * so that a modified snapshot file cannot instantiate arbitrary classes of the class path.
+     * Arrays are checked against their element type and primitive types are allowed.
+     */
+    private static final ObjectInputFilter SNAPSHOT_FILTER = ObjectInputFilter.Config.createFilter(
+            "java.lang.*;java.util.*;java.net.URI;javax.measure.**;"
+            + "org.opengis.**;org.apache.sis.**;mycompany.geospatial.**;!*");
+
+    /**
+     * Coordinate operations parsed from GML files, keyed by the hexadecimal SHA-256 hash of file content.
+     */
+    private static final BoundedCache<String, CoordinateOperation> CACHE =
+            new BoundedCache<>(CACHE_SIZE, 0, TimeUnit.SECONDS);
+
+    /**
+     * Do not allow instantiation of this class.
+     */
+    private GmlOperationLoader() {
+    }
+
+    /**
+     * Loads the coordinate operation defined in the given GML file.
+     * If an operation has already been loaded from a file with the same content, it is returned without parsing.
+     *
+     * @param  source  the GML file to read.
+     * @return the coordinate operation defined in the given file.
+     * @throws IOException if an error occurred while reading the file.
+     * @throws JAXBException if an error occurred while parsing the XML.
+     * @throws ClassCastException if the file does not define a coordinate operation.
+     */
+    public static CoordinateOperation load(final URL source) throws IOException, JAXBException {
+        final byte[] content;
+        try (InputStream in = source.openStream()) {
+            content = in.readAllBytes();
+        }
+        return CACHE.getOrLoad(hash(content), (key) -> {
+            /*
+             * The system identifier allows the parser to resolve relative links in the GML file.
+             */
+            final var xml = new StreamSource(new ByteArrayInputStream(content), source.toExternalForm());
+            return (CoordinateOperation) XML.unmarshal(xml, null);
+        });
+    }
+
+    /**
+     * Loads the coordinate operations defined in all given GML files. Files are parsed in parallel.
+     *
+     * @param  sources  the GML files to read.
+     * @return the coordinate operation for each file, in iteration order of the given collection.
+     * @throws IOException if an error occurred while reading a file.
+     * @throws JAXBException if an error occurred while parsing the XML of a file.
+     */
+    public static Map<URL, CoordinateOperation> loadAll(final Collection<URL> sources) throws IOException, JAXBException {
+        final var tasks = new ArrayList<Callable<CoordinateOperation>>(sources.size());
+        for (final URL source : sources) {
+            tasks.add(() -> load(source));
+        }
+        final List<Future<CoordinateOperation>> results = ForkJoinPool.commonPool().invokeAll(tasks);
+        final var operations = new LinkedHashMap<URL, CoordinateOperation>();
+        int i = 0;
+        for (final URL source : sources) {
+            try {
+                operations.put(source, results.get(i++).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while loading " + source, e);
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException ex)   throw ex;
+                if (cause instanceof JAXBException ex) throw ex;
+                if (cause instanceof RuntimeException ex) throw ex;
+                throw new IOException("Cannot load " + source, cause);
+            }
+        }
+        return operations;
+    }
+
+    /**
+     * Writes all coordinate operations currently in the cache to the given snapshot file.
+     * The file is first written under a temporary name, then renamed.
+     *
+     * @param  file  the snapshot file to write.
+     * @throws IOException if an error occurred while writing the file,
+     *         or if an operation is not serializable.
+     */
+    public static void writeSnapshot(final Path file) throws IOException {
+        final var operations = new HashMap<>(CACHE.snapshot());
+        final Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        final Path tmp = Files.createTempFile(directory, "gml", ".tmp");
+        try {
+            try (var out = new SnapshotOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeObject(operations);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Reads the coordinate operations from the given snapshot file and adds them to the cache.
+     * The snapshot file should have been written by the same version of this application.
+     * Only the GeoAPI, Apache SIS and application classes expected in a snapshot are deserialized.
+     *
+     * <p>The operations read from a snapshot are equal to the parsed ones, except that derived CRS are
+     * rebuilt as their specialized Apache SIS subtype (for example a derived geodetic CRS). Consequently
+     * formatting them as WKT may emit fewer warnings about non-standard elements than formatting the
+     * operations parsed directly from GML.</p>
+     *
+     * @param  file  the snapshot file to read.
+     * @return number of operations read.
+     * @throws IOException if an error occurred while reading the file, if the file is not a valid snapshot,
+     *         or if the file contains a class which is not allowed.
+     */
+    public static int readSnapshot(final Path file) throws IOException {
+        final Map<?,?> operations;
+        try (var in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            in.setObjectInputFilter(SNAPSHOT_FILTER);
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a GML snapshot file: " + file);
+            }
+            operations = (Map<?,?>) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Incompatible GML snapshot file: " + file, e);
+        }
+        for (final Map.Entry<?,?> entry : operations.entrySet()) {
+            CACHE.putIfAbsent((String) entry.getKey(), (CoordinateOperation) entry.getValue());
+        }
+        return operations.size();
+    }
+
+    /**
+     * Returns statistics about the cache of coordinate operations.
+     *
+     * @return number of hits, misses and evictions in the cache.
+     */
+    public static CacheStatistics cacheStatistics() {
+        return CACHE.statistics();
+    }
+
+    /**
+     * Output stream replacing the objects which cannot be serialized directly.
+     * Apache SIS 1.3 fails to deserialize a derived CRS because of the cyclic reference
+     * between that CRS and its conversion from base. Derived CRS are written as proxies instead.
+     */
+    private static final class SnapshotOutputStream extends ObjectOutputStream {
+        /** Creates a new stream writing to the given output. */
+        SnapshotOutputStream(final OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        /** Replaces derived CRS by a proxy without cyclic reference. */
+        @Override
+        protected Object replaceObject(final Object obj) {
+            if (obj != null && obj.getClass() == DefaultDerivedCRS.class) {
+                final var crs = (DefaultDerivedCRS) obj;
+                final Conversion conversion = crs.getConversionFromBase();
+                return new DerivedCRSProxy(properties(crs), crs.getBaseCRS(), properties(conversion),
+                        conversion.getMethod(), conversion.getParameterValues(), crs.getCoordinateSystem());
+            }
+            return obj;
+        }
+
+        /** Returns a serializable copy of the name, identifiers and other properties of the given object. */
+        private static HashMap<String,Object> properties(final IdentifiedObject object) {
+            return new HashMap<>(IdentifiedObjects.getProperties(object));
+        }
+    }
+
+    /**
+     * Serialized form of a derived CRS in snapshot files.
+     * The conversion from base CRS is stored as its method and parameter values.
+     */
+    private record DerivedCRSProxy(HashMap<String,Object> properties, SingleCRS baseCRS,
+            HashMap<String,Object> conversion, OperationMethod method, ParameterValueGroup parameters,
+            CoordinateSystem derivedCS) implements Serializable
+    {
+        /** Rebuilds the derived CRS on deserialization. */
+        private Object readResolve() throws ObjectStreamException {
+            try {
+                final var definition = new DefaultConversion(conversion, method, null, parameters);
+                return DefaultDerivedCRS.create(properties, baseCRS, definition, derivedCS);
+            } catch (RuntimeException e) {
+                throw (InvalidObjectException) new InvalidObjectException("Cannot rebuild the derived CRS.").initCause(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the hexadecimal SHA-256 hash of the given content.
+     */
+    private static String hash(final byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);        // SHA-256 is required on all Java platforms.
+        }
+    }
+}
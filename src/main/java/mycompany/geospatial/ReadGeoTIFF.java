@@ -1,8 +1,22 @@
 package mycompany.geospatial;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.ImagingOpException;
+import java.awt.image.RenderedImage;
+import mycompany.geospatial.internal.GridApproximation;
+import mycompany.geospatial.internal.Metrics;
+import mycompany.geospatial.internal.TileCache;
+import org.opengis.geometry.Envelope;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.datum.PixelInCell;
+import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.TransformException;
 import org.opengis.util.FactoryException;
 
@@ -12,12 +26,36 @@ import org.apache.sis.storage.DataStore;
 import org.apache.sis.storage.DataStores;
 import org.apache.sis.storage.DataStoreException;
 import org.apache.sis.storage.GridCoverageResource;
+import org.apache.sis.storage.RasterLoadingStrategy;
+import org.apache.sis.coverage.SampleDimension;
 import org.apache.sis.coverage.grid.GridCoverage;
+import org.apache.sis.coverage.grid.GridCoverage2D;
 import org.apache.sis.coverage.grid.GridCoverageProcessor;
+import org.apache.sis.coverage.grid.GridExtent;
+import org.apache.sis.coverage.grid.GridGeometry;
+import org.apache.sis.coverage.grid.GridOrientation;
+import org.apache.sis.coverage.grid.GridRoundingMode;
+import org.apache.sis.coverage.grid.DisjointExtentException;
+import org.apache.sis.image.ImageProcessor;
 import org.apache.sis.image.Interpolation;
 import org.apache.sis.referencing.CRS;
+import org.apache.sis.referencing.operation.transform.LinearTransform;
+import org.apache.sis.referencing.operation.transform.MathTransforms;
 
 public class ReadGeoTIFF {
+    /**
+     * Maximal error allowed on source pixel coordinates when approximating the transform from target pixels
+     * to source pixels by a {@linkplain GridApproximation grid}. The default value is 1/8 of pixel, which is
+     * hardly visible after bilinear interpolation. A value of 0 disables the approximation, in which case the
+     * exact transform is evaluated for each pixel.
+     *
+     * <p>The error of the approximation is estimated from samples of the exact transform and is not a proof.
+     * The estimated error is logged at the {@code FINE} level for each resampling.
+     * Can be modified with the {@code mycompany.geospatial.resamplingTolerance} system property.</p>
+     */
+    private static final double RESAMPLING_TOLERANCE =
+            Double.parseDouble(System.getProperty("mycompany.geospatial.resamplingTolerance", "0.125"));
+
     /**
      * Demo entry point.
      *
@@ -28,8 +66,33 @@ public class ReadGeoTIFF {
      * @throws TransformException if an error occurred while transforming coordinates to the target CRS.
      */
     public static void main(String[] args) throws DataStoreException, FactoryException, TransformException {
-        GridCoverage data;
-        try (DataStore store = DataStores.open(new File("Aéroport.tiff"))) {
+        final File file = new File("Aéroport.tiff");
+        GridCoverage data = read(file);
+        System.out.printf("Information about the selected image:%n%s%n", data);
+        /*
+         * By default, it is possible to continue to use the `GridCoverage` (but not the `Resource`) after
+         * the `DataStore` has been closed because data are in memory. Note that it would not be the case
+         * if deferred data loading was enabled has shown in "Handle rasters bigger than memory" example.
+         *
+         * Reproject to "WGS 84 / World Mercator" (EPSG::3395). If the tile cache is enabled,
+         * the result of a previous execution is reused without resampling the image again.
+         */
+        final CoordinateReferenceSystem crs = CRS.forCode("EPSG::3395");
+        data = (TileCache.getInstance() != null) ? reproject(file, crs) : reproject(data, crs);
+        System.out.printf("Information about the image after reprojection:%n%s%n", data.getGridGeometry());
+    }
+
+    /**
+     * Reads fully the first image of the given GeoTIFF file.
+     * For images bigger than memory, see {@link TiledReprojection} instead.
+     *
+     * @param  file  the GeoTIFF file to read.
+     * @return the first image of the file, loaded in memory.
+     * @throws DataStoreException if an error occurred while reading the raster.
+     * @throws ImagingOpException unchecked exception thrown if an error occurred while loading a tile.
+     */
+    public static GridCoverage read(File file) throws DataStoreException {
+        try (DataStore store = DataStores.open(file)) {
             /*
              * This data store is an aggregate because a GeoTIFF file may contain many images.
              * Not all data stores are aggregate, so the following casts do not apply to all.
@@ -40,21 +103,272 @@ public class ReadGeoTIFF {
             /*
              * Read the resource immediately and fully.
              */
-            data = firstImage.read(null, null);
-            System.out.printf("Information about the selected image:%n%s%n", data);
+            final var event = Metrics.ENABLED ? new Metrics.RasterReadEvent() : null;
+            final GridCoverage data = firstImage.read(null, null);
+            if (event != null) {
+                event.stop();
+                Metrics.end(event, file, data.render(null));
+            }
+            return data;
         }
+    }
+
+    /**
+     * Reads only the part of a GeoTIFF file needed for producing an image of the given area and resolution.
+     * If the file contains many images, the coarsest image having at least the requested resolution is used.
+     * Only the subset of that image intersecting the area of interest is read, with subsampling if the image
+     * is still finer than needed. If the image has overviews (reduced-resolution versions stored in the same
+     * GeoTIFF file), Apache SIS selects the overview level matching the subsampling.
+     * The result is resampled to a grid covering the area of interest in the target CRS.
+     *
+     * <p>Resampling approximates the transform from target pixels to source pixels with an estimated error
+     * not greater than {@link #RESAMPLING_TOLERANCE}. The estimation is based on samples of the exact transform
+     * and is not guaranteed everywhere. Set the tolerance to 0 for resampling with the exact transform.</p>
+     *
+     * <p>This method is much faster than {@link #read(File)} followed by {@link #reproject reproject(…)}
+     * when the requested resolution is coarse, for example for thumbnails and previews.</p>
+     *
+     * <p>If the {@linkplain TileCache tile cache} is enabled, the result is stored on disk and a later
+     * request for the same file, area, CRS, resolution and resampling tolerance is served from the cache
+     * without reading or resampling the file again, unless the file has been modified.</p>
+     *
+     * @param  file            the GeoTIFF file to read.
+     * @param  areaOfInterest  the area to read, in any CRS.
+     * @param  targetCRS       the CRS of the coverage to return.
+     * @param  resolution      the desired resolution, in units of the target CRS axes.
+     *                         A single value is used for all axes.
+     * @return the coverage for the given area and resolution in the target CRS.
+     * @throws IllegalArgumentException if the number of resolution values is neither 1
+     *         nor the number of target dimensions, or if a resolution is not positive.
+     * @throws DataStoreException if an error occurred while reading the raster,
+     *         or if the area of interest does not intersect any image.
+     * @throws TransformException if an error occurred while transforming coordinates to the target CRS.
+     */
+    public static GridCoverage read(File file, Envelope areaOfInterest, CoordinateReferenceSystem targetCRS,
+                                    double... resolution) throws DataStoreException, TransformException
+    {
         /*
-         * By default, it is possible to continue to use the `GridCoverage` (but not the `Resource`) after
-         * the `DataStore` has been closed because data are in memory. Note that it would not be the case
-         * if deferred data loading was enabled has shown in "Handle rasters bigger than memory" example.
-         *
-         * Reproject to "WGS 84 / World Mercator" (EPSG::3395) using bilinear interpolation.
-         * This example lets Apache SIS choose the output grid size and resolution.
-         * But it is possible to specify those aspects if desired.
+         * Compute the grid of the result. The number of cells on each axis is the
+         * span of the area of interest in the target CRS divided by the resolution.
          */
+        final Envelope area = Services.transform(areaOfInterest, targetCRS);
+        final long[] high = new long[area.getDimension()];
+        if (resolution.length != 1 && resolution.length != high.length) {
+            throw new IllegalArgumentException("Expected 1 or " + high.length + " resolution values but got "
+                                               + resolution.length + '.');
+        }
+        for (int i=0; i<high.length; i++) {
+            final double r = resolution[resolution.length == 1 ? 0 : i];
+            if (!(r > 0)) {
+                throw new IllegalArgumentException("Resolution shall be positive but got " + r + '.');
+            }
+            high[i] = Math.max(1, (long) Math.ceil(area.getSpan(i) / r)) - 1;
+        }
+        final var target = new GridGeometry(new GridExtent(null, null, high, true), area, GridOrientation.REFLECTION_Y);
+        final TileCache cache = TileCache.getInstance();
+        String product = null;
+        if (cache != null) {
+            try {
+                product = TileCache.product(file, target, Interpolation.BILINEAR, RESAMPLING_TOLERANCE);
+            } catch (IOException e) {
+                throw new DataStoreException("Cannot read " + file, e);
+            }
+            final GridCoverage cached = cache.getCoverage(product, target);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        final double required = cellCount(target.getExtent());
+        try (DataStore store = DataStores.open(file)) {
+            /*
+             * Select the coarsest image which still has enough cells in the area of interest.
+             * If no image has enough cells, select the finest one.
+             */
+            GridCoverageResource selected = null;
+            double selectedCells = Double.NaN;
+            for (Resource component : ((Aggregate) store).components()) {
+                if (component instanceof GridCoverageResource image) {
+                    final double cells;
+                    try {
+                        cells = cellCount(image.getGridGeometry().derive()
+                                .rounding(GridRoundingMode.ENCLOSING).subgrid(target).getIntersection());
+                    } catch (DisjointExtentException e) {
+                        continue;                       // This image does not intersect the area of interest.
+                    }
+                    final boolean better;
+                    if (selected == null) {
+                        better = true;
+                    } else if (cells >= required) {
+                        better = (selectedCells < required) || (cells < selectedCells);
+                    } else {
+                        better = (selectedCells < required) && (cells > selectedCells);
+                    }
+                    if (better) {
+                        selected = image;
+                        selectedCells = cells;
+                    }
+                }
+            }
+            if (selected == null) {
+                throw new DataStoreException("No image in " + file + " intersects the area of interest.");
+            }
+            /*
+             * Read only the region intersecting the area of interest, with subsampling computed
+             * from the target resolution. A margin is added for bilinear interpolation on borders.
+             */
+            final GridGeometry domain = selected.getGridGeometry().derive()
+                    .rounding(GridRoundingMode.ENCLOSING).margin(1).subgrid(target).build();
+            final var event = Metrics.ENABLED ? new Metrics.RasterReadEvent() : null;
+            final GridCoverage data = selected.read(domain, null);
+            if (event != null) {
+                event.stop();
+                Metrics.end(event, file, data.render(null));
+            }
+            final var resample = Metrics.ENABLED ? new Metrics.ResampleEvent() : null;
+            final GridCoverage result = resample(data, target);
+            if (resample != null) Metrics.end(resample, targetCRS.getName().getCode());
+            if (cache != null) {
+                cache.putCoverage(product, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Resamples the given coverage to the given grid using bilinear interpolation.
+     * If the conversion from target pixels to source pixels is non-linear, it is approximated by
+     * a {@link GridApproximation} over the target image, so that the exact chain of map projections
+     * is evaluated on a few thousands of points instead of on each pixel.
+     *
+     * @param  data    the coverage to resample.
+     * @param  target  the grid of the result, with a CRS and a conversion from cell centers to that CRS.
+     * @return the resampled coverage. Pixel values are computed when first requested.
+     * @throws TransformException if an error occurred while transforming coordinates to the source CRS.
+     */
+    private static GridCoverage resample(final GridCoverage data, final GridGeometry target) throws TransformException {
+        final GridGeometry source = data.getGridGeometry();
+        if (RESAMPLING_TOLERANCE > 0 && source.getDimension() == 2 && target.getDimension() == 2) {
+            /*
+             * Conversion from pixel coordinates of the target image to pixel coordinates of the source image.
+             * The target image starts at (0,0) and the source image may start at any location.
+             */
+            final RenderedImage image = data.render(null);
+            final GridExtent extent = target.getExtent();
+            final GridExtent sourceExtent = source.getExtent();
+            final MathTransform toSource;
+            try {
+                final MathTransform targetToCRS = MathTransforms.concatenate(
+                        MathTransforms.translation(extent.getLow(0), extent.getLow(1)),
+                        target.getGridToCRS(PixelInCell.CELL_CENTER));
+                final MathTransform crsToSource = MathTransforms.concatenate(
+                        source.getGridToCRS(PixelInCell.CELL_CENTER).inverse(),
+                        MathTransforms.translation(image.getMinX() - sourceExtent.getLow(0),
+                                                   image.getMinY() - sourceExtent.getLow(1)));
+                toSource = MathTransforms.concatenate(targetToCRS,
+                        Services.findOperation(target.getCoordinateReferenceSystem(),
+                                               source.getCoordinateReferenceSystem()).getMathTransform(),
+                        crsToSource);
+            } catch (FactoryException e) {
+                throw new TransformException(e.getMessage(), e);
+            }
+            if (!(toSource instanceof LinearTransform)) {
+                final int width  = Math.toIntExact(extent.getSize(0));
+                final int height = Math.toIntExact(extent.getSize(1));
+                final MathTransform approx = GridApproximation.create(toSource,
+                        new Rectangle2D.Double(-0.5, -0.5, width, height), RESAMPLING_TOLERANCE);
+                if (approx instanceof GridApproximation grid) {
+                    Logger.getLogger("mycompany.geospatial").log(Level.FINE,
+                            "Resampling with an estimated error of {0} pixel, {1} of the image computed exactly.",
+                            new Object[] {grid.getMaximalError(), grid.getExactFraction()});
+                }
+                final List<SampleDimension> bands = data.getSampleDimensions();
+                final var processor = new ImageProcessor();
+                processor.setInterpolation(Interpolation.BILINEAR);
+                processor.setFillValues(bands.stream().map((b) -> b.getBackground().orElse(null)).toArray(Number[]::new));
+                final RenderedImage result = processor.resample(image, new Rectangle(width, height), approx);
+                return new GridCoverage2D(target, bands, result);
+            }
+        }
         var processor = new GridCoverageProcessor();
         processor.setInterpolation(Interpolation.BILINEAR);
-        data = processor.resample(data, CRS.forCode("EPSG::3395"));
-        System.out.printf("Information about the image after reprojection:%n%s%n", data.getGridGeometry());
+        return processor.resample(data, target);
+    }
+
+    /**
+     * Returns the number of cells in the given extent, as a floating point value for avoiding overflow.
+     */
+    private static double cellCount(final GridExtent extent) {
+        double n = 1;
+        for (int i=extent.getDimension(); --i >= 0;) {
+            n *= extent.getSize(i);
+        }
+        return n;
+    }
+
+    /**
+     * Reads the first image of the given GeoTIFF file and reprojects it to the given CRS using bilinear interpolation.
+     * If the {@linkplain TileCache tile cache} is enabled, the result is stored on disk and a later request for
+     * the same file and CRS is served from the cache without decoding the file or resampling. Otherwise this
+     * method is equivalent to <code>{@linkplain #reproject(GridCoverage, CoordinateReferenceSystem)
+     * reproject}({@linkplain #read(File) read}(file), crs)</code>.
+     *
+     * @param  file  the GeoTIFF file to read.
+     * @param  crs   the desired CRS of the result.
+     * @return the reprojected coverage, loaded in memory.
+     * @throws DataStoreException if an error occurred while reading the raster.
+     * @throws TransformException if an error occurred while transforming coordinates to the target CRS.
+     */
+    public static GridCoverage reproject(File file, CoordinateReferenceSystem crs)
+            throws DataStoreException, TransformException
+    {
+        final TileCache cache = TileCache.getInstance();
+        if (cache == null) {
+            return reproject(read(file), crs);
+        }
+        try (DataStore store = DataStores.open(file)) {
+            GridCoverageResource firstImage = (GridCoverageResource) ((Aggregate) store).components().iterator().next();
+            /*
+             * The target grid is computed from the source grid geometry, without pixel values.
+             * Tiles are decoded only if the result is not in the cache, while the store is open.
+             */
+            firstImage.setLoadingStrategy(RasterLoadingStrategy.AT_GET_TILE_TIME);
+            final GridCoverage result = reproject(firstImage.read(null, null), crs);
+            final GridGeometry domain = result.getGridGeometry();
+            final String product;
+            try {
+                product = TileCache.product(file, domain, Interpolation.BILINEAR, 0);
+            } catch (IOException e) {
+                throw new DataStoreException("Cannot read " + file, e);
+            }
+            GridCoverage cached = cache.getCoverage(product, domain);
+            if (cached == null) {
+                cache.putCoverage(product, result);
+                cached = cache.getCoverage(product, domain);
+            }
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // The cache could not be written. The store has been closed, so read again without deferred loading.
+        return reproject(read(file), crs);
+    }
+
+    /**
+     * Reprojects the given coverage to the given CRS using bilinear interpolation.
+     * This method lets Apache SIS choose the output grid size and resolution.
+     * But it is possible to specify those aspects if desired.
+     *
+     * @param  data  the coverage to reproject.
+     * @param  crs   the desired CRS of the result.
+     * @return the reprojected coverage. Pixel values are computed when first requested.
+     * @throws TransformException if an error occurred while transforming coordinates to the target CRS.
+     */
+    public static GridCoverage reproject(GridCoverage data, CoordinateReferenceSystem crs) throws TransformException {
+        final var event = Metrics.ENABLED ? new Metrics.ResampleEvent() : null;
+        var processor = new GridCoverageProcessor();
+        processor.setInterpolation(Interpolation.BILINEAR);
+        final GridCoverage result = processor.resample(data, crs);
+        if (event != null) Metrics.end(event, crs.getName().getCode());
+        return result;
     }
 }
@@ -3,35 +3,148 @@
  */
 package mycompany.geospatial;
 
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import mycompany.geospatial.internal.BoundedCache;
+import mycompany.geospatial.internal.ChunkedTransform;
+import mycompany.geospatial.internal.EnvelopeDensifier;
+import mycompany.geospatial.internal.Metrics;
+import mycompany.geospatial.internal.UnitConversionTransform;
+
 // Implementation-neutral
 import javax.measure.Unit;
+import javax.measure.UnitConverter;
+import javax.measure.IncommensurableException;
 import javax.measure.quantity.Length;
 import javax.measure.quantity.Mass;
 import javax.measure.quantity.Time;
 import org.opengis.geometry.Envelope;
+import org.opengis.metadata.extent.GeographicBoundingBox;
 import org.opengis.referencing.crs.CRSAuthorityFactory;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.crs.GeographicCRS;
+import org.opengis.referencing.crs.ProjectedCRS;
+import org.opengis.referencing.cs.CoordinateSystem;
 import org.opengis.referencing.operation.CoordinateOperation;
+import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.TransformException;
 import org.opengis.util.FactoryException;
 
 // Implementation-dependent
 import org.apache.sis.geometry.Envelopes;
 import org.apache.sis.geometry.GeneralEnvelope;
+import org.apache.sis.metadata.iso.extent.DefaultGeographicBoundingBox;
 import org.apache.sis.measure.Units;
 import org.apache.sis.referencing.CRS;
+import org.apache.sis.referencing.operation.transform.MathTransforms;
 
 
 /**
  * A class offering geospatial services to the "MyCompany" project.
  */
 public class Services {
+    /**
+     * Maximal number of coordinate operations to keep in the cache.
+     * Can be modified with the {@code mycompany.geospatial.operationCacheSize} system property.
+     */
+    private static final int OPERATION_CACHE_SIZE = Integer.getInteger("mycompany.geospatial.operationCacheSize", 1000);
+
+    /**
+     * Maximal number of CRS to keep in the cache.
+     * Can be modified with the {@code mycompany.geospatial.crsCacheSize} system property.
+     */
+    private static final int CRS_CACHE_SIZE = Integer.getInteger("mycompany.geospatial.crsCacheSize", 200);
+
+    /**
+     * Time in seconds before a cached CRS or coordinate operation is discarded, or 0 for no expiration.
+     * Can be modified with the {@code mycompany.geospatial.cacheTimeToLive} system property.
+     */
+    private static final long CACHE_TIME_TO_LIVE = Long.getLong("mycompany.geospatial.cacheTimeToLive", 0);
+
+    /**
+     * Number of coordinate tuples in each chunk of a parallel bulk transform.
+     * Can be modified with the {@code mycompany.geospatial.transformChunkSize} system property.
+     */
+    private static final int TRANSFORM_CHUNK_SIZE = Integer.getInteger("mycompany.geospatial.transformChunkSize", 16384);
+
+    /**
+     * Number of coordinate tuples below which bulk transforms are executed in the current thread.
+     * Can be modified with the {@code mycompany.geospatial.parallelTransformThreshold} system property.
+     */
+    private static final int PARALLEL_THRESHOLD = Integer.getInteger("mycompany.geospatial.parallelTransformThreshold", 65536);
+
+    /**
+     * Number of envelopes in each chunk of a parallel envelope transform.
+     */
+    private static final int ENVELOPE_CHUNK_SIZE = 256;
+
+    /**
+     * Number of envelopes below which envelope transforms are executed in the current thread.
+     */
+    private static final int ENVELOPE_PARALLEL_THRESHOLD = 1024;
+
+    /**
+     * Key of cached coordinate operations. The area of interest is stored as primitive values
+     * because {@link GeographicBoundingBox} implementations may be mutable. All bounds are NaN
+     * if there is no area of interest.
+     */
+    private record OperationKey(CoordinateReferenceSystem sourceCRS, CoordinateReferenceSystem targetCRS,
+                                double west, double east, double south, double north)
+    {
+        /**
+         * Returns the area of interest, or {@code null} if none.
+         */
+        GeographicBoundingBox areaOfInterest() {
+            return Double.isNaN(west) ? null : new DefaultGeographicBoundingBox(west, east, south, north);
+        }
+    }
+
+    /**
+     * Key of cached CRS.
+     */
+    private record CodeKey(String authority, String code, Class<? extends CoordinateReferenceSystem> type) {
+    }
+
+    /**
+     * Coordinate operations found by previous calls to {@code findOperation(…)}.
+     */
+    private static final BoundedCache<OperationKey, CoordinateOperation> OPERATIONS =
+            new BoundedCache<>(OPERATION_CACHE_SIZE, CACHE_TIME_TO_LIVE, TimeUnit.SECONDS);
+
+    /**
+     * CRS created by previous calls to {@code createGeographicCRS(…)} or {@code createProjectedCRS(…)}.
+     */
+    private static final BoundedCache<CodeKey, CoordinateReferenceSystem> CRS_BY_CODE =
+            new BoundedCache<>(CRS_CACHE_SIZE, CACHE_TIME_TO_LIVE, TimeUnit.SECONDS);
+
     /**
      * Do not allow instantiation of this class.
      */
     private Services() {
     }
 
+    /**
+     * Returns the counters and latency histograms of the geospatial services, one per line.
+     * Measurements are done only if the {@code mycompany.geospatial.metrics} system property is true.
+     * In that case, Java Flight Recorder events are also emitted when a recording is active.
+     *
+     * @return a summary of all measurements, or {@code null} if measurements are disabled.
+     */
+    public static String metrics() {
+        if (!Metrics.ENABLED) {
+            return null;
+        }
+        final CacheStatistics stats = OPERATIONS.statistics();
+        return Metrics.report() + "Operation cache: " + stats + System.lineSeparator();
+    }
+
     /**
      * Returns the factory of CRS objects for the given authority.
      * The returned interface is implementation independent.
@@ -48,8 +161,37 @@ public class Services {
         return CRS.getAuthorityFactory(authority);
     }
 
+    /**
+     * Returns the geographic CRS for the given authority code.
+     * CRS are cached, so repeated calls for the same code are cheap.
+     *
+     * @param  authority  the authority, for example "EPSG".
+     * @param  code       the code allocated by the authority, for example "4326".
+     * @return the geographic CRS for the given code.
+     * @throws FactoryException if the CRS cannot be created.
+     */
+    public static GeographicCRS createGeographicCRS(String authority, String code) throws FactoryException {
+        return (GeographicCRS) CRS_BY_CODE.getOrLoad(new CodeKey(authority, code, GeographicCRS.class),
+                (key) -> getAuthorityFactory(key.authority).createGeographicCRS(key.code));
+    }
+
+    /**
+     * Returns the projected CRS for the given authority code.
+     * CRS are cached, so repeated calls for the same code are cheap.
+     *
+     * @param  authority  the authority, for example "EPSG".
+     * @param  code       the code allocated by the authority, for example "3395".
+     * @return the projected CRS for the given code.
+     * @throws FactoryException if the CRS cannot be created.
+     */
+    public static ProjectedCRS createProjectedCRS(String authority, String code) throws FactoryException {
+        return (ProjectedCRS) CRS_BY_CODE.getOrLoad(new CodeKey(authority, code, ProjectedCRS.class),
+                (key) -> getAuthorityFactory(key.authority).createProjectedCRS(key.code));
+    }
+
     /**
      * Returns the coordinate operation between the given pair of CRS.
+     * Operations are cached, so repeated calls for the same pair of CRS are cheap.
      *
      * @param  sourceCRS  the source of the coordinate operation.
      * @param  targetCRS  the target of the coordinate operation.
@@ -59,7 +201,227 @@ public class Services {
     public static CoordinateOperation findOperation(CoordinateReferenceSystem sourceCRS,
                                                     CoordinateReferenceSystem targetCRS) throws FactoryException
     {
-        return CRS.findOperation(sourceCRS, targetCRS, null);
+        return findOperation(sourceCRS, targetCRS, null);
+    }
+
+    /**
+     * Returns the coordinate operation between the given pair of CRS for the given area of interest.
+     * The area of interest helps to select the most accurate operation when many exist.
+     * Operations are cached, so repeated calls for the same arguments are cheap.
+     *
+     * @param  sourceCRS       the source of the coordinate operation.
+     * @param  targetCRS       the target of the coordinate operation.
+     * @param  areaOfInterest  the geographic area where the operation will be applied, or {@code null} if unknown.
+     * @return the coordinate operation between the given CRS.
+     * @throws FactoryException if an error occurred while creating the operation.
+     */
+    public static CoordinateOperation findOperation(CoordinateReferenceSystem sourceCRS,
+                                                    CoordinateReferenceSystem targetCRS,
+                                                    GeographicBoundingBox areaOfInterest) throws FactoryException
+    {
+        final OperationKey key;
+        if (areaOfInterest != null) {
+            key = new OperationKey(sourceCRS, targetCRS,
+                    areaOfInterest.getWestBoundLongitude(), areaOfInterest.getEastBoundLongitude(),
+                    areaOfInterest.getSouthBoundLatitude(), areaOfInterest.getNorthBoundLatitude());
+        } else {
+            key = new OperationKey(sourceCRS, targetCRS, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+        }
+        if (!Metrics.ENABLED) {
+            return OPERATIONS.getOrLoad(key, (k) -> CRS.findOperation(k.sourceCRS, k.targetCRS, k.areaOfInterest()));
+        }
+        /*
+         * Same as above with measurements. The flag tells whether the operation has been searched
+         * by this thread. Otherwise it was found in the cache or computed concurrently by another thread.
+         */
+        Metrics.OPERATION_LOOKUPS.add(1);
+        final boolean[] searched = new boolean[1];
+        final CoordinateOperation op = OPERATIONS.getOrLoad(key, (k) -> {
+            searched[0] = true;
+            final var event = new Metrics.OperationSearchEvent();
+            final CoordinateOperation found = CRS.findOperation(k.sourceCRS, k.targetCRS, k.areaOfInterest());
+            Metrics.end(event, k.sourceCRS.getName().getCode(), k.targetCRS.getName().getCode());
+            return found;
+        });
+        if (!searched[0]) {
+            Metrics.OPERATION_CACHE_HITS.add(1);
+        }
+        return op;
+    }
+
+    /**
+     * Returns statistics about the cache of coordinate operations.
+     * This is useful for verifying that the cache is effective.
+     *
+     * @return number of hits, misses and evictions in the cache of coordinate operations.
+     */
+    public static CacheStatistics operationCacheStatistics() {
+        return OPERATIONS.statistics();
+    }
+
+    /**
+     * Returns statistics about the cache of CRS created from authority codes.
+     *
+     * @return number of hits, misses and evictions in the cache of CRS.
+     */
+    public static CacheStatistics crsCacheStatistics() {
+        return CRS_BY_CODE.statistics();
+    }
+
+    /**
+     * Returns the transform of the given operation followed by a conversion to the given units of measurement.
+     * For example if the operation produces coordinates in metres, this method can return a transform producing
+     * coordinates in miles. This is more efficient than converting the coordinates after the transform, because
+     * linear conversions (the most common case) are merged with the linear steps of the transform,
+     * so projection and unit change run as a single bulk pass without any additional cost.
+     * Non-linear conversions are applied by an additional step, still in bulk.
+     *
+     * @param  op     the operation producing coordinates in the units of the target CRS axes.
+     * @param  units  the desired unit for each target axis, or {@code null} for keeping the unit of an axis.
+     * @return a transform producing coordinates in the given units.
+     * @throws IncommensurableException if a unit is not compatible with the unit of the corresponding axis.
+     */
+    public static MathTransform withTargetUnits(CoordinateOperation op, Unit<?>... units)
+            throws IncommensurableException
+    {
+        final CoordinateSystem cs = op.getTargetCRS().getCoordinateSystem();
+        if (units.length != cs.getDimension()) {
+            throw new IllegalArgumentException("Expected " + cs.getDimension() + " units but got " + units.length + '.');
+        }
+        final MathTransform[] steps = new MathTransform[units.length];
+        for (int i=0; i<units.length; i++) {
+            final Unit<?> source = cs.getAxis(i).getUnit();
+            final UnitConverter uc = (units[i] != null) ? source.getConverterToAny(units[i]) : null;
+            if (uc == null || uc.isIdentity()) {
+                steps[i] = MathTransforms.identity(1);
+                continue;
+            }
+            /*
+             * The coefficients are the polynomial terms in increasing power: offset, then scale.
+             * A null array or more than two coefficients means that the conversion is not linear.
+             * Omitted terms have their identity value: a single coefficient is an offset with
+             * a scale of 1 (for example °C to K), and an empty array is the identity.
+             */
+            final Number[] coefficients = Units.coefficients(uc);
+            if (coefficients != null && coefficients.length <= 2) {
+                final double offset = (coefficients.length > 0) ? coefficients[0].doubleValue() : 0;
+                final double scale  = (coefficients.length > 1) ? coefficients[1].doubleValue() : 1;
+                steps[i] = MathTransforms.linear(scale, offset);
+            } else {
+                steps[i] = new UnitConversionTransform(uc);
+            }
+        }
+        return MathTransforms.concatenate(op.getMathTransform(), MathTransforms.compound(steps));
+    }
+
+    /**
+     * Transforms many coordinate tuples in parallel, splitting the array in chunks of the default size.
+     * Small arrays are transformed in the current thread. Tuples that cannot be transformed do not abort
+     * the operation: their coordinates are set to NaN and their indices are reported in the result.
+     *
+     * <p>This method is suitable for large point clouds. For a few points, invoking
+     * {@link MathTransform#transform(double[], int, double[], int, int)} directly is sufficient.</p>
+     *
+     * @param  mt      the transform to apply, usually {@link CoordinateOperation#getMathTransform()}.
+     * @param  srcPts  the array containing the source coordinates.
+     * @param  srcOff  index of the first coordinate to transform in the source array.
+     * @param  dstPts  the array where to store the transformed coordinates. May be the source array.
+     * @param  dstOff  index where to store the first transformed coordinate in the destination array.
+     * @param  numPts  number of coordinate tuples to transform.
+     * @return the number of tuples and the indices of tuples which could not be transformed.
+     */
+    public static TransformResult transform(MathTransform mt, double[] srcPts, int srcOff,
+                                            double[] dstPts, int dstOff, int numPts)
+    {
+        return transform(mt, srcPts, srcOff, dstPts, dstOff, numPts, TRANSFORM_CHUNK_SIZE, PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Transforms many coordinate tuples in parallel with the given chunk size and sequential threshold.
+     *
+     * @param  mt         the transform to apply, usually {@link CoordinateOperation#getMathTransform()}.
+     * @param  srcPts     the array containing the source coordinates.
+     * @param  srcOff     index of the first coordinate to transform in the source array.
+     * @param  dstPts     the array where to store the transformed coordinates. May be the source array.
+     * @param  dstOff     index where to store the first transformed coordinate in the destination array.
+     * @param  numPts     number of coordinate tuples to transform.
+     * @param  chunkSize  number of coordinate tuples in each chunk given to a parallel task.
+     * @param  threshold  number of coordinate tuples below which the transform is executed in the current thread.
+     * @return the number of tuples and the indices of tuples which could not be transformed.
+     */
+    public static TransformResult transform(MathTransform mt, double[] srcPts, int srcOff,
+                                            double[] dstPts, int dstOff, int numPts,
+                                            int chunkSize, int threshold)
+    {
+        return new ChunkedTransform(mt, chunkSize, threshold).transform(srcPts, srcOff, dstPts, dstOff, numPts);
+    }
+
+    /**
+     * Transforms the coordinate tuples remaining in the source buffer and stores the result in the target buffer.
+     * Buffer positions are advanced by the number of values read or written. Direct buffers,
+     * including buffers mapped to files, are transformed by chunks copied in temporary arrays.
+     *
+     * @param  mt      the transform to apply, usually {@link CoordinateOperation#getMathTransform()}.
+     * @param  source  the buffer containing the coordinates to transform.
+     * @param  target  the buffer where to store the transformed coordinates.
+     * @return the number of tuples and the indices of tuples which could not be transformed.
+     */
+    public static TransformResult transform(MathTransform mt, DoubleBuffer source, DoubleBuffer target) {
+        return new ChunkedTransform(mt, TRANSFORM_CHUNK_SIZE, PARALLEL_THRESHOLD).transform(source, target);
+    }
+
+    /**
+     * Transforms coordinate tuples interleaved with other values, for example in records read from sensors.
+     * Buffers can be {@link DoubleBuffer} or {@link java.nio.FloatBuffer}, including views over memory-mapped
+     * files. The stride is the number of values from the beginning of a tuple to the beginning of the next one.
+     * Values between tuples in the target buffer are left unchanged. Buffer positions are advanced past the
+     * last tuple. Coordinates are copied by blocks in scratch arrays reused by each thread, so the heap
+     * allocation does not depend on the buffer size.
+     *
+     * @param  mt         the transform to apply, usually {@link CoordinateOperation#getMathTransform()}.
+     * @param  source     the buffer containing the coordinates to transform.
+     * @param  srcStride  number of values between the beginning of two consecutive source tuples.
+     * @param  target     the buffer where to store the transformed coordinates. May be a view over the source.
+     * @param  dstStride  number of values between the beginning of two consecutive target tuples.
+     * @return the number of tuples and the indices of tuples which could not be transformed.
+     */
+    public static TransformResult transform(MathTransform mt, Buffer source, int srcStride,
+                                            Buffer target, int dstStride)
+    {
+        return new ChunkedTransform(mt, TRANSFORM_CHUNK_SIZE, PARALLEL_THRESHOLD).transform(source, srcStride, target, dstStride);
+    }
+
+    /**
+     * Transforms coordinate tuples stored in a binary file and writes the result in another file.
+     * The files are mapped in memory, so coordinates are not read through the Java heap.
+     * If the source and target are the same file with the same layout, coordinates are transformed in place.
+     * The target file is created if it does not exist, and other values in that file are left unchanged.
+     *
+     * @param  mt         the transform to apply, usually {@link CoordinateOperation#getMathTransform()}.
+     * @param  source     the file containing the coordinates to transform.
+     * @param  srcLayout  location and format of the coordinates in the source file.
+     * @param  target     the file where to store the transformed coordinates. May be the source file.
+     * @param  dstLayout  location and format of the coordinates in the target file.
+     * @param  numPts     number of coordinate tuples to transform.
+     * @return the number of tuples and the indices of tuples which could not be transformed.
+     * @throws IOException if an error occurred while opening or mapping a file.
+     */
+    public static TransformResult transform(MathTransform mt, Path source, CoordinateLayout srcLayout,
+                                            Path target, CoordinateLayout dstLayout, int numPts)
+            throws IOException
+    {
+        final var ct = new ChunkedTransform(mt, TRANSFORM_CHUNK_SIZE, PARALLEL_THRESHOLD);
+        if (Files.exists(target) && Files.isSameFile(source, target)) {
+            try (FileChannel channel = FileChannel.open(target, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return ct.transform(channel, srcLayout, channel, dstLayout, numPts);
+            }
+        }
+        try (FileChannel in  = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                                                        StandardOpenOption.CREATE))
+        {
+            return ct.transform(in, srcLayout, out, dstLayout, numPts);
+        }
     }
 
     /**
@@ -72,7 +434,77 @@ public class Services {
      * @throws TransformException if at least one coordinate tuple can not be transformed.
      */
     public static Envelope transform(Envelope env, CoordinateReferenceSystem crs) throws TransformException {
-        return Envelopes.transform(env, crs);
+        final var event = Metrics.ENABLED ? new Metrics.EnvelopeTransformEvent() : null;
+        boolean failed = true;
+        try {
+            final Envelope result = Envelopes.transform(env, crs);
+            failed = false;
+            return result;
+        } finally {
+            if (event != null) Metrics.end(event, crs.getName().getCode(), failed);
+        }
+    }
+
+    /**
+     * Transforms many two-dimensional envelopes with a control on the accuracy.
+     * Edges are densified adaptively until the transformed edges are approximated within the given tolerance,
+     * or until a maximal number of subdivisions. The error bound reached for each envelope is reported in the
+     * result. Large batches are split in chunks transformed in parallel.
+     *
+     * <p>Envelopes are given as (<var>xmin</var>, <var>ymin</var>, <var>xmax</var>, <var>ymax</var>) tuples
+     * in a single array, which avoids the creation of an object for each envelope. Poles inside an envelope
+     * and edges crossing the anti-meridian expand the result as {@link Envelopes#transform(CoordinateOperation,
+     * Envelope)} does. Envelopes with points that cannot be transformed have a NaN error bound,
+     * counted by {@link EnvelopeResult#failureCount()}.</p>
+     *
+     * @param  op            the operation to apply, shared by all envelopes.
+     * @param  envelopes     source envelopes as (<var>xmin</var>, <var>ymin</var>, <var>xmax</var>, <var>ymax</var>) tuples.
+     * @param  numEnvelopes  number of envelopes to transform.
+     * @param  tolerance     maximal error on each axis, in units of the target CRS.
+     * @return the transformed envelopes with their error bounds.
+     */
+    public static EnvelopeResult transform(CoordinateOperation op, double[] envelopes, int numEnvelopes,
+                                           double tolerance)
+    {
+        return new EnvelopeDensifier(op.getMathTransform(), tolerance, EnvelopeDensifier.DEFAULT_MAX_DEPTH,
+                                     ENVELOPE_CHUNK_SIZE, ENVELOPE_PARALLEL_THRESHOLD)
+                .transform(envelopes, numEnvelopes, op.getTargetCRS());
+    }
+
+    /**
+     * Transforms many two-dimensional envelopes to the specified CRS with a control on the accuracy.
+     * All envelopes shall have the same CRS. The coordinate operation is searched only once.
+     *
+     * @param  envelopes  the envelopes to transform.
+     * @param  crs        the desired CRS for the envelopes to return.
+     * @param  tolerance  maximal error on each axis, in units of the target CRS.
+     * @return the transformed envelopes with their error bounds.
+     * @throws IllegalArgumentException if the envelopes do not all have the same CRS.
+     * @throws FactoryException if the coordinate operation cannot be found.
+     */
+    public static EnvelopeResult transform(List<? extends Envelope> envelopes, CoordinateReferenceSystem crs,
+                                           double tolerance) throws FactoryException
+    {
+        final int n = envelopes.size();
+        final double[] packed = new double[n * 4];
+        CoordinateReferenceSystem sourceCRS = null;
+        for (int i=0; i<n; i++) {
+            final Envelope env = envelopes.get(i);
+            final CoordinateReferenceSystem envCRS = env.getCoordinateReferenceSystem();
+            if (i == 0) {
+                sourceCRS = envCRS;
+            } else if (envCRS != sourceCRS && (envCRS == null || !envCRS.equals(sourceCRS))) {
+                throw new IllegalArgumentException("All envelopes shall have the same CRS.");
+            }
+            packed[i*4    ] = env.getMinimum(0);
+            packed[i*4 + 1] = env.getMinimum(1);
+            packed[i*4 + 2] = env.getMaximum(0);
+            packed[i*4 + 3] = env.getMaximum(1);
+        }
+        if (sourceCRS == null) {
+            throw new IllegalArgumentException("Envelopes shall have a CRS.");
+        }
+        return transform(findOperation(sourceCRS, crs), packed, n, tolerance);
     }
 
     /**
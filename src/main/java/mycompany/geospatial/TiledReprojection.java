@@ -0,0 +1,213 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import mycompany.geospatial.internal.GeoTiffTileWriter;
+import mycompany.geospatial.internal.Metrics;
+import mycompany.geospatial.internal.TileCache;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.TransformException;
+
+import org.apache.sis.storage.Resource;
+import org.apache.sis.storage.Aggregate;
+import org.apache.sis.storage.DataStore;
+import org.apache.sis.storage.DataStores;
+import org.apache.sis.storage.DataStoreException;
+import org.apache.sis.storage.GridCoverageResource;
+import org.apache.sis.storage.RasterLoadingStrategy;
+import org.apache.sis.coverage.grid.GridCoverage;
+import org.apache.sis.coverage.grid.GridGeometry;
+import org.apache.sis.coverage.grid.GridCoverageProcessor;
+import org.apache.sis.image.Interpolation;
+
+
+/**
+ * Reprojects a GeoTIFF image to another CRS and writes the result in a new GeoTIFF file, tile by tile.
+ * Contrarily to {@link ReadGeoTIFF}, the image is never loaded fully in memory: source tiles are read
+ * only when needed for computing a target tile, and target tiles are written as soon as they are computed.
+ * Target tiles are computed in parallel, and the number of tiles computed but not yet written is bounded
+ * by the {@linkplain #setTileBudget(int) tile budget}. Consequently, peak memory usage depends on the tile
+ * budget and tile size, not on the image size.
+ *
+ * <p>If the {@linkplain TileCache tile cache} is enabled, computed tiles are stored on disk and tiles
+ * already computed for the same file, target grid and interpolation are written without reading or
+ * resampling the source again.</p>
+ *
+ * <p>Instances of this class are not thread-safe, but the same instance can be reused for many files.</p>
+ */
+public class TiledReprojection {
+    /**
+     * The CRS of the images to write.
+     */
+    private final CoordinateReferenceSystem targetCRS;
+
+    /**
+     * The interpolation method to use for resampling.
+     */
+    private Interpolation interpolation;
+
+    /**
+     * Maximal number of target tiles computed but not yet written.
+     */
+    private int tileBudget;
+
+    /**
+     * Width and height of tiles in the output file.
+     */
+    private int tileSize;
+
+    /**
+     * Creates a new reprojection to the given CRS using bilinear interpolation.
+     * The default tile budget is 4 tiles per processor, and the default tile size is 256 pixels.
+     *
+     * @param  targetCRS  the CRS of the images to write.
+     */
+    public TiledReprojection(CoordinateReferenceSystem targetCRS) {
+        this.targetCRS = targetCRS;
+        interpolation  = Interpolation.BILINEAR;
+        tileBudget     = 4 * Runtime.getRuntime().availableProcessors();
+        tileSize       = 256;
+    }
+
+    /**
+     * Sets the interpolation method to use for resampling.
+     *
+     * @param  interpolation  the new interpolation method.
+     */
+    public void setInterpolation(Interpolation interpolation) {
+        this.interpolation = interpolation;
+    }
+
+    /**
+     * Sets the maximal number of target tiles computed but not yet written.
+     * This is the main parameter for controlling memory usage.
+     *
+     * @param  tileBudget  maximal number of target tiles in memory.
+     */
+    public void setTileBudget(int tileBudget) {
+        if (tileBudget <= 0) {
+            throw new IllegalArgumentException("Tile budget shall be positive.");
+        }
+        this.tileBudget = tileBudget;
+    }
+
+    /**
+     * Sets the width and height of tiles in the output file.
+     * This size is used only if the tiles computed by the resampling operation
+     * cannot be written directly, because TIFF tiles must have a size multiple of 16.
+     *
+     * @param  tileSize  width and height of output tiles. Must be a multiple of 16.
+     */
+    public void setTileSize(int tileSize) {
+        if (tileSize <= 0 || (tileSize & 15) != 0) {
+            throw new IllegalArgumentException("Tile size shall be a positive multiple of 16.");
+        }
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Reprojects the first image of the given GeoTIFF file and writes the result in the given output file.
+     *
+     * @param  input   the GeoTIFF file to read.
+     * @param  output  the GeoTIFF file to write. An existing file is overwritten.
+     * The pixel values are not returned because the source file is closed when this method returns.
+     * The written file can be read with {@link ReadGeoTIFF#read(File)} if needed.
+     *
+     * @return the grid geometry of the written image, with its CRS in the target CRS.
+     * @throws DataStoreException if an error occurred while reading or writing a file.
+     * @throws TransformException if an error occurred while transforming coordinates to the target CRS.
+     */
+    public GridGeometry run(File input, File output) throws DataStoreException, TransformException {
+        try (DataStore store = DataStores.open(input)) {
+            Collection<? extends Resource> allImages = ((Aggregate) store).components();
+            GridCoverageResource firstImage = (GridCoverageResource) allImages.iterator().next();
+            /*
+             * Ask to load tiles only when first needed. If the data store does not support
+             * deferred loading, the image is read fully, which may cause out of memory errors.
+             */
+            firstImage.setLoadingStrategy(RasterLoadingStrategy.AT_GET_TILE_TIME);
+            GridCoverage data = firstImage.read(null, null);
+            final var event = Metrics.ENABLED ? new Metrics.ResampleEvent() : null;
+            var processor = new GridCoverageProcessor();
+            processor.setInterpolation(interpolation);
+            data = processor.resample(data, targetCRS);
+            if (event != null) Metrics.end(event, targetCRS.getName().getCode());
+            final TileCache cache = TileCache.getInstance();
+            String product = null;
+            if (cache != null) try {
+                product = TileCache.product(input, data.getGridGeometry(), interpolation, 0);
+            } catch (IOException e) {
+                throw new DataStoreException("Cannot read " + input, e);
+            }
+            write(data.render(null), data, output, cache, product);
+            return data.getGridGeometry();
+        }
+    }
+
+    /**
+     * Computes all tiles of the given image in parallel and writes them in the given file.
+     * This method must be invoked while the source data store is still open.
+     * Tiles are taken from the given cache when available, and stored in it otherwise.
+     */
+    private void write(final RenderedImage image, final GridCoverage coverage, final File output,
+                       final TileCache cache, final String product) throws DataStoreException
+    {
+        /*
+         * Use the tiles of the resampled image if TIFF can store them. Otherwise use our own
+         * tile size, in which case some tiles of the resampled image may be computed twice.
+         */
+        int tw = image.getTileWidth();
+        int th = image.getTileHeight();
+        if (((tw | th) & 15) != 0) {
+            tw = th = tileSize;
+        }
+        final int width  = image.getWidth();
+        final int height = image.getHeight();
+        final int minX   = image.getMinX();
+        final int minY   = image.getMinY();
+        final var budget = new Semaphore(tileBudget);
+        final var failure = new AtomicReference<Throwable>();
+        try (var writer = new GeoTiffTileWriter(output, image, width, height, tw, th, coverage.getGridGeometry())) {
+            for (int y=0; y<height && failure.get() == null; y += th) {
+                for (int x=0; x<width && failure.get() == null; x += tw) {
+                    final var region = new Rectangle(minX + x, minY + y, Math.min(tw, width - x), Math.min(th, height - y));
+                    final int tx = x, ty = y;
+                    budget.acquireUninterruptibly();
+                    ForkJoinPool.commonPool().execute(() -> {
+                        try {
+                            Raster tile = (cache != null) ? cache.getTile(product, region) : null;
+                            if (tile == null) {
+                                tile = image.getData(region);
+                                if (Metrics.ENABLED) Metrics.tileRead(tile);
+                                if (cache != null) cache.putTile(product, tile);
+                            }
+                            writer.write(tile, tx, ty);
+                        } catch (DataStoreException | RuntimeException | Error e) {
+                            failure.compareAndSet(null, e);     // Errors too, for not leaving missing tiles unreported.
+                        } finally {
+                            budget.release();
+                        }
+                    });
+                }
+            }
+            budget.acquireUninterruptibly(tileBudget);          // Wait for all tasks to complete.
+        }
+        final Throwable e = failure.get();
+        if (e instanceof Error error) {
+            throw error;
+        }
+        if (e != null) {
+            throw new DataStoreException("Cannot write " + output, e);
+        }
+    }
+}
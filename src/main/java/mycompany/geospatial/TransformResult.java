@@ -0,0 +1,42 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial;
+
+
+/**
+ * Outcome of a bulk transform of coordinate tuples.
+ * A tuple which cannot be transformed does not abort the whole operation.
+ * Instead, its coordinates are set to NaN and its index is reported in this result.
+ *
+ * @param numPoints     number of coordinate tuples given to the transform.
+ * @param failedPoints  indices (relative to the first tuple) of tuples which could not be transformed,
+ *                      in increasing order. Coordinates of those tuples are NaN in the destination.
+ */
+public record TransformResult(int numPoints, int[] failedPoints) {
+    /**
+     * Returns the number of tuples which could not be transformed.
+     *
+     * @return number of failed tuples.
+     */
+    public int failureCount() {
+        return failedPoints.length;
+    }
+
+    /**
+     * Returns whether all tuples have been transformed successfully.
+     *
+     * @return whether there is no failed tuple.
+     */
+    public boolean isComplete() {
+        return failedPoints.length == 0;
+    }
+
+    /**
+     * Returns a string representation for debugging purposes.
+     */
+    @Override
+    public String toString() {
+        return "TransformResult[" + (numPoints - failedPoints.length) + " of " + numPoints + " points transformed]";
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import mycompany.geospatial.internal.ChunkedTransform;
+
+// Implementation-neutral
+import org.opengis.geometry.MismatchedDimensionException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+import org.opengis.util.FactoryException;
+
+
+/**
+ * Transforms the small requests of many concurrent callers in bulk.
+ * Each call to {@link MathTransform#transform(double[], int, double[], int, int)} has a fixed cost,
+ * which dominates when only one or a few points are transformed. This service coalesces the concurrent
+ * requests for the same transform into a single bulk call. A request is executed immediately if no
+ * batch is currently executing for the same transform, so there is no added latency at low load.
+ * Otherwise, requests accumulate until the batch contains the maximal number of points,
+ * or until the oldest request has waited for the maximal delay.
+ *
+ * <p>A full batch is transformed in the thread of the caller which completed it.
+ * A batch completed by the delay is transformed in a timer thread of this service.
+ * Callers receive a {@link CompletableFuture} and are never blocked by other requests,
+ * so they can be platform threads or, on Java 21 and later, virtual threads.</p>
+ *
+ * <p>Batching has a cost: each request copies its coordinates and completes a future.
+ * This cost exceeds the fixed cost of cheap transforms such as map projections, which take
+ * a few hundred nanoseconds per call. For those transforms, invoking the transform directly
+ * in each thread is faster: {@code TransformServiceBenchmark} measured about 8 million direct
+ * calls per second against 0.4 to 0.6 million batched requests for a stereographic projection.
+ * This service is worth using only for transforms with a high fixed cost per call, for example
+ * transforms loading data on each call, and with many requests in flight. It is not used by default;
+ * the benchmark should be run with the actual transform before replacing direct calls.</p>
+ *
+ * <p>This class is thread-safe. Instances should be closed when no longer needed.</p>
+ */
+public final class TransformService implements AutoCloseable {
+    /**
+     * Default maximal number of points in a batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    /**
+     * Default maximal time that a request waits for other requests before its batch is executed.
+     */
+    public static final Duration DEFAULT_MAX_WAIT = Duration.ofNanos(200_000);
+
+    /**
+     * Service statistics.
+     *
+     * @param requests  number of requests received.
+     * @param points    number of points in all requests.
+     * @param batches   number of bulk transforms executed.
+     */
+    public record Statistics(long requests, long points, long batches) {
+        /**
+         * Returns the average number of points per bulk transform.
+         *
+         * @return average number of points per batch, or 0 if no batch has been executed.
+         */
+        public double averageBatchSize() {
+            return (batches == 0) ? 0 : points / (double) batches;
+        }
+
+        /**
+         * Returns a string representation of the statistics.
+         */
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d requests, %d points in %d batches (%.1f points per batch)",
+                                 requests, points, batches, averageBatchSize());
+        }
+    }
+
+    /**
+     * Maximal number of points in a batch.
+     */
+    private final int maxBatchSize;
+
+    /**
+     * Maximal time in nanoseconds that a request waits before its batch is executed.
+     */
+    private final long maxWait;
+
+    /**
+     * The thread executing the batches completed by the delay.
+     */
+    private final ScheduledExecutorService timer;
+
+    /**
+     * The batch under construction for each transform.
+     */
+    private final ConcurrentHashMap<MathTransform, Batcher> batchers;
+
+    /**
+     * Counters for statistics.
+     */
+    private final LongAdder requestCount, pointCount, batchCount;
+
+    /**
+     * Whether this service has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Creates a service with the default batch size and maximal wait.
+     */
+    public TransformService() {
+        this(DEFAULT_BATCH_SIZE, DEFAULT_MAX_WAIT);
+    }
+
+    /**
+     * Creates a service with the given batch size and maximal wait.
+     *
+     * @param  maxBatchSize  maximal number of points in a batch.
+     * @param  maxWait       maximal time that a request waits for other requests.
+     */
+    public TransformService(final int maxBatchSize, final Duration maxWait) {
+        if (maxBatchSize <= 0 || maxWait.isNegative()) {
+            throw new IllegalArgumentException("Batch size shall be positive and maximal wait shall not be negative.");
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.maxWait      = maxWait.toNanos();
+        batchers     = new ConcurrentHashMap<>();
+        requestCount = new LongAdder();
+        pointCount   = new LongAdder();
+        batchCount   = new LongAdder();
+        timer = Executors.newSingleThreadScheduledExecutor((task) -> {
+            final var t = new Thread(task, "TransformService timer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Transforms coordinate tuples from the given source CRS to the given target CRS.
+     * The coordinate operation is obtained by {@link Services#findOperation}, which caches it.
+     *
+     * @param  sourceCRS    CRS of the given coordinates.
+     * @param  targetCRS    CRS of the coordinates to return.
+     * @param  coordinates  one or more coordinate tuples, packed. This array is copied.
+     * @return the transformed coordinates, packed, when the batch has been executed.
+     * @throws FactoryException if the coordinate operation cannot be found.
+     */
+    public CompletableFuture<double[]> transform(final CoordinateReferenceSystem sourceCRS,
+            final CoordinateReferenceSystem targetCRS, final double... coordinates) throws FactoryException
+    {
+        return transform(Services.findOperation(sourceCRS, targetCRS).getMathTransform(), coordinates);
+    }
+
+    /**
+     * Transforms coordinate tuples with the given transform.
+     * The returned future completes exceptionally with a {@link TransformException}
+     * if a tuple of this request cannot be transformed.
+     *
+     * @param  mt           the transform to apply.
+     * @param  coordinates  one or more coordinate tuples, packed. This array is copied.
+     * @return the transformed coordinates, packed, when the batch has been executed.
+     * @throws MismatchedDimensionException if the array length is not a multiple of the source dimension.
+     * @throws IllegalStateException if this service has been closed. If the service is closed
+     *         concurrently with this method call, the future may complete with this exception instead.
+     */
+    public CompletableFuture<double[]> transform(final MathTransform mt, final double... coordinates) {
+        final int srcDim = mt.getSourceDimensions();
+        if (coordinates.length % srcDim != 0) {
+            throw new MismatchedDimensionException("Array length " + coordinates.length
+                    + " is not a multiple of " + srcDim + " dimensions.");
+        }
+        if (closed) {
+            throw new IllegalStateException("Transform service is closed.");
+        }
+        final var request = new Request(coordinates.clone(), coordinates.length / srcDim, new CompletableFuture<>());
+        requestCount.increment();
+        pointCount.add(request.numPts);
+        batchers.computeIfAbsent(mt, Batcher::new).add(request);
+        return request.result;
+    }
+
+    /**
+     * Returns statistics about the requests and batches.
+     *
+     * @return number of requests, points and batches.
+     */
+    public Statistics statistics() {
+        return new Statistics(requestCount.sum(), pointCount.sum(), batchCount.sum());
+    }
+
+    /**
+     * Executes all pending batches and stops the timer thread.
+     * Requests submitted after this method call are rejected. Requests submitted concurrently
+     * are either executed or completed exceptionally with an {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (final Batcher batcher : batchers.values()) {
+            batcher.flush();
+        }
+        timer.shutdown();
+    }
+
+    /**
+     * A request from a caller.
+     *
+     * @param coordinates  the coordinates to transform.
+     * @param numPts       number of tuples in the coordinates array.
+     * @param result       where to store the transformed coordinates.
+     */
+    private record Request(double[] coordinates, int numPts, CompletableFuture<double[]> result) {
+    }
+
+    /**
+     * Accumulates the requests for a transform until a batch is full or the maximal wait elapsed.
+     */
+    private final class Batcher {
+        /** The bulk transform, executed sequentially in the thread of the batch. */
+        private final ChunkedTransform bulk;
+
+        /** Number of dimensions of source and target coordinates. */
+        private final int srcDim, dstDim;
+
+        /** Requests of the batch under construction. */
+        private List<Request> pending;
+
+        /** Number of points in the pending requests. */
+        private int pendingPoints;
+
+        /** The scheduled execution of the pending batch, or {@code null} if none. */
+        private ScheduledFuture<?> deadline;
+
+        /** Number of batches currently executing. */
+        private int executing;
+
+        /** Creates a batcher for the given transform. */
+        Batcher(final MathTransform mt) {
+            bulk   = new ChunkedTransform(mt, maxBatchSize, Integer.MAX_VALUE);
+            srcDim = mt.getSourceDimensions();
+            dstDim = mt.getTargetDimensions();
+            pending = new ArrayList<>();
+        }
+
+        /**
+         * Adds a request to the pending batch. If no batch is executing or if the batch is full,
+         * it is executed in the current thread. Otherwise, if this is the first request of the batch,
+         * the execution is scheduled after the delay. If the service has been closed, the request is
+         * rejected. The closed state is checked in the same lock as the one used by {@link #flush()},
+         * so no request is added after the last flush and the timer is never used after shutdown.
+         */
+        void add(final Request request) {
+            final List<Request> batch;
+            synchronized (this) {
+                if (closed) {
+                    request.result.completeExceptionally(new IllegalStateException("Transform service is closed."));
+                    return;
+                }
+                pending.add(request);
+                pendingPoints += request.numPts;
+                if (executing != 0 && pendingPoints < maxBatchSize && maxWait != 0) {
+                    if (deadline == null) {
+                        deadline = timer.schedule(this::flush, maxWait, TimeUnit.NANOSECONDS);
+                    }
+                    return;
+                }
+                batch = take();
+            }
+            execute(batch);
+        }
+
+        /**
+         * Executes the pending batch, if any. Invoked by the timer or when the service is closed.
+         */
+        void flush() {
+            final List<Request> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) return;
+                batch = take();
+            }
+            execute(batch);
+        }
+
+        /**
+         * Removes and returns the pending requests, and counts them as executing.
+         * Shall be invoked in a block synchronized on {@code this}.
+         */
+        private List<Request> take() {
+            final List<Request> batch = pending;
+            pending = new ArrayList<>();
+            pendingPoints = 0;
+            executing++;
+            if (deadline != null) {
+                deadline.cancel(false);
+                deadline = null;
+            }
+            return batch;
+        }
+
+        /**
+         * Transforms all requests of the given batch in a single bulk call, then completes their futures.
+         */
+        private void execute(final List<Request> batch) {
+            try {
+                transform(batch);
+            } finally {
+                synchronized (this) {
+                    executing--;
+                }
+            }
+        }
+
+        /**
+         * Implementation of {@link #execute(List)}.
+         */
+        private void transform(final List<Request> batch) {
+            batchCount.increment();
+            int numPts = 0;
+            for (final Request r : batch) {
+                numPts += r.numPts;
+            }
+            final double[] source = new double[numPts * srcDim];
+            final double[] target = new double[numPts * dstDim];
+            int offset = 0;
+            for (final Request r : batch) {
+                System.arraycopy(r.coordinates, 0, source, offset, r.coordinates.length);
+                offset += r.coordinates.length;
+            }
+            final int[] failed;
+            try {
+                failed = bulk.transform(source, 0, target, 0, numPts).failedPoints();
+            } catch (RuntimeException e) {
+                for (final Request r : batch) {
+                    r.result.completeExceptionally(e);
+                }
+                return;
+            }
+            int lower = 0, f = 0;
+            for (final Request r : batch) {
+                final int upper = lower + r.numPts;
+                while (f < failed.length && failed[f] < lower) f++;
+                if (f < failed.length && failed[f] < upper) {
+                    r.result.completeExceptionally(new TransformException(
+                            "Cannot transform the coordinate tuple at index " + (failed[f] - lower) + '.'));
+                } else {
+                    r.result.complete(Arrays.copyOfRange(target, lower * dstDim, upper * dstDim));
+                }
+                lower = upper;
+            }
+        }
+    }
+}
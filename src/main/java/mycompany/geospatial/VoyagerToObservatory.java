@@ -4,18 +4,23 @@
 package mycompany.geospatial;
 
 import java.net.URL;
+import java.io.IOException;
 import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import javax.xml.bind.JAXBException;
 import org.opengis.geometry.DirectPosition;
 import org.opengis.referencing.operation.CoordinateOperation;
 import org.opengis.referencing.operation.TransformException;
 
 // Implementation-specific
-import org.apache.sis.xml.XML;
 import org.apache.sis.geometry.GeneralDirectPosition;
 import org.apache.sis.referencing.CommonCRS;
 import org.apache.sis.referencing.crs.DefaultTemporalCRS;
 
+// Implementation-dependent
+import mycompany.geospatial.internal.TrajectoryToECEF;
+
 
 /**
  * Demonstration project for OGC TestBed 18 task D025 — Reference Frame Transformation Engineering Report.
@@ -29,39 +34,53 @@ public class VoyagerToObservatory {
      */
     public static final DefaultTemporalCRS TIME_CRS = DefaultTemporalCRS.castOrCopy(CommonCRS.Temporal.TRUNCATED_JULIAN.crs());
 
+    /**
+     * Name of the system property specifying the file where to save or read the parsed GML operations.
+     */
+    public static final String SNAPSHOT_PROPERTY = "mycompany.geospatial.gmlSnapshot";
+
     /**
      * Application entry point.
      *
+     * If the {@value #SNAPSHOT_PROPERTY} system property is set, the coordinate operation is read from
+     * that snapshot file if it exists, or the snapshot is created after parsing the GML file otherwise.
+     *
      * @param  args  command-line arguments (ignored).
-     * @throws FileNotFoundException if the XML file is not found.
+     * @throws IOException if the XML file is not found or cannot be read.
      * @throws JAXBException if an error occurred while parsing the XML file.
      * @throws TransformException if an error occurred during the transformation of the test position.
      */
-    public static void main(String[] args) throws FileNotFoundException, JAXBException, TransformException {
-        // Temporary workaround for loading axis directions that were not present in ISO 19111:2007.
-        org.apache.sis.internal.referencing.AxisDirections.FORWARD.family();
-
-        print(loadGML("VoyagerToObservatory.xml"), new GeneralDirectPosition(5000, 100, -400, 19883.788));
+    public static void main(String[] args) throws IOException, JAXBException, TransformException {
+        final String snapshot = System.getProperty(SNAPSHOT_PROPERTY);
+        final boolean create = (snapshot != null) && !Files.exists(Path.of(snapshot));
+        if (snapshot != null && !create) {
+            GmlOperationLoader.readSnapshot(Path.of(snapshot));
+        }
+        final CoordinateOperation operation = loadGML("VoyagerToObservatory.xml");
+        if (create) {
+            GmlOperationLoader.writeSnapshot(Path.of(snapshot));
+        }
+        print(operation, new GeneralDirectPosition(5000, 100, -400, 19883.788));
     }
 
     /**
      * Loads the GML file for coordinate transformation.
      *
      * @param  filename  path to the file to load, relative to project root directory.
-     * @throws FileNotFoundException if the XML file is not found.
+     * @throws IOException if the XML file is not found or cannot be read.
      * @throws JAXBException if an error occurred while parsing the XML file.
      */
-    private static CoordinateOperation loadGML(final String filename) throws FileNotFoundException, JAXBException {
+    private static CoordinateOperation loadGML(final String filename) throws IOException, JAXBException {
         final URL xmlFile = VoyagerToObservatory.class.getClassLoader().getResource(filename);
         if (xmlFile == null) {
             throw new FileNotFoundException(filename);
         }
-        return (CoordinateOperation) XML.unmarshal(xmlFile);
+        return GmlOperationLoader.load(xmlFile);
     }
 
     /**
-     * Prints the coordinate operation in Well Known Text format
-     * and the result of transforming the given coordinate tuple.
+     * Prints the coordinate operation in Well Known Text format, the result of transforming
+     * the given coordinate tuple and the attitude of the spacecraft at the time of that tuple.
      *
      * @param  operation  the operation to print.
      * @param  sourcePos  an arbitrary source position to transform.
@@ -78,5 +97,7 @@ public class VoyagerToObservatory {
         System.out.println("Transform a coordinate tuple");
         System.out.println("Source: " + sourcePos);
         System.out.println("Target: " + operation.getMathTransform().transform(sourcePos, null));
+        final double[] ypr = TrajectoryToECEF.attitude(operation.getMathTransform(), sourcePos.getOrdinate(3));
+        System.out.println("Attitude in degrees: yaw=" + ypr[0] + ", pitch=" + ypr[1] + ", roll=" + ypr[2]);
     }
 }
@@ -0,0 +1,147 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial;
+
+import java.time.Duration;
+import java.time.Instant;
+
+// Implementation-neutral
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.crs.GeographicCRS;
+import org.opengis.referencing.crs.ProjectedCRS;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+import org.opengis.util.FactoryException;
+
+
+/**
+ * Prepares the geospatial services for fast response of short-lived applications.
+ * The first request for a CRS initializes the EPSG database, and the first search
+ * for a coordinate operation loads many classes. This cost is paid before any output.
+ * This class pays it in advance for a list of CRS and pairs of CRS, and populates the
+ * caches of {@link Services} in the process.
+ *
+ * <p>The list of CRS to prepare is a comma-separated list of EPSG codes. An item of the form
+ * {@code "source>target"} prepares the coordinate operation between two CRS, including one
+ * coordinate transformation. Example: {@code "4326>3395, 4326>5041"}.</p>
+ *
+ * <p>Most of the class loading cost can also be removed by a class data sharing archive.
+ * See the {@code appcds} profile in the Maven project file.</p>
+ */
+public final class WarmUp {
+    /**
+     * Name of the system property specifying the CRS to prepare at startup.
+     * An empty value is replaced by {@link #DEFAULT_CODES}.
+     */
+    public static final String PROPERTY = "mycompany.geospatial.warmUp";
+
+    /**
+     * The CRS used by the {@link mycompany.Main} application.
+     */
+    public static final String DEFAULT_CODES = "4326>3395, 4326>5041";
+
+    /**
+     * Time measurements of a warm-up.
+     *
+     * @param count                 number of CRS or pairs of CRS prepared.
+     * @param duration              time spent in the warm-up.
+     * @param timeToFirstTransform  time elapsed between the JVM start and the end of the first
+     *                              coordinate transformation, or {@code null} if unknown.
+     */
+    public record Timing(int count, Duration duration, Duration timeToFirstTransform) {
+        /**
+         * Returns a string representation of the time measurements.
+         */
+        @Override
+        public String toString() {
+            var sb = new StringBuilder("Warm-up of ").append(count).append(" items in ")
+                    .append(duration.toMillis()).append(" ms");
+            if (timeToFirstTransform != null) {
+                sb.append(", first transform ").append(timeToFirstTransform.toMillis()).append(" ms after JVM start");
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Do not allow instantiation of this class.
+     */
+    private WarmUp() {
+    }
+
+    /**
+     * Prepares the CRS specified by the {@value #PROPERTY} system property, if that property is set.
+     *
+     * @return time measurements, or {@code null} if the property is not set.
+     * @throws FactoryException if a CRS or an operation cannot be created.
+     * @throws TransformException if the test transformation failed.
+     */
+    public static Timing fromSystemProperty() throws FactoryException, TransformException {
+        String codes = System.getProperty(PROPERTY);
+        if (codes == null) {
+            return null;
+        }
+        if (codes.isBlank()) {
+            codes = DEFAULT_CODES;
+        }
+        return run(codes);
+    }
+
+    /**
+     * Prepares the given EPSG codes and pairs of EPSG codes.
+     *
+     * @param  codes  comma-separated list of codes or {@code "source>target"} pairs.
+     * @return time measurements.
+     * @throws FactoryException if a CRS or an operation cannot be created.
+     * @throws TransformException if the test transformation failed.
+     */
+    public static Timing run(final String codes) throws FactoryException, TransformException {
+        final long start = System.nanoTime();
+        Instant firstTransform = null;
+        int count = 0;
+        for (String item : codes.split(",")) {
+            item = item.strip();
+            if (item.isEmpty()) {
+                continue;
+            }
+            final int s = item.indexOf('>');
+            if (s < 0) {
+                create(item);
+            } else {
+                final CoordinateReferenceSystem sourceCRS = create(item.substring(0, s).strip());
+                final CoordinateReferenceSystem targetCRS = create(item.substring(s + 1).strip());
+                final MathTransform mt = Services.findOperation(sourceCRS, targetCRS).getMathTransform();
+                /*
+                 * Transform a point in order to load the classes and initialize the tables
+                 * used by the transform. Coordinates (0,0,…) are valid in most CRS.
+                 */
+                mt.transform(new double[mt.getSourceDimensions()], 0, new double[mt.getTargetDimensions()], 0, 1);
+                if (firstTransform == null) {
+                    firstTransform = Instant.now();
+                }
+            }
+            count++;
+        }
+        final Duration duration = Duration.ofNanos(System.nanoTime() - start);
+        Duration timeToFirstTransform = null;
+        if (firstTransform != null) {
+            final Instant jvmStart = ProcessHandle.current().info().startInstant().orElse(null);
+            if (jvmStart != null) {
+                timeToFirstTransform = Duration.between(jvmStart, firstTransform);
+            }
+        }
+        return new Timing(count, duration, timeToFirstTransform);
+    }
+
+    /**
+     * Creates the CRS for the given EPSG code and caches it in {@link Services}.
+     * The CRS is cached under its specific type, for sharing with the calls done by the application.
+     */
+    private static CoordinateReferenceSystem create(final String code) throws FactoryException {
+        final CoordinateReferenceSystem crs = Services.getAuthorityFactory("EPSG").createCoordinateReferenceSystem(code);
+        if (crs instanceof GeographicCRS) return Services.createGeographicCRS("EPSG", code);
+        if (crs instanceof ProjectedCRS)  return Services.createProjectedCRS ("EPSG", code);
+        return crs;
+    }
+}
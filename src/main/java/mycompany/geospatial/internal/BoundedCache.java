@@ -0,0 +1,263 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial.internal;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import mycompany.geospatial.CacheStatistics;
+
+
+/**
+ * A thread-safe cache with a maximal number of entries and an optional time-to-live.
+ * When the cache is full, the least recently used entry is discarded. Values are computed
+ * outside the lock, and concurrent requests for the same key share a single computation.
+ *
+ * <p>This cache is intended for objects that are costly to create but cheap to keep,
+ * such as coordinate operations or parsed trajectories. The number of hits and misses
+ * is recorded for allowing applications to verify that the cache is effective.</p>
+ *
+ * @param <K> the type of keys.
+ * @param <V> the type of values.
+ */
+public final class BoundedCache<K,V> {
+    /**
+     * A function computing the value for a key, potentially throwing a checked exception.
+     *
+     * @param <K> the type of keys.
+     * @param <V> the type of values.
+     * @param <E> the type of exception thrown by the loader.
+     */
+    @FunctionalInterface
+    public interface Loader<K,V,E extends Exception> {
+        /**
+         * Computes the value for the given key.
+         *
+         * @param  key  the key for which to compute a value.
+         * @return the value for the given key. Shall not be null.
+         * @throws E if the value cannot be computed.
+         */
+        V load(K key) throws E;
+    }
+
+    /**
+     * A value together with its creation time.
+     */
+    private record Entry<V>(V value, long creationTime) {
+    }
+
+    /**
+     * A computation in progress. Threads requesting the same key wait on this object.
+     */
+    private static final class Pending<V> {
+        private V value;
+        private Throwable failure;
+        private boolean done;
+
+        synchronized void complete(V value, Throwable failure) {
+            this.value   = value;
+            this.failure = failure;
+            done = true;
+            notifyAll();
+        }
+
+        synchronized V await() throws Throwable {
+            boolean interrupted = false;
+            while (!done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) throw failure;
+            return value;
+        }
+    }
+
+    /**
+     * The cached values in access order. All accesses must be synchronized on this map.
+     */
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    /**
+     * Computations in progress. All accesses must be synchronized on {@link #entries}.
+     */
+    private final Map<K, Pending<V>> pending;
+
+    /**
+     * Maximal time in nanoseconds that an entry can stay in the cache,
+     * or {@link Long#MAX_VALUE} if there is no expiration.
+     */
+    private final long timeToLive;
+
+    /**
+     * Cache statistics.
+     */
+    private final LongAdder hits, misses, evictions;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param  capacity    maximal number of entries in the cache.
+     * @param  timeToLive  maximal time that an entry can stay in the cache, or 0 for no expiration.
+     * @param  unit        unit of the {@code timeToLive} argument.
+     */
+    public BoundedCache(final int capacity, final long timeToLive, final TimeUnit unit) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        this.timeToLive = (timeToLive > 0) ? unit.toNanos(timeToLive) : Long.MAX_VALUE;
+        hits      = new LongAdder();
+        misses    = new LongAdder();
+        evictions = new LongAdder();
+        pending   = new HashMap<>();
+        entries   = new LinkedHashMap<>(Math.min(capacity, 1024), 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > capacity) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the value for the given key, computing it if needed.
+     * If another thread is already computing the value for the same key,
+     * then this method waits for that computation instead of starting a new one.
+     *
+     * @param  <E>     the type of exception thrown by the loader.
+     * @param  key     the key of the value to get.
+     * @param  loader  the function to invoke if the value is not in the cache.
+     * @return the cached or computed value.
+     * @throws E if the loader failed (in this thread or in the thread doing the computation).
+     */
+    @SuppressWarnings("unchecked")
+    public <E extends Exception> V getOrLoad(final K key, final Loader<? super K, ? extends V, E> loader) throws E {
+        final Pending<V> task;
+        final boolean owner;
+        synchronized (entries) {
+            final Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                if (System.nanoTime() - entry.creationTime <= timeToLive) {
+                    hits.increment();
+                    return entry.value;
+                }
+                entries.remove(key);
+                evictions.increment();
+            }
+            misses.increment();
+            Pending<V> existing = pending.get(key);
+            owner = (existing == null);
+            if (owner) {
+                existing = new Pending<>();
+                pending.put(key, existing);
+            }
+            task = existing;
+        }
+        if (owner) {
+            V value = null;
+            Throwable failure = null;
+            try {
+                value = loader.load(key);
+            } catch (Exception | Error e) {
+                failure = e;
+            }
+            synchronized (entries) {
+                pending.remove(key);
+                if (value != null) {
+                    entries.put(key, new Entry<>(value, System.nanoTime()));
+                }
+            }
+            task.complete(value, failure);
+        }
+        try {
+            return task.await();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw (E) e;        // Only checked exception that the loader can throw.
+        }
+    }
+
+    /**
+     * Adds the given value in the cache if no value is already associated to the given key.
+     * This is used for populating the cache with values computed in advance.
+     *
+     * @param  key    the key of the value to add.
+     * @param  value  the value to add.
+     */
+    public void putIfAbsent(final K key, final V value) {
+        synchronized (entries) {
+            entries.putIfAbsent(key, new Entry<>(value, System.nanoTime()));
+        }
+    }
+
+    /**
+     * Returns a copy of the cache content, excluding expired values and values still in computation.
+     *
+     * @return the cached values, from the least recently used to the most recently used.
+     */
+    public Map<K,V> snapshot() {
+        final var copy = new LinkedHashMap<K,V>();
+        final long now = System.nanoTime();
+        synchronized (entries) {
+            for (final Map.Entry<K, Entry<V>> entry : entries.entrySet()) {
+                final Entry<V> value = entry.getValue();
+                if (now - value.creationTime <= timeToLive) {
+                    copy.put(entry.getKey(), value.value);
+                }
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Removes the value associated to the given key, if any.
+     *
+     * @param  key  the key of the value to remove.
+     */
+    public void remove(final K key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Removes all values from this cache. Statistics are not reset.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the cache statistics.
+     *
+     * @return the number of hits, misses and evictions together with the current size.
+     */
+    public CacheStatistics statistics() {
+        final int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new CacheStatistics(hits.sum(), misses.sum(), evictions.sum(), size);
+    }
+
+    /**
+     * Returns a string representation of the cache statistics for debugging purposes.
+     */
+    @Override
+    public String toString() {
+        return statistics().toString();
+    }
+}
@@ -0,0 +1,574 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial.internal;
+
+import java.util.Arrays;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.BufferOverflowException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import mycompany.geospatial.CoordinateLayout;
+import mycompany.geospatial.TransformResult;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+
+
+/**
+ * Transforms large arrays of coordinates in parallel by splitting them in chunks.
+ * Each chunk is given to {@link MathTransform#transform(double[], int, double[], int, int)}
+ * in a task of the fork-join common pool. Arrays smaller than a threshold are transformed
+ * in the current thread, since the overhead of parallelism would exceed the benefit.
+ *
+ * <p>A coordinate tuple which cannot be transformed does not abort the whole operation.
+ * Instead, its coordinates are set to NaN and its index is reported in the {@link TransformResult}.
+ * Tuples transformed to NaN by the math transform (for example points outside the domain
+ * of a map projection) are reported in the same way.</p>
+ *
+ * <p>The math transform shall be thread-safe, which is the case of all Apache SIS transforms.
+ * Instances of this class are immutable and thread-safe.</p>
+ */
+public final class ChunkedTransform {
+    /**
+     * An empty array of indices, for results without failure.
+     */
+    private static final int[] NONE = new int[0];
+
+    /**
+     * Maximal number of bytes to map in memory at once when transforming files.
+     */
+    private static final int MAX_MAPPED_BYTES = 1 << 30;
+
+    /**
+     * Number of coordinate tuples copied at once between a buffer and the scratch arrays.
+     */
+    private static final int BLOCK_SIZE = 1024;
+
+    /**
+     * Scratch arrays for copying coordinates from buffers not backed by arrays.
+     * Element 0 is for source coordinates and element 1 for target coordinates.
+     * Arrays are reused by each thread, so the allocation does not depend on the number of points.
+     */
+    private static final ThreadLocal<double[][]> SCRATCH = ThreadLocal.withInitial(() -> new double[2][]);
+
+    /**
+     * The transform to apply.
+     */
+    private final MathTransform transform;
+
+    /**
+     * Number of coordinate tuples in each chunk given to a parallel task.
+     */
+    private final int chunkSize;
+
+    /**
+     * Number of coordinate tuples below which the transform is executed in the current thread.
+     */
+    private final int threshold;
+
+    /**
+     * Creates a new bulk transform.
+     *
+     * @param  transform  the transform to apply. Shall be thread-safe.
+     * @param  chunkSize  number of coordinate tuples in each chunk given to a parallel task.
+     * @param  threshold  number of coordinate tuples below which the transform is executed sequentially.
+     */
+    public ChunkedTransform(final MathTransform transform, final int chunkSize, final int threshold) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size shall be positive.");
+        }
+        this.transform = transform;
+        this.chunkSize = chunkSize;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Transforms coordinate tuples from the source array to the destination array.
+     * The source and destination may be the same array, with overlapping regions.
+     *
+     * @param  srcPts  the array containing the source coordinates.
+     * @param  srcOff  index of the first coordinate to transform in the source array.
+     * @param  dstPts  the array where to store the transformed coordinates.
+     * @param  dstOff  index where to store the first transformed coordinate in the destination array.
+     * @param  numPts  number of coordinate tuples to transform.
+     * @return the number of tuples and the indices of tuples which could not be transformed.
+     */
+    public TransformResult transform(double[] srcPts, int srcOff,
+                                     final double[] dstPts, final int dstOff, final int numPts)
+    {
+        final var event = Metrics.ENABLED ? new Metrics.TransformEvent() : null;
+        final TransformResult result = transformArray(srcPts, srcOff, dstPts, dstOff, numPts);
+        if (event != null) Metrics.end(event, numPts, result.failureCount());
+        return result;
+    }
+
+    /**
+     * Implementation of {@link #transform(double[], int, double[], int, int)} without metrics.
+     */
+    private TransformResult transformArray(double[] srcPts, int srcOff,
+                                           final double[] dstPts, final int dstOff, final int numPts)
+    {
+        final int srcDim = transform.getSourceDimensions();
+        final int dstDim = transform.getTargetDimensions();
+        if (numPts <= 0) {
+            return new TransformResult(0, NONE);
+        }
+        if (numPts < threshold) {
+            return new TransformResult(numPts, transformChunk(srcPts, srcOff, dstPts, dstOff, 0, numPts));
+        }
+        /*
+         * Parallel tasks do not execute in a predictable order, so a task could overwrite
+         * the source coordinates of another task. This is safe only if each tuple is written
+         * at the same location than it was read.
+         */
+        if (srcPts == dstPts && (srcOff != dstOff || srcDim != dstDim)
+                && srcOff < dstOff + numPts * dstDim && dstOff < srcOff + numPts * srcDim)
+        {
+            srcPts = Arrays.copyOfRange(srcPts, srcOff, srcOff + numPts * srcDim);
+            srcOff = 0;
+        }
+        final var task = new Task(srcPts, srcOff, dstPts, dstOff, 0, numPts);
+        return new TransformResult(numPts, ForkJoinPool.commonPool().invoke(task));
+    }
+
+    /**
+     * Transforms coordinate tuples from the source buffer to the destination buffer.
+     * The number of tuples is determined by the remaining elements in the source buffer.
+     * Positions of both buffers are advanced by the number of values read or written.
+     * Buffers backed by arrays are transformed without copy. Other buffers, for example
+     * direct buffers or memory-mapped files, are copied chunk by chunk in temporary arrays.
+     *
+     * @param  source  the buffer containing the coordinates to transform.
+     * @param  target  the buffer where to store the transformed coordinates.
+     * @return the number of tuples and the indices of tuples which could not be transformed.
+     * @throws BufferOverflowException if the target buffer does not have enough remaining space.
+     */
+    public TransformResult transform(final DoubleBuffer source, final DoubleBuffer target) {
+        return transform(source, transform.getSourceDimensions(), target, transform.getTargetDimensions());
+    }
+
+    /**
+     * Transforms coordinate tuples interleaved with other values in the source buffer.
+     * Each buffer can be a {@link DoubleBuffer} or a {@link FloatBuffer}. The stride is the number
+     * of values from the beginning of a tuple to the beginning of the next tuple. It is equal to
+     * the number of dimensions for packed coordinates, or greater if each tuple is followed by other
+     * attributes (for example an intensity or a time stamp). Values between tuples in the target
+     * buffer are left unchanged.
+     *
+     * <p>The number of tuples is determined by the remaining elements in the source buffer.
+     * Positions of both buffers are advanced by the number of tuples multiplied by the stride,
+     * without exceeding the limit. Buffers not backed by arrays are copied by blocks in scratch
+     * arrays which are reused by each thread, so the heap allocation does not depend on the
+     * number of tuples. The source and target buffers may be views over the same memory,
+     * provided that each tuple is written at the same location than it was read.</p>
+     *
+     * @param  source     the buffer containing the coordinates to transform.
+     * @param  srcStride  number of values from the beginning of a source tuple to the beginning of the next one.
+     * @param  target     the buffer where to store the transformed coordinates.
+     * @param  dstStride  number of values from the beginning of a target tuple to the beginning of the next one.
+     * @return the number of tuples and the indices of tuples which could not be transformed.
+     * @throws IllegalArgumentException if a buffer is not a double or float buffer,
+     *         or if a stride is smaller than the number of dimensions.
+     * @throws BufferOverflowException if the target buffer does not have enough remaining space.
+     */
+    public TransformResult transform(final Buffer source, final int srcStride,
+                                     final Buffer target, final int dstStride)
+    {
+        final var event = Metrics.ENABLED ? new Metrics.TransformEvent() : null;
+        final TransformResult result = transformBuffer(source, srcStride, target, dstStride);
+        if (event != null) Metrics.end(event, result.numPoints(), result.failureCount());
+        return result;
+    }
+
+    /**
+     * Implementation of {@link #transform(Buffer, int, Buffer, int)} without metrics.
+     */
+    private TransformResult transformBuffer(final Buffer source, final int srcStride,
+                                            final Buffer target, final int dstStride)
+    {
+        final int srcDim = transform.getSourceDimensions();
+        final int dstDim = transform.getTargetDimensions();
+        checkBuffer(source, srcDim, srcStride);
+        checkBuffer(target, dstDim, dstStride);
+        final int numPts = tupleCount(source.remaining(), srcDim, srcStride);
+        if (numPts == 0) {
+            return new TransformResult(0, NONE);
+        }
+        if (tupleCount(target.remaining(), dstDim, dstStride) < numPts) {
+            throw new BufferOverflowException();
+        }
+        final TransformResult result;
+        if (srcStride == srcDim && dstStride == dstDim && source.hasArray() && target.hasArray()
+                && !target.isReadOnly() && source instanceof DoubleBuffer && target instanceof DoubleBuffer)
+        {
+            result = transformArray((double[]) source.array(), source.arrayOffset() + source.position(),
+                                    (double[]) target.array(), target.arrayOffset() + target.position(), numPts);
+        } else {
+            final var task = new Task(source, srcStride, target, dstStride, 0, numPts);
+            result = new TransformResult(numPts, (numPts < threshold) ? task.compute()
+                                                 : ForkJoinPool.commonPool().invoke(task));
+        }
+        source.position((int) Math.min(source.position() + (long) numPts * srcStride, source.limit()));
+        target.position((int) Math.min(target.position() + (long) numPts * dstStride, target.limit()));
+        return result;
+    }
+
+    /**
+     * Transforms coordinate tuples stored in a file, writing the result in another file or in the same file.
+     * The files are mapped in memory by windows of at most 1 GB, so files larger
+     * than the 2 GB limit of a mapped buffer are supported. No coordinate is copied on the heap other than
+     * in the reusable scratch arrays described in {@link #transform(Buffer, int, Buffer, int)}.
+     *
+     * <p>The target file is extended if needed. For transforming a file in place, the same channel can
+     * be given for source and target with the same layout. Otherwise the regions shall not overlap.</p>
+     *
+     * @param  source     the channel of the file to read. Shall be readable.
+     * @param  srcLayout  location and format of the coordinates in the source file.
+     * @param  target     the channel of the file to write. Shall be readable and writable.
+     * @param  dstLayout  location and format of the coordinates in the target file.
+     * @param  numPts     number of coordinate tuples to transform.
+     * @return the number of tuples and the indices of tuples which could not be transformed.
+     * @throws IOException if an error occurred while mapping a file.
+     */
+    public TransformResult transform(final FileChannel source, final CoordinateLayout srcLayout,
+                                     final FileChannel target, final CoordinateLayout dstLayout, final int numPts)
+            throws IOException
+    {
+        final int srcDim = transform.getSourceDimensions();
+        final int dstDim = transform.getTargetDimensions();
+        check(srcLayout, srcDim);
+        check(dstLayout, dstDim);
+        final var event = Metrics.ENABLED ? new Metrics.TransformEvent() : null;
+        final int window = Math.max(1, Math.min(MAX_MAPPED_BYTES / srcLayout.recordLength(),
+                                                MAX_MAPPED_BYTES / dstLayout.recordLength()));
+        int[] failed = NONE;
+        for (int lower = 0; lower < numPts; lower += window) {
+            final int n = Math.min(numPts - lower, window);
+            final Buffer src = map(srcLayout, source, FileChannel.MapMode.READ_ONLY,  lower, n, srcDim);
+            final Buffer dst = map(dstLayout, target, FileChannel.MapMode.READ_WRITE, lower, n, dstDim);
+            final int[] f = transformBuffer(src, srcLayout.stride(), dst, dstLayout.stride()).failedPoints();
+            if (f.length != 0) {
+                final int count = failed.length;
+                failed = Arrays.copyOf(failed, count + f.length);
+                for (int i=0; i<f.length; i++) {
+                    failed[count + i] = f[i] + lower;
+                }
+            }
+        }
+        final var result = new TransformResult(Math.max(numPts, 0), failed);
+        if (event != null) Metrics.end(event, result.numPoints(), result.failureCount());
+        return result;
+    }
+
+    /**
+     * Verifies that the given layout is valid for tuples of the given number of dimensions.
+     */
+    private static void check(final CoordinateLayout layout, final int dimension) {
+        if (layout.offset() < 0 || layout.stride() < dimension || layout.recordLength() > MAX_MAPPED_BYTES) {
+            throw new IllegalArgumentException("Invalid layout for " + dimension + "-dimensional tuples: " + layout);
+        }
+    }
+
+    /**
+     * Maps the given range of tuples in memory and returns a double or float view over it.
+     */
+    private static Buffer map(final CoordinateLayout layout, final FileChannel channel, final FileChannel.MapMode mode,
+                              final int lower, final int count, final int dimension) throws IOException
+    {
+        final int size = (layout.floats() ? Float.BYTES : Double.BYTES);
+        final long length = (long) (count - 1) * layout.recordLength() + (long) dimension * size;
+        final ByteBuffer bytes = channel.map(mode, layout.offset() + (long) lower * layout.recordLength(), length)
+                                        .order(layout.order());
+        return layout.floats() ? bytes.asFloatBuffer() : bytes.asDoubleBuffer();
+    }
+
+    /**
+     * Returns the number of complete tuples in a buffer having the given number of remaining values.
+     */
+    private static int tupleCount(final int remaining, final int dimension, final int stride) {
+        return (remaining < dimension) ? 0 : (remaining - dimension) / stride + 1;
+    }
+
+    /**
+     * Verifies that the given buffer is of a supported type and that the stride is valid.
+     */
+    private static void checkBuffer(final Buffer buffer, final int dimension, final int stride) {
+        if (!(buffer instanceof DoubleBuffer || buffer instanceof FloatBuffer)) {
+            throw new IllegalArgumentException("Unsupported buffer type: " + buffer.getClass().getSimpleName());
+        }
+        if (stride < dimension) {
+            throw new IllegalArgumentException("Stride " + stride + " is smaller than the number of dimensions.");
+        }
+    }
+
+    /**
+     * Copies {@code count} tuples from the given buffer to the given array.
+     * Uses absolute get operations, which do not modify the buffer position.
+     *
+     * @param  buffer     the double or float buffer to read.
+     * @param  index      index in the buffer of the first coordinate of the first tuple.
+     * @param  stride     number of values from the beginning of a tuple to the beginning of the next one.
+     * @param  dimension  number of coordinates in each tuple.
+     * @param  dst        where to store the packed coordinates.
+     * @param  count      number of tuples to copy.
+     */
+    private static void read(final Buffer buffer, int index, final int stride, final int dimension,
+                            final double[] dst, final int count)
+    {
+        if (buffer instanceof DoubleBuffer b) {
+            if (stride == dimension) {
+                b.get(index, dst, 0, count * dimension);
+                return;
+            }
+            int j = 0;
+            for (int i=0; i<count; i++, index += stride) {
+                for (int k=0; k<dimension; k++) {
+                    dst[j++] = b.get(index + k);
+                }
+            }
+        } else {
+            final var b = (FloatBuffer) buffer;
+            int j = 0;
+            for (int i=0; i<count; i++, index += stride) {
+                for (int k=0; k<dimension; k++) {
+                    dst[j++] = b.get(index + k);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies {@code count} tuples from the given array to the given buffer.
+     * Uses absolute put operations, which do not modify the buffer position.
+     * Values between tuples are left unchanged.
+     *
+     * @param  src        the packed coordinates to write.
+     * @param  buffer     the double or float buffer to write.
+     * @param  index      index in the buffer of the first coordinate of the first tuple.
+     * @param  stride     number of values from the beginning of a tuple to the beginning of the next one.
+     * @param  dimension  number of coordinates in each tuple.
+     * @param  count      number of tuples to copy.
+     */
+    private static void write(final double[] src, final Buffer buffer, int index, final int stride,
+                            final int dimension, final int count)
+    {
+        if (buffer instanceof DoubleBuffer b) {
+            if (stride == dimension) {
+                b.put(index, src, 0, count * dimension);
+                return;
+            }
+            int j = 0;
+            for (int i=0; i<count; i++, index += stride) {
+                for (int k=0; k<dimension; k++) {
+                    b.put(index + k, src[j++]);
+                }
+            }
+        } else {
+            final var b = (FloatBuffer) buffer;
+            int j = 0;
+            for (int i=0; i<count; i++, index += stride) {
+                for (int k=0; k<dimension; k++) {
+                    b.put(index + k, (float) src[j++]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Transforms a range of coordinate tuples in the current thread.
+     *
+     * @param  srcPts  the source array.
+     * @param  srcOff  index of the first coordinate of the whole operation in the source array.
+     * @param  dstPts  the destination array.
+     * @param  dstOff  index of the first coordinate of the whole operation in the destination array.
+     * @param  lower   index of the first tuple to transform, relative to the whole operation.
+     * @param  upper   index after the last tuple to transform, relative to the whole operation.
+     * @return indices (relative to the whole operation) of tuples which could not be transformed.
+     */
+    private int[] transformChunk(double[] srcPts, int srcOff, final double[] dstPts, final int dstOff,
+                                 final int lower, final int upper)
+    {
+        final int srcDim = transform.getSourceDimensions();
+        final int dstDim = transform.getTargetDimensions();
+        final int srcLower = srcOff + lower * srcDim;
+        final int srcUpper = srcOff + upper * srcDim;
+        if (srcPts == dstPts && srcLower < dstOff + upper * dstDim && dstOff + lower * dstDim < srcUpper) {
+            /*
+             * The transform will overwrite some source coordinates. Keep a copy of them,
+             * because they are needed for transforming again point by point if the transform
+             * stopped at the first failure. Disjoint regions of the same array are not copied.
+             */
+            srcPts = Arrays.copyOfRange(srcPts, srcLower, srcUpper);
+            srcOff = -lower * srcDim;
+        }
+        try {
+            transform.transform(srcPts, srcOff + lower * srcDim, dstPts, dstOff + lower * dstDim, upper - lower);
+        } catch (TransformException e) {
+            /*
+             * Apache SIS usually continues after a failure and set the failed coordinates to NaN,
+             * but this is not guaranteed for all implementations. Transform again point by point.
+             * Those retries are not measured because the bulk attempt has already been measured.
+             */
+            Metrics.retrying(true);
+            try {
+                for (int i=lower; i<upper; i++) {
+                    final int dp = dstOff + i * dstDim;
+                    try {
+                        transform.transform(srcPts, srcOff + i * srcDim, dstPts, dp, 1);
+                    } catch (TransformException f) {
+                        Arrays.fill(dstPts, dp, dp + dstDim, Double.NaN);
+                    }
+                }
+            } finally {
+                Metrics.retrying(false);
+            }
+        }
+        return failures(dstPts, dstOff, dstDim, lower, upper);
+    }
+
+    /**
+     * Returns the indices of tuples having at least one NaN coordinate in the given range.
+     * Coordinates of those tuples are all set to NaN for consistency.
+     */
+    private static int[] failures(final double[] dstPts, final int dstOff, final int dstDim, final int lower, final int upper) {
+        int[] failed = NONE;
+        int count = 0;
+        for (int i=lower; i<upper; i++) {
+            final int dp = dstOff + i * dstDim;
+            for (int j=0; j<dstDim; j++) {
+                if (Double.isNaN(dstPts[dp + j])) {
+                    Arrays.fill(dstPts, dp, dp + dstDim, Double.NaN);
+                    if (count == failed.length) {
+                        failed = Arrays.copyOf(failed, Math.max(16, count * 2));
+                    }
+                    failed[count++] = i;
+                    break;
+                }
+            }
+        }
+        return (count == failed.length) ? failed : Arrays.copyOf(failed, count);
+    }
+
+    /**
+     * A task transforming a range of coordinate tuples, splitting itself while the range is larger than a chunk.
+     * The result is the indices of failed tuples in increasing order.
+     */
+    @SuppressWarnings("serial")
+    private final class Task extends RecursiveTask<int[]> {
+        /** Source and destination arrays, or {@code null} if using buffers. */
+        private final double[] srcPts, dstPts;
+
+        /** Index of the first coordinate of the whole operation in source and destination arrays. */
+        private final int srcOff, dstOff;
+
+        /** Source and destination buffers, or {@code null} if using arrays. */
+        private final Buffer source, target;
+
+        /** Number of values from the beginning of a tuple to the beginning of the next one in buffers. */
+        private final int srcStride, dstStride;
+
+        /** Range of tuples to transform, relative to the whole operation. */
+        private final int lower, upper;
+
+        /**
+         * Creates a task for transforming a range of tuples in arrays.
+         */
+        Task(double[] srcPts, int srcOff, double[] dstPts, int dstOff, int lower, int upper) {
+            this.srcPts = srcPts;
+            this.srcOff = srcOff;
+            this.dstPts = dstPts;
+            this.dstOff = dstOff;
+            this.source = null;
+            this.target = null;
+            this.srcStride = 0;
+            this.dstStride = 0;
+            this.lower  = lower;
+            this.upper  = upper;
+        }
+
+        /**
+         * Creates a task for transforming a range of tuples in buffers.
+         * Tuple indices are relative to the current positions of the buffers.
+         */
+        Task(Buffer source, int srcStride, Buffer target, int dstStride, int lower, int upper) {
+            this.srcPts = null;
+            this.dstPts = null;
+            this.srcOff = 0;
+            this.dstOff = 0;
+            this.source = source;
+            this.target = target;
+            this.srcStride = srcStride;
+            this.dstStride = dstStride;
+            this.lower  = lower;
+            this.upper  = upper;
+        }
+
+        /**
+         * Creates a task for a sub-range of the given task.
+         */
+        private Task(Task parent, int lower, int upper) {
+            srcPts = parent.srcPts;
+            dstPts = parent.dstPts;
+            srcOff = parent.srcOff;
+            dstOff = parent.dstOff;
+            source = parent.source;
+            target = parent.target;
+            srcStride = parent.srcStride;
+            dstStride = parent.dstStride;
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        /**
+         * Transforms the range of tuples, splitting it in two sub-tasks if larger than a chunk.
+         */
+        @Override
+        protected int[] compute() {
+            if (upper - lower > chunkSize) {
+                final int mid = (lower + upper) >>> 1;
+                final var right = new Task(this, mid, upper);
+                right.fork();
+                final int[] first = new Task(this, lower, mid).compute();
+                final int[] second = right.join();
+                if (first.length == 0) return second;
+                if (second.length == 0) return first;
+                final int[] all = Arrays.copyOf(first, first.length + second.length);
+                System.arraycopy(second, 0, all, first.length, second.length);
+                return all;
+            }
+            if (source == null) {
+                return transformChunk(srcPts, srcOff, dstPts, dstOff, lower, upper);
+            }
+            /*
+             * Buffers not backed by an array: copy the chunk by blocks in scratch arrays.
+             * Absolute get and put operations do not modify the buffer positions,
+             * so they are safe to use concurrently.
+             */
+            final int srcDim = transform.getSourceDimensions();
+            final int dstDim = transform.getTargetDimensions();
+            final double[][] scratch = SCRATCH.get();
+            double[] values = scratch[0];
+            double[] result = scratch[1];
+            if (values == null || values.length < BLOCK_SIZE * srcDim) scratch[0] = values = new double[BLOCK_SIZE * srcDim];
+            if (result == null || result.length < BLOCK_SIZE * dstDim) scratch[1] = result = new double[BLOCK_SIZE * dstDim];
+            int[] failed = NONE;
+            for (int start = lower; start < upper; start += BLOCK_SIZE) {
+                final int n = Math.min(upper - start, BLOCK_SIZE);
+                read(source, source.position() + start * srcStride, srcStride, srcDim, values, n);
+                final int[] f = transformChunk(values, -start * srcDim, result, -start * dstDim, start, start + n);
+                write(result, target, target.position() + start * dstStride, dstStride, dstDim, n);
+                if (f.length != 0) {
+                    final int count = failed.length;
+                    failed = Arrays.copyOf(failed, count + f.length);
+                    System.arraycopy(f, 0, failed, count, f.length);
+                }
+            }
+            return failed;
+        }
+    }
+}
@@ -0,0 +1,454 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial.internal;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import mycompany.geospatial.EnvelopeResult;
+import org.opengis.geometry.MismatchedDimensionException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.crs.GeographicCRS;
+import org.opengis.referencing.cs.AxisDirection;
+import org.opengis.referencing.cs.CoordinateSystem;
+import org.opengis.referencing.cs.CoordinateSystemAxis;
+import org.opengis.referencing.cs.RangeMeaning;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+
+
+/**
+ * Transforms many two-dimensional envelopes by adaptive densification of their edges.
+ * Transforming only the 4 corners of an envelope is not sufficient when the edges become curves
+ * in the target CRS, for example near a pole in a polar stereographic projection. This class adds
+ * points on each edge until the transformed edge is approximated by straight segments within a tolerance.
+ *
+ * <p>The algorithm starts with the transformed corners. For each edge segment, the midpoint is transformed
+ * and compared with the midpoint of the straight segment between the transformed end points. If the difference
+ * on an axis exceeds the tolerance, the segment is split in two and each half is tested again, until the
+ * maximal depth. All transformed points are included in the result. The largest difference of the accepted
+ * segments is reported as the error bound: this is an estimation of how much the true envelope may extend
+ * beyond the computed one.</p>
+ *
+ * <p>Envelopes are processed level by level: all the midpoints of a chunk of envelopes at the same subdivision
+ * level are transformed in a single call, so the cost of each call is shared. Chunks of envelopes are processed
+ * in parallel.</p>
+ *
+ * <p>Extremums are searched on the envelope edges, plus the following special cases handled in the same way
+ * as {@link org.apache.sis.geometry.Envelopes#transform(org.opengis.referencing.operation.CoordinateOperation,
+ * org.opengis.geometry.Envelope) Envelopes.transform(…)}:</p>
+ * <ul>
+ *   <li>If the target CRS is geographic and a pole is strictly inside a source envelope, the transformed
+ *       envelope is expanded to the pole latitude and to the whole longitude range.</li>
+ *   <li>If the target CRS has a wraparound axis (usually longitude), differences on that axis are computed
+ *       modulo the axis period, and an envelope with an edge crossing the axis bounds (for example the
+ *       anti-meridian) is expanded to the whole axis range.</li>
+ * </ul>
+ * Other extremums inside the envelopes are not detected. They do not exist for most map projections.
+ *
+ * <p>Points which cannot be transformed are excluded from the envelopes, and the error bound of the
+ * envelopes containing them is NaN. An envelope with no transformed point is NaN.</p>
+ *
+ * <p>The math transform shall be thread-safe, which is the case of all Apache SIS transforms.
+ * Instances of this class are immutable and thread-safe.</p>
+ */
+public final class EnvelopeDensifier {
+    /**
+     * Default maximal number of subdivisions of each edge. Each edge has at most 2<sup>depth</sup> segments.
+     */
+    public static final int DEFAULT_MAX_DEPTH = 12;
+
+    /**
+     * The transform to apply.
+     */
+    private final MathTransform transform;
+
+    /**
+     * Maximal difference on each axis between the transformed edges and their approximation by segments.
+     */
+    private final double tolerance;
+
+    /**
+     * Maximal number of subdivisions of each edge.
+     */
+    private final int maxDepth;
+
+    /**
+     * Number of envelopes in each chunk given to a parallel task.
+     */
+    private final int chunkSize;
+
+    /**
+     * Number of envelopes below which the transform is executed in the current thread.
+     */
+    private final int threshold;
+
+    /**
+     * Creates a new densifier.
+     *
+     * @param  transform  the two-dimensional transform to apply. Shall be thread-safe.
+     * @param  tolerance  maximal error on each axis, in units of the target CRS.
+     * @param  maxDepth   maximal number of subdivisions of each edge.
+     * @param  chunkSize  number of envelopes in each chunk given to a parallel task.
+     * @param  threshold  number of envelopes below which the work is done sequentially.
+     * @throws MismatchedDimensionException if the transform is not two-dimensional.
+     */
+    public EnvelopeDensifier(final MathTransform transform, final double tolerance, final int maxDepth,
+                             final int chunkSize, final int threshold)
+    {
+        if (transform.getSourceDimensions() != 2 || transform.getTargetDimensions() != 2) {
+            throw new MismatchedDimensionException("Envelope densification requires a two-dimensional transform.");
+        }
+        if (!(tolerance > 0) || maxDepth < 0 || maxDepth > 30 || chunkSize <= 0) {
+            throw new IllegalArgumentException("Invalid tolerance, depth or chunk size.");
+        }
+        this.transform = transform;
+        this.tolerance = tolerance;
+        this.maxDepth  = maxDepth;
+        this.chunkSize = chunkSize;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Transforms the given envelopes.
+     *
+     * @param  envelopes     source envelopes as (<var>xmin</var>, <var>ymin</var>, <var>xmax</var>, <var>ymax</var>) tuples.
+     * @param  numEnvelopes  number of envelopes to transform.
+     * @param  targetCRS     the CRS of the transformed envelopes, or {@code null} if unknown.
+     * @return the transformed envelopes with their error bounds.
+     */
+    public EnvelopeResult transform(final double[] envelopes, final int numEnvelopes,
+                                    final CoordinateReferenceSystem targetCRS)
+    {
+        final double[] result = new double[numEnvelopes * 4];
+        final double[] errors = new double[numEnvelopes];
+        final var task = new Task(envelopes, result, errors, 0, numEnvelopes, Domain.of(transform, targetCRS));
+        final long numPoints = (numEnvelopes < threshold) ? task.compute() : ForkJoinPool.commonPool().invoke(task);
+        return new EnvelopeResult(targetCRS, result, errors, numPoints);
+    }
+
+    /**
+     * Transforms a range of envelopes in the current thread, level by level.
+     *
+     * @param  source  source envelopes of the whole operation.
+     * @param  target  where to store the transformed envelopes of the whole operation.
+     * @param  errors  where to store the error bounds of the whole operation.
+     * @param  lower   index of the first envelope to transform.
+     * @param  upper   index after the last envelope to transform.
+     * @param  domain  wraparound axis and poles of the target CRS.
+     * @return number of points transformed.
+     */
+    private long transformChunk(final double[] source, final double[] target, final double[] errors,
+                                final int lower, final int upper, final Domain domain)
+    {
+        final int n = upper - lower;
+        /*
+         * Transform the 4 corners of each envelope, in counter-clockwise order.
+         * Those corners are the end points of the initial segments: 4 per envelope.
+         */
+        final double[] corners = new double[n * 8];
+        for (int i=0; i<n; i++) {
+            final int s = (lower + i) * 4;
+            final double xmin = source[s], ymin = source[s+1], xmax = source[s+2], ymax = source[s+3];
+            final int c = i * 8;
+            corners[c  ] = xmin; corners[c+1] = ymin;
+            corners[c+2] = xmax; corners[c+3] = ymin;
+            corners[c+4] = xmax; corners[c+5] = ymax;
+            corners[c+6] = xmin; corners[c+7] = ymax;
+        }
+        final double[] projected = new double[corners.length];
+        final var bulk = new ChunkedTransform(transform, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        bulk.transform(corners, 0, projected, 0, n * 4);
+        long numPoints = n * 4L;
+        final boolean[] crossing = new boolean[n];
+        for (int i=0; i<n; i++) {
+            final int t = (lower + i) * 4;
+            target[t] = target[t+1] = Double.POSITIVE_INFINITY;
+            target[t+2] = target[t+3] = Double.NEGATIVE_INFINITY;
+            for (int c=i*8; c < i*8 + 8; c += 2) {
+                if (!include(target, t, projected[c], projected[c+1])) {
+                    errors[lower + i] = Double.NaN;
+                }
+            }
+        }
+        /*
+         * Segments are stored as (source x₀, y₀, x₁, y₁) and (target x₀, y₀, x₁, y₁) tuples,
+         * together with the index (relative to `lower`) of the envelope which contains them.
+         */
+        int count = n * 4;
+        double[] srcSeg = new double[count * 4];
+        double[] dstSeg = new double[count * 4];
+        int[]    owner  = new int[count];
+        for (int i=0; i<n; i++) {
+            for (int k=0; k<4; k++) {
+                final int seg = i*4 + k;
+                final int a = i*8 + k*2;
+                final int b = i*8 + ((k+1) & 3)*2;
+                srcSeg[seg*4  ] = corners[a];   srcSeg[seg*4+1] = corners[a+1];
+                srcSeg[seg*4+2] = corners[b];   srcSeg[seg*4+3] = corners[b+1];
+                dstSeg[seg*4  ] = projected[a]; dstSeg[seg*4+1] = projected[a+1];
+                dstSeg[seg*4+2] = projected[b]; dstSeg[seg*4+3] = projected[b+1];
+                owner[seg] = i;
+            }
+        }
+        double[] midpoints = new double[count * 2];
+        double[] results   = new double[count * 2];
+        for (int depth = 0; depth <= maxDepth && count != 0; depth++) {
+            /*
+             * Transform the midpoints of all segments of this level in a single call.
+             */
+            if (midpoints.length < count * 2) {
+                midpoints = new double[count * 2];
+                results   = new double[count * 2];
+            }
+            for (int seg=0; seg<count; seg++) {
+                final int p = seg * 4;
+                midpoints[seg*2  ] = 0.5 * (srcSeg[p  ] + srcSeg[p+2]);
+                midpoints[seg*2+1] = 0.5 * (srcSeg[p+1] + srcSeg[p+3]);
+            }
+            bulk.transform(midpoints, 0, results, 0, count);
+            numPoints += count;
+            /*
+             * Include the transformed midpoints in the envelopes and compare with the straight segments.
+             * Segments exceeding the tolerance are split in two for the next level.
+             */
+            final boolean last = (depth == maxDepth);
+            int next = 0;
+            double[] nextSrc = null, nextDst = null;
+            int[] nextOwner = null;
+            for (int seg=0; seg<count; seg++) {
+                final int p  = seg * 4;
+                final int i  = owner[seg];
+                final double x = results[seg*2];
+                final double y = results[seg*2 + 1];
+                final double error = Math.max(Math.abs(domain.difference(0, x, dstSeg[p  ], dstSeg[p+2])),
+                                              Math.abs(domain.difference(1, y, dstSeg[p+1], dstSeg[p+3])));
+                if (!include(target, (lower + i) * 4, x, y) || Double.isNaN(error)) {
+                    errors[lower + i] = Double.NaN;     // Failure, or segment ending on a failed point.
+                    continue;
+                }
+                if (error <= tolerance || last) {
+                    if (error > errors[lower + i]) {
+                        errors[lower + i] = error;
+                    }
+                    crossing[i] |= domain.crosses(dstSeg, p) || domain.crosses(dstSeg, p, x, y);
+                    continue;
+                }
+                if (nextSrc == null) {
+                    final int capacity = Math.max(16, (count - seg) * 2);
+                    nextSrc   = new double[capacity * 4];
+                    nextDst   = new double[capacity * 4];
+                    nextOwner = new int[capacity];
+                } else if (next + 2 > nextOwner.length) {
+                    final int capacity = nextOwner.length * 2;
+                    nextSrc   = Arrays.copyOf(nextSrc,   capacity * 4);
+                    nextDst   = Arrays.copyOf(nextDst,   capacity * 4);
+                    nextOwner = Arrays.copyOf(nextOwner, capacity);
+                }
+                final double mx = midpoints[seg*2], my = midpoints[seg*2 + 1];
+                int q = next * 4;
+                nextSrc[q] = srcSeg[p];   nextSrc[q+1] = srcSeg[p+1]; nextSrc[q+2] = mx;          nextSrc[q+3] = my;
+                nextDst[q] = dstSeg[p];   nextDst[q+1] = dstSeg[p+1]; nextDst[q+2] = x;           nextDst[q+3] = y;
+                q += 4;
+                nextSrc[q] = mx;          nextSrc[q+1] = my;          nextSrc[q+2] = srcSeg[p+2]; nextSrc[q+3] = srcSeg[p+3];
+                nextDst[q] = x;           nextDst[q+1] = y;           nextDst[q+2] = dstSeg[p+2]; nextDst[q+3] = dstSeg[p+3];
+                nextOwner[next++] = i;
+                nextOwner[next++] = i;
+            }
+            count  = next;
+            srcSeg = nextSrc;
+            dstSeg = nextDst;
+            owner  = nextOwner;
+        }
+        /*
+         * Special cases where the extremums are not on the edges, then envelopes without any transformed point.
+         */
+        for (int i=0; i<n; i++) {
+            final int t = (lower + i) * 4;
+            domain.expand(source, t, target, t, crossing[i]);
+            if (target[t] > target[t+2]) {
+                Arrays.fill(target, t, t+4, Double.NaN);
+            }
+        }
+        return numPoints;
+    }
+
+    /**
+     * Expands the envelope at the given index for including the given point.
+     * A point having a NaN coordinate is not included.
+     *
+     * @return whether the point has been included, or {@code false} if it has a NaN coordinate.
+     */
+    private static boolean include(final double[] envelopes, final int t, final double x, final double y) {
+        if (Double.isNaN(x) || Double.isNaN(y)) {
+            return false;
+        }
+        if (x < envelopes[t  ]) envelopes[t  ] = x;
+        if (y < envelopes[t+1]) envelopes[t+1] = y;
+        if (x > envelopes[t+2]) envelopes[t+2] = x;
+        if (y > envelopes[t+3]) envelopes[t+3] = y;
+        return true;
+    }
+
+    /**
+     * The wraparound axis and the poles of the target CRS, for the cases where extremums are not on the edges.
+     *
+     * @param wrapAxis  index of the target axis with wraparound range, or -1 if none.
+     * @param wrapMin   minimal value of the wraparound axis.
+     * @param wrapMax   maximal value of the wraparound axis.
+     * @param latAxis   index of the latitude axis if the target CRS is geographic, or -1 otherwise.
+     * @param poles     (<var>x</var>, <var>y</var>, <var>latitude</var>) of each pole, where (<var>x</var>,
+     *                  <var>y</var>) are the source coordinates and <var>latitude</var> the target value.
+     */
+    private record Domain(int wrapAxis, double wrapMin, double wrapMax, int latAxis, double[] poles) {
+        /**
+         * Domain of a target CRS without wraparound axis or poles.
+         */
+        static final Domain NONE = new Domain(-1, Double.NaN, Double.NaN, -1, new double[0]);
+
+        /**
+         * Finds the wraparound axis of the given target CRS and, if the CRS is geographic, the position of
+         * its poles in the source CRS. Poles which cannot be transformed to the source CRS are ignored.
+         */
+        static Domain of(final MathTransform transform, final CoordinateReferenceSystem targetCRS) {
+            if (targetCRS == null) {
+                return NONE;
+            }
+            final CoordinateSystem cs = targetCRS.getCoordinateSystem();
+            int wrapAxis = -1, latAxis = -1;
+            for (int i=0; i < Math.min(2, cs.getDimension()); i++) {
+                final CoordinateSystemAxis axis = cs.getAxis(i);
+                if (axis.getRangeMeaning() == RangeMeaning.WRAPAROUND) {
+                    wrapAxis = i;
+                } else if (targetCRS instanceof GeographicCRS && (axis.getDirection() == AxisDirection.NORTH
+                                                              || axis.getDirection() == AxisDirection.SOUTH))
+                {
+                    latAxis = i;
+                }
+            }
+            if (wrapAxis < 0) {
+                return (latAxis < 0) ? NONE : new Domain(-1, Double.NaN, Double.NaN, latAxis, new double[0]);
+            }
+            final CoordinateSystemAxis wrap = cs.getAxis(wrapAxis);
+            double[] poles = new double[0];
+            if (latAxis >= 0) {
+                final CoordinateSystemAxis lat = cs.getAxis(latAxis);
+                final double[] limits = {lat.getMinimumValue(), lat.getMaximumValue()};
+                final double[] points = new double[4];
+                for (int k=0; k<2; k++) {
+                    points[k*2 + latAxis]  = limits[k];
+                    points[k*2 + wrapAxis] = 0.5 * (wrap.getMinimumValue() + wrap.getMaximumValue());
+                }
+                poles = new double[6];
+                int n = 0;
+                for (int k=0; k<2; k++) try {
+                    transform.inverse().transform(points, k*2, poles, n, 1);
+                    if (!Double.isNaN(poles[n]) && !Double.isNaN(poles[n+1]) && Double.isFinite(limits[k])) {
+                        poles[n+2] = limits[k];
+                        n += 3;
+                    }
+                } catch (TransformException e) {
+                    // This pole has no position in the source CRS, so it cannot be inside an envelope.
+                }
+                poles = Arrays.copyOf(poles, n);
+            }
+            return new Domain(wrapAxis, wrap.getMinimumValue(), wrap.getMaximumValue(), latAxis, poles);
+        }
+
+        /**
+         * Returns the difference on the given axis between a transformed midpoint and the middle of the
+         * straight segment between the transformed end points. Computed modulo the period on the wraparound axis.
+         */
+        double difference(final int axis, final double value, final double start, final double end) {
+            if (axis != wrapAxis) {
+                return value - 0.5 * (start + end);
+            }
+            final double period = wrapMax - wrapMin;
+            final double delta  = end - start;
+            final double middle = start + 0.5 * (delta - period * Math.rint(delta / period));
+            final double d = value - middle;
+            return d - period * Math.rint(d / period);
+        }
+
+        /**
+         * Returns whether the segment between the transformed points at the given index crosses the bounds of
+         * the wraparound axis. Shall be invoked only for segments accepted as approximations of transformed edges.
+         */
+        boolean crosses(final double[] segments, final int p) {
+            return wrapAxis >= 0 && Math.abs(segments[p + 2 + wrapAxis] - segments[p + wrapAxis]) > 0.5 * (wrapMax - wrapMin);
+        }
+
+        /**
+         * Returns whether the segment from the first transformed point at the given index to the given midpoint,
+         * or from the midpoint to the second transformed point, crosses the bounds of the wraparound axis.
+         */
+        boolean crosses(final double[] segments, final int p, final double x, final double y) {
+            if (wrapAxis < 0) {
+                return false;
+            }
+            final double half = 0.5 * (wrapMax - wrapMin);
+            final double m = (wrapAxis == 0) ? x : y;
+            return Math.abs(m - segments[p + wrapAxis]) > half || Math.abs(segments[p + 2 + wrapAxis] - m) > half;
+        }
+
+        /**
+         * Expands the transformed envelope for the poles inside the source envelope, and to the whole range
+         * of the wraparound axis if an edge crosses the bounds of that axis.
+         */
+        void expand(final double[] source, final int s, final double[] target, final int t, boolean crossing) {
+            for (int k=0; k<poles.length; k += 3) {
+                final double x = poles[k], y = poles[k+1];
+                if (x > source[s] && x < source[s+2] && y > source[s+1] && y < source[s+3]) {
+                    final double lat = poles[k+2];
+                    if (lat < target[t + latAxis    ]) target[t + latAxis    ] = lat;
+                    if (lat > target[t + latAxis + 2]) target[t + latAxis + 2] = lat;
+                    crossing = true;
+                }
+            }
+            if (crossing) {
+                target[t + wrapAxis    ] = wrapMin;
+                target[t + wrapAxis + 2] = wrapMax;
+            }
+        }
+    }
+
+    /**
+     * A task transforming a range of envelopes, splitting itself while the range is larger than a chunk.
+     * The result is the number of points transformed.
+     */
+    @SuppressWarnings("serial")
+    private final class Task extends RecursiveTask<Long> {
+        /** Source envelopes, transformed envelopes and error bounds of the whole operation. */
+        private final double[] source, target, errors;
+
+        /** Range of envelopes to transform. */
+        private final int lower, upper;
+
+        /** Wraparound axis and poles of the target CRS. */
+        private final Domain domain;
+
+        /** Creates a task for the given range of envelopes. */
+        Task(double[] source, double[] target, double[] errors, int lower, int upper, Domain domain) {
+            this.source = source;
+            this.target = target;
+            this.errors = errors;
+            this.lower  = lower;
+            this.upper  = upper;
+            this.domain = domain;
+        }
+
+        /** Transforms the range of envelopes, splitting it in two sub-tasks if larger than a chunk. */
+        @Override
+        protected Long compute() {
+            if (upper - lower > chunkSize) {
+                final int mid = (lower + upper) >>> 1;
+                final var right = new Task(source, target, errors, mid, upper, domain);
+                right.fork();
+                final long first = new Task(source, target, errors, lower, mid, domain).compute();
+                return first + right.join();
+            }
+            return transformChunk(source, target, errors, lower, upper, domain);
+        }
+    }
+}
@@ -0,0 +1,457 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.nio.ByteOrder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.awt.image.Raster;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.RenderedImage;
+import javax.measure.IncommensurableException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.crs.GeographicCRS;
+import org.opengis.referencing.crs.ProjectedCRS;
+import org.opengis.referencing.cs.CoordinateSystem;
+import org.opengis.referencing.datum.PixelInCell;
+import org.opengis.referencing.operation.Matrix;
+import org.opengis.util.FactoryException;
+
+// Implementation-dependent
+import org.apache.sis.coverage.grid.GridGeometry;
+import org.apache.sis.referencing.IdentifiedObjects;
+import org.apache.sis.referencing.cs.AbstractCS;
+import org.apache.sis.referencing.cs.AxesConvention;
+import org.apache.sis.referencing.cs.CoordinateSystems;
+import org.apache.sis.referencing.operation.transform.MathTransforms;
+import org.apache.sis.storage.DataStoreException;
+
+
+/**
+ * Writes a tiled GeoTIFF file tile by tile, in any order, without holding the full image in memory.
+ * Apache SIS 1.3 does not provide a GeoTIFF writer, and the "replace pixels" mode of the Image I/O
+ * TIFF writer does not write tiles at the right location. This class is a minimal writer instead:
+ * tiles are appended to the file in the order they are received, and the directory of tags
+ * (including tile offsets and GeoTIFF keys) is written at the end of the file when closing.
+ *
+ * <p>The file is written in BigTIFF format (no 4 Gb limit), uncompressed, with pixel-interleaved
+ * samples in little-endian order. Only two-dimensional grids with a CRS identified by an EPSG code
+ * are supported. Tiles can be written concurrently from many threads, but writes are serialized.</p>
+ */
+public final class GeoTiffTileWriter implements AutoCloseable {
+    /**
+     * TIFF tag numbers, in increasing order as required by the TIFF specification.
+     */
+    private static final short IMAGE_WIDTH = 256, IMAGE_LENGTH = 257, BITS_PER_SAMPLE = 258, COMPRESSION = 259,
+            PHOTOMETRIC = 262, SAMPLES_PER_PIXEL = 277, PLANAR_CONFIGURATION = 284, COLOR_MAP = 320,
+            TILE_WIDTH = 322, TILE_LENGTH = 323, TILE_OFFSETS = 324, TILE_BYTE_COUNTS = 325, SAMPLE_FORMAT = 339,
+            MODEL_TRANSFORMATION = (short) 34264, GEO_KEY_DIRECTORY = (short) 34735;
+
+    /**
+     * TIFF field types.
+     */
+    private static final short TYPE_SHORT = 3, TYPE_LONG = 4, TYPE_DOUBLE = 12, TYPE_LONG8 = 16;
+
+    /**
+     * GeoTIFF keys and values used by this writer.
+     */
+    private static final int GT_MODEL_TYPE = 1024, GT_RASTER_TYPE = 1025, GEOGRAPHIC_TYPE = 2048, PROJECTED_CS_TYPE = 3072,
+            MODEL_TYPE_PROJECTED = 1, MODEL_TYPE_GEOGRAPHIC = 2, RASTER_PIXEL_IS_AREA = 1;
+
+    /**
+     * Largest EPSG code that can be stored in a GeoKey. Greater values are reserved for user-defined or private codes.
+     */
+    private static final int MAX_EPSG_CODE = 32766;
+
+    /**
+     * The channel where to write the file. Also used as the lock for all write operations.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Image and tile size in pixels.
+     */
+    private final int width, height, tileWidth, tileHeight;
+
+    /**
+     * Number of tiles in a row of tiles.
+     */
+    private final int tilesAcross;
+
+    /**
+     * Number of bands and data type as one of the {@link DataBuffer} constants.
+     */
+    private final int numBands, dataType;
+
+    /**
+     * The color map of an indexed image, or {@code null} if none.
+     */
+    private final IndexColorModel palette;
+
+    /**
+     * The "grid to CRS" affine transform as a 4×4 matrix in row-major order.
+     */
+    private final double[] modelTransformation;
+
+    /**
+     * The GeoTIFF keys.
+     */
+    private final short[] geoKeys;
+
+    /**
+     * Offset and length in bytes of each tile. Zero for tiles not yet written.
+     */
+    private final long[] tileOffsets, tileByteCounts;
+
+    /**
+     * Position in the file where to append the next tile.
+     */
+    private long position;
+
+    /**
+     * Creates a GeoTIFF file where tiles can be written in any order.
+     *
+     * @param  file        the file to create. An existing file is overwritten.
+     * @param  layout      an image having the sample model and color model of the image to write.
+     * @param  width       width of the image to write.
+     * @param  height      height of the image to write.
+     * @param  tileWidth   width of tiles in the output file. Must be a multiple of 16.
+     * @param  tileHeight  height of tiles in the output file. Must be a multiple of 16.
+     * @param  geometry    the grid geometry to encode in GeoTIFF tags.
+     * @throws DataStoreException if the grid geometry cannot be encoded or the file cannot be created.
+     */
+    public GeoTiffTileWriter(final File file, final RenderedImage layout, final int width, final int height,
+                             final int tileWidth, final int tileHeight, final GridGeometry geometry)
+            throws DataStoreException
+    {
+        if (((tileWidth | tileHeight) & 15) != 0) {
+            throw new IllegalArgumentException("Tile size shall be a multiple of 16.");
+        }
+        this.width       = width;
+        this.height      = height;
+        this.tileWidth   = tileWidth;
+        this.tileHeight  = tileHeight;
+        this.tilesAcross = (width + tileWidth - 1) / tileWidth;
+        final int numTiles = Math.multiplyExact(tilesAcross, (height + tileHeight - 1) / tileHeight);
+        tileOffsets    = new long[numTiles];
+        tileByteCounts = new long[numTiles];
+        numBands = layout.getSampleModel().getNumBands();
+        dataType = layout.getSampleModel().getDataType();
+        if (dataType == DataBuffer.TYPE_UNDEFINED) {
+            throw new DataStoreException("Unsupported data type.");
+        }
+        final ColorModel cm = layout.getColorModel();
+        palette = (cm instanceof IndexColorModel icm && numBands == 1 && dataType == DataBuffer.TYPE_BYTE) ? icm : null;
+        final CoordinateReferenceSystem crs = geometry.getCoordinateReferenceSystem();
+        modelTransformation = modelTransformation(geometry, crs);
+        geoKeys = geoKeys(crs);
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                       StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new DataStoreException("Cannot create " + file, e);
+        }
+        position = 16;                  // Size of BigTIFF header, written on close.
+    }
+
+    /**
+     * Returns the "grid to CRS" transform as a 4×4 matrix in row-major order, as expected by GeoTIFF.
+     */
+    private static double[] modelTransformation(final GridGeometry geometry, final CoordinateReferenceSystem crs)
+            throws DataStoreException
+    {
+        if (geometry.getDimension() != 2) {
+            throw new DataStoreException("Only two-dimensional grids are supported.");
+        }
+        final Matrix gridToCRS;
+        try {
+            /*
+             * GeoTIFF requires (longitude, latitude) or (easting, northing) axis order,
+             * while the CRS may use another order, for example (latitude, longitude).
+             */
+            final CoordinateSystem cs = crs.getCoordinateSystem();
+            final CoordinateSystem normalized = AbstractCS.castOrCopy(cs).forConvention(AxesConvention.RIGHT_HANDED);
+            gridToCRS = MathTransforms.getMatrix(MathTransforms.concatenate(
+                    geometry.getGridToCRS(PixelInCell.CELL_CORNER),
+                    MathTransforms.linear(CoordinateSystems.swapAndScaleAxes(cs, normalized))));
+        } catch (IllegalArgumentException | IncommensurableException e) {
+            throw new DataStoreException("Cannot encode the grid geometry in GeoTIFF.", e);
+        }
+        if (gridToCRS == null) {
+            throw new DataStoreException("GeoTIFF requires an affine \"grid to CRS\" transform.");
+        }
+        final double[] elements = new double[16];
+        for (int j=0; j<2; j++) {
+            elements[j*4    ] = gridToCRS.getElement(j, 0);
+            elements[j*4 + 1] = gridToCRS.getElement(j, 1);
+            elements[j*4 + 3] = gridToCRS.getElement(j, 2);
+        }
+        elements[15] = 1;
+        return elements;
+    }
+
+    /**
+     * Returns the GeoTIFF keys declaring the given CRS by its EPSG code.
+     */
+    private static short[] geoKeys(final CoordinateReferenceSystem crs) throws DataStoreException {
+        final int modelType;
+        if (crs instanceof ProjectedCRS) {
+            modelType = MODEL_TYPE_PROJECTED;
+        } else if (crs instanceof GeographicCRS) {
+            modelType = MODEL_TYPE_GEOGRAPHIC;
+        } else {
+            throw new DataStoreException("Unsupported type of CRS: " + IdentifiedObjects.getDisplayName(crs, null));
+        }
+        final Integer code;
+        try {
+            code = IdentifiedObjects.lookupEPSG(crs);
+        } catch (FactoryException e) {
+            throw new DataStoreException("Cannot encode the CRS in GeoTIFF.", e);
+        }
+        if (code == null) {
+            throw new DataStoreException("GeoTIFF requires a CRS identified by an EPSG code.");
+        }
+        /*
+         * GeoKey values are unsigned 16-bit integers. Codes from 32767 to 65535 are reserved by GeoTIFF
+         * for user-defined and private values, so EPSG codes outside the 1 to 32766 range cannot be encoded.
+         */
+        if (code < 1 || code > MAX_EPSG_CODE) {
+            throw new DataStoreException("EPSG:" + code + " cannot be encoded as a GeoTIFF key.");
+        }
+        return new short[] {
+            1, 1, 0, 3,                                                 // Version 1.1.0 with 3 keys.
+            GT_MODEL_TYPE,  0, 1, (short) modelType,
+            GT_RASTER_TYPE, 0, 1, RASTER_PIXEL_IS_AREA,
+            (short) (modelType == MODEL_TYPE_PROJECTED ? PROJECTED_CS_TYPE : GEOGRAPHIC_TYPE), 0, 1, code.shortValue()
+        };
+    }
+
+    /**
+     * Writes the pixels of the given raster as the tile starting at the given location in the output image.
+     * The location must be at a tile boundary. The raster can be smaller than a tile on the right and bottom
+     * image borders, or larger than a tile, in which case only the pixels inside the tile are written.
+     * This method can be invoked from any thread.
+     *
+     * @param  tile  the pixel values to write. The raster minimum coordinates are ignored.
+     * @param  x     column in the output image of the first pixel of the raster.
+     * @param  y     row in the output image of the first pixel of the raster.
+     * @throws DataStoreException if an error occurred while writing the pixels.
+     */
+    public void write(final Raster tile, final int x, final int y) throws DataStoreException {
+        if (x % tileWidth != 0 || y % tileHeight != 0) {
+            throw new IllegalArgumentException("Location (" + x + ", " + y + ") is not at a tile boundary.");
+        }
+        final int index = (y / tileHeight) * tilesAcross + x / tileWidth;
+        final ByteBuffer data = encode(tile);
+        synchronized (channel) {
+            try {
+                final long offset = position;
+                while (data.hasRemaining()) {
+                    position += channel.write(data, position);
+                }
+                tileOffsets[index] = offset;
+                tileByteCounts[index] = position - offset;
+            } catch (IOException e) {
+                throw new DataStoreException("Cannot write tile at (" + x + ", " + y + ").", e);
+            }
+        }
+    }
+
+    /**
+     * Encodes a tile as pixel-interleaved samples in little-endian order.
+     * Pixels outside the raster are set to zero, since TIFF tiles always have the full tile size.
+     */
+    private ByteBuffer encode(final Raster tile) {
+        final int bytes = DataBuffer.getDataTypeSize(dataType) / Byte.SIZE;
+        final var buffer = ByteBuffer.allocate(tileWidth * tileHeight * numBands * bytes).order(ByteOrder.LITTLE_ENDIAN);
+        final int w = Math.min(tile.getWidth(),  tileWidth);
+        final int h = Math.min(tile.getHeight(), tileHeight);
+        final int rowLength = tileWidth * numBands * bytes;
+        final int x = tile.getMinX();
+        int[]    ints    = null;
+        float[]  floats  = null;
+        double[] doubles = null;
+        for (int r=0; r<h; r++) {
+            final int y = tile.getMinY() + r;
+            buffer.position(r * rowLength);
+            switch (dataType) {
+                case DataBuffer.TYPE_FLOAT: {
+                    floats = tile.getPixels(x, y, w, 1, floats);
+                    for (final float v : floats) buffer.putFloat(v);
+                    break;
+                }
+                case DataBuffer.TYPE_DOUBLE: {
+                    doubles = tile.getPixels(x, y, w, 1, doubles);
+                    for (final double v : doubles) buffer.putDouble(v);
+                    break;
+                }
+                default: {
+                    ints = tile.getPixels(x, y, w, 1, ints);
+                    switch (bytes) {
+                        case Byte.BYTES:    for (final int v : ints) buffer.put((byte) v); break;
+                        case Short.BYTES:   for (final int v : ints) buffer.putShort((short) v); break;
+                        default:            for (final int v : ints) buffer.putInt(v); break;
+                    }
+                }
+            }
+        }
+        return buffer.clear();
+    }
+
+    /**
+     * Writes the directory of tags and the file header, then closes the file.
+     * Tiles not written are declared with an offset and length of zero.
+     *
+     * @throws DataStoreException if an error occurred while writing the file.
+     */
+    @Override
+    public void close() throws DataStoreException {
+        synchronized (channel) {
+            try (channel) {
+                final int bits = DataBuffer.getDataTypeSize(dataType);
+                final short[] bitsPerSample = new short[numBands];
+                final short[] sampleFormat  = new short[numBands];
+                final int format = switch (dataType) {
+                    case DataBuffer.TYPE_FLOAT, DataBuffer.TYPE_DOUBLE -> 3;    // IEEE floating point.
+                    case DataBuffer.TYPE_SHORT, DataBuffer.TYPE_INT    -> 2;    // Signed integer.
+                    default -> 1;                                               // Unsigned integer.
+                };
+                Arrays.fill(bitsPerSample, (short) bits);
+                Arrays.fill(sampleFormat,  (short) format);
+                final var ifd = new Directory();
+                ifd.add(IMAGE_WIDTH,          TYPE_LONG,  width);
+                ifd.add(IMAGE_LENGTH,         TYPE_LONG,  height);
+                ifd.add(BITS_PER_SAMPLE,      bitsPerSample);
+                ifd.add(COMPRESSION,          TYPE_SHORT, 1);                   // No compression.
+                ifd.add(PHOTOMETRIC,          TYPE_SHORT, palette != null ? 3 : 1);
+                ifd.add(SAMPLES_PER_PIXEL,    TYPE_SHORT, numBands);
+                ifd.add(PLANAR_CONFIGURATION, TYPE_SHORT, 1);                   // Pixel interleaved.
+                if (palette != null) {
+                    ifd.add(COLOR_MAP, colorMap(palette, bits));
+                }
+                ifd.add(TILE_WIDTH,           TYPE_LONG,  tileWidth);
+                ifd.add(TILE_LENGTH,          TYPE_LONG,  tileHeight);
+                ifd.add(TILE_OFFSETS,         tileOffsets);
+                ifd.add(TILE_BYTE_COUNTS,     tileByteCounts);
+                ifd.add(SAMPLE_FORMAT,        sampleFormat);
+                ifd.add(MODEL_TRANSFORMATION, modelTransformation);
+                ifd.add(GEO_KEY_DIRECTORY,    geoKeys);
+                final long ifdOffset = (position + 7) & ~7L;
+                ifd.write(channel, ifdOffset);
+                final ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+                header.put((byte) 'I').put((byte) 'I').putShort((short) 43).putShort((short) 8).putShort((short) 0).putLong(ifdOffset);
+                channel.write(header.flip(), 0);
+            } catch (IOException e) {
+                throw new DataStoreException("Cannot write the GeoTIFF directory.", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the TIFF color map for the given palette: all red values, then all green values,
+     * then all blue values, scaled to 16 bits.
+     */
+    private static short[] colorMap(final IndexColorModel palette, final int bits) {
+        final int n = 1 << bits;
+        final short[] map = new short[3 * n];
+        for (int i=Math.min(n, palette.getMapSize()); --i >= 0;) {
+            map[i      ] = (short) (palette.getRed  (i) * 0x101);
+            map[i + n  ] = (short) (palette.getGreen(i) * 0x101);
+            map[i + 2*n] = (short) (palette.getBlue (i) * 0x101);
+        }
+        return map;
+    }
+
+    /**
+     * A BigTIFF image file directory under construction. Entries must be added in increasing tag order.
+     * Values that do not fit in the 8 bytes of an entry are written after the directory.
+     */
+    private static final class Directory {
+        /** Size in bytes of an entry. */
+        private static final int ENTRY_SIZE = 20;
+
+        /** The entries, written in a buffer large enough for the maximal number of tags used by this writer. */
+        private final ByteBuffer entries = ByteBuffer.allocate(8 + 16 * ENTRY_SIZE + 8).order(ByteOrder.LITTLE_ENDIAN);
+
+        /** Values too large for being stored in an entry, with their position in the entries buffer. */
+        private final List<ByteBuffer> external = new ArrayList<>();
+        private final List<Integer> externalEntry = new ArrayList<>();
+
+        /** Number of entries. */
+        private short count;
+
+        Directory() {
+            entries.position(8);        // Reserve space for the number of entries.
+        }
+
+        /** Adds an entry with a single integer value. */
+        void add(final short tag, final short type, final long value) {
+            entries.putShort(tag).putShort(type).putLong(1).putLong(value);
+            count++;
+        }
+
+        /** Adds an entry with an array of unsigned short values. */
+        void add(final short tag, final short[] values) {
+            final ByteBuffer b = ByteBuffer.allocate(values.length * Short.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            b.asShortBuffer().put(values);
+            add(tag, TYPE_SHORT, values.length, b);
+        }
+
+        /** Adds an entry with an array of 64 bits unsigned integers. */
+        void add(final short tag, final long[] values) {
+            final ByteBuffer b = ByteBuffer.allocate(values.length * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            b.asLongBuffer().put(values);
+            add(tag, TYPE_LONG8, values.length, b);
+        }
+
+        /** Adds an entry with an array of double-precision values. */
+        void add(final short tag, final double[] values) {
+            final ByteBuffer b = ByteBuffer.allocate(values.length * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            b.asDoubleBuffer().put(values);
+            add(tag, TYPE_DOUBLE, values.length, b);
+        }
+
+        /** Adds an entry with values stored inline if they fit in 8 bytes, or after the directory otherwise. */
+        private void add(final short tag, final short type, final int length, final ByteBuffer values) {
+            entries.putShort(tag).putShort(type).putLong(length);
+            if (values.capacity() <= Long.BYTES) {
+                final int p = entries.position();
+                entries.put(values).position(p + Long.BYTES);
+            } else {
+                externalEntry.add(entries.position());
+                external.add(values);
+                entries.putLong(0);                 // Offset to be set by `write(…)`.
+            }
+            count++;
+        }
+
+        /** Writes this directory at the given offset, followed by the values that did not fit in entries. */
+        void write(final FileChannel channel, final long offset) throws IOException {
+            entries.putLong(0);                     // No next directory.
+            entries.putLong(0, count);
+            long p = offset + entries.position();
+            for (int i=0; i<external.size(); i++) {
+                p = (p + 7) & ~7L;
+                entries.putLong(externalEntry.get(i), p);
+                final ByteBuffer values = external.get(i);
+                while (values.hasRemaining()) {
+                    p += channel.write(values, p);
+                }
+            }
+            entries.flip();
+            long q = offset;
+            while (entries.hasRemaining()) {
+                q += channel.write(entries, q);
+            }
+        }
+    }
+}
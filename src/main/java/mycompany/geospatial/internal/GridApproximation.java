@@ -0,0 +1,691 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial.internal;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.awt.geom.Rectangle2D;
+import org.opengis.geometry.MismatchedDimensionException;
+import org.opengis.referencing.operation.Matrix;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+
+// Implementation-dependent
+import org.apache.sis.referencing.operation.matrix.Matrices;
+import org.apache.sis.referencing.operation.transform.AbstractMathTransform;
+import org.apache.sis.referencing.operation.transform.LinearTransform;
+import org.apache.sis.referencing.operation.transform.MathTransforms;
+import org.apache.sis.util.ComparisonMode;
+import org.apache.sis.util.Utilities;
+
+
+/**
+ * Approximation of an expensive two-dimensional transform by bilinear interpolation in a grid of samples.
+ * The exact transform is evaluated on the corners of the cells of an adaptive grid covering a given domain,
+ * and points inside a cell are computed by bilinear interpolation between the 4 corners. This is much faster
+ * than the exact transform when the latter involves a chain of map projections, datum shifts or custom steps,
+ * for example when computing the source pixel of each target pixel in a resampling operation.
+ *
+ * <p>The grid starts with {@value #ROOT_DIVISIONS}×{@value #ROOT_DIVISIONS} cells. Each cell is tested
+ * by evaluating the exact transform on a 5×5 grid of check points inside the cell, including the corners.
+ * The error bound of a cell is the largest difference between interpolated and exact values at the check points,
+ * plus the error of bilinear interpolation between check points estimated from the second differences of the
+ * exact values, with a safety factor of {@value #SAFETY_FACTOR}. If that bound exceeds the tolerance on any
+ * target dimension, or if a value is not finite, the cell is divided in 4 quadrants which are tested in
+ * the same way, up to a depth of {@value #MAX_DEPTH}. The cells still failing at the maximal depth
+ * delegate to the exact transform.</p>
+ *
+ * <p>Cells of different sizes may meet along an edge. The corners of the small cells are exact values,
+ * while the large cell interpolates along the whole edge, so the interpolation of each cell is also verified
+ * at the corners of its neighbours. Cells failing this verification delegate to the exact transform too.
+ * The largest error bound of the remaining cells is given by {@link #getMaximalError()}. This is an estimation,
+ * not a proof: a transform with second derivatives varying at a scale smaller than the distance between check
+ * points can exceed it.</p>
+ *
+ * <p>Points outside the domain are computed by the exact transform.
+ * This transform is not invertible; the inverse should be approximated separately if needed.</p>
+ *
+ * <p>Instances of this class are immutable and thread-safe if the exact transform is thread-safe,
+ * which is the case of all Apache SIS transforms.</p>
+ */
+public final class GridApproximation extends AbstractMathTransform {
+    /**
+     * Version of the algorithm which builds the grid. Approximations created with the same tolerance
+     * but different versions may compute different values, so this number shall be incremented when
+     * the subdivision criterion changes. Used by {@link TileCache} for identifying products.
+     */
+    static final int REVISION = 2;
+
+    /**
+     * Number of cells along each axis of the domain before subdivision.
+     */
+    static final int ROOT_DIVISIONS = 16;
+
+    /**
+     * Factor by which the second differences measured at the check points are multiplied
+     * when estimating the error between check points. See {@link #error error(…)}.
+     */
+    private static final double SAFETY_FACTOR = 2;
+
+    /**
+     * Maximal number of times that a root cell can be divided in 4 quadrants.
+     */
+    static final int MAX_DEPTH = 8;
+
+    /**
+     * Maximal number of cells, including the cells that have been divided.
+     * When this limit is reached, the cells that would need subdivision use the exact transform instead.
+     */
+    private static final int MAX_NODES = 1 << 18;
+
+    /**
+     * Number of check points along each axis of a cell, including the corners.
+     */
+    private static final int CHECK_POINTS = 5;
+
+    /**
+     * Indices of the corners among the check points of a cell, in the same order as the quadrants.
+     */
+    private static final int[] CORNER_POINTS = {
+        0, CHECK_POINTS - 1, (CHECK_POINTS - 1) * CHECK_POINTS, CHECK_POINTS * CHECK_POINTS - 1
+    };
+
+    /**
+     * Maximal number of cells evaluated in a single call to the exact transform.
+     */
+    private static final int CHUNK_SIZE = 1024;
+
+    /**
+     * Value in the {@link #nodes} array for a cell which delegates to the exact transform.
+     */
+    private static final int EXACT = Integer.MIN_VALUE;
+
+    /**
+     * The transform to approximate.
+     */
+    private final MathTransform exact;
+
+    /**
+     * The domain where the approximation is used, in units of the source coordinates.
+     */
+    private final double xmin, ymin, xmax, ymax;
+
+    /**
+     * Size of the cells before subdivision, in units of the source coordinates.
+     */
+    private final double cellWidth, cellHeight;
+
+    /**
+     * The tolerance requested at construction time, in units of the target coordinates.
+     */
+    private final double tolerance;
+
+    /**
+     * Estimated bound on the difference between approximated and exact values in the interpolated cells.
+     */
+    private final double maxError;
+
+    /**
+     * Number of target dimensions.
+     */
+    private final int dimension;
+
+    /**
+     * The tree of cells. The first {@code ROOT_DIVISIONS²} elements are the root cells in row-major order.
+     * A positive value is the index of the first of the 4 quadrants of the cell, in the order lower-left,
+     * lower-right, upper-left, upper-right. A value of {@link #EXACT} means that the cell uses the exact
+     * transform. Any other negative value <var>n</var> means that the cell is interpolated between the
+     * corner values stored in {@link #corners} at index {@code -1 - n}.
+     */
+    private final int[] nodes;
+
+    /**
+     * Exact values at the corners of interpolated cells, with 4 × {@link #dimension} values per cell.
+     * Corners are in the same order as the quadrants of a cell.
+     */
+    private final double[] corners;
+
+    /**
+     * Number of cells delegating to the exact transform.
+     */
+    private final int numExactCells;
+
+    /**
+     * Creates an approximation of the given transform.
+     * This constructor evaluates the exact transform on all check points.
+     * Points that cannot be transformed are handled as non-finite values.
+     */
+    private GridApproximation(final MathTransform exact, final Rectangle2D domain, final double tolerance) {
+        this.exact     = exact;
+        this.tolerance = tolerance;
+        dimension  = exact.getTargetDimensions();
+        xmin       = domain.getMinX();
+        ymin       = domain.getMinY();
+        xmax       = domain.getMaxX();
+        ymax       = domain.getMaxY();
+        cellWidth  = domain.getWidth()  / ROOT_DIVISIONS;
+        cellHeight = domain.getHeight() / ROOT_DIVISIONS;
+        /*
+         * Cells to test at the current level and at the next level, as (node index, lower x, lower y).
+         */
+        int count = ROOT_DIVISIONS * ROOT_DIVISIONS;
+        int[]    pending  = new int[count];
+        double[] pendingX = new double[count];
+        double[] pendingY = new double[count];
+        for (int i=0; i<count; i++) {
+            pending [i] = i;
+            pendingX[i] = xmin + (i % ROOT_DIVISIONS) * cellWidth;
+            pendingY[i] = ymin + (i / ROOT_DIVISIONS) * cellHeight;
+        }
+        int[]    tree       = new int[count * 2];
+        double[] values     = new double[count * 4 * dimension];
+        int      numNodes   = count;
+        int      numValues  = 0;
+        int      numExact   = 0;
+        /*
+         * Accepted cells as (node index, lower x, lower y, depth, error bound), kept for the verification.
+         */
+        int[]    leaves     = new int[count];
+        double[] leafX      = new double[count];
+        double[] leafY      = new double[count];
+        int[]    leafDepth  = new int[count];
+        double[] leafError  = new double[count];
+        int      numLeaves  = 0;
+        final int pointsPerCell = CHECK_POINTS * CHECK_POINTS;
+        final var source = new double[CHUNK_SIZE * pointsPerCell * 2];
+        final var target = new double[CHUNK_SIZE * pointsPerCell * dimension];
+        final var cell   = new double[4 * dimension];
+        for (int depth = 0; count != 0; depth++) {
+            final double width  = Math.scalb(cellWidth,  -depth);
+            final double height = Math.scalb(cellHeight, -depth);
+            int      nextCount = 0;
+            int[]    next      = new int   [count * 4];
+            double[] nextX     = new double[count * 4];
+            double[] nextY     = new double[count * 4];
+            for (int start = 0; start < count; start += CHUNK_SIZE) {
+                final int n = Math.min(count - start, CHUNK_SIZE);
+                int p = 0;
+                for (int c=0; c<n; c++) {
+                    final double x0 = pendingX[start + c];
+                    final double y0 = pendingY[start + c];
+                    for (int j=0; j<CHECK_POINTS; j++) {
+                        final double y = y0 + height * j / (CHECK_POINTS - 1);
+                        for (int i=0; i<CHECK_POINTS; i++) {
+                            source[p++] = x0 + width * i / (CHECK_POINTS - 1);
+                            source[p++] = y;
+                        }
+                    }
+                }
+                evaluate(source, target, n * pointsPerCell);
+                for (int c=0; c<n; c++) {
+                    final int node = pending[start + c];
+                    final int base = c * pointsPerCell * dimension;
+                    final double cellError = error(target, base, cell);
+                    if (cellError <= tolerance) {
+                        if (numValues + cell.length > values.length) {
+                            values = Arrays.copyOf(values, values.length * 2);
+                        }
+                        System.arraycopy(cell, 0, values, numValues, cell.length);
+                        tree[node] = -1 - numValues;
+                        numValues += cell.length;
+                        if (numLeaves == leaves.length) {
+                            leaves    = Arrays.copyOf(leaves,    numLeaves * 2);
+                            leafX     = Arrays.copyOf(leafX,     numLeaves * 2);
+                            leafY     = Arrays.copyOf(leafY,     numLeaves * 2);
+                            leafDepth = Arrays.copyOf(leafDepth, numLeaves * 2);
+                            leafError = Arrays.copyOf(leafError, numLeaves * 2);
+                        }
+                        leaves   [numLeaves] = node;
+                        leafX    [numLeaves] = pendingX[start + c];
+                        leafY    [numLeaves] = pendingY[start + c];
+                        leafDepth[numLeaves] = depth;
+                        leafError[numLeaves] = cellError;
+                        numLeaves++;
+                    } else if (depth < MAX_DEPTH && numNodes + 4 <= MAX_NODES) {
+                        if (numNodes + 4 > tree.length) {
+                            tree = Arrays.copyOf(tree, Math.min(tree.length * 2, MAX_NODES));
+                        }
+                        tree[node] = numNodes;
+                        final double x0 = pendingX[start + c];
+                        final double y0 = pendingY[start + c];
+                        for (int q=0; q<4; q++) {
+                            next [nextCount] = numNodes++;
+                            nextX[nextCount] = x0 + (q & 1) * (width  / 2);
+                            nextY[nextCount] = y0 + (q >> 1) * (height / 2);
+                            nextCount++;
+                        }
+                    } else {
+                        tree[node] = EXACT;
+                        numExact++;
+                    }
+                }
+            }
+            pending  = next;
+            pendingX = nextX;
+            pendingY = nextY;
+            count    = nextCount;
+        }
+        nodes   = Arrays.copyOf(tree, numNodes);
+        corners = Arrays.copyOf(values, numValues);
+        /*
+         * Verification of the accepted cells at the corners of their neighbours. The corner values are exact,
+         * so the difference with the interpolation in the neighbour cell is the error of that neighbour.
+         * Neighbours are found by moving the corner by a fraction of the smallest cell size.
+         */
+        final var errors   = new double[numNodes];
+        final var position = new double[4];
+        final double dx = Math.scalb(cellWidth,  -MAX_DEPTH - 2);
+        final double dy = Math.scalb(cellHeight, -MAX_DEPTH - 2);
+        for (int leaf=0; leaf<numLeaves; leaf++) {
+            final int    node   = leaves[leaf];
+            final int    offset = -1 - nodes[node];
+            final double width  = Math.scalb(cellWidth,  -leafDepth[leaf]);
+            final double height = Math.scalb(cellHeight, -leafDepth[leaf]);
+            errors[node] = Math.max(errors[node], leafError[leaf]);
+            for (int q=0; q<4; q++) {
+                final double x = leafX[leaf] + (q & 1)  * width;
+                final double y = leafY[leaf] + (q >> 1) * height;
+                for (int side=0; side<4; side++) {
+                    final double px = x + ((side & 1)  == 0 ? -dx : dx);
+                    final double py = y + ((side >> 1) == 0 ? -dy : dy);
+                    final int neighbour = locate(px, py, position);
+                    if (neighbour < 0 || neighbour == node || nodes[neighbour] == EXACT) {
+                        continue;
+                    }
+                    final double ox = px - position[0] * position[2];
+                    final double oy = py - position[1] * position[3];
+                    final double u  = Math.min(Math.max((x - ox) / position[2], 0), 1);
+                    final double v  = Math.min(Math.max((y - oy) / position[3], 0), 1);
+                    for (int k=0; k<dimension; k++) {
+                        final double d = Math.abs(interpolate(corners, -1 - nodes[neighbour], k, u, v)
+                                                  - corners[offset + q * dimension + k]);
+                        if (!(d <= errors[neighbour])) {
+                            errors[neighbour] = Double.isFinite(d) ? d : Double.POSITIVE_INFINITY;
+                        }
+                    }
+                }
+            }
+        }
+        double error = 0;
+        for (int leaf=0; leaf<numLeaves; leaf++) {
+            final int node = leaves[leaf];
+            if (errors[node] <= tolerance) {
+                error = Math.max(error, errors[node]);
+            } else {
+                nodes[node] = EXACT;
+                numExact++;
+            }
+        }
+        maxError      = error;
+        numExactCells = numExact;
+    }
+
+    /**
+     * Evaluates the exact transform on the given points. If the bulk transform fails,
+     * the points are transformed one by one and the points that cannot be transformed are set to NaN.
+     */
+    private void evaluate(final double[] source, final double[] target, final int numPts) {
+        try {
+            exact.transform(source, 0, target, 0, numPts);
+        } catch (TransformException e) {
+            for (int i=0; i<numPts; i++) {
+                try {
+                    exact.transform(source, i*2, target, i*dimension, 1);
+                } catch (TransformException f) {
+                    Arrays.fill(target, i*dimension, (i+1)*dimension, Double.NaN);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the corner values of a cell and returns a bound on the difference between the exact values
+     * and the bilinear interpolation anywhere in the cell. Returns NaN if a value is not finite.
+     *
+     * <p>The bound is computed for each target dimension as the largest difference at the check points,
+     * plus the error of bilinear interpolation between check points. The latter is at most 1/8 of the
+     * second differences along <var>x</var> and <var>y</var> between consecutive check points, which are
+     * the same for the exact values and the difference since bilinear interpolation is linear along each axis.
+     * The largest second differences at the check points are multiplied by {@link #SAFETY_FACTOR} because
+     * they are an estimation of the largest second differences in the cell.</p>
+     *
+     * @param  values  exact values at the check points of all cells in the chunk.
+     * @param  base    index of the first value of the cell to test.
+     * @param  cell    where to store the corner values.
+     * @return bound on the difference between exact and interpolated values, or NaN.
+     */
+    private double error(final double[] values, final int base, final double[] cell) {
+        final int last = CHECK_POINTS - 1;
+        for (int q=0; q<4; q++) {
+            System.arraycopy(values, base + CORNER_POINTS[q] * dimension, cell, q * dimension, dimension);
+        }
+        final int row = CHECK_POINTS * dimension;
+        double bound = 0;
+        for (int k=0; k<dimension; k++) {
+            double error = 0, dxx = 0, dyy = 0;
+            for (int j=0; j<CHECK_POINTS; j++) {
+                final double v = j / (double) last;
+                for (int i=0; i<CHECK_POINTS; i++) {
+                    final int    p      = base + (j * CHECK_POINTS + i) * dimension + k;
+                    final double actual = values[p];
+                    if (!Double.isFinite(actual)) return Double.NaN;
+                    error = Math.max(error, Math.abs(interpolate(cell, 0, k, i / (double) last, v) - actual));
+                    if (i != 0 && i != last) {
+                        dxx = Math.max(dxx, Math.abs(values[p - dimension] - 2*actual + values[p + dimension]));
+                    }
+                    if (j != 0 && j != last) {
+                        dyy = Math.max(dyy, Math.abs(values[p - row] - 2*actual + values[p + row]));
+                    }
+                }
+            }
+            bound = Math.max(bound, error + SAFETY_FACTOR * (dxx + dyy) / 8);
+        }
+        return bound;
+    }
+
+    /**
+     * Interpolates a value at the given fractional position inside a cell.
+     *
+     * @param  values  the corner values.
+     * @param  offset  index of the first corner value of the cell.
+     * @param  k       the target dimension.
+     * @param  u       fractional position along <var>x</var>, from 0 to 1.
+     * @param  v       fractional position along <var>y</var>, from 0 to 1.
+     * @return the interpolated value.
+     */
+    private double interpolate(final double[] values, int offset, final int k, final double u, final double v) {
+        offset += k;
+        final double c00 = values[offset];
+        final double c10 = values[offset += dimension];
+        final double c01 = values[offset += dimension];
+        final double c11 = values[offset +  dimension];
+        return (c00 + (c10 - c00) * u) * (1 - v) + (c01 + (c11 - c01) * u) * v;
+    }
+
+    /**
+     * Returns an approximation of the given transform in the given domain, or the transform itself
+     * if it is linear. The error of the approximation is estimated as described in the class javadoc
+     * and is not greater than the given tolerance when the exact transform is smooth at the scale of
+     * the check points. Callers should use {@link GridApproximation#getMaximalError()} for the estimated
+     * error instead of assuming the tolerance.
+     *
+     * @param  exact      the transform to approximate. Shall have 2 source dimensions.
+     * @param  domain     the region of source coordinates where the approximation is used.
+     * @param  tolerance  the maximal error allowed on each target dimension, in units of the target coordinates.
+     * @return the approximated transform, or {@code exact} if no approximation is needed or possible.
+     * @throws MismatchedDimensionException if the transform does not have 2 source dimensions.
+     */
+    public static MathTransform create(final MathTransform exact, final Rectangle2D domain, final double tolerance) {
+        Objects.requireNonNull(exact);
+        if (exact.getSourceDimensions() != 2) {
+            throw new MismatchedDimensionException("The transform shall have 2 source dimensions.");
+        }
+        if (!(tolerance > 0)) {
+            throw new IllegalArgumentException("The tolerance shall be positive.");
+        }
+        if (exact instanceof LinearTransform || domain.isEmpty()) {
+            return exact;
+        }
+        final var approx = new GridApproximation(exact, domain, tolerance);
+        if (approx.getExactFraction() >= 1) {
+            return exact;                   // No cell can be interpolated.
+        }
+        return approx;
+    }
+
+    /**
+     * Returns the transform which is approximated.
+     *
+     * @return the exact transform.
+     */
+    public MathTransform getExactTransform() {
+        return exact;
+    }
+
+    /**
+     * Returns the tolerance requested at construction time.
+     *
+     * @return the maximal error allowed on each target dimension.
+     */
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Returns the estimated bound on the difference between the approximated and exact values.
+     * This is the largest error bound of the interpolated cells, including the differences measured
+     * at the corners of neighbour cells along edges between cells of different sizes. This value is
+     * not greater than the {@linkplain #getTolerance() tolerance}, and is often smaller.
+     *
+     * @return the estimated maximal error on each target dimension.
+     */
+    public double getMaximalError() {
+        return maxError;
+    }
+
+    /**
+     * Returns the fraction of the domain where the exact transform is used instead of the approximation.
+     *
+     * @return fraction of the domain area computed by the exact transform, from 0 to 1.
+     */
+    public double getExactFraction() {
+        if (numExactCells == 0) return 0;
+        double area = 0;
+        for (int i = ROOT_DIVISIONS * ROOT_DIVISIONS; --i >= 0;) {
+            area += exactArea(i, 1);
+        }
+        return area / (ROOT_DIVISIONS * ROOT_DIVISIONS);
+    }
+
+    /**
+     * Returns the area of the given cell computed by the exact transform, relative to the root cell size.
+     */
+    private double exactArea(final int node, final double area) {
+        final int n = nodes[node];
+        if (n == EXACT) return area;
+        if (n < 0) return 0;
+        double sum = 0;
+        for (int q=0; q<4; q++) {
+            sum += exactArea(n + q, area / 4);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the number of source dimensions, which is 2.
+     */
+    @Override
+    public int getSourceDimensions() {
+        return 2;
+    }
+
+    /**
+     * Returns the number of target dimensions, which is the same as the exact transform.
+     */
+    @Override
+    public int getTargetDimensions() {
+        return dimension;
+    }
+
+    /**
+     * Returns the index of the leaf cell containing the given point, or -1 if the point is outside the domain.
+     * The fractional position of the point in the cell and the cell size are stored in {@code position}
+     * as (<var>u</var>, <var>v</var>, <var>width</var>, <var>height</var>).
+     */
+    private int locate(final double x, final double y, final double[] position) {
+        if (!(x >= xmin && x <= xmax && y >= ymin && y <= ymax)) {
+            return -1;
+        }
+        double u = (x - xmin) / cellWidth;
+        double v = (y - ymin) / cellHeight;
+        final int i = Math.min((int) u, ROOT_DIVISIONS - 1);
+        final int j = Math.min((int) v, ROOT_DIVISIONS - 1);
+        u -= i;
+        v -= j;
+        double width  = cellWidth;
+        double height = cellHeight;
+        int node = j * ROOT_DIVISIONS + i;
+        int n;
+        while ((n = nodes[node]) > 0) {
+            u *= 2;
+            v *= 2;
+            final int qx = (u >= 1) ? 1 : 0;
+            final int qy = (v >= 1) ? 1 : 0;
+            u -= qx;
+            v -= qy;
+            width  /= 2;
+            height /= 2;
+            node = n + qx + 2*qy;
+        }
+        position[0] = u;
+        position[1] = v;
+        position[2] = width;
+        position[3] = height;
+        return node;
+    }
+
+    /**
+     * Transforms a single point and optionally computes the derivative at that location.
+     *
+     * @param  srcPts    the array containing the source coordinates.
+     * @param  srcOff    the offset to the point to be transformed in the source array.
+     * @param  dstPts    the array into which the transformed coordinates is returned, or {@code null}.
+     * @param  dstOff    the offset to the location of the transformed point in the destination array.
+     * @param  derivate  {@code true} for computing the derivative, or {@code false} if not needed.
+     * @return the matrix of the transform derivative at the given source position, or {@code null}.
+     * @throws TransformException if the point is computed by the exact transform and cannot be transformed.
+     */
+    @Override
+    public Matrix transform(final double[] srcPts, final int srcOff, final double[] dstPts, final int dstOff,
+                            final boolean derivate) throws TransformException
+    {
+        final var position = new double[4];
+        final int node = locate(srcPts[srcOff], srcPts[srcOff+1], position);
+        if (node < 0 || nodes[node] == EXACT) {
+            if (derivate) {
+                return MathTransforms.derivativeAndTransform(exact, srcPts, srcOff, dstPts, dstOff);
+            }
+            if (dstPts != null) {
+                exact.transform(srcPts, srcOff, dstPts, dstOff, 1);
+            }
+            return null;
+        }
+        final int offset = -1 - nodes[node];
+        final double u = position[0];
+        final double v = position[1];
+        Matrix derivative = null;
+        if (derivate) {
+            derivative = Matrices.createZero(dimension, 2);
+            for (int k=0; k<dimension; k++) {
+                final int p = offset + k;
+                final double c00 = corners[p];
+                final double c10 = corners[p +   dimension];
+                final double c01 = corners[p + 2*dimension];
+                final double c11 = corners[p + 3*dimension];
+                derivative.setElement(k, 0, ((c10 - c00) * (1 - v) + (c11 - c01) * v) / position[2]);
+                derivative.setElement(k, 1, ((c01 - c00) * (1 - u) + (c11 - c10) * u) / position[3]);
+            }
+        }
+        if (dstPts != null) {
+            for (int k=0; k<dimension; k++) {
+                dstPts[dstOff + k] = interpolate(corners, offset, k, u, v);
+            }
+        }
+        return derivative;
+    }
+
+    /**
+     * Transforms a sequence of points. The source and destination arrays may overlap.
+     * Consecutive points are often in the same cell, in which case the search in the tree is skipped.
+     *
+     * @throws TransformException if a point computed by the exact transform cannot be transformed.
+     *         The remaining points are still transformed.
+     */
+    @Override
+    public void transform(double[] srcPts, int srcOff, final double[] dstPts, int dstOff, final int numPts)
+            throws TransformException
+    {
+        if (srcPts == dstPts && srcOff < dstOff + numPts * dimension && dstOff < srcOff + numPts * 2) {
+            srcPts = Arrays.copyOfRange(srcPts, srcOff, srcOff + numPts * 2);
+            srcOff = 0;
+        }
+        /*
+         * Bounds of the last cell found, in source coordinates.
+         * Initialized to an empty range so that the first point always searches the tree.
+         */
+        double cellX = Double.NaN, cellY = Double.NaN, width = 0, height = 0;
+        int offset = -1;
+        TransformException failure = null;
+        final var position = new double[4];
+        for (int i=0; i<numPts; i++) {
+            final double x = srcPts[srcOff++];
+            final double y = srcPts[srcOff++];
+            double u = (x - cellX) / width;
+            double v = (y - cellY) / height;
+            if (!(u >= 0 && u <= 1 && v >= 0 && v <= 1)) {
+                final int node = locate(x, y, position);
+                if (node < 0 || nodes[node] == EXACT) {
+                    cellX = Double.NaN;
+                    try {
+                        exact.transform(srcPts, srcOff - 2, dstPts, dstOff, 1);
+                    } catch (TransformException e) {
+                        Arrays.fill(dstPts, dstOff, dstOff + dimension, Double.NaN);
+                        if (failure == null) failure = e;
+                        else failure.addSuppressed(e);
+                    }
+                    dstOff += dimension;
+                    continue;
+                }
+                offset = -1 - nodes[node];
+                u      = position[0];
+                v      = position[1];
+                width  = position[2];
+                height = position[3];
+                cellX  = x - u * width;
+                cellY  = y - v * height;
+            }
+            for (int k=0; k<dimension; k++) {
+                dstPts[dstOff++] = interpolate(corners, offset, k, u, v);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Returns a hash code value computed from the exact transform, the domain and the tolerance.
+     */
+    @Override
+    protected int computeHashCode() {
+        return super.computeHashCode() + 31 * (exact.hashCode() + 31 * (Double.hashCode(tolerance)
+                + 31 * Arrays.hashCode(new double[] {xmin, ymin, xmax, ymax})));
+    }
+
+    /**
+     * Compares this approximation with the given object for equality. Two approximations are equal
+     * if they were created with equal exact transforms, domains and tolerances, since they have the same grid.
+     * This method overrides the default implementation because this transform has no parameter values.
+     *
+     * @param  object  the object to compare with this transform.
+     * @param  mode    the strictness level of the comparison.
+     * @return whether the given object is equal to this transform.
+     */
+    @Override
+    public boolean equals(final Object object, final ComparisonMode mode) {
+        if (object == this) {
+            return true;
+        }
+        if (object instanceof GridApproximation) {
+            final var other = (GridApproximation) object;
+            return Utilities.deepEquals(exact, other.exact, mode)
+                    && Double.doubleToLongBits(tolerance) == Double.doubleToLongBits(other.tolerance)
+                    && Double.doubleToLongBits(xmin) == Double.doubleToLongBits(other.xmin)
+                    && Double.doubleToLongBits(ymin) == Double.doubleToLongBits(other.ymin)
+                    && Double.doubleToLongBits(xmax) == Double.doubleToLongBits(other.xmax)
+                    && Double.doubleToLongBits(ymax) == Double.doubleToLongBits(other.ymax);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,546 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial.internal;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * Counters, latency histograms and Java Flight Recorder events for the geospatial services.
+ * Instrumentation is disabled by default and enabled by the {@code mycompany.geospatial.metrics}
+ * system property. When disabled, instrumented methods only test the {@link #ENABLED} constant,
+ * which the JIT compiler removes together with the code that it guards. No object is allocated.
+ *
+ * <p>Instrumented code uses the following pattern, where the event is {@code null} when disabled:</p>
+ *
+ * <pre>{@code
+ *     final var event = Metrics.ENABLED ? new Metrics.TransformEvent() : null;
+ *     // ... do the work ...
+ *     if (event != null) Metrics.end(event, numPoints, failureCount);
+ * }</pre>
+ *
+ * <p>When enabled, the events are emitted to JFR if a recording is active, for example with
+ * {@code java -XX:StartFlightRecording=filename=app.jfr}. Counters and histograms are always
+ * updated and can be printed with {@link #report()}.</p>
+ *
+ * <p>When a bulk transform fails, {@link ChunkedTransform} transforms the tuples again one by one
+ * for finding which ones failed. Those retries are not measured, because the tuples have already
+ * been counted by the bulk attempt. Instrumented code which may be invoked on that path tests
+ * {@link #recording()} instead of {@link #ENABLED}.</p>
+ */
+public final class Metrics {
+    /**
+     * Whether instrumentation is enabled. Fixed at class initialization time.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("mycompany.geospatial.metrics");
+
+    /** Number of coordinate tuples given to bulk transforms. */
+    public static final Counter POINTS_TRANSFORMED = new Counter("Points transformed");
+
+    /** Number of coordinate tuples which could not be transformed by bulk transforms. */
+    public static final Counter POINTS_FAILED = new Counter("Points failed");
+
+    /** Number of coordinate tuples given to trajectory transforms. */
+    public static final Counter TRAJECTORY_POINTS = new Counter("Trajectory points");
+
+    /** Number of coordinate tuples with a time outside the trajectory. */
+    public static final Counter TIME_OUT_OF_RANGE = new Counter("Time out of range");
+
+    /** Number of requests for a coordinate operation, including the ones found in the cache. */
+    public static final Counter OPERATION_LOOKUPS = new Counter("Operation lookups");
+
+    /** Number of coordinate operations which were not in the cache and had to be searched. */
+    public static final Counter OPERATION_SEARCHES = new Counter("Operation searches");
+
+    /** Number of coordinate operations returned without search, because found in the cache. */
+    public static final Counter OPERATION_CACHE_HITS = new Counter("Operation cache hits");
+
+    /** Number of envelopes given to envelope transforms. */
+    public static final Counter ENVELOPES_TRANSFORMED = new Counter("Envelopes transformed");
+
+    /** Number of envelopes which could not be transformed. */
+    public static final Counter ENVELOPES_FAILED = new Counter("Envelopes failed");
+
+    /** Number of tiles read or computed. */
+    public static final Counter TILES_READ = new Counter("Tiles read");
+
+    /** Number of bytes in the tiles read or computed. */
+    public static final Counter BYTES_DECODED = new Counter("Bytes decoded");
+
+    /** Time spent in bulk transforms. */
+    public static final Histogram TRANSFORM_TIME = new Histogram("Transform time");
+
+    /** Time spent in envelope transforms. */
+    public static final Histogram ENVELOPE_TRANSFORM_TIME = new Histogram("Envelope transform time");
+
+    /** Time spent in searching coordinate operations not found in the cache. */
+    public static final Histogram OPERATION_SEARCH_TIME = new Histogram("Operation search time");
+
+    /** Time spent in reading rasters. */
+    public static final Histogram RASTER_READ_TIME = new Histogram("Raster read time");
+
+    /** Time spent in preparing resampling operations. Pixel values are computed later. */
+    public static final Histogram RESAMPLE_TIME = new Histogram("Resample time");
+
+    /**
+     * Whether the current thread is transforming again, one tuple at a time, the tuples of a failed bulk transform.
+     * Used only when {@link #ENABLED} is {@code true}.
+     */
+    private static final ThreadLocal<Boolean> RETRYING = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    /**
+     * Do not allow instantiation of this class.
+     */
+    private Metrics() {
+    }
+
+    /**
+     * Returns whether measurements are enabled and the current thread is not retrying a failed bulk transform.
+     *
+     * @return whether measurements shall be recorded by the current thread.
+     */
+    public static boolean recording() {
+        return ENABLED && !RETRYING.get();
+    }
+
+    /**
+     * Sets whether the current thread is retrying a failed bulk transform. Shall be invoked with {@code true}
+     * before the retries and with {@code false} in a {@code finally} block. Does nothing if measurements are disabled.
+     *
+     * @param  retrying  whether the current thread starts or stops retrying.
+     */
+    static void retrying(final boolean retrying) {
+        if (ENABLED) RETRYING.set(retrying);
+    }
+
+    /**
+     * A counter which can be incremented concurrently with low contention.
+     */
+    public static final class Counter {
+        /** Name of the counter, for reports. */
+        private final String name;
+
+        /** The counter value. */
+        private final LongAdder count = new LongAdder();
+
+        /** Creates a new counter of the given name. */
+        Counter(final String name) {
+            this.name = name;
+        }
+
+        /**
+         * Adds the given amount to this counter.
+         *
+         * @param  n  the amount to add.
+         */
+        public void add(final long n) {
+            count.add(n);
+        }
+
+        /**
+         * Returns the current value of this counter.
+         *
+         * @return the counter value.
+         */
+        public long sum() {
+            return count.sum();
+        }
+
+        /**
+         * Returns the name and value of this counter.
+         */
+        @Override
+        public String toString() {
+            return name + ": " + sum();
+        }
+    }
+
+    /**
+     * A histogram of durations with buckets of increasing powers of 2 nanoseconds.
+     * Bucket <var>i</var> contains durations in the [2<sup><var>i</var></sup> … 2<sup><var>i</var>+1</sup>) range.
+     * Percentiles are approximated by the upper bound of the bucket where they fall.
+     */
+    public static final class Histogram {
+        /** Name of the histogram, for reports. */
+        private final String name;
+
+        /** Number of durations in each bucket. */
+        private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+
+        /** Sum of all durations, in nanoseconds. */
+        private final LongAdder total = new LongAdder();
+
+        /** Longest duration, in nanoseconds. */
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        /** Creates a new histogram of the given name. */
+        Histogram(final String name) {
+            this.name = name;
+        }
+
+        /**
+         * Records a duration.
+         *
+         * @param  nanos  the duration in nanoseconds.
+         */
+        public void record(long nanos) {
+            nanos = Math.max(nanos, 0);
+            buckets.incrementAndGet(Math.max(0, (Long.SIZE - 1) - Long.numberOfLeadingZeros(nanos)));
+            total.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        /**
+         * Returns the number of recorded durations.
+         *
+         * @return number of durations.
+         */
+        public long count() {
+            long n = 0;
+            for (int i=0; i<Long.SIZE; i++) {
+                n += buckets.get(i);
+            }
+            return n;
+        }
+
+        /**
+         * Returns an approximation of the given percentile, in nanoseconds.
+         *
+         * @param  p  the percentile as a value between 0 and 1.
+         * @return upper bound of the bucket containing the percentile, or 0 if there is no duration.
+         */
+        public long percentile(final double p) {
+            final long[] counts = new long[Long.SIZE];
+            long n = 0;
+            for (int i=0; i<Long.SIZE; i++) {
+                n += counts[i] = buckets.get(i);
+            }
+            final long rank = (long) Math.ceil(p * n);
+            long cumulated = 0;
+            for (int i=0; i<Long.SIZE; i++) {
+                cumulated += counts[i];
+                if (cumulated >= rank && counts[i] != 0) {
+                    return Math.min(max.get(), (i < Long.SIZE - 2) ? 2L << i : Long.MAX_VALUE);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Returns the name, count and durations of this histogram in milliseconds.
+         */
+        @Override
+        public String toString() {
+            final long n = count();
+            if (n == 0) {
+                return name + ": none";
+            }
+            return String.format("%s: %d, mean %.3f ms, p50 <= %.3f ms, p99 <= %.3f ms, max %.3f ms", name, n,
+                    total.sum() / (n * 1E6), percentile(0.5) / 1E6, percentile(0.99) / 1E6, max.get() / 1E6);
+        }
+    }
+
+    /**
+     * Base class of events measuring a duration with {@link System#nanoTime()} in addition of JFR timing.
+     * The duration is recorded in a histogram even if no JFR recording is active.
+     */
+    abstract static class TimedEvent extends Event {
+        /** Value of {@link System#nanoTime()} when the event started. Not recorded by JFR. */
+        transient final long startTime;
+
+        /** Value of {@link System#nanoTime()} when the event has been stopped, or 0 if not yet stopped. */
+        transient long stopTime;
+
+        /** Starts the event. */
+        TimedEvent() {
+            startTime = System.nanoTime();
+            begin();
+        }
+
+        /**
+         * Stops the timing without committing the event. This method can be invoked before
+         * computing the event attributes when that computation should not be measured.
+         */
+        public final void stop() {
+            if (stopTime == 0) {
+                stopTime = System.nanoTime();
+                end();
+            }
+        }
+
+        /** Ends the event, records the duration in the given histogram and commits to JFR. */
+        final void end(final Histogram histogram) {
+            stop();
+            histogram.record(stopTime - startTime);
+            commit();
+        }
+    }
+
+    /**
+     * A bulk transform of coordinate tuples.
+     */
+    @Name("mycompany.geospatial.Transform")
+    @Label("Coordinate Transform")
+    @Description("Bulk transform of coordinate tuples.")
+    @Category({"Geospatial", "Referencing"})
+    public static final class TransformEvent extends TimedEvent {
+        /** Number of coordinate tuples. */
+        @Label("Points")
+        int points;
+
+        /** Number of tuples which could not be transformed. */
+        @Label("Failures")
+        int failures;
+
+        /** Creates and starts a new event. */
+        public TransformEvent() {
+        }
+    }
+
+    /**
+     * A bulk transform of coordinate tuples using a trajectory.
+     */
+    @Name("mycompany.geospatial.TrajectoryTransform")
+    @Label("Trajectory Transform")
+    @Description("Transform of coordinate tuples using a moving feature trajectory.")
+    @Category({"Geospatial", "Referencing"})
+    public static final class TrajectoryEvent extends TimedEvent {
+        /** Number of coordinate tuples. */
+        @Label("Points")
+        int points;
+
+        /** Number of tuples with a time outside the trajectory. */
+        @Label("Time Out of Range")
+        int failures;
+
+        /** Creates and starts a new event. */
+        public TrajectoryEvent() {
+        }
+    }
+
+    /**
+     * A transform of an envelope to another CRS.
+     */
+    @Name("mycompany.geospatial.EnvelopeTransform")
+    @Label("Envelope Transform")
+    @Description("Transform of an envelope to another CRS.")
+    @Category({"Geospatial", "Referencing"})
+    public static final class EnvelopeTransformEvent extends TimedEvent {
+        /** Name of the target CRS. */
+        @Label("Target CRS")
+        String targetCRS;
+
+        /** Whether the envelope could not be transformed. */
+        @Label("Failed")
+        boolean failed;
+
+        /** Creates and starts a new event. */
+        public EnvelopeTransformEvent() {
+        }
+    }
+
+    /**
+     * A search for a coordinate operation not found in the cache.
+     */
+    @Name("mycompany.geospatial.OperationSearch")
+    @Label("Coordinate Operation Search")
+    @Description("Search for a coordinate operation between two CRS.")
+    @Category({"Geospatial", "Referencing"})
+    public static final class OperationSearchEvent extends TimedEvent {
+        /** Name of the source CRS. */
+        @Label("Source CRS")
+        String sourceCRS;
+
+        /** Name of the target CRS. */
+        @Label("Target CRS")
+        String targetCRS;
+
+        /** Creates and starts a new event. */
+        public OperationSearchEvent() {
+        }
+    }
+
+    /**
+     * A read of raster data.
+     */
+    @Name("mycompany.geospatial.RasterRead")
+    @Label("Raster Read")
+    @Description("Read of raster data from a file.")
+    @Category({"Geospatial", "Raster"})
+    public static final class RasterReadEvent extends TimedEvent {
+        /** The file which has been read. */
+        @Label("File")
+        String file;
+
+        /** Number of tiles. */
+        @Label("Tiles")
+        int tiles;
+
+        /** Number of bytes in the tiles. */
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        /** Creates and starts a new event. */
+        public RasterReadEvent() {
+        }
+    }
+
+    /**
+     * The preparation of a resampling operation.
+     */
+    @Name("mycompany.geospatial.Resample")
+    @Label("Resample")
+    @Description("Preparation of a resampled coverage. Pixel values are computed when first requested.")
+    @Category({"Geospatial", "Raster"})
+    public static final class ResampleEvent extends TimedEvent {
+        /** Name of the target CRS. */
+        @Label("Target CRS")
+        String targetCRS;
+
+        /** Creates and starts a new event. */
+        public ResampleEvent() {
+        }
+    }
+
+    /**
+     * Ends a bulk transform.
+     *
+     * @param  event     the event created at the beginning of the transform.
+     * @param  points    number of coordinate tuples.
+     * @param  failures  number of tuples which could not be transformed.
+     */
+    public static void end(final TransformEvent event, final int points, final int failures) {
+        POINTS_TRANSFORMED.add(points);
+        POINTS_FAILED.add(failures);
+        event.points   = points;
+        event.failures = failures;
+        event.end(TRANSFORM_TIME);
+    }
+
+    /**
+     * Ends a trajectory transform. The duration is not recorded in a histogram, because trajectory
+     * transforms are usually steps of a bulk transform which is already measured.
+     *
+     * @param  event     the event created at the beginning of the transform.
+     * @param  points    number of coordinate tuples.
+     * @param  failures  number of tuples with a time outside the trajectory.
+     */
+    public static void end(final TrajectoryEvent event, final int points, final int failures) {
+        TRAJECTORY_POINTS.add(points);
+        TIME_OUT_OF_RANGE.add(failures);
+        event.points   = points;
+        event.failures = failures;
+        event.commit();
+    }
+
+    /**
+     * Ends the transform of an envelope.
+     *
+     * @param  event      the event created at the beginning of the transform.
+     * @param  targetCRS  name of the target CRS.
+     * @param  failed     whether the envelope could not be transformed.
+     */
+    public static void end(final EnvelopeTransformEvent event, final String targetCRS, final boolean failed) {
+        ENVELOPES_TRANSFORMED.add(1);
+        if (failed) ENVELOPES_FAILED.add(1);
+        event.targetCRS = targetCRS;
+        event.failed    = failed;
+        event.end(ENVELOPE_TRANSFORM_TIME);
+    }
+
+    /**
+     * Ends the search for a coordinate operation.
+     *
+     * @param  event      the event created at the beginning of the search.
+     * @param  sourceCRS  name of the source CRS.
+     * @param  targetCRS  name of the target CRS.
+     */
+    public static void end(final OperationSearchEvent event, final String sourceCRS, final String targetCRS) {
+        OPERATION_SEARCHES.add(1);
+        event.sourceCRS = sourceCRS;
+        event.targetCRS = targetCRS;
+        event.end(OPERATION_SEARCH_TIME);
+    }
+
+    /**
+     * Ends the read of an image fully loaded in memory. If the image is rendered from the coverage,
+     * the event should be {@linkplain TimedEvent#stop() stopped} before rendering.
+     *
+     * @param  event  the event created at the beginning of the read.
+     * @param  file   the file which has been read.
+     * @param  image  the image which has been read.
+     */
+    public static void end(final RasterReadEvent event, final Object file, final RenderedImage image) {
+        final int tiles = image.getNumXTiles() * image.getNumYTiles();
+        final long bytes = bytes(image.getSampleModel(), image.getWidth(), image.getHeight());
+        TILES_READ.add(tiles);
+        BYTES_DECODED.add(bytes);
+        event.file  = String.valueOf(file);
+        event.tiles = tiles;
+        event.bytes = bytes;
+        event.end(RASTER_READ_TIME);
+    }
+
+    /**
+     * Ends the preparation of a resampling operation.
+     *
+     * @param  event      the event created at the beginning of the operation.
+     * @param  targetCRS  name of the target CRS.
+     */
+    public static void end(final ResampleEvent event, final String targetCRS) {
+        event.targetCRS = targetCRS;
+        event.end(RESAMPLE_TIME);
+    }
+
+    /**
+     * Counts a tile read or computed outside of a {@link RasterReadEvent}.
+     *
+     * @param  tile  the tile which has been read or computed.
+     */
+    public static void tileRead(final Raster tile) {
+        TILES_READ.add(1);
+        BYTES_DECODED.add(bytes(tile.getSampleModel(), tile.getWidth(), tile.getHeight()));
+    }
+
+    /**
+     * Returns the number of bytes used by pixel values in a raster of the given size.
+     */
+    private static long bytes(final SampleModel sm, final int width, final int height) {
+        long bits = 0;
+        for (int size : sm.getSampleSize()) {
+            bits += size;
+        }
+        return (bits * width * height + (Byte.SIZE - 1)) / Byte.SIZE;
+    }
+
+    /**
+     * Returns all counters and histograms, one per line.
+     *
+     * @return a summary of all measurements.
+     */
+    public static String report() {
+        final var sb = new StringBuilder();
+        for (Object m : new Object[] {
+            POINTS_TRANSFORMED, POINTS_FAILED, TRAJECTORY_POINTS, TIME_OUT_OF_RANGE,
+            ENVELOPES_TRANSFORMED, ENVELOPES_FAILED, OPERATION_LOOKUPS, OPERATION_SEARCHES,
+            OPERATION_CACHE_HITS, TILES_READ, BYTES_DECODED, TRANSFORM_TIME, ENVELOPE_TRANSFORM_TIME,
+            OPERATION_SEARCH_TIME, RASTER_READ_TIME, RESAMPLE_TIME})
+        {
+            sb.append(m).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,844 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial.internal;
+
+import java.net.URL;
+import java.net.URISyntaxException;
+import java.util.Map;
+import java.util.List;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.time.format.DateTimeParseException;
+import java.nio.charset.StandardCharsets;
+import mycompany.geospatial.VoyagerToObservatory;
+
+// Implementation-specific
+import org.apache.sis.storage.DataStoreException;
+import org.apache.sis.storage.DataStoreContentException;
+
+
+/**
+ * Streaming parser of OGC Moving Features files encoded in CSV.
+ * Contrarily to the Apache SIS data store, this reader does not create feature instances
+ * and geometry objects. It reads bytes directly into growable arrays of primitive values,
+ * which allows to load files of many gigabytes with a memory usage close to the size of
+ * the arrays.
+ *
+ * <p>All moving features of a file are read in a single pass. For local files, the file is split
+ * in chunks of complete lines which are decoded in parallel, then the rows of each moving feature
+ * are concatenated in chunk order.</p>
+ *
+ * <p>Only the subset of the format used by this project is supported:
+ * the {@code @stboundedby} and {@code @columns} headers, absolute times in ISO-8601 format,
+ * a {@code trajectory} column and numerical attributes ({@code xsd:decimal}, {@code xsd:double},
+ * {@code xsd:float} or {@code xsd:integer}). Attributes of other types are ignored.</p>
+ *
+ * @see <a href="https://docs.ogc.org/is/14-084r2/14-084r2.html">OGC Moving Features Encoding Extension: Simple Comma Separated Values</a>
+ */
+final class MovingFeatureReader {
+    /**
+     * Size of the buffer used for reading bytes.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Minimal number of bytes in a chunk decoded in a background thread.
+     * Files smaller than this size are decoded in the current thread.
+     */
+    private static final long MIN_CHUNK_SIZE = 16L * 1024 * 1024;
+
+    /**
+     * Maximal number of bytes in a chunk. Must fit in a memory-mapped buffer.
+     */
+    private static final long MAX_CHUNK_SIZE = 1L << 30;
+
+    /**
+     * Maximal number of significant digits for using the fast path of number parsing.
+     * Integers of this size are represented exactly by {@code double}.
+     */
+    private static final int MAX_FAST_DIGITS = 15;
+
+    /**
+     * Powers of 10 which are exactly representable by {@code double}.
+     */
+    private static final double[] POWERS_OF_10 = {
+        1E0,  1E1,  1E2,  1E3,  1E4,  1E5,  1E6,  1E7,  1E8,  1E9,  1E10, 1E11,
+        1E12, 1E13, 1E14, 1E15, 1E16, 1E17, 1E18, 1E19, 1E20, 1E21, 1E22
+    };
+
+    /**
+     * Converter of ISO-8601 times to values in the temporal CRS of this project.
+     */
+    private static final TimeConverter TIME = new TimeConverter(VoyagerToObservatory.TIME_CRS);
+
+    /**
+     * The input stream to read.
+     */
+    private final InputStream input;
+
+    /**
+     * Buffer of bytes read from the input stream, with valid bytes between
+     * {@link #bufferPosition} inclusive and {@link #bufferLimit} exclusive.
+     */
+    private final byte[] buffer;
+    private int bufferPosition, bufferLimit;
+
+    /**
+     * The current line, without line terminator. Valid bytes are from 0 to {@link #lineLength}.
+     */
+    private byte[] line;
+    private int lineLength;
+
+    /**
+     * Number of the current line, for error messages.
+     * In chunks other than the first one, this is relative to the chunk start.
+     */
+    private long lineNumber;
+
+    /**
+     * Number of bytes consumed by {@link #nextLine()}, and position of the current record.
+     */
+    private long position, recordStart;
+
+    /**
+     * Start and end (exclusive) of each comma-separated field in the current line, after trimming.
+     * Valid values are from 0 to {@link #fieldCount}.
+     */
+    private int[] fieldStart, fieldEnd;
+    private int fieldCount;
+
+    /**
+     * View over a field of the current line, reused for parsing times without creating strings.
+     */
+    private final TimeConverter.Ascii fieldText = new TimeConverter.Ascii();
+
+    /**
+     * Identifier of the CRS declared in the {@code @stboundedby} header, or {@code null} if none.
+     */
+    private String crs;
+
+    /**
+     * Number of dimensions declared in the {@code @stboundedby} header.
+     */
+    private int dimension;
+
+    /**
+     * Names of numerical attributes and the index of their fields in data rows.
+     * Fields 0 to 3 inclusive are the feature identifier, start time, end time and coordinates.
+     */
+    private List<String> attributeNames;
+    private int[] attributeFields;
+
+    /**
+     * Creates a new reader for the given input stream.
+     * The caller is responsible for closing the stream.
+     *
+     * @param  input  the input stream to read.
+     */
+    MovingFeatureReader(final InputStream input) {
+        this.input     = input;
+        buffer         = new byte[BUFFER_SIZE];
+        line           = new byte[256];
+        fieldStart     = new int[16];
+        fieldEnd       = new int[16];
+        attributeNames = new ArrayList<>();
+    }
+
+    /**
+     * Creates a reader for a chunk of the file, using the header information of the given reader.
+     *
+     * @param  input   the input stream to read, starting at the beginning of a line.
+     * @param  header  the reader which has parsed the header.
+     */
+    private MovingFeatureReader(final InputStream input, final MovingFeatureReader header) {
+        this(input);
+        crs             = header.crs;
+        dimension       = header.dimension;
+        attributeNames  = header.attributeNames;
+        attributeFields = header.attributeFields;
+    }
+
+    /**
+     * Loads the trajectories of all moving features in the given file.
+     * If sidecar files are enabled and a sidecar is up to date, the trajectories are read from the sidecar.
+     * Otherwise the file is parsed and a sidecar is written for the next loading.
+     * This method does not cache the result; see {@link TrajectoryCache} for that purpose.
+     *
+     * @param  source  the Moving Features file to read.
+     * @param  stamp   last modification time of the file, used for checking if the sidecar is up to date.
+     * @param  length  length of the file in bytes, used for checking if the sidecar is up to date.
+     * @return the trajectories of all moving features, in order of first appearance in the file.
+     * @throws DataStoreException if an error occurred while reading the file or if the content is invalid.
+     *
+     * @see TrajectorySidecar#DIRECTORY_PROPERTY
+     */
+    static Map<String, Trajectory> load(final URL source, final long stamp, final long length) throws DataStoreException {
+        try {
+            final Path sidecar = TrajectorySidecar.location(source);
+            if (sidecar != null) {
+                final Map<String, Trajectory> features = TrajectorySidecar.read(sidecar, stamp, length);
+                if (features != null) {
+                    return features;
+                }
+            }
+            final Map<String, Trajectory> features;
+            if ("file".equalsIgnoreCase(source.getProtocol())) {
+                features = read(Paths.get(source.toURI()));
+            } else try (InputStream in = source.openStream()) {
+                features = read(in);
+            }
+            if (sidecar != null) try {
+                TrajectorySidecar.write(sidecar, features, stamp, length);
+            } catch (IOException e) {
+                // Not fatal since the sidecar is only an optimization.
+                Logger.getLogger("mycompany.geospatial").log(Level.WARNING, "Cannot write " + sidecar, e);
+            }
+            return features;
+        } catch (IOException | URISyntaxException e) {
+            throw new DataStoreException("Cannot read " + source, e);
+        }
+    }
+
+    /**
+     * Reads the trajectories of all moving features in the given stream, in the current thread.
+     *
+     * @param  input  the stream to read. Will not be closed by this method.
+     * @return the trajectories of all moving features, in order of first appearance in the file.
+     * @throws IOException if an error occurred while reading the stream.
+     * @throws DataStoreContentException if the file content is not in the expected format.
+     */
+    static Map<String, Trajectory> read(final InputStream input) throws IOException, DataStoreContentException {
+        final var reader = new MovingFeatureReader(input);
+        final var builders = new LinkedHashMap<String, Builder>();
+        if (reader.readHeader()) {
+            reader.readRows(builders);
+        }
+        return build(builders, reader.crs, reader.attributeNames);
+    }
+
+    /**
+     * Reads the trajectories of all moving features in the given file.
+     * Large files are split in chunks which are decoded in parallel.
+     *
+     * @param  file  the file to read.
+     * @return the trajectories of all moving features, in order of first appearance in the file.
+     * @throws IOException if an error occurred while reading the file.
+     * @throws DataStoreContentException if the file content is not in the expected format.
+     */
+    static Map<String, Trajectory> read(final Path file) throws IOException, DataStoreContentException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final var header = new MovingFeatureReader(Channels.newInputStream(channel));
+            if (!header.readHeader()) {
+                return build(Map.of(), header.crs, header.attributeNames);
+            }
+            final long dataStart = header.recordStart;
+            final long dataSize  = size - dataStart;
+            final int  numChunks = (int) Math.max(Math.min(dataSize / MIN_CHUNK_SIZE, ForkJoinPool.getCommonPoolParallelism()),
+                                                  (dataSize + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+            if (numChunks <= 1) {
+                final var builders = new LinkedHashMap<String, Builder>();
+                header.readRows(builders);
+                return build(builders, header.crs, header.attributeNames);
+            }
+            /*
+             * Compute chunk boundaries at the beginning of lines, then decode each chunk in a background thread.
+             * The rows of each chunk are grouped by moving feature, then the groups are concatenated in chunk order.
+             */
+            final long[] bounds = new long[numChunks + 1];
+            bounds[0] = dataStart;
+            bounds[numChunks] = size;
+            for (int i=1; i<numChunks; i++) {
+                bounds[i] = nextLineStart(channel, Math.max(bounds[i-1], dataStart + dataSize * i / numChunks), size);
+            }
+            final var tasks = new ArrayList<Callable<Map<String, Builder>>>(numChunks);
+            for (int i=0; i<numChunks; i++) {
+                final long start = bounds[i];
+                final long end   = bounds[i+1];
+                tasks.add(() -> {
+                    final var builders = new LinkedHashMap<String, Builder>();
+                    if (start < end) {
+                        final ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                        final var reader = new MovingFeatureReader(new BufferInput(chunk), header);
+                        if (reader.nextRecord()) {
+                            reader.readRows(builders);
+                        }
+                    }
+                    return builders;
+                });
+            }
+            final var merged = new LinkedHashMap<String, Builder>();
+            try {
+                for (final Future<Map<String, Builder>> result : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                    for (final Map.Entry<String, Builder> entry : result.get().entrySet()) {
+                        final Builder existing = merged.putIfAbsent(entry.getKey(), entry.getValue());
+                        if (existing != null) {
+                            existing.append(entry.getValue());
+                        }
+                    }
+                }
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException)               throw (IOException) cause;
+                if (cause instanceof DataStoreContentException) throw (DataStoreContentException) cause;
+                if (cause instanceof RuntimeException)          throw (RuntimeException) cause;
+                if (cause instanceof Error)                     throw (Error) cause;
+                throw new IOException(cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading " + file, e);
+            }
+            return build(merged, header.crs, header.attributeNames);
+        }
+    }
+
+    /**
+     * Returns the position of the first line starting at or after the given position.
+     * If the given position is in the middle of a line, the rest of that line is skipped.
+     *
+     * @param  channel   the channel to read.
+     * @param  position  the position where to start the search.
+     * @param  size      size of the file.
+     * @return position after the next line terminator, or {@code size} if none.
+     */
+    private static long nextLineStart(final FileChannel channel, long position, final long size) throws IOException {
+        if (position == 0) {
+            return 0;
+        }
+        position--;                 // In case the position is already at the beginning of a line.
+        final ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (position < size) {
+            buffer.clear();
+            final int n = channel.read(buffer, position);
+            if (n <= 0) break;
+            for (int i=0; i<n; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += n;
+        }
+        return size;
+    }
+
+    /**
+     * Creates the trajectories from the given builders.
+     *
+     * @param  builders  the builders of each moving feature.
+     * @param  crs       identifier of the CRS declared in the header, or {@code null} if none.
+     * @param  names     names of numerical attributes.
+     * @return the trajectories of all moving features.
+     * @throws DataStoreContentException if the file contains no moving feature.
+     */
+    private static Map<String, Trajectory> build(final Map<String, Builder> builders, final String crs,
+                                                 final List<String> names)
+            throws DataStoreContentException
+    {
+        if (builders.isEmpty()) {
+            throw new DataStoreContentException("The file contains no moving feature.");
+        }
+        final var features = new LinkedHashMap<String, Trajectory>();
+        for (final Map.Entry<String, Builder> entry : builders.entrySet()) {
+            features.put(entry.getKey(), entry.getValue().build(entry.getKey(), crs, names));
+        }
+        return Collections.unmodifiableMap(features);
+    }
+
+    /**
+     * Reads all data rows from the current record to the end of the stream.
+     * Rows are grouped by moving feature identifier.
+     *
+     * @param  builders  where to add the rows, with a builder for each moving feature.
+     * @throws IOException if an error occurred while reading the stream.
+     * @throws DataStoreContentException if a row is malformed.
+     */
+    private void readRows(final Map<String, Builder> builders) throws IOException, DataStoreContentException {
+        Builder builder = null;
+        byte[] identifier = null;
+        do {
+            final int start = fieldStart[0];
+            final int end   = fieldEnd[0];
+            if (builder == null || !Arrays.equals(line, start, end, identifier, 0, identifier.length)) {
+                // Rows of the same moving feature are usually consecutive, so this block is rarely executed.
+                identifier = Arrays.copyOfRange(line, start, end);
+                builder = builders.computeIfAbsent(new String(identifier, StandardCharsets.UTF_8),
+                                                   (k) -> new Builder(dimension, attributeNames.size()));
+            }
+            parseRow(builder);
+        } while (nextRecord());
+    }
+
+    /**
+     * Parses the header lines and moves to the first data row.
+     *
+     * @return whether a data row has been found, or {@code false} if the file contains only headers.
+     * @throws IOException if an error occurred while reading the stream.
+     * @throws DataStoreContentException if a header is missing or malformed.
+     */
+    private boolean readHeader() throws IOException, DataStoreContentException {
+        boolean hasColumns = false, hasData = false;
+        while (nextRecord()) {
+            if (line[fieldStart[0]] != '@') {
+                hasData = true;
+                break;
+            }
+            final String keyword = field(0);
+            if (keyword.equalsIgnoreCase("@stboundedby")) {
+                // @stboundedby, crs, dimension, lower corner, upper corner, start time, end time, time mode.
+                if (fieldCount < 3) {
+                    throw error("Missing dimension in @stboundedby header.");
+                }
+                crs = field(1);
+                if (crs.isEmpty()) crs = null;
+                final String dim = field(2);
+                try {
+                    dimension = Integer.parseInt(dim.substring(0, dim.length() - 1));
+                } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                    throw error("Illegal dimension: " + dim);
+                }
+                if (fieldCount >= 8 && !field(7).equalsIgnoreCase("absolute")) {
+                    throw error("Only absolute times are supported.");
+                }
+            } else if (keyword.equalsIgnoreCase("@columns")) {
+                /*
+                 * @columns, mfidref, trajectory, name[,type], name[,type], …
+                 * A type starts with "xsd:" and applies to the column before it.
+                 * The "trajectory" column is encoded in rows as 3 fields: start, end and coordinates.
+                 */
+                final var fields = new ArrayList<Integer>();
+                int rowField = 4;                       // Index of the next attribute in data rows.
+                for (int i=3; i<fieldCount; i++) {
+                    final String name = field(i);
+                    final String type = (i+1 < fieldCount && field(i+1).startsWith("xsd:")) ? field(++i) : "xsd:string";
+                    switch (type) {
+                        case "xsd:decimal": case "xsd:double": case "xsd:float": case "xsd:integer": {
+                            attributeNames.add(name);
+                            fields.add(rowField);
+                            break;
+                        }
+                    }
+                    rowField++;
+                }
+                attributeFields = fields.stream().mapToInt(Integer::intValue).toArray();
+                hasColumns = true;
+            }
+        }
+        if (dimension <= 0 || !hasColumns) {
+            throw error("Missing @stboundedby or @columns header.");
+        }
+        return hasData;
+    }
+
+    /**
+     * Parses the current row and adds its positions to the given builder.
+     *
+     * @param  builder  where to add the positions.
+     * @throws DataStoreContentException if the row is malformed.
+     */
+    private void parseRow(final Builder builder) throws DataStoreContentException {
+        if (fieldCount < 4) {
+            throw error("Missing fields.");
+        }
+        final double start = parseTime(1);
+        final double end   = parseTime(2);
+        /*
+         * Coordinates are separated by spaces. Parse them in the builder before
+         * to know how many positions the row contains.
+         */
+        final int first = builder.coordinateCount();
+        int pos = fieldStart[3];
+        final int stop = fieldEnd[3];
+        while (pos < stop) {
+            int next = pos;
+            while (next < stop && line[next] != ' ') next++;
+            if (next != pos) {
+                builder.addCoordinate(parseDouble(pos, next));
+            }
+            pos = next + 1;
+        }
+        final int count = builder.coordinateCount() - first;
+        if (count == 0 || count % dimension != 0) {
+            throw error("Number of coordinates is not a multiple of " + dimension + '.');
+        }
+        final int numPositions = count / dimension;
+        final double[] attributes = builder.rowAttributes;
+        for (int i=0; i<attributes.length; i++) {
+            final int f = attributeFields[i];
+            attributes[i] = (f < fieldCount && fieldStart[f] < fieldEnd[f]) ? parseDouble(fieldStart[f], fieldEnd[f]) : Double.NaN;
+        }
+        builder.addPositions(numPositions, start, end);
+    }
+
+    /**
+     * Parses the field at the given index as an ISO-8601 instant
+     * and converts it to a value in the temporal CRS of this project.
+     * Times in the usual format are parsed without object creation.
+     */
+    private double parseTime(final int field) throws DataStoreContentException {
+        try {
+            return TIME.parse(fieldText.wrap(line, fieldStart[field], fieldEnd[field]));
+        } catch (DateTimeParseException e) {
+            throw error("Illegal time: " + field(field));
+        }
+    }
+
+    /**
+     * Parses a number in the current line between the given indices.
+     * This method uses a fast path without object allocation for numbers
+     * having 15 significant digits or less, which is the common case.
+     *
+     * @param  start  index of the first character of the number.
+     * @param  end    index after the last character of the number.
+     * @return the parsed number.
+     * @throws DataStoreContentException if the number cannot be parsed.
+     */
+    private double parseDouble(final int start, final int end) throws DataStoreContentException {
+        int i = start;
+        final boolean negative = (i < end && line[i] == '-');
+        if (negative || (i < end && line[i] == '+')) i++;
+        long mantissa = 0;
+        int digits = 0, scale = 0;
+        boolean dot = false, hasDigit = false, fast = (i < end);
+        for (; i < end; i++) {
+            final byte c = line[i];
+            if (c >= '0' && c <= '9') {
+                hasDigit = true;
+                if (mantissa != 0 || c != '0') {
+                    if (++digits > MAX_FAST_DIGITS) {
+                        fast = false;
+                        break;
+                    }
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (dot) scale++;
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                fast = false;         // Exponent, NaN, infinity or malformed number.
+                break;
+            }
+        }
+        if (fast && hasDigit && scale < POWERS_OF_10.length) {       // A lone "." is malformed.
+            final double value = mantissa / POWERS_OF_10[scale];
+            return negative ? -value : value;
+        }
+        final String text = new String(line, start, end - start, StandardCharsets.US_ASCII);
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw error("Illegal number: " + text);
+        }
+    }
+
+    /**
+     * Returns the field at the given index as a string.
+     */
+    private String field(final int i) {
+        return new String(line, fieldStart[i], fieldEnd[i] - fieldStart[i], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates an exception for a content error in the current line.
+     */
+    private DataStoreContentException error(final String message) {
+        return new DataStoreContentException("Line " + lineNumber + ": " + message);
+    }
+
+    /**
+     * Moves to the next non-empty line which is not a comment, and splits it in fields.
+     *
+     * @return whether a record has been found, or {@code false} on end of file.
+     * @throws IOException if an error occurred while reading the stream.
+     */
+    private boolean nextRecord() throws IOException {
+        while (true) {
+            recordStart = position;
+            if (!nextLine()) {
+                return false;
+            }
+            int i = 0;
+            while (i < lineLength && line[i] <= ' ') i++;
+            if (i < lineLength && line[i] != '#') {
+                split();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Splits the current line in comma-separated fields, with leading and trailing spaces removed.
+     * Commas between double quotes are not considered as separators.
+     */
+    private void split() {
+        fieldCount = 0;
+        int i = 0;
+        while (i <= lineLength) {
+            int start = i;
+            boolean quoted = false;
+            while (i < lineLength && (quoted || line[i] != ',')) {
+                if (line[i] == '"') quoted = !quoted;
+                i++;
+            }
+            int end = i++;
+            while (start < end && line[start] <= ' ') start++;
+            while (end > start && line[end-1] <= ' ') end--;
+            if (end - start >= 2 && line[start] == '"' && line[end-1] == '"') {
+                start++;
+                end--;
+            }
+            if (fieldCount == fieldStart.length) {
+                fieldStart = Arrays.copyOf(fieldStart, fieldCount * 2);
+                fieldEnd   = Arrays.copyOf(fieldEnd,   fieldCount * 2);
+            }
+            fieldStart[fieldCount] = start;
+            fieldEnd[fieldCount++] = end;
+        }
+    }
+
+    /**
+     * Reads the next line into {@link #line}, without line terminator.
+     *
+     * @return whether a line has been read, or {@code false} on end of file.
+     * @throws IOException if an error occurred while reading the stream.
+     */
+    private boolean nextLine() throws IOException {
+        lineLength = 0;
+        boolean any = false;
+        while (true) {
+            if (bufferPosition >= bufferLimit) {
+                bufferLimit = input.read(buffer, 0, buffer.length);
+                bufferPosition = 0;
+                if (bufferLimit <= 0) {
+                    bufferLimit = 0;
+                    if (any) break;
+                    return false;
+                }
+            }
+            any = true;
+            int i = bufferPosition;
+            while (i < bufferLimit && buffer[i] != '\n') i++;
+            final int n = i - bufferPosition;
+            if (lineLength + n > line.length) {
+                line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + n));
+            }
+            System.arraycopy(buffer, bufferPosition, line, lineLength, n);
+            lineLength += n;
+            position   += n;
+            bufferPosition = i;
+            if (i < bufferLimit) {
+                bufferPosition++;       // Skip the '\n' character.
+                position++;
+                break;
+            }
+        }
+        if (lineLength != 0 && line[lineLength - 1] == '\r') {
+            lineLength--;
+        }
+        lineNumber++;
+        return true;
+    }
+
+    /**
+     * Accumulates the values of a trajectory in growable arrays of primitive values.
+     */
+    private static final class Builder {
+        /**
+         * Number of dimensions of coordinate tuples.
+         */
+        private final int dimension;
+
+        /**
+         * Times, coordinates and attribute values added so far.
+         */
+        private double[] times, coordinates;
+        private final double[][] attributes;
+        private int size, coordinateCount;
+
+        /**
+         * Attribute values of the row being parsed. Shall be filled before to invoke {@link #addPositions}.
+         */
+        final double[] rowAttributes;
+
+        /**
+         * Creates a new builder.
+         *
+         * @param  dimension       number of dimensions of coordinate tuples.
+         * @param  attributeCount  number of numerical attributes.
+         */
+        Builder(final int dimension, final int attributeCount) {
+            this.dimension = dimension;
+            times         = new double[1024];
+            coordinates   = new double[1024 * dimension];
+            attributes    = new double[attributeCount][1024];
+            rowAttributes = new double[attributeCount];
+        }
+
+        /**
+         * Returns the number of coordinate values added so far, including the ones of the current row.
+         */
+        int coordinateCount() {
+            return coordinateCount;
+        }
+
+        /**
+         * Adds a coordinate value of the current row.
+         */
+        void addCoordinate(final double value) {
+            if (coordinateCount == coordinates.length) {
+                coordinates = Arrays.copyOf(coordinates, coordinateCount * 2);
+            }
+            coordinates[coordinateCount++] = value;
+        }
+
+        /**
+         * Completes the addition of the current row. The coordinates of the row shall have been added by
+         * {@link #addCoordinate(double)}. The positions are distributed uniformly between the start time
+         * and the end time of the row. If the row contains only one position, it is located at the end time.
+         * If the first position of the row {@linkplain #repeatsLast repeats} the last sample,
+         * then that position is not duplicated.
+         *
+         * @param  numPositions  number of positions in the current row.
+         * @param  start         start time of the row.
+         * @param  end           end time of the row.
+         * @throws DataStoreContentException if the rows are not sorted by time.
+         */
+        void addPositions(final int numPositions, final double start, final double end) throws DataStoreContentException {
+            final int firstCoordinate = size * dimension;
+            int skip = 0;
+            if (repeatsLast((numPositions == 1) ? end : start, coordinates, firstCoordinate)) {
+                System.arraycopy(coordinates, firstCoordinate + dimension, coordinates, firstCoordinate,
+                                 coordinateCount - (firstCoordinate + dimension));
+                coordinateCount -= dimension;
+                skip = 1;
+            }
+            final int newSize = size + numPositions - skip;
+            if (newSize > times.length) {
+                final int capacity = Math.max(times.length * 2, newSize);
+                times = Arrays.copyOf(times, capacity);
+                for (int i=0; i<attributes.length; i++) {
+                    attributes[i] = Arrays.copyOf(attributes[i], capacity);
+                }
+            }
+            for (int j=skip; j<numPositions; j++) {
+                final double t = (numPositions == 1) ? end : start + (end - start) * j / (numPositions - 1);
+                if (size != 0 && t < times[size - 1]) {
+                    throw new DataStoreContentException("Rows of a moving feature shall be sorted by time.");
+                }
+                times[size] = t;
+                for (int i=0; i<attributes.length; i++) {
+                    attributes[i][size] = rowAttributes[i];
+                }
+                size++;
+            }
+        }
+
+        /**
+         * Returns whether a sample at the given time with the given coordinates is a repetition
+         * of the last sample of this builder, i.e. has the same time and the same coordinates.
+         * Attribute values are not compared.
+         *
+         * @param  t       time of the candidate sample.
+         * @param  values  array containing the coordinates of the candidate sample.
+         * @param  offset  index of the first coordinate of the candidate sample.
+         * @return whether the candidate sample repeats the last sample.
+         */
+        private boolean repeatsLast(final double t, final double[] values, final int offset) {
+            if (size == 0 || times[size - 1] != t) {
+                return false;
+            }
+            final int last = size * dimension;
+            return Arrays.equals(coordinates, last - dimension, last, values, offset, offset + dimension);
+        }
+
+        /**
+         * Appends all samples of the given builder after the samples of this builder.
+         * This is used for merging the rows of a moving feature read from consecutive chunks.
+         * If the first sample of the given builder {@linkplain #repeatsLast repeats} the last sample
+         * of this builder, that sample is not duplicated. This is the same rule as {@link #addPositions},
+         * so the result does not depend on how the rows are divided in chunks.
+         *
+         * @param  other  the builder of the next chunk.
+         * @throws DataStoreContentException if the rows are not sorted by time.
+         */
+        void append(final Builder other) throws DataStoreContentException {
+            if (other.size == 0) {
+                return;
+            }
+            if (size != 0 && other.times[0] < times[size - 1]) {
+                throw new DataStoreContentException("Rows of a moving feature shall be sorted by time.");
+            }
+            final int skip = repeatsLast(other.times[0], other.coordinates, 0) ? 1 : 0;
+            final int n = other.size - skip;
+            times = Arrays.copyOf(times, size + n);
+            System.arraycopy(other.times, skip, times, size, n);
+            coordinates = Arrays.copyOf(coordinates, coordinateCount + n * dimension);
+            System.arraycopy(other.coordinates, skip * dimension, coordinates, coordinateCount, n * dimension);
+            for (int i=0; i<attributes.length; i++) {
+                attributes[i] = Arrays.copyOf(attributes[i], size + n);
+                System.arraycopy(other.attributes[i], skip, attributes[i], size, n);
+            }
+            size += n;
+            coordinateCount += n * dimension;
+        }
+
+        /**
+         * Returns the trajectory built from all rows added to this builder.
+         *
+         * @param  identifier  the moving feature identifier.
+         * @param  crs         identifier of the CRS of coordinate tuples, or {@code null} if unknown.
+         * @param  names       names of numerical attributes.
+         * @return the trajectory.
+         */
+        Trajectory build(final String identifier, final String crs, final List<String> names) {
+            final var values = new LinkedHashMap<String, double[]>();
+            for (int i=0; i<attributes.length; i++) {
+                values.put(names.get(i), Arrays.copyOf(attributes[i], size));
+            }
+            return new Trajectory(identifier, crs, dimension, Arrays.copyOf(times, size),
+                                  Arrays.copyOf(coordinates, coordinateCount), values);
+        }
+    }
+
+    /**
+     * An input stream reading the bytes of a buffer, typically memory-mapped.
+     */
+    private static final class BufferInput extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInput(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? Byte.toUnsignedInt(buffer.get()) : -1;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            length = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, length);
+            return length;
+        }
+    }
+}
@@ -0,0 +1,613 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.DataFormatException;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferFloat;
+import java.awt.image.DataBufferDouble;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.nio.ByteOrder;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.nio.charset.StandardCharsets;
+import mycompany.geospatial.CacheStatistics;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.datum.PixelInCell;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.Matrix;
+
+// Implementation-dependent
+import org.apache.sis.coverage.SampleDimension;
+import org.apache.sis.coverage.grid.GridCoverage;
+import org.apache.sis.coverage.grid.GridCoverageBuilder;
+import org.apache.sis.coverage.grid.GridExtent;
+import org.apache.sis.coverage.grid.GridGeometry;
+import org.apache.sis.image.Interpolation;
+import org.apache.sis.referencing.operation.transform.MathTransforms;
+
+
+/**
+ * Persistent cache of resampled tiles, stored in a local directory.
+ * Tiles are grouped by <em>product</em>: the result of resampling a source file to a target grid with
+ * a given interpolation. The product key is a hash of the source file path, modification time and length,
+ * of the target grid geometry, of the interpolation method and of the approximation of the transform from target
+ * pixels to source pixels, identified by the requested tolerance and the {@link GridApproximation} revision.
+ * The tolerance identifies how the approximation was built, not the error of the result. Consequently a modified
+ * source file, a different request or a different approximation algorithm never matches stale tiles.
+ *
+ * <p>Each tile is stored in its own file, as a small header followed by the sample values compressed
+ * with deflate. Whole coverages are stored as tiles too, together with a small file describing the tile
+ * layout and the sample dimensions. The total size of the files is bounded: when it exceeds the capacity,
+ * the least recently used files are deleted, and product directories left empty are deleted as well.
+ * The access time is recorded as the file modification time, so the order is preserved between executions.</p>
+ *
+ * <p>The cache is disabled by default. It is enabled by setting the {@value #DIRECTORY_PROPERTY}
+ * system property to the directory where to write the files. The capacity in megabytes is given by
+ * the {@code mycompany.geospatial.tileCacheSize} system property. This class is thread-safe.
+ * Failures to read or write the cache are not fatal: they are handled as cache misses.</p>
+ */
+public final class TileCache {
+    /**
+     * Name of the system property specifying the directory where to store tiles.
+     */
+    public static final String DIRECTORY_PROPERTY = "mycompany.geospatial.tileCacheDirectory";
+
+    /**
+     * Maximal size of all files in the cache, in bytes.
+     * Can be modified with the {@code mycompany.geospatial.tileCacheSize} system property (in megabytes).
+     */
+    private static final long CAPACITY = Long.getLong("mycompany.geospatial.tileCacheSize", 512) << 20;
+
+    /**
+     * Magic number identifying the tile file format, including a version number in the last byte.
+     */
+    private static final long MAGIC = 0x4D43_5449_4C45_0001L;
+
+    /**
+     * Number of bytes in the header of a tile file.
+     */
+    private static final int HEADER_LENGTH = Long.BYTES + 7 * Integer.BYTES;
+
+    /**
+     * Suffix of tile files.
+     */
+    private static final String TILE_SUFFIX = ".tile";
+
+    /**
+     * Name of the file describing the tile layout and the sample dimensions of a coverage.
+     */
+    private static final String COVERAGE_FILE = "coverage.bin";
+
+    /**
+     * Magic number identifying the coverage file format, including a version number in the last byte.
+     */
+    private static final long COVERAGE_MAGIC = 0x4D43_4356_4752_0001L;
+
+    /**
+     * Maximal width and height of the tiles of a coverage stored by {@link #putCoverage putCoverage(…)}.
+     * Larger tiles of the coverage image are split.
+     */
+    private static final int COVERAGE_TILE_SIZE = 512;
+
+    /**
+     * Classes allowed in the serialized sample dimensions of a coverage file.
+     * Deserialization of any other class is rejected.
+     */
+    private static final ObjectInputFilter RANGES_FILTER = ObjectInputFilter.Config.createFilter(
+            "java.lang.*;java.util.*;javax.measure.**;org.opengis.**;org.apache.sis.**;!*");
+
+    /**
+     * The cache for the directory specified by the system property, created when first needed.
+     */
+    private static TileCache instance;
+
+    /**
+     * The directory where tiles are stored.
+     */
+    private final Path directory;
+
+    /**
+     * Maximal size of all files in the cache, in bytes.
+     */
+    private final long capacity;
+
+    /**
+     * Size of each file in the cache, from the least recently used to the most recently used.
+     * All accesses shall be synchronized on this map.
+     */
+    private final LinkedHashMap<Path,Long> entries;
+
+    /**
+     * Sum of the sizes of all files in the cache.
+     */
+    private long totalSize;
+
+    /**
+     * Statistics about cache usage.
+     */
+    private long hits, misses, evictions;
+
+    /**
+     * Creates a cache in the given directory, indexing the files written by previous executions.
+     *
+     * @param  directory  the directory where tiles are stored.
+     * @param  capacity   maximal size of all files in the cache, in bytes.
+     * @throws IOException if the directory cannot be created or scanned.
+     */
+    public TileCache(final Path directory, final long capacity) throws IOException {
+        this.directory = directory;
+        this.capacity  = capacity;
+        entries = new LinkedHashMap<>(256, 0.75f, true);
+        Files.createDirectories(directory);
+        final var files = new ArrayList<Path>();
+        try (Stream<Path> walk = Files.walk(directory, 2)) {
+            walk.filter(Files::isRegularFile).forEach(files::add);
+        }
+        final var times = new LinkedHashMap<Path,FileTime>();
+        for (final Path file : files) {
+            times.put(file, Files.getLastModifiedTime(file));
+        }
+        files.sort((a, b) -> times.get(a).compareTo(times.get(b)));
+        for (final Path file : files) {
+            final long size = Files.size(file);
+            entries.put(file, size);
+            totalSize += size;
+        }
+        evict();
+        try (Stream<Path> list = Files.list(directory)) {
+            list.filter(Files::isDirectory).forEach(TileCache::deleteIfEmpty);
+        }
+    }
+
+    /**
+     * Returns the cache for the directory specified by the {@value #DIRECTORY_PROPERTY} system property.
+     *
+     * @return the tile cache, or {@code null} if the cache is disabled or the directory cannot be used.
+     */
+    public static synchronized TileCache getInstance() {
+        final String name = System.getProperty(DIRECTORY_PROPERTY);
+        if (name == null || name.isBlank()) {
+            return null;
+        }
+        final Path directory = Paths.get(name);
+        if (instance == null || !instance.directory.equals(directory)) {
+            try {
+                instance = new TileCache(directory, CAPACITY);
+            } catch (IOException e) {
+                // Not fatal since the cache is only an optimization.
+                Logger.getLogger("mycompany.geospatial").log(Level.WARNING, "Cannot use tile cache in " + directory, e);
+                return null;
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the key of the product resulting from the resampling of the given file.
+     *
+     * @param  source         the file to resample.
+     * @param  target         the grid geometry of the resampling result.
+     * @param  interpolation  the interpolation method.
+     * @param  tolerance      tolerance requested for approximating the transform from target pixels
+     *                        to source pixels, or 0 if the exact transform is used.
+     * @return hexadecimal key identifying the product.
+     * @throws IOException if the modification time or length of the source file cannot be obtained.
+     */
+    public static String product(final File source, final GridGeometry target, final Interpolation interpolation,
+                                 final double tolerance) throws IOException
+    {
+        final Path path = source.toPath().toAbsolutePath();
+        final var sb = new StringBuilder(1000).append(path)
+                .append('\n').append(Files.getLastModifiedTime(path).toMillis())
+                .append('\n').append(Files.size(path))
+                .append('\n').append(interpolation)
+                .append('\n').append(tolerance);
+        if (tolerance > 0) {
+            sb.append(" GridApproximation ").append(GridApproximation.REVISION);
+        }
+        if (target.isDefined(GridGeometry.EXTENT)) {
+            final GridExtent extent = target.getExtent();
+            for (int i=0; i<extent.getDimension(); i++) {
+                sb.append('\n').append(extent.getLow(i)).append(' ').append(extent.getHigh(i));
+            }
+        }
+        if (target.isDefined(GridGeometry.GRID_TO_CRS)) {
+            final MathTransform gridToCRS = target.getGridToCRS(PixelInCell.CELL_CORNER);
+            final Matrix matrix = MathTransforms.getMatrix(gridToCRS);
+            sb.append('\n').append(matrix != null ? matrix : gridToCRS.toWKT());
+        }
+        if (target.isDefined(GridGeometry.CRS)) {
+            final CoordinateReferenceSystem crs = target.getCoordinateReferenceSystem();
+            String wkt;
+            try {
+                wkt = crs.toWKT();
+            } catch (UnsupportedOperationException e) {
+                wkt = crs.toString();
+            }
+            sb.append('\n').append(wkt);
+        }
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);        // SHA-256 is required on all Java platforms.
+        }
+    }
+
+    /**
+     * Returns the cached tile for the given region of a product.
+     *
+     * @param  product  the product key computed by {@link #product product(…)}.
+     * @param  region   the region in pixel coordinates of the product image.
+     * @return the tile located at the region coordinates, or {@code null} if not cached.
+     */
+    public Raster getTile(final String product, final Rectangle region) {
+        final byte[] content = read(tileFile(product, region));
+        if (content != null) try {
+            return decode(content);
+        } catch (DataFormatException | RuntimeException e) {
+            Logger.getLogger("mycompany.geospatial").log(Level.FINE, "Invalid cached tile", e);
+        }
+        return null;
+    }
+
+    /**
+     * Stores a tile of a product in the cache.
+     *
+     * @param  product  the product key computed by {@link #product product(…)}.
+     * @param  tile     the tile to store. Its bounds are the region in pixel coordinates of the product image.
+     */
+    public void putTile(final String product, final Raster tile) {
+        store(tileFile(product, tile.getBounds()), encode(tile));
+    }
+
+    /**
+     * Returns a coverage stored by {@link #putCoverage putCoverage(…)}.
+     * The sample dimensions and pixel values are restored, but the color model is the default one.
+     * The coverage is a cache miss if any of its tiles has been evicted.
+     *
+     * @param  product  the product key computed by {@link #product product(…)}.
+     * @param  domain   the grid geometry of the coverage.
+     * @return the cached coverage, or {@code null} if not cached.
+     */
+    public GridCoverage getCoverage(final String product, final GridGeometry domain) {
+        final byte[] content = read(directory.resolve(product).resolve(COVERAGE_FILE));
+        if (content != null) try (var in = new DataInputStream(new ByteArrayInputStream(content))) {
+            if (in.readLong() != COVERAGE_MAGIC) {
+                throw new IOException("Not a coverage file.");
+            }
+            final int minX       = in.readInt();
+            final int minY       = in.readInt();
+            final int width      = in.readInt();
+            final int height     = in.readInt();
+            final int tileWidth  = in.readInt();
+            final int tileHeight = in.readInt();
+            final GridExtent extent = domain.getExtent();
+            if (extent.getSize(0) != width || extent.getSize(1) != height) {
+                throw new IOException("Mismatched coverage size.");
+            }
+            final SampleDimension[] bands;
+            try (var ranges = new ObjectInputStream(in)) {
+                ranges.setObjectInputFilter(RANGES_FILTER);
+                bands = (SampleDimension[]) ranges.readObject();
+            }
+            /*
+             * Copy the tiles in a single raster starting at (0,0). The raster has the same size
+             * as the image rendered by the coverage before it was stored, so it fits in memory.
+             */
+            WritableRaster data = null;
+            for (int y=0; y<height; y += tileHeight) {
+                for (int x=0; x<width; x += tileWidth) {
+                    final var region = new Rectangle(minX + x, minY + y,
+                            Math.min(tileWidth, width - x), Math.min(tileHeight, height - y));
+                    final Raster tile = getTile(product, region);
+                    if (tile == null) {
+                        return null;
+                    }
+                    if (data == null) {
+                        data = tile.createCompatibleWritableRaster(width, height);
+                    }
+                    data.setRect(-minX, -minY, tile);
+                }
+            }
+            if (data != null) {
+                return new GridCoverageBuilder().setDomain(domain).setRanges(bands).setValues(data).build();
+            }
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            Logger.getLogger("mycompany.geospatial").log(Level.FINE, "Invalid cached coverage", e);
+        }
+        return null;
+    }
+
+    /**
+     * Stores a two-dimensional coverage in the cache, as tiles together with its sample dimensions.
+     * This method computes all pixel values of the coverage, one tile at a time. Each tile is encoded
+     * separately, so the size of a cache file does not depend on the size of the coverage.
+     *
+     * @param  product   the product key computed by {@link #product product(…)}.
+     * @param  coverage  the coverage to store.
+     */
+    public void putCoverage(final String product, final GridCoverage coverage) {
+        final RenderedImage image = coverage.render(null);
+        final int minX       = image.getMinX();
+        final int minY       = image.getMinY();
+        final int width      = image.getWidth();
+        final int height     = image.getHeight();
+        final int tileWidth  = Math.min(image.getTileWidth(),  COVERAGE_TILE_SIZE);
+        final int tileHeight = Math.min(image.getTileHeight(), COVERAGE_TILE_SIZE);
+        final var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeLong(COVERAGE_MAGIC);
+            out.writeInt(minX);
+            out.writeInt(minY);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(tileWidth);
+            out.writeInt(tileHeight);
+            try (var ranges = new ObjectOutputStream(out)) {
+                ranges.writeObject(coverage.getSampleDimensions().toArray(SampleDimension[]::new));
+            }
+        } catch (IOException e) {
+            Logger.getLogger("mycompany.geospatial").log(Level.WARNING, "Cannot cache the sample dimensions", e);
+            return;
+        }
+        for (int y=0; y<height; y += tileHeight) {
+            for (int x=0; x<width; x += tileWidth) {
+                putTile(product, image.getData(new Rectangle(minX + x, minY + y,
+                        Math.min(tileWidth, width - x), Math.min(tileHeight, height - y))));
+            }
+        }
+        /*
+         * Written last, so that the coverage is not found in the cache before all its tiles are stored.
+         */
+        store(directory.resolve(product).resolve(COVERAGE_FILE), bytes.toByteArray());
+    }
+
+    /**
+     * Returns statistics about this cache. The size is the number of files.
+     *
+     * @return number of hits, misses and evictions in the cache.
+     */
+    public CacheStatistics statistics() {
+        synchronized (entries) {
+            return new CacheStatistics(hits, misses, evictions, entries.size());
+        }
+    }
+
+    /**
+     * Returns the file of the tile at the given region of a product.
+     */
+    private Path tileFile(final String product, final Rectangle region) {
+        return directory.resolve(product).resolve(region.x + "_" + region.y + '_'
+                + region.width + 'x' + region.height + TILE_SUFFIX);
+    }
+
+    /**
+     * Reads the content of the given file and marks it as the most recently used.
+     *
+     * @return the file content, or {@code null} if the file is not in the cache.
+     */
+    private byte[] read(final Path file) {
+        synchronized (entries) {
+            if (entries.get(file) == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        try {
+            final byte[] content = Files.readAllBytes(file);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return content;
+        } catch (NoSuchFileException e) {
+            // Deleted by another process.
+        } catch (IOException e) {
+            Logger.getLogger("mycompany.geospatial").log(Level.FINE, "Cannot read " + file, e);
+        }
+        synchronized (entries) {
+            final Long size = entries.remove(file);
+            if (size != null) totalSize -= size;
+        }
+        return null;
+    }
+
+    /**
+     * Writes the given content in the given file, then evicts the least recently used files if needed.
+     * The file is first written under a temporary name, then renamed.
+     */
+    private void store(final Path file, final byte[] content) {
+        try {
+            final Path parent = Files.createDirectories(file.getParent());
+            final Path tmp = Files.createTempFile(parent, "tile", ".tmp");
+            try {
+                Files.write(tmp, content);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            // Not fatal since the cache is only an optimization.
+            Logger.getLogger("mycompany.geospatial").log(Level.WARNING, "Cannot write " + file, e);
+            return;
+        }
+        synchronized (entries) {
+            final Long previous = entries.put(file, (long) content.length);
+            totalSize += content.length - (previous != null ? previous : 0);
+            evict();
+        }
+    }
+
+    /**
+     * Deletes the least recently used files until the total size is not greater than the capacity.
+     * Shall be invoked in a block synchronized on {@link #entries}, or in the constructor.
+     */
+    private void evict() {
+        final Iterator<Map.Entry<Path,Long>> it = entries.entrySet().iterator();
+        while (totalSize > capacity && it.hasNext()) {
+            final var entry = it.next();
+            it.remove();
+            totalSize -= entry.getValue();
+            evictions++;
+            final Path file = entry.getKey();
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                Logger.getLogger("mycompany.geospatial").log(Level.FINE, "Cannot delete " + file, e);
+            }
+            final Path parent = file.getParent();
+            if (!parent.equals(directory)) {
+                deleteIfEmpty(parent);
+            }
+        }
+    }
+
+    /**
+     * Deletes the given product directory if it does not contain any file.
+     * A tile written concurrently in that directory is not cached, which is not fatal.
+     */
+    private static void deleteIfEmpty(final Path product) {
+        try {
+            Files.deleteIfExists(product);
+        } catch (DirectoryNotEmptyException e) {
+            // Still used, keep it.
+        } catch (IOException e) {
+            Logger.getLogger("mycompany.geospatial").log(Level.FINE, "Cannot delete " + product, e);
+        }
+    }
+
+    /**
+     * Encodes the given tile as a header followed by pixel-interleaved samples compressed with deflate.
+     */
+    private static byte[] encode(final Raster tile) {
+        final int width    = tile.getWidth();
+        final int height   = tile.getHeight();
+        final int numBands = tile.getNumBands();
+        final int dataType = tile.getSampleModel().getDataType();
+        final int bytes    = DataBuffer.getDataTypeSize(dataType) / Byte.SIZE;
+        final var raw = ByteBuffer.allocate(width * height * numBands * bytes).order(ByteOrder.LITTLE_ENDIAN);
+        final int x = tile.getMinX();
+        int[]    ints    = null;
+        float[]  floats  = null;
+        double[] doubles = null;
+        for (int r=0; r<height; r++) {
+            final int y = tile.getMinY() + r;
+            switch (dataType) {
+                case DataBuffer.TYPE_FLOAT: {
+                    floats = tile.getPixels(x, y, width, 1, floats);
+                    for (final float v : floats) raw.putFloat(v);
+                    break;
+                }
+                case DataBuffer.TYPE_DOUBLE: {
+                    doubles = tile.getPixels(x, y, width, 1, doubles);
+                    for (final double v : doubles) raw.putDouble(v);
+                    break;
+                }
+                default: {
+                    ints = tile.getPixels(x, y, width, 1, ints);
+                    switch (bytes) {
+                        case Byte.BYTES:    for (final int v : ints) raw.put((byte) v); break;
+                        case Short.BYTES:   for (final int v : ints) raw.putShort((short) v); break;
+                        default:            for (final int v : ints) raw.putInt(v); break;
+                    }
+                }
+            }
+        }
+        final var deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw.array());
+            deflater.finish();
+            final var out = new ByteArrayOutputStream(raw.capacity() / 4 + HEADER_LENGTH);
+            final var header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(MAGIC).putInt(width).putInt(height).putInt(numBands).putInt(dataType)
+                  .putInt(x).putInt(tile.getMinY()).putInt(raw.capacity());
+            out.write(header.array(), 0, HEADER_LENGTH);
+            final byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decodes a tile encoded by {@link #encode(Raster)}.
+     */
+    private static Raster decode(final byte[] content) throws DataFormatException {
+        final ByteBuffer header = ByteBuffer.wrap(content, 0, HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getLong() != MAGIC) {
+            throw new DataFormatException("Not a tile file.");
+        }
+        final int width    = header.getInt();
+        final int height   = header.getInt();
+        final int numBands = header.getInt();
+        final int dataType = header.getInt();
+        final int minX     = header.getInt();
+        final int minY     = header.getInt();
+        final byte[] raw   = new byte[header.getInt()];
+        final var inflater = new Inflater();
+        try {
+            inflater.setInput(content, HEADER_LENGTH, content.length - HEADER_LENGTH);
+            if (inflater.inflate(raw) != raw.length) {
+                throw new DataFormatException("Truncated tile file.");
+            }
+        } finally {
+            inflater.end();
+        }
+        final int[] offsets = new int[numBands];
+        for (int i=0; i<numBands; i++) offsets[i] = i;
+        final var model = new PixelInterleavedSampleModel(dataType, width, height, numBands, width * numBands, offsets);
+        final WritableRaster tile = Raster.createWritableRaster(model, new Point(minX, minY));
+        final DataBuffer data = tile.getDataBuffer();
+        final ByteBuffer values = ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN);
+        switch (dataType) {
+            case DataBuffer.TYPE_BYTE:   values.get(((DataBufferByte) data).getData()); break;
+            case DataBuffer.TYPE_USHORT: values.asShortBuffer().get(((DataBufferUShort) data).getData()); break;
+            case DataBuffer.TYPE_SHORT:  values.asShortBuffer().get(((DataBufferShort) data).getData()); break;
+            case DataBuffer.TYPE_INT:    values.asIntBuffer().get(((DataBufferInt) data).getData()); break;
+            case DataBuffer.TYPE_FLOAT:  values.asFloatBuffer().get(((DataBufferFloat) data).getData()); break;
+            case DataBuffer.TYPE_DOUBLE: values.asDoubleBuffer().get(((DataBufferDouble) data).getData()); break;
+            default: throw new DataFormatException("Unsupported data type.");
+        }
+        return tile;
+    }
+}
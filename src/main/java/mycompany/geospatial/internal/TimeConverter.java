@@ -0,0 +1,425 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import javax.measure.Unit;
+import javax.measure.UnitConverter;
+import javax.measure.quantity.Time;
+
+// Implementation-neutral
+import org.opengis.referencing.crs.TemporalCRS;
+
+// Implementation-dependent
+import org.apache.sis.measure.Units;
+import org.apache.sis.math.Fraction;
+
+
+/**
+ * Converts times between temporal CRS values and instants in bulk, without creating objects.
+ * {@link org.apache.sis.referencing.crs.DefaultTemporalCRS#toValue(Instant)} requires an {@link Instant}
+ * object for each value and inverses the unit converter on each call. This class takes instead arrays
+ * of epoch seconds and nanoseconds, or ISO-8601 texts which are parsed directly. The results are the
+ * same, bit for bit, as the results of {@code DefaultTemporalCRS}.
+ *
+ * <p>ISO-8601 texts of the form {@code YYYY-MM-DDThh:mm:ss[.fraction](Z|±hh:mm)} are parsed without
+ * object creation. Other forms accepted by {@link Instant#parse(CharSequence)}, for example with leap
+ * seconds or years of more than 4 digits, are delegated to that method.</p>
+ *
+ * <p>Instances of this class are immutable and thread-safe.</p>
+ */
+public final class TimeConverter {
+    /**
+     * Number of seconds in a day.
+     */
+    private static final int SECONDS_PER_DAY = 86400;
+
+    /**
+     * Number of nanoseconds in a second.
+     */
+    private static final int NANOS_PER_SECOND = 1_000_000_000;
+
+    /**
+     * Number of days between 0000-03-01 and 1970-01-01 in the proleptic Gregorian calendar.
+     */
+    private static final int DAYS_0000_TO_1970 = 719468;
+
+    /**
+     * Number of days in a 400-year cycle of the Gregorian calendar.
+     */
+    private static final int DAYS_PER_CYCLE = 146097;
+
+    /**
+     * Converter from CRS values to seconds since the origin, truncated to an integer number of seconds.
+     */
+    private final UnitConverter toSeconds;
+
+    /**
+     * Inverse of {@link #toSeconds}, computed once.
+     */
+    private final UnitConverter fromSeconds;
+
+    /**
+     * The CRS origin in seconds since the Java epoch, truncated toward zero.
+     * The fractional part, if any, is included in {@link #toSeconds}.
+     */
+    private final long origin;
+
+    /**
+     * Creates a converter for the given temporal CRS.
+     * The converter is computed in the same way as {@code DefaultTemporalCRS}.
+     *
+     * @param  crs  the temporal CRS of the values.
+     * @throws ClassCastException if the CRS axis unit is not a unit of time.
+     */
+    public TimeConverter(final TemporalCRS crs) {
+        final Unit<Time> unit = crs.getCoordinateSystem().getAxis(0).getUnit().asType(Time.class);
+        UnitConverter c = unit.getConverterTo(Units.SECOND);
+        long time = crs.getDatum().getOrigin().getTime();
+        origin = time / 1000;
+        time %= 1000;
+        if (time != 0) {
+            c = Units.converter(null, new Fraction((int) time, 1000).simplify()).concatenate(c);
+        }
+        toSeconds   = c;
+        fromSeconds = c.inverse();
+    }
+
+    /**
+     * Converts the given instant to a value in the temporal CRS.
+     *
+     * @param  epochSecond  number of seconds since 1970-01-01T00:00:00Z.
+     * @param  nano         nanoseconds in the second, from 0 to 999,999,999.
+     * @return the time as a value in the temporal CRS.
+     */
+    public double toValue(final long epochSecond, final int nano) {
+        return fromSeconds.convert((epochSecond - origin) + nano / 1E9);
+    }
+
+    /**
+     * Converts instants given as epoch seconds and nanoseconds to values in the temporal CRS.
+     *
+     * @param  epochSeconds  number of seconds since 1970-01-01T00:00:00Z.
+     * @param  nanos         nanoseconds in the second for each time, or {@code null} if all zero.
+     * @param  srcOff        index of the first time to convert in the source arrays.
+     * @param  dst           where to store the values in the temporal CRS.
+     * @param  dstOff        index of the first value to store in the destination array.
+     * @param  count         number of times to convert.
+     */
+    public void toValues(final long[] epochSeconds, final int[] nanos, final int srcOff,
+                         final double[] dst, final int dstOff, final int count)
+    {
+        for (int i=0; i<count; i++) {
+            dst[dstOff + i] = toValue(epochSeconds[srcOff + i], (nanos != null) ? nanos[srcOff + i] : 0);
+        }
+    }
+
+    /**
+     * Parses the given ISO-8601 texts and converts the instants to values in the temporal CRS.
+     *
+     * @param  texts   the ISO-8601 texts to parse.
+     * @param  dst     where to store the values in the temporal CRS.
+     * @param  dstOff  index of the first value to store in the destination array.
+     * @throws DateTimeParseException if a text cannot be parsed.
+     */
+    public void toValues(final List<? extends CharSequence> texts, final double[] dst, int dstOff) {
+        for (final CharSequence text : texts) {
+            dst[dstOff++] = parse(text, 0, text.length());
+        }
+    }
+
+    /**
+     * Parses the given ISO-8601 text and converts the instant to a value in the temporal CRS.
+     *
+     * @param  text  the text to parse.
+     * @return the time as a value in the temporal CRS.
+     * @throws DateTimeParseException if the text cannot be parsed.
+     */
+    public double parse(final CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * Parses a part of the given ISO-8601 text and converts the instant to a value in the temporal CRS.
+     *
+     * @param  text   the text to parse.
+     * @param  start  index of the first character to parse.
+     * @param  end    index after the last character to parse.
+     * @return the time as a value in the temporal CRS.
+     * @throws DateTimeParseException if the text cannot be parsed.
+     */
+    public double parse(final CharSequence text, final int start, final int end) {
+        /*
+         * Fast path for YYYY-MM-DDThh:mm:ss[.fraction](Z|±hh:mm). All numbers are verified
+         * to be in their valid range; any deviation is delegated to Instant.parse(…),
+         * which either handles the case or throws the exception.
+         */
+        parse: if (end - start >= 20) {
+            final int year   = digits(text, start,      4);
+            final int month  = digits(text, start +  5, 2);
+            final int day    = digits(text, start +  8, 2);
+            final int hour   = digits(text, start + 11, 2);
+            final int minute = digits(text, start + 14, 2);
+            final int second = digits(text, start + 17, 2);
+            if ((year | month | day | hour | minute | second) < 0
+                    || text.charAt(start +  4) != '-' || text.charAt(start +  7) != '-'
+                    || (text.charAt(start + 10) | 0x20) != 't'
+                    || text.charAt(start + 13) != ':' || text.charAt(start + 16) != ':'
+                    || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+                    || hour > 23 || minute > 59 || second > 59)
+            {
+                break parse;
+            }
+            int i = start + 19;
+            int nano = 0;
+            if (text.charAt(i) == '.') {
+                int scale = NANOS_PER_SECOND;
+                while (++i < end) {
+                    final int d = text.charAt(i) - '0';
+                    if (d < 0 || d > 9) break;
+                    if (scale == 1) break parse;                // More than 9 digits.
+                    scale /= 10;
+                    nano += d * scale;
+                }
+                if (scale == NANOS_PER_SECOND) break parse;     // No digit after the dot.
+            }
+            if (i >= end) break parse;
+            int offset = 0;
+            final char c = text.charAt(i);
+            if ((c | 0x20) == 'z') {
+                i++;
+            } else if (c == '+' || c == '-') {
+                if (end - i < 6) break parse;
+                final int oh = digits(text, i + 1, 2);
+                final int om = digits(text, i + 4, 2);
+                if ((oh | om) < 0 || text.charAt(i + 3) != ':' || om > 59 || oh*60 + om > 18*60) break parse;
+                offset = (oh * 60 + om) * 60;
+                if (c == '-') offset = -offset;
+                i += 6;
+            } else {
+                break parse;
+            }
+            if (i != end) break parse;
+            final long epochSecond = epochDay(year, month, day) * SECONDS_PER_DAY
+                                   + (hour * 60 + minute) * 60 + second - offset;
+            return toValue(epochSecond, nano);
+        }
+        final Instant t = Instant.parse(text.subSequence(start, end));
+        return toValue(t.getEpochSecond(), t.getNano());
+    }
+
+    /**
+     * Parses the given number of decimal digits, or returns -1 if a character is not a digit.
+     */
+    private static int digits(final CharSequence text, int i, int n) {
+        int value = 0;
+        while (--n >= 0) {
+            final int d = text.charAt(i++) - '0';
+            if (d < 0 || d > 9) return -1;
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the number of days in the given month of the proleptic Gregorian calendar.
+     */
+    private static int lengthOfMonth(final int year, final int month) {
+        switch (month) {
+            case 2:  return ((year & 3) == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4: case 6: case 9: case 11: return 30;
+            default: return 31;
+        }
+    }
+
+    /**
+     * Returns the number of days since 1970-01-01 for the given date of the proleptic Gregorian calendar.
+     * Years start in March for this computation, so the leap day is at the end of the year.
+     */
+    private static long epochDay(int year, final int month, final int day) {
+        if (month <= 2) year--;
+        final int era = Math.floorDiv(year, 400);
+        final int yoe = year - era * 400;                                       // [0, 399]
+        final int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;  // [0, 365]
+        final int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;                  // [0, 146096]
+        return (long) era * DAYS_PER_CYCLE + doe - DAYS_0000_TO_1970;
+    }
+
+    /**
+     * Converts the given value in the temporal CRS to an instant.
+     *
+     * @param  value  the time as a value in the temporal CRS.
+     * @return the instant, or {@code null} if the value is NaN or infinite.
+     */
+    public Instant toInstant(final double value) {
+        if (!Double.isFinite(value)) {
+            return null;
+        }
+        final double seconds = toSeconds.convert(value);
+        final long whole = Math.round(seconds);
+        return Instant.ofEpochSecond(Math.addExact(whole, origin), Math.round((seconds - whole) * 1E9));
+    }
+
+    /**
+     * Converts values in the temporal CRS to epoch seconds and nanoseconds.
+     * This is the inverse of {@link #toValues(long[], int[], int, double[], int, int)}.
+     * Values that are NaN or infinite are converted to {@link Long#MIN_VALUE} seconds.
+     *
+     * @param  values        the times as values in the temporal CRS.
+     * @param  srcOff        index of the first value to convert.
+     * @param  epochSeconds  where to store the number of seconds since 1970-01-01T00:00:00Z.
+     * @param  nanos         where to store the nanoseconds in the second, or {@code null} if not needed.
+     * @param  dstOff        index of the first time to store in the destination arrays.
+     * @param  count         number of values to convert.
+     */
+    public void toEpoch(final double[] values, final int srcOff, final long[] epochSeconds, final int[] nanos,
+                        final int dstOff, final int count)
+    {
+        for (int i=0; i<count; i++) {
+            final double value = values[srcOff + i];
+            long second = Long.MIN_VALUE;
+            int  nano   = 0;
+            if (Double.isFinite(value)) {
+                final double seconds = toSeconds.convert(value);
+                final long whole = Math.round(seconds);
+                second = Math.addExact(whole, origin);
+                nano = (int) Math.round((seconds - whole) * 1E9);
+                if (nano < 0) {
+                    nano += NANOS_PER_SECOND;
+                    second--;
+                } else if (nano >= NANOS_PER_SECOND) {
+                    nano -= NANOS_PER_SECOND;
+                    second++;
+                }
+            }
+            epochSeconds[dstOff + i] = second;
+            if (nanos != null) nanos[dstOff + i] = nano;
+        }
+    }
+
+    /**
+     * Formats the given value in the temporal CRS as an ISO-8601 instant.
+     * The format is the same as {@link Instant#toString()}.
+     *
+     * @param  value  the time as a value in the temporal CRS.
+     * @param  dst    where to append the text. Nothing is appended if the value is NaN or infinite.
+     * @return the given buffer, for method calls chaining.
+     */
+    public StringBuilder format(final double value, final StringBuilder dst) {
+        if (!Double.isFinite(value)) {
+            return dst;
+        }
+        final double seconds = toSeconds.convert(value);
+        final long whole = Math.round(seconds);
+        long second = Math.addExact(whole, origin);
+        int  nano   = (int) Math.round((seconds - whole) * 1E9);
+        if (nano < 0) {
+            nano += NANOS_PER_SECOND;
+            second--;
+        } else if (nano >= NANOS_PER_SECOND) {
+            nano -= NANOS_PER_SECOND;
+            second++;
+        }
+        final long epochDay = Math.floorDiv(second, SECONDS_PER_DAY);
+        final int  secOfDay = Math.floorMod(second, SECONDS_PER_DAY);
+        /*
+         * Inverse of epochDay(…). Years start in March, so the month is adjusted at the end.
+         */
+        final long z   = epochDay + DAYS_0000_TO_1970;
+        final long era = Math.floorDiv(z, DAYS_PER_CYCLE);
+        final int  doe = (int) (z - era * DAYS_PER_CYCLE);
+        final int  yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        final int  doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        final int  mp  = (5 * doy + 2) / 153;
+        final int  day = doy - (153 * mp + 2) / 5 + 1;
+        final int month = mp < 10 ? mp + 3 : mp - 9;
+        final long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            return dst.append(Instant.ofEpochSecond(second, nano));
+        }
+        pad(dst, (int) year, 4).append('-');
+        pad(dst, month, 2).append('-');
+        pad(dst, day, 2).append('T');
+        pad(dst, secOfDay / 3600, 2).append(':');
+        pad(dst, secOfDay / 60 % 60, 2).append(':');
+        pad(dst, secOfDay % 60, 2);
+        if (nano != 0) {
+            dst.append('.');
+            if (nano % 1000_000 == 0) {
+                pad(dst, nano / 1000_000, 3);
+            } else if (nano % 1000 == 0) {
+                pad(dst, nano / 1000, 6);
+            } else {
+                pad(dst, nano, 9);
+            }
+        }
+        return dst.append('Z');
+    }
+
+    /**
+     * Appends the given positive number with leading zeros up to the given number of digits.
+     */
+    private static StringBuilder pad(final StringBuilder dst, final int value, int digits) {
+        for (int p = 10; --digits > 0; p *= 10) {
+            if (value < p) dst.append('0');
+        }
+        return dst.append(value);
+    }
+
+    /**
+     * A view of ASCII characters in an array of bytes, for parsing texts without creating strings.
+     * A single instance can be reused for all texts parsed by the same thread.
+     */
+    public static final class Ascii implements CharSequence {
+        /** The bytes of the characters. */
+        private byte[] buffer;
+
+        /** Index of the first character in the buffer. */
+        private int offset;
+
+        /** Number of characters. */
+        private int length;
+
+        /**
+         * Creates an empty view.
+         */
+        public Ascii() {
+            buffer = new byte[0];
+        }
+
+        /**
+         * Sets this view to the given range of bytes.
+         *
+         * @param  buffer  the bytes of the characters, assumed ASCII.
+         * @param  start   index of the first character.
+         * @param  end     index after the last character.
+         * @return this view.
+         */
+        public Ascii wrap(final byte[] buffer, final int start, final int end) {
+            this.buffer = buffer;
+            this.offset = start;
+            this.length = end - start;
+            return this;
+        }
+
+        @Override public int length() {
+            return length;
+        }
+
+        @Override public char charAt(final int index) {
+            return (char) (buffer[offset + index] & 0xFF);
+        }
+
+        @Override public CharSequence subSequence(final int start, final int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override public String toString() {
+            return new String(buffer, offset, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
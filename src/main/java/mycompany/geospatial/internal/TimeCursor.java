@@ -0,0 +1,186 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial.internal;
+
+
+/**
+ * Finds the index of trajectory samples for a sequence of times.
+ * A new cursor is created for each batch of points to transform and remembers
+ * the position of the previous lookup. Instances are not thread-safe.
+ *
+ * <p>For all strategies, the index returned for a time <var>t</var> is the index of the first
+ * sample at a time equal or greater than <var>t</var>. The time is out of range if there is no
+ * such sample, or if <var>t</var> is before the first sample.</p>
+ */
+final class TimeCursor {
+    /**
+     * Minimal distance (in number of samples) for a cursor move to be considered a jump.
+     * The actual threshold may be larger for long trajectories, see {@link #jumpThreshold}.
+     */
+    private static final int MIN_JUMP = 16;
+
+    /**
+     * Number of lookups between two evaluations of the adaptive strategy.
+     */
+    private static final int WINDOW = 256;
+
+    /**
+     * The trajectory samples, with times in increasing order.
+     */
+    private final TrajectoryColumns samples;
+
+    /**
+     * The strategy to use.
+     */
+    private final TimeSearch strategy;
+
+    /**
+     * Distance (in number of samples) above which a cursor move is counted as a jump by the adaptive strategy.
+     * Galloping over <var>d</var> samples costs about 2⋅log₂(<var>d</var>) comparisons while a binary search
+     * costs log₂(<var>n</var>), so the break-even point is a distance of about √<var>n</var>.
+     */
+    private final int jumpThreshold;
+
+    /**
+     * Index found by the previous successful lookup.
+     */
+    private int position;
+
+    /**
+     * Number of lookups and number of jumps since the beginning of current window.
+     * Used only by the adaptive strategy.
+     */
+    private int lookups, jumps;
+
+    /**
+     * Whether the adaptive strategy uses binary search for the current window.
+     */
+    private boolean binaryMode;
+
+    /**
+     * Creates a new cursor positioned on the first sample.
+     *
+     * @param  samples   the trajectory samples, with times in increasing order.
+     * @param  strategy  the strategy to use.
+     */
+    TimeCursor(final TrajectoryColumns samples, final TimeSearch strategy) {
+        this.samples  = samples;
+        this.strategy = strategy;
+        jumpThreshold = Math.max(MIN_JUMP, (int) Math.sqrt(samples.size()));
+    }
+
+    /**
+     * Returns the index of the sample to use for the given time, or -1 if the time is out of range.
+     *
+     * @param  t  the time to search.
+     * @return index of the first sample at a time equal or greater than {@code t}, or -1.
+     */
+    int indexOf(final double t) {
+        if (!(t >= samples.time(0) && t <= samples.time(samples.size() - 1))) {
+            return -1;                          // Out of range or NaN.
+        }
+        final int i;
+        switch (strategy) {
+            case BINARY: return binarySearch(samples, t);
+            case CURSOR: i = gallop(t); break;
+            default: {
+                if (++lookups >= WINDOW) {
+                    binaryMode = (jumps > WINDOW / 4);
+                    lookups = jumps = 0;
+                }
+                if (binaryMode) {
+                    // Still count jumps for deciding whether to come back to the cursor.
+                    i = binarySearch(samples, t);
+                    if (i >= 0) {
+                        if (Math.abs(i - position) > jumpThreshold) jumps++;
+                        position = i;
+                    }
+                    return i;
+                }
+                i = gallop(t);
+                break;
+            }
+        }
+        return valid(samples, i, t) ? i : -1;
+    }
+
+    /**
+     * Searches the given time by galloping from the position of the previous lookup.
+     * The position is updated if the result is a valid index.
+     *
+     * @param  t  the time to search.
+     * @return index of the first sample at a time equal or greater than {@code t}.
+     *         May be the number of samples if the time is after the last sample.
+     */
+    private int gallop(final double t) {
+        final int n = samples.size();
+        final int p = position;
+        int lo, hi, step = 1;
+        if (samples.time(p) >= t) {
+            if (p == 0 || samples.time(p-1) < t) {
+                return p;
+            }
+            hi = p - 1;                         // Invariant: time(hi) >= t
+            lo = hi - step;
+            while (lo >= 0 && samples.time(lo) >= t) {
+                hi = lo;
+                step <<= 1;
+                lo = hi - step;
+            }
+            lo = Math.max(lo + 1, 0);
+        } else {
+            lo = p;                             // Invariant: time(lo) < t
+            hi = lo + step;
+            while (hi < n && samples.time(hi) < t) {
+                lo = hi;
+                step <<= 1;
+                hi = lo + step;
+            }
+            lo++;
+            hi = Math.min(hi, n);
+        }
+        final int i = lowerBound(samples, lo, hi, t);
+        if (step > jumpThreshold) jumps++;
+        if (i < n) position = i;
+        return i;
+    }
+
+    /**
+     * Returns the index of the sample to use for the given time, or -1 if the time is out of range.
+     * This method uses a plain binary search and does not need a cursor.
+     *
+     * @param  samples  the trajectory samples, with times in increasing order.
+     * @param  t      the time to search.
+     * @return index of the first sample at a time equal or greater than {@code t}, or -1.
+     */
+    static int binarySearch(final TrajectoryColumns samples, final double t) {
+        final int i = lowerBound(samples, 0, samples.size(), t);
+        return valid(samples, i, t) ? i : -1;
+    }
+
+    /**
+     * Returns the index of the first element equal or greater than {@code t} in the given range.
+     * The result is guaranteed to be in the {@code [lo … hi]} range, where {@code hi} is returned
+     * if no element in {@code [lo … hi-1]} is equal or greater than {@code t}.
+     */
+    private static int lowerBound(final TrajectoryColumns samples, int lo, int hi, final double t) {
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (samples.time(mid) < t) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns whether the given lower bound is a valid sample index for the given time.
+     * The time is valid if it is not after the last sample and not before the first sample.
+     */
+    private static boolean valid(final TrajectoryColumns samples, final int i, final double t) {
+        return i < samples.size() && (i != 0 || samples.time(0) == t);
+    }
+}
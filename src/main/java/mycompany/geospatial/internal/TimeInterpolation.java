@@ -0,0 +1,51 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial.internal;
+
+import java.util.Locale;
+
+
+/**
+ * Method for computing trajectory values at a time between two samples.
+ * The method is selected by the "Time interpolation" parameter of {@link TrajectoryToECEF}.
+ */
+enum TimeInterpolation {
+    /**
+     * Take the value of the first sample at a time equal or greater than the requested time.
+     * This was the behavior of the initial version of this demo.
+     */
+    NONE,
+
+    /**
+     * Linear interpolation between the two samples around the requested time. This is the default.
+     */
+    LINEAR,
+
+    /**
+     * Cubic Hermite interpolation between the two samples around the requested time.
+     * Tangents are estimated from the neighbor samples (Catmull-Rom spline for non-uniform times),
+     * so the trajectory and its velocity are continuous.
+     */
+    CUBIC;
+
+    /**
+     * Returns the interpolation for the given parameter value, ignoring case.
+     *
+     * @param  name  the parameter value.
+     * @return the interpolation for the given name.
+     * @throws IllegalArgumentException if the given name is not recognized.
+     */
+    static TimeInterpolation parse(final String name) {
+        return valueOf(name.trim().toUpperCase(Locale.US));
+    }
+
+    /**
+     * Returns the parameter value for this interpolation.
+     *
+     * @return the name of this interpolation as used in parameter values.
+     */
+    String parameterValue() {
+        return name().toLowerCase(Locale.US);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial.internal;
+
+import java.util.Locale;
+
+
+/**
+ * Strategy for finding the trajectory sample to use for a given time.
+ * The strategy is selected by the "Time search" parameter of {@link TrajectoryToECEF}.
+ */
+enum TimeSearch {
+    /**
+     * Binary search for each point. Cost is O(log <var>n</var>) for every point,
+     * regardless of the order of points in the batch.
+     */
+    BINARY,
+
+    /**
+     * Move a cursor from the sample found for the previous point, using galloping (exponential) search
+     * when the cursor needs to jump. Cost is O(1) for points sorted by time and O(log <var>d</var>)
+     * for a jump of <var>d</var> samples, but about twice the cost of binary search for random access.
+     */
+    CURSOR,
+
+    /**
+     * Use a cursor while points are sorted or nearly sorted by time, and switch to binary search
+     * for the parts of the batch where the cursor would often need to jump. This is the default.
+     */
+    ADAPTIVE;
+
+    /**
+     * Returns the strategy for the given parameter value, ignoring case.
+     *
+     * @param  name  the parameter value.
+     * @return the strategy for the given name.
+     * @throws IllegalArgumentException if the given name is not recognized.
+     */
+    static TimeSearch parse(final String name) {
+        return valueOf(name.trim().toUpperCase(Locale.US));
+    }
+
+    /**
+     * Returns the parameter value for this strategy.
+     *
+     * @return the name of this strategy as used in parameter values.
+     */
+    String parameterValue() {
+        return name().toLowerCase(Locale.US);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial.internal;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+
+
+/**
+ * The trajectory of a moving feature stored as columns of primitive values.
+ * Times are in days since the Truncated Julian epoch (the units of {@code VoyagerToObservatory.TIME_CRS})
+ * and are sorted in increasing order. Coordinates are stored as a sequence of tuples, one per time.
+ *
+ * <p>Instances of this class are immutable by convention: the arrays are shared for performance reasons
+ * and shall not be modified.</p>
+ */
+final class Trajectory {
+    /**
+     * The moving feature identifier (the {@code mfidref} column).
+     */
+    final String identifier;
+
+    /**
+     * Identifier of the CRS of coordinate tuples as declared in the file, or {@code null} if unknown.
+     * This is the value of the {@code @stboundedby} header, for example {@code "urn:ogc:def:crs:EPSG::4979"}.
+     */
+    final String crs;
+
+    /**
+     * Number of dimensions of each coordinate tuple.
+     */
+    final int dimension;
+
+    /**
+     * The time of each sample, in increasing order.
+     */
+    final double[] times;
+
+    /**
+     * The coordinate tuples, with {@link #dimension} values for each sample.
+     */
+    final double[] coordinates;
+
+    /**
+     * Numerical attribute values (for example yaw, pitch and roll), with one value per sample.
+     */
+    private final Map<String, double[]> attributes;
+
+    /**
+     * Creates a new trajectory. Arrays are not cloned.
+     *
+     * @param  identifier   the moving feature identifier.
+     * @param  crs          identifier of the CRS of coordinate tuples, or {@code null} if unknown.
+     * @param  dimension    number of dimensions of each coordinate tuple.
+     * @param  times        the time of each sample, in increasing order.
+     * @param  coordinates  the coordinate tuples, with {@code dimension} values for each sample.
+     * @param  attributes   numerical attribute values, with one value per sample.
+     */
+    Trajectory(final String identifier, final String crs, final int dimension, final double[] times,
+               final double[] coordinates, final Map<String, double[]> attributes)
+    {
+        if (coordinates.length != times.length * dimension) {
+            throw new IllegalArgumentException("Mismatched number of coordinates and times.");
+        }
+        for (final Map.Entry<String, double[]> entry : attributes.entrySet()) {
+            if (entry.getValue().length != times.length) {
+                throw new IllegalArgumentException("Mismatched number of values for attribute \"" + entry.getKey() + "\".");
+            }
+        }
+        this.identifier  = identifier;
+        this.crs         = crs;
+        this.dimension   = dimension;
+        this.times       = times;
+        this.coordinates = coordinates;
+        this.attributes  = Collections.unmodifiableMap(new LinkedHashMap<>(attributes));
+    }
+
+    /**
+     * Returns the number of samples in this trajectory.
+     *
+     * @return number of samples.
+     */
+    int size() {
+        return times.length;
+    }
+
+    /**
+     * Returns the names of all numerical attributes.
+     *
+     * @return names of numerical attributes, in the order they appear in the file.
+     */
+    Set<String> attributeNames() {
+        return attributes.keySet();
+    }
+
+    /**
+     * Returns the values of the given attribute, or {@code null} if there is no such attribute.
+     *
+     * @param  name  name of the attribute.
+     * @return values of the attribute, with one value per sample, or {@code null} if none.
+     */
+    double[] attribute(final String name) {
+        return attributes.get(name);
+    }
+
+    /**
+     * Returns a string representation for debugging purposes.
+     */
+    @Override
+    public String toString() {
+        return "Trajectory[\"" + identifier + "\", " + size() + " samples, attributes=" + attributeNames() + ']';
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial.internal;
+
+import java.lang.ref.SoftReference;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import mycompany.geospatial.CacheStatistics;
+
+// Implementation-specific
+import org.apache.sis.storage.DataStoreException;
+
+
+/**
+ * Cache of trajectories parsed from Moving Features files.
+ * Many coordinate operations may refer to the same trajectory file, for example operations read from
+ * different GML documents or operations for different features of the same file. This cache ensures
+ * that each file is parsed only once, even when many threads request the same file concurrently.
+ *
+ * <p>Cache entries are keyed by the file URL together with its modification time and length.
+ * If the file is modified, the next request parses the file again and the stale entry is removed.
+ * Resources in JAR files are considered immutable, and the version of other resources which are not
+ * on the local file system is checked at most once per {@linkplain #CHECK_INTERVAL check interval},
+ * because getting it requires a connection.
+ * The number of files kept in the cache is bounded, with the least recently used files discarded first.</p>
+ *
+ * <p>The trajectories are softly referenced. Transforms using a compact form of the trajectory do not keep
+ * the arrays parsed from the file, so those arrays can be reclaimed by the garbage collector when memory is
+ * needed. In such case, the next request parses the file again.</p>
+ */
+final class TrajectoryCache {
+    /**
+     * Maximal number of files to keep in the cache.
+     * Can be modified with the {@code mycompany.geospatial.trajectoryCacheSize} system property.
+     */
+    private static final int CAPACITY = Integer.getInteger("mycompany.geospatial.trajectoryCacheSize", 16);
+
+    /**
+     * Minimal time in milliseconds between two checks of the version of a resource which is neither
+     * on the local file system nor in a JAR file. A value of 0 checks the version on each request.
+     * Can be modified with the {@code mycompany.geospatial.trajectoryCheckInterval} system property.
+     */
+    private static final long CHECK_INTERVAL = Long.getLong("mycompany.geospatial.trajectoryCheckInterval", 1000);
+
+    /**
+     * Identification of a version of a file.
+     *
+     * @param source  the URL of the file, as a string for efficient hash code computation.
+     * @param stamp   last modification time of the file, or 0 if unknown.
+     * @param length  length of the file in bytes, or -1 if unknown.
+     */
+    record Key(String source, long stamp, long length) {
+    }
+
+    /**
+     * The parsed trajectories for each version of a file.
+     */
+    private static final BoundedCache<Key, SoftReference<Map<String, Trajectory>>> CACHE =
+            new BoundedCache<>(CAPACITY, 0, TimeUnit.SECONDS);
+
+    /**
+     * The most recent version seen for each file. Used for removing stale entries from the cache.
+     * When this map has more than twice the cache capacity, the versions that are no longer
+     * in the cache are removed, so the size of this map is bounded together with the cache.
+     */
+    private static final Map<String, Key> LATEST = new ConcurrentHashMap<>();
+
+    /**
+     * The versions of resources which are neither on the local file system nor in a JAR file.
+     * Entries expire after {@link #CHECK_INTERVAL}, so a modified resource is detected after that delay.
+     */
+    private static final BoundedCache<String, Key> REMOTE_VERSIONS =
+            new BoundedCache<>(2 * CAPACITY, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+
+    /**
+     * Do not allow instantiation of this class.
+     */
+    private TrajectoryCache() {
+    }
+
+    /**
+     * Returns the trajectories of all moving features in the given file.
+     * The file is parsed only if it is not already in the cache or if it has been modified.
+     *
+     * @param  source  the Moving Features file to read.
+     * @return the trajectories of all moving features, in order of first appearance in the file.
+     * @throws DataStoreException if an error occurred while reading the file or if the content is invalid.
+     */
+    static Map<String, Trajectory> get(final URL source) throws DataStoreException {
+        return get(source, version(source));
+    }
+
+    /**
+     * Returns the trajectories of all moving features in the given version of a file.
+     * The version shall have been obtained by {@link #version(URL)} just before this call.
+     *
+     * @param  source  the Moving Features file to read.
+     * @param  key     the current version of the file.
+     * @return the trajectories of all moving features, in order of first appearance in the file.
+     * @throws DataStoreException if an error occurred while reading the file or if the content is invalid.
+     */
+    static Map<String, Trajectory> get(final URL source, final Key key) throws DataStoreException {
+        final Key previous = LATEST.put(key.source, key);
+        if (previous != null && !previous.equals(key)) {
+            CACHE.remove(previous);
+        } else if (previous == null && LATEST.size() > 2 * CAPACITY) {
+            prune();
+        }
+        for (;;) {
+            @SuppressWarnings("unchecked")
+            final Map<String, Trajectory>[] loaded = new Map[1];       // Strong reference to a new value.
+            final Map<String, Trajectory> value = CACHE.getOrLoad(key, (k) -> {
+                loaded[0] = MovingFeatureReader.load(source, k.stamp, k.length);
+                return new SoftReference<>(loaded[0]);
+            }).get();
+            if (value != null) return value;
+            if (loaded[0] != null) return loaded[0];
+            CACHE.remove(key);                              // Reclaimed by the garbage collector.
+        }
+    }
+
+    /**
+     * Removes from {@link #LATEST} the versions which are no longer in the cache.
+     * A version being loaded concurrently may be removed too, in which case a stale
+     * entry for the same file will stay in the cache until it is evicted by the LRU policy.
+     */
+    private static void prune() {
+        final Set<Key> cached = CACHE.snapshot().keySet();
+        LATEST.values().removeIf((k) -> !cached.contains(k));
+    }
+
+    /**
+     * Returns the identification of the current version of the given file.
+     *
+     * @param  source  the Moving Features file.
+     * @return the URL, modification time and length of the file.
+     * @throws DataStoreException if the file cannot be accessed.
+     */
+    static Key version(final URL source) throws DataStoreException {
+        try {
+            return fetchVersion(source);
+        } catch (IOException | URISyntaxException e) {
+            throw new DataStoreException("Cannot read " + source, e);
+        }
+    }
+
+    /**
+     * Implementation of {@link #version(URL)}.
+     */
+    private static Key fetchVersion(final URL source) throws IOException, URISyntaxException {
+        final String protocol = source.getProtocol();
+        if ("file".equalsIgnoreCase(protocol)) {
+            final Path file = Paths.get(source.toURI());
+            return new Key(source.toString(), Files.getLastModifiedTime(file).toMillis(), Files.size(file));
+        }
+        if ("jar".equalsIgnoreCase(protocol)) {
+            return new Key(source.toString(), 0, -1);           // Resources of the application do not change.
+        }
+        if (CHECK_INTERVAL <= 0) {
+            return connect(source);
+        }
+        return REMOTE_VERSIONS.getOrLoad(source.toString(), (k) -> connect(source));
+    }
+
+    /**
+     * Gets the version of the given resource from a connection.
+     * This is potentially costly, so the result is cached by {@link #fetchVersion(URL)}.
+     */
+    private static Key connect(final URL source) throws IOException {
+        final URLConnection connection = source.openConnection();
+        try {
+            return new Key(source.toString(), connection.getLastModified(), connection.getContentLengthLong());
+        } finally {
+            if (connection instanceof HttpURLConnection http) {
+                http.disconnect();
+            } else {
+                connection.getInputStream().close();
+            }
+        }
+    }
+
+    /**
+     * Returns statistics about this cache. This is useful for verifying that the cache is effective.
+     *
+     * @return number of hits, misses and evictions in the cache.
+     */
+    static CacheStatistics statistics() {
+        return CACHE.statistics();
+    }
+}
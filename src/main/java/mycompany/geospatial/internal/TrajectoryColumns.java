@@ -0,0 +1,452 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial.internal;
+
+import java.util.Arrays;
+import java.io.Serializable;
+
+
+/**
+ * The times and values of trajectory samples, stored either as plain arrays or in a compact form.
+ * Values are accessed by sample index, so the search and interpolation code is the same for both forms.
+ *
+ * <p>The compact form divides samples in blocks of {@value #BLOCK_SIZE}. Each block has an anchor
+ * time and anchor values stored in double precision. The time of each sample is stored as an integer
+ * number of milliseconds since the anchor time of its block, and the values are stored as single-precision
+ * offsets from the anchor values. This uses 4 bytes for the time and 4 bytes per value, instead of 8 bytes.
+ * The compact form is used only when it preserves the order of times and when the error on the values is
+ * within the requested precision, which is specified separately for each value of a sample because values
+ * may be in different units (for example degrees and metres). That error includes the rounding of times:
+ * a sample time shifted by <var>δt</var> moves the interpolated values by up to the speed of the adjacent
+ * segments multiplied by <var>δt</var>, which is added to the rounding error of the value itself.</p>
+ *
+ * <p>Instances of this class are immutable and thread-safe.
+ * Arrays given to the factory methods are shared and shall not be modified.</p>
+ */
+abstract class TrajectoryColumns implements Serializable {
+    /**
+     * For cross-version compatibility.
+     */
+    private static final long serialVersionUID = -8624519018270893411L;
+
+    /**
+     * Number of samples in a block of the compact form. Shall be a power of 2.
+     */
+    static final int BLOCK_SIZE = 64;
+
+    /**
+     * Resolution of times in the compact form, in days. This is one millisecond.
+     */
+    static final double TIME_RESOLUTION = 1 / 86_400_000d;
+
+    /**
+     * Number of values for each sample.
+     */
+    final int dimension;
+
+    /**
+     * Creates new columns.
+     *
+     * @param  dimension  number of values for each sample.
+     */
+    TrajectoryColumns(final int dimension) {
+        this.dimension = dimension;
+    }
+
+    /**
+     * Returns columns backed by the given arrays, without compression.
+     *
+     * @param  times      the time of each sample, in increasing order.
+     * @param  values     the sample values, with {@code dimension} values for each time.
+     * @param  dimension  number of values for each time.
+     * @return columns backed by the given arrays.
+     */
+    static TrajectoryColumns of(final double[] times, final double[] values, final int dimension) {
+        return new Plain(times, values, dimension);
+    }
+
+    /**
+     * Returns columns in compact form if the error on values is not greater than the given precision.
+     * If the precision of a value is zero, or if the precision cannot be honored,
+     * the columns are backed by the given arrays.
+     *
+     * @param  times      the time of each sample, in increasing order.
+     * @param  values     the sample values, with {@code dimension} values for each time.
+     * @param  dimension  number of values for each time.
+     * @param  precision  maximal error allowed on each value of a sample, in the unit of that value.
+     *                    The array length shall be {@code dimension}. Zero values mean lossless storage.
+     * @return columns in compact form if possible, or backed by the given arrays otherwise.
+     */
+    static TrajectoryColumns compact(final double[] times, final double[] values, final int dimension,
+                                     final double[] precision)
+    {
+        if (Arrays.stream(precision).allMatch((p) -> p > 0)) {
+            final Compact c = Compact.encode(times, values, dimension, precision);
+            if (c != null) return c;
+        }
+        return of(times, values, dimension);
+    }
+
+    /**
+     * Returns the number of samples.
+     *
+     * @return number of samples.
+     */
+    abstract int size();
+
+    /**
+     * Returns the time of the sample at the given index.
+     *
+     * @param  i  index of the sample.
+     * @return time of the sample, in days since the Truncated Julian epoch.
+     */
+    abstract double time(int i);
+
+    /**
+     * Returns a value of the sample at the given index.
+     *
+     * @param  i  index of the sample.
+     * @param  k  index of the value in the sample, from 0 inclusive to {@link #dimension} exclusive.
+     * @return the requested value.
+     */
+    abstract double value(int i, int k);
+
+    /**
+     * Adds the values interpolated at the time of each tuple to the other coordinates of that tuple.
+     * Each tuple has {@link #dimension} coordinates followed by a time. The interpolated values are
+     * the same as {@link TrajectoryInterpolator#interpolate(int, double, int)}. Each subclass implements
+     * this method as a loop over its own arrays, without method call for each value.
+     *
+     * @param  method  the interpolation method.
+     * @param  index   for each tuple, index of the first sample at a time equal or greater, or -1 if out of range.
+     * @param  tuples  the tuples to translate in-place. Coordinates are set to NaN if the time is out of range.
+     * @param  count   number of tuples to translate.
+     */
+    abstract void translate(TimeInterpolation method, int[] index, double[] tuples, int count);
+
+    /**
+     * Returns whether the samples are stored in compact form.
+     *
+     * @return whether the samples are stored in compact form.
+     */
+    abstract boolean isCompact();
+
+    /**
+     * Columns backed by arrays of double-precision values.
+     */
+    private static final class Plain extends TrajectoryColumns {
+        private static final long serialVersionUID = 3325830151541567095L;
+
+        /** The time of each sample, in increasing order. */
+        private final double[] times;
+
+        /** The sample values, with {@link #dimension} values for each time. */
+        private final double[] values;
+
+        /** Creates columns backed by the given arrays. */
+        Plain(final double[] times, final double[] values, final int dimension) {
+            super(dimension);
+            this.times  = times;
+            this.values = values;
+        }
+
+        @Override int     size()                    {return times.length;}
+        @Override double  time(int i)               {return times[i];}
+        @Override double  value(int i, int k)       {return values[i*dimension + k];}
+        @Override boolean isCompact()               {return false;}
+
+        /**
+         * Adds the interpolated values to the tuples, reading the arrays directly.
+         * Tangents of cubic interpolation are computed as in {@link TrajectoryInterpolator}.
+         */
+        @Override
+        void translate(final TimeInterpolation method, final int[] index, final double[] tuples, final int count) {
+            final double[] times  = this.times;
+            final double[] values = this.values;
+            final int dim  = dimension;
+            final int last = times.length - 1;
+            for (int n=0, d=0; n<count; n++, d += dim+1) {
+                final int i = index[n];
+                if (i <= 0 || method == TimeInterpolation.NONE) {
+                    for (int k=0; k<dim; k++) {
+                        tuples[d+k] += (i >= 0) ? values[i*dim + k] : Double.NaN;
+                    }
+                    continue;
+                }
+                final int j  = i - 1;
+                final double tj = times[j];
+                final double ti = times[i];
+                final double h  = ti - tj;
+                final double s  = (tuples[d+dim] - tj) / h;
+                if (method == TimeInterpolation.LINEAR) {
+                    for (int k=0; k<dim; k++) {
+                        final double v0 = values[j*dim + k];
+                        tuples[d+k] += v0 + s * (values[i*dim + k] - v0);
+                    }
+                } else {
+                    final double s2  = s * s;
+                    final double s3  = s2 * s;
+                    final double h00 = 2*s3 - 3*s2 + 1;
+                    final double h10 = (s3 - 2*s2 + s) * h;
+                    final double h01 = 3*s2 - 2*s3;
+                    final double h11 = (s3 - s2) * h;
+                    final int    lo  = Math.max(j - 1, 0);
+                    final int    hi  = Math.min(i + 1, last);
+                    final double tlo = times[lo];
+                    final double thi = times[hi];
+                    for (int k=0; k<dim; k++) {
+                        final double vj = values[j*dim + k];
+                        final double vi = values[i*dim + k];
+                        tuples[d+k] += h00 * vj + h10 * ((vi - values[lo*dim + k]) / (ti - tlo))
+                                     + h01 * vi + h11 * ((values[hi*dim + k] - vj) / (thi - tj));
+                    }
+                }
+            }
+        }
+
+        @Override public int hashCode() {
+            return Arrays.hashCode(times) + 31 * Arrays.hashCode(values);
+        }
+
+        @Override public boolean equals(final Object obj) {
+            if (obj == this) return true;
+            if (obj instanceof Plain) {
+                final var other = (Plain) obj;
+                return dimension == other.dimension
+                        && (times  == other.times  || Arrays.equals(times,  other.times))
+                        && (values == other.values || Arrays.equals(values, other.values));
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Columns stored as offsets from the anchors of blocks of {@value #BLOCK_SIZE} samples.
+     */
+    private static final class Compact extends TrajectoryColumns {
+        private static final long serialVersionUID = 4751930874126393702L;
+
+        /** Number of bits to shift a sample index for getting its block index. */
+        private static final int BLOCK_SHIFT = Integer.numberOfTrailingZeros(BLOCK_SIZE);
+
+        /** Time of the first sample of each block. */
+        private final double[] timeAnchors;
+
+        /** Time of each sample as a number of {@linkplain #TIME_RESOLUTION time units} since the anchor of its block. */
+        private final int[] timeOffsets;
+
+        /** Reference values of each block, with {@link #dimension} values per block. */
+        private final double[] valueAnchors;
+
+        /** Value of each sample as an offset from the reference values of its block. */
+        private final float[] valueOffsets;
+
+        /** Creates columns with the given arrays. */
+        private Compact(final double[] timeAnchors, final int[] timeOffsets,
+                        final double[] valueAnchors, final float[] valueOffsets, final int dimension)
+        {
+            super(dimension);
+            this.timeAnchors  = timeAnchors;
+            this.timeOffsets  = timeOffsets;
+            this.valueAnchors = valueAnchors;
+            this.valueOffsets = valueOffsets;
+        }
+
+        /**
+         * Encodes the given arrays, or returns {@code null} if the compact form cannot honor the given precision,
+         * if the time span of a block is too large or if two distinct times would be encoded as the same value.
+         */
+        static Compact encode(final double[] times, final double[] values, final int dimension,
+                              final double[] precision)
+        {
+            final int n = times.length;
+            if (n == 0) return null;
+            final int numBlocks = (n + (BLOCK_SIZE - 1)) >>> BLOCK_SHIFT;
+            final var timeAnchors  = new double[numBlocks];
+            final var timeOffsets  = new int[n];
+            final var valueAnchors = new double[numBlocks * dimension];
+            final var valueOffsets = new float[n * dimension];
+            for (int b=0; b<numBlocks; b++) {
+                final int lower = b << BLOCK_SHIFT;
+                final int upper = Math.min(lower + BLOCK_SIZE, n);
+                final double anchor = times[lower];
+                timeAnchors[b] = anchor;
+                for (int i=lower; i<upper; i++) {
+                    final double offset = Math.rint((times[i] - anchor) / TIME_RESOLUTION);
+                    if (!(offset >= 0 && offset <= Integer.MAX_VALUE)) {
+                        return null;            // Block too long, or times not sorted, or NaN.
+                    }
+                    timeOffsets[i] = (int) offset;
+                }
+                /*
+                 * Use the middle of the range of values in the block as the anchor,
+                 * for minimizing the magnitude of offsets and thus the rounding errors.
+                 */
+                for (int k=0; k<dimension; k++) {
+                    double min = Double.POSITIVE_INFINITY;
+                    double max = Double.NEGATIVE_INFINITY;
+                    for (int i=lower; i<upper; i++) {
+                        final double v = values[i*dimension + k];
+                        if (v < min) min = v;
+                        if (v > max) max = v;
+                    }
+                    final double center = (min <= max) ? 0.5 * (min + max) : 0;
+                    valueAnchors[b*dimension + k] = center;
+                    for (int i=lower; i<upper; i++) {
+                        final int p = i*dimension + k;
+                        final double v = values[p];
+                        final float offset = (float) (v - center);
+                        if (!(Math.abs(center + offset - v) <= precision[k])) {
+                            if (Double.isNaN(v) && Float.isNaN(offset)) continue;
+                            return null;
+                        }
+                        valueOffsets[p] = offset;
+                    }
+                }
+            }
+            final var c = new Compact(timeAnchors, timeOffsets, valueAnchors, valueOffsets, dimension);
+            /*
+             * Verify that the order of times is preserved, and that distinct times are still distinct.
+             * The latter is necessary for avoiding divisions by zero in interpolations.
+             */
+            double previous = c.time(0);
+            for (int i=1; i<n; i++) {
+                final double t = c.time(i);
+                if (times[i] != times[i-1] ? !(t > previous) : t < previous) {
+                    return null;
+                }
+                previous = t;
+            }
+            /*
+             * Verify that the error caused by the rounding of times, estimated from the speed of the segments
+             * before and after each sample, added to the error on the value is still within the precision.
+             */
+            for (int i=0; i<n; i++) {
+                final double dt = Math.abs(c.time(i) - times[i]);
+                for (int k=0; k<dimension; k++) {
+                    double speed = 0;
+                    if (i > 0)   speed = Math.max(speed, speed(times, values, dimension, i-1, k));
+                    if (i+1 < n) speed = Math.max(speed, speed(times, values, dimension, i,   k));
+                    final double v = values[i*dimension + k];
+                    final double error = Math.abs(c.value(i, k) - v) + speed * dt;
+                    if (!(error <= precision[k]) && !Double.isNaN(v)) {
+                        return null;
+                    }
+                }
+            }
+            return c;
+        }
+
+        /**
+         * Returns the absolute speed of the value at index {@code k} between samples {@code i} and {@code i+1},
+         * or 0 if the two samples have the same time.
+         */
+        private static double speed(final double[] times, final double[] values, final int dimension,
+                                    final int i, final int k)
+        {
+            final double dt = times[i+1] - times[i];
+            if (dt == 0) return 0;
+            return Math.abs((values[(i+1)*dimension + k] - values[i*dimension + k]) / dt);
+        }
+
+        @Override int size() {
+            return timeOffsets.length;
+        }
+
+        @Override double time(final int i) {
+            return decodeTime(timeAnchors, timeOffsets, i);
+        }
+
+        @Override double value(final int i, final int k) {
+            return decodeValue(valueAnchors, valueOffsets, dimension, i, k);
+        }
+
+        /** Decodes the time of the sample at index {@code i}. */
+        private static double decodeTime(final double[] anchors, final int[] offsets, final int i) {
+            return anchors[i >>> BLOCK_SHIFT] + offsets[i] * TIME_RESOLUTION;
+        }
+
+        /** Decodes the value at index {@code k} of the sample at index {@code i}. */
+        private static double decodeValue(final double[] anchors, final float[] offsets, final int dim,
+                                          final int i, final int k)
+        {
+            return anchors[(i >>> BLOCK_SHIFT) * dim + k] + offsets[i*dim + k];
+        }
+
+        /**
+         * Adds the interpolated values to the tuples, decoding the samples directly from the arrays.
+         * Tangents of cubic interpolation are computed as in {@link TrajectoryInterpolator}.
+         */
+        @Override
+        void translate(final TimeInterpolation method, final int[] index, final double[] tuples, final int count) {
+            final double[] timeAnchors  = this.timeAnchors;
+            final int[]    timeOffsets  = this.timeOffsets;
+            final double[] valueAnchors = this.valueAnchors;
+            final float[]  valueOffsets = this.valueOffsets;
+            final int dim  = dimension;
+            final int last = timeOffsets.length - 1;
+            for (int n=0, d=0; n<count; n++, d += dim+1) {
+                final int i = index[n];
+                if (i <= 0 || method == TimeInterpolation.NONE) {
+                    for (int k=0; k<dim; k++) {
+                        tuples[d+k] += (i >= 0) ? decodeValue(valueAnchors, valueOffsets, dim, i, k) : Double.NaN;
+                    }
+                    continue;
+                }
+                final int j  = i - 1;
+                final double tj = decodeTime(timeAnchors, timeOffsets, j);
+                final double ti = decodeTime(timeAnchors, timeOffsets, i);
+                final double h  = ti - tj;
+                final double s  = (tuples[d+dim] - tj) / h;
+                if (method == TimeInterpolation.LINEAR) {
+                    for (int k=0; k<dim; k++) {
+                        final double v0 = decodeValue(valueAnchors, valueOffsets, dim, j, k);
+                        tuples[d+k] += v0 + s * (decodeValue(valueAnchors, valueOffsets, dim, i, k) - v0);
+                    }
+                } else {
+                    final double s2  = s * s;
+                    final double s3  = s2 * s;
+                    final double h00 = 2*s3 - 3*s2 + 1;
+                    final double h10 = (s3 - 2*s2 + s) * h;
+                    final double h01 = 3*s2 - 2*s3;
+                    final double h11 = (s3 - s2) * h;
+                    final int    lo  = Math.max(j - 1, 0);
+                    final int    hi  = Math.min(i + 1, last);
+                    final double tlo = decodeTime(timeAnchors, timeOffsets, lo);
+                    final double thi = decodeTime(timeAnchors, timeOffsets, hi);
+                    for (int k=0; k<dim; k++) {
+                        final double vj = decodeValue(valueAnchors, valueOffsets, dim, j, k);
+                        final double vi = decodeValue(valueAnchors, valueOffsets, dim, i, k);
+                        final double vl = decodeValue(valueAnchors, valueOffsets, dim, lo, k);
+                        final double vh = decodeValue(valueAnchors, valueOffsets, dim, hi, k);
+                        tuples[d+k] += h00 * vj + h10 * ((vi - vl) / (ti - tlo))
+                                     + h01 * vi + h11 * ((vh - vj) / (thi - tj));
+                    }
+                }
+            }
+        }
+
+        @Override boolean isCompact() {
+            return true;
+        }
+
+        @Override public int hashCode() {
+            return Arrays.hashCode(timeAnchors) + 31 * (Arrays.hashCode(timeOffsets)
+                    + 31 * (Arrays.hashCode(valueAnchors) + 31 * Arrays.hashCode(valueOffsets)));
+        }
+
+        @Override public boolean equals(final Object obj) {
+            if (obj == this) return true;
+            if (obj instanceof Compact) {
+                final var other = (Compact) obj;
+                return dimension == other.dimension
+                        && Arrays.equals(timeAnchors,  other.timeAnchors)
+                        && Arrays.equals(timeOffsets,  other.timeOffsets)
+                        && Arrays.equals(valueAnchors, other.valueAnchors)
+                        && Arrays.equals(valueOffsets, other.valueOffsets);
+            }
+            return false;
+        }
+    }
+}
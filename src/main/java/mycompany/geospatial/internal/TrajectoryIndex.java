@@ -0,0 +1,721 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial.internal;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+// Implementation-neutral
+import org.opengis.geometry.MismatchedDimensionException;
+
+// Implementation-dependent
+import org.apache.sis.storage.DataStoreException;
+
+
+/**
+ * Spatio-temporal index over the segments of moving feature trajectories.
+ * Answers questions such as <q>which objects pass in this box during this period</q>
+ * or <q>which objects pass nearest to this point</q> without scanning all trajectories.
+ * A segment is the linear motion between two consecutive samples of a trajectory.
+ *
+ * <p>The index is a packed R-tree built bottom-up in a single pass. Segments are sorted along a
+ * Z-order (Morton) curve of the centers of their bounding boxes in space and time, then grouped
+ * in leaves of {@value #NODE_CAPACITY} segments, which are themselves grouped in nodes of the
+ * same capacity until a single root remains. Only the node bounding boxes are stored, as arrays
+ * of primitive values; the boxes of individual segments are recomputed from the trajectory arrays
+ * when a leaf is visited. This keeps the memory usage to about 12 bytes per segment, compared to
+ * more than 100 bytes with an index storing one object per segment.</p>
+ *
+ * <p>Coordinates are compared in the units of the trajectories, with Euclidean distances.
+ * For geographic coordinates, trajectories should be in a projected or geocentric CRS
+ * for distances to be meaningful. Times are in days since the Truncated Julian epoch,
+ * as in {@link Trajectory}.</p>
+ *
+ * <p>Instances of this class are immutable and thread-safe.</p>
+ */
+public final class TrajectoryIndex {
+    /**
+     * Maximal number of children in each node of the tree.
+     */
+    public static final int NODE_CAPACITY = 16;
+
+    /**
+     * A trajectory part found by a query.
+     * For range queries, the time range is the period during which the object is inside the box
+     * and the distance is zero. For nearest neighbor queries, the start and end times are both
+     * the time of closest approach and the distance is the distance at that time.
+     *
+     * @param identifier  the moving feature identifier.
+     * @param startTime   start of the time range, in days since the Truncated Julian epoch.
+     * @param endTime     end of the time range, in days since the Truncated Julian epoch.
+     * @param distance    distance from the query point, or 0 for range queries.
+     */
+    public record Hit(String identifier, double startTime, double endTime, double distance) {
+        /**
+         * Returns a string representation of this hit.
+         */
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s from %.6f to %.6f at distance %g", identifier, startTime, endTime, distance);
+        }
+    }
+
+    /**
+     * The indexed trajectories.
+     */
+    private final Trajectory[] trajectories;
+
+    /**
+     * Number of spatial dimensions, which is the same for all trajectories.
+     */
+    private final int dimension;
+
+    /**
+     * Index in {@link #trajectories} of the trajectory of each segment, in the order of the leaves.
+     */
+    private final int[] segmentTrajectory;
+
+    /**
+     * Index of the first sample of each segment, in the order of the leaves.
+     * The segment ends at the next sample, or at the same sample if the trajectory has only one.
+     */
+    private final int[] segmentStart;
+
+    /**
+     * Bounding boxes of the nodes at each level, with level 0 for the leaves.
+     * Each box is stored as the minimal values followed by the maximal values,
+     * for the spatial dimensions followed by time.
+     */
+    private final double[][] bounds;
+
+    /**
+     * Builds an index over the segments of the given trajectories.
+     *
+     * @param  trajectories  the trajectories to index.
+     * @throws IllegalArgumentException if the trajectories do not have the same number of dimensions.
+     */
+    TrajectoryIndex(final Collection<Trajectory> trajectories) {
+        this.trajectories = trajectories.toArray(Trajectory[]::new);
+        int dim = 0;
+        long count = 0;
+        for (final Trajectory t : this.trajectories) {
+            if (t.size() == 0) continue;
+            if (dim != 0 && dim != t.dimension) {
+                throw new IllegalArgumentException("All trajectories shall have the same number of dimensions.");
+            }
+            dim = t.dimension;
+            count += Math.max(t.size() - 1, 1);
+        }
+        if (count > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many segments: " + count);
+        }
+        dimension = dim;
+        final int numSegments = (int) count;
+        segmentTrajectory = new int[numSegments];
+        segmentStart = new int[numSegments];
+        sortSegments();
+        final var levels = new ArrayList<double[]>();
+        double[] level = leafBounds();
+        levels.add(level);
+        while (level.length > boxLength()) {
+            level = parentBounds(level);
+            levels.add(level);
+        }
+        bounds = levels.toArray(double[][]::new);
+    }
+
+    /**
+     * Builds an index over the segments of all moving features in the given file.
+     * The trajectories are obtained from {@link TrajectoryCache}, so the file is not parsed again
+     * if it has already been read. The index itself is not cached; callers should keep it as long as needed.
+     *
+     * @param  source  the Moving Features file to index.
+     * @return index over the segments of all trajectories in the given file.
+     * @throws DataStoreException if an error occurred while reading the file or if the content is invalid.
+     */
+    public static TrajectoryIndex build(final URL source) throws DataStoreException {
+        return new TrajectoryIndex(TrajectoryCache.get(source).values());
+    }
+
+    /**
+     * Returns the number of spatial dimensions of the indexed trajectories.
+     *
+     * @return number of spatial dimensions, or 0 if there is no trajectory.
+     */
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Returns the number of indexed segments.
+     *
+     * @return number of segments.
+     */
+    public int size() {
+        return segmentStart.length;
+    }
+
+    /**
+     * Returns the number of values in a bounding box: minimum and maximum for space and time dimensions.
+     */
+    private int boxLength() {
+        return 2 * (dimension + 1);
+    }
+
+    /**
+     * Sorts the segments along a Z-order curve of the centers of their bounding boxes.
+     * Each coordinate is scaled to an integer of {@code 64 / (dimension + 1)} bits
+     * and the bits of all dimensions are interleaved into a single key.
+     * Keys are sorted with a radix sort for avoiding one object per segment.
+     */
+    private void sortSegments() {
+        final int n = segmentStart.length;
+        if (n == 0) return;
+        final int ndim = dimension + 1;
+        final double[] min = new double[ndim];
+        final double[] max = new double[ndim];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        for (final Trajectory t : trajectories) {
+            for (int i=0; i < t.size(); i++) {
+                for (int k=0; k<dimension; k++) {
+                    final double v = t.coordinates[i*dimension + k];
+                    if (v < min[k]) min[k] = v;
+                    if (v > max[k]) max[k] = v;
+                }
+                final double v = t.times[i];
+                if (v < min[dimension]) min[dimension] = v;
+                if (v > max[dimension]) max[dimension] = v;
+            }
+        }
+        final int bits = Long.SIZE / ndim;
+        final double cells = (1L << bits) - 1;
+        final double[] scale = new double[ndim];
+        for (int k=0; k<ndim; k++) {
+            final double span = max[k] - min[k];
+            scale[k] = (span > 0 && Double.isFinite(span)) ? cells / span : 0;
+        }
+        final long[] keys = new long[n];
+        final double[] center = new double[ndim];
+        int s = 0;
+        for (int f=0; f < trajectories.length; f++) {
+            final Trajectory t = trajectories[f];
+            for (int i=0, end = t.size() - 1; i <= end; i++) {
+                if (i == end && end != 0) break;
+                final int j = Math.min(i + 1, end);
+                for (int k=0; k<dimension; k++) {
+                    center[k] = 0.5 * (t.coordinates[i*dimension + k] + t.coordinates[j*dimension + k]);
+                }
+                center[dimension] = 0.5 * (t.times[i] + t.times[j]);
+                long key = 0;
+                for (int k=0; k<ndim; k++) {
+                    final double v = (center[k] - min[k]) * scale[k];
+                    final long c = (v >= 0) ? (long) Math.min(v, cells) : 0;       // Also replace NaN by 0.
+                    for (int b=0; b<bits; b++) {
+                        key |= ((c >>> b) & 1) << (b*ndim + k);
+                    }
+                }
+                keys[s] = key;
+                segmentTrajectory[s] = f;
+                segmentStart[s] = i;
+                s++;
+            }
+        }
+        radixSort(keys, segmentTrajectory, segmentStart);
+    }
+
+    /**
+     * Sorts the given keys as unsigned integers, together with the two given arrays of values.
+     * This is a least significant digit radix sort on 8 bits at a time.
+     */
+    private static void radixSort(final long[] keys, final int[] values1, final int[] values2) {
+        final int n = keys.length;
+        long[] srcKeys = keys,    dstKeys = new long[n];
+        int[]  srcVal1 = values1, dstVal1 = new int[n];
+        int[]  srcVal2 = values2, dstVal2 = new int[n];
+        final int[] offsets = new int[256];
+        for (int shift = 0; shift < Long.SIZE; shift += Byte.SIZE) {
+            Arrays.fill(offsets, 0);
+            for (int i=0; i<n; i++) {
+                offsets[(int) (srcKeys[i] >>> shift) & 0xFF]++;
+            }
+            int sum = 0;
+            for (int i=0; i<offsets.length; i++) {
+                final int c = offsets[i];
+                if (c == n) break;                  // All keys have the same digit: nothing to move.
+                offsets[i] = sum;
+                sum += c;
+            }
+            if (sum == 0) continue;
+            for (int i=0; i<n; i++) {
+                final int p = offsets[(int) (srcKeys[i] >>> shift) & 0xFF]++;
+                dstKeys[p] = srcKeys[i];
+                dstVal1[p] = srcVal1[i];
+                dstVal2[p] = srcVal2[i];
+            }
+            long[] k = srcKeys; srcKeys = dstKeys; dstKeys = k;
+            int[]  v = srcVal1; srcVal1 = dstVal1; dstVal1 = v;
+            v = srcVal2;        srcVal2 = dstVal2; dstVal2 = v;
+        }
+        if (srcKeys != keys) {
+            System.arraycopy(srcVal1, 0, values1, 0, n);
+            System.arraycopy(srcVal2, 0, values2, 0, n);
+        }
+    }
+
+    /**
+     * Computes the bounding box of segment {@code s} and stores it in {@code box} at the given offset.
+     * If the box array already contains a box at that offset, the two boxes are combined.
+     */
+    private void addSegmentBounds(final int s, final double[] box, final int offset, final boolean union) {
+        final Trajectory t = trajectories[segmentTrajectory[s]];
+        final int i = segmentStart[s];
+        final int j = Math.min(i + 1, t.size() - 1);
+        final int ndim = dimension + 1;
+        for (int k=0; k<ndim; k++) {
+            final double a, b;
+            if (k < dimension) {
+                a = t.coordinates[i*dimension + k];
+                b = t.coordinates[j*dimension + k];
+            } else {
+                a = t.times[i];
+                b = t.times[j];
+            }
+            final double lo = Math.min(a, b);
+            final double hi = Math.max(a, b);
+            if (union) {
+                if (lo < box[offset + k])        box[offset + k]        = lo;
+                if (hi > box[offset + ndim + k]) box[offset + ndim + k] = hi;
+            } else {
+                box[offset + k]        = lo;
+                box[offset + ndim + k] = hi;
+            }
+        }
+    }
+
+    /**
+     * Computes the bounding boxes of the leaves, each leaf containing {@value #NODE_CAPACITY} consecutive segments.
+     */
+    private double[] leafBounds() {
+        final int n = segmentStart.length;
+        final int length = boxLength();
+        final double[] boxes = new double[Math.max(numParents(n), 1) * length];
+        for (int s=0; s<n; s++) {
+            addSegmentBounds(s, boxes, (s / NODE_CAPACITY) * length, s % NODE_CAPACITY != 0);
+        }
+        if (n == 0) {
+            Arrays.fill(boxes, 0, length / 2, Double.POSITIVE_INFINITY);
+            Arrays.fill(boxes, length / 2, length, Double.NEGATIVE_INFINITY);
+        }
+        return boxes;
+    }
+
+    /**
+     * Computes the bounding boxes of the parents of the given nodes.
+     */
+    private double[] parentBounds(final double[] children) {
+        final int length = boxLength();
+        final int ndim   = length / 2;
+        final int n      = children.length / length;
+        final double[] boxes = new double[numParents(n) * length];
+        for (int c=0; c<n; c++) {
+            final int src = c * length;
+            final int dst = (c / NODE_CAPACITY) * length;
+            if (c % NODE_CAPACITY == 0) {
+                System.arraycopy(children, src, boxes, dst, length);
+            } else {
+                for (int k=0; k<ndim; k++) {
+                    boxes[dst + k]        = Math.min(boxes[dst + k],        children[src + k]);
+                    boxes[dst + ndim + k] = Math.max(boxes[dst + ndim + k], children[src + ndim + k]);
+                }
+            }
+        }
+        return boxes;
+    }
+
+    /**
+     * Returns the number of nodes needed for grouping the given number of children.
+     */
+    private static int numParents(final int n) {
+        return (n + (NODE_CAPACITY - 1)) / NODE_CAPACITY;
+    }
+
+    /**
+     * Returns the number of children of the given node: sub-nodes, or segments for the leaves.
+     */
+    private int numChildren(final int level, final int node) {
+        final int n = (level == 0) ? segmentStart.length : bounds[level - 1].length / boxLength();
+        return Math.min(n - node * NODE_CAPACITY, NODE_CAPACITY);
+    }
+
+    /**
+     * Ensures that the given array has the number of spatial dimensions of the trajectories.
+     */
+    private void ensureDimensionMatches(final String name, final double[] coordinates) {
+        if (coordinates.length != dimension) {
+            throw new MismatchedDimensionException("The \"" + name + "\" array has " + coordinates.length
+                    + " dimensions but the trajectories have " + dimension + '.');
+        }
+    }
+
+    /**
+     * Finds all objects which are inside the given box during the given period.
+     * The result contains one hit for each continuous period during which an object is inside the box,
+     * assuming linear motion between samples. Hits are sorted by object, then by time.
+     *
+     * @param  lower      minimal coordinate values of the box. Can contain negative infinity.
+     * @param  upper      maximal coordinate values of the box. Can contain positive infinity.
+     * @param  startTime  start of the period, in days since the Truncated Julian epoch.
+     * @param  endTime    end of the period, in days since the Truncated Julian epoch.
+     * @return the periods during which objects are inside the box.
+     * @throws MismatchedDimensionException if the box does not have the number of dimensions of the trajectories.
+     */
+    public List<Hit> search(final double[] lower, final double[] upper, final double startTime, final double endTime) {
+        ensureDimensionMatches("lower", lower);
+        ensureDimensionMatches("upper", upper);
+        final int ndim   = dimension + 1;
+        final int length = 2 * ndim;
+        final double[] query = new double[length];
+        System.arraycopy(lower, 0, query, 0, dimension);
+        System.arraycopy(upper, 0, query, ndim, dimension);
+        query[dimension] = startTime;
+        query[length - 1] = endTime;
+        final var parts = new ArrayList<Part>();
+        if (segmentStart.length == 0) {
+            return List.of();
+        }
+        /*
+         * Depth-first traversal with an explicit stack of (level, node) pairs.
+         * At most NODE_CAPACITY children are pushed for each level.
+         */
+        final int[] stack = new int[2 * NODE_CAPACITY * bounds.length + 2];
+        int top = 0;
+        stack[top++] = bounds.length - 1;
+        stack[top++] = 0;
+        final double[] interval = new double[2];
+        while (top != 0) {
+            final int node  = stack[--top];
+            final int level = stack[--top];
+            if (!intersects(bounds[level], node * length, query)) {
+                continue;
+            }
+            final int first = node * NODE_CAPACITY;
+            final int count = numChildren(level, node);
+            if (level != 0) {
+                for (int c=0; c<count; c++) {
+                    stack[top++] = level - 1;
+                    stack[top++] = first + c;
+                }
+            } else {
+                for (int s = first; s < first + count; s++) {
+                    if (clip(s, query, interval)) {
+                        parts.add(new Part(segmentTrajectory[s], interval[0], interval[1]));
+                    }
+                }
+            }
+        }
+        /*
+         * Merge the periods of consecutive segments of the same object.
+         */
+        parts.sort(null);
+        final var hits = new ArrayList<Hit>();
+        Part previous = null;
+        for (final Part p : parts) {
+            if (previous != null) {
+                if (p.trajectory == previous.trajectory && p.start <= previous.end) {
+                    previous = new Part(p.trajectory, previous.start, Math.max(p.end, previous.end));
+                    continue;
+                }
+                hits.add(previous.toHit(trajectories));
+            }
+            previous = p;
+        }
+        if (previous != null) {
+            hits.add(previous.toHit(trajectories));
+        }
+        return hits;
+    }
+
+    /**
+     * Tests whether the box at the given offset intersects the query box.
+     */
+    private static boolean intersects(final double[] boxes, final int offset, final double[] query) {
+        final int ndim = query.length / 2;
+        for (int k=0; k<ndim; k++) {
+            if (boxes[offset + k] > query[ndim + k] || boxes[offset + ndim + k] < query[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the period during which the object moving along segment {@code s} is inside the query box.
+     * This is the Liang-Barsky clipping algorithm applied to the segment parameterized by time.
+     *
+     * @param  s         index of the segment.
+     * @param  query     the query box, including the time range.
+     * @param  interval  where to store the start and end times of the period.
+     * @return whether the object is inside the box during a non-empty period.
+     */
+    private boolean clip(final int s, final double[] query, final double[] interval) {
+        final Trajectory t = trajectories[segmentTrajectory[s]];
+        final int i = segmentStart[s];
+        final int j = Math.min(i + 1, t.size() - 1);
+        final int ndim = dimension + 1;
+        final double t0 = t.times[i];
+        final double dt = t.times[j] - t0;
+        double lo = 0, hi = 1;
+        for (int k=0; k<ndim; k++) {
+            final double a, d;
+            if (k < dimension) {
+                a = t.coordinates[i*dimension + k];
+                d = t.coordinates[j*dimension + k] - a;
+            } else {
+                a = t0;
+                d = dt;
+            }
+            final double qmin = query[k];
+            final double qmax = query[ndim + k];
+            if (d == 0) {
+                if (a < qmin || a > qmax) return false;
+            } else {
+                double s0 = (qmin - a) / d;
+                double s1 = (qmax - a) / d;
+                if (d < 0) {
+                    final double tmp = s0; s0 = s1; s1 = tmp;
+                }
+                if (s0 > lo) lo = s0;
+                if (s1 < hi) hi = s1;
+                if (!(lo <= hi)) return false;
+            }
+        }
+        interval[0] = t0 + lo * dt;
+        interval[1] = t0 + hi * dt;
+        return true;
+    }
+
+    /**
+     * Finds the objects passing nearest to the given point during the given period.
+     * The result contains at most {@code k} hits, one per object, sorted by increasing distance.
+     * The time of each hit is the time of closest approach, assuming linear motion between samples.
+     *
+     * @param  point      coordinates of the point.
+     * @param  startTime  start of the period, in days since the Truncated Julian epoch.
+     * @param  endTime    end of the period, in days since the Truncated Julian epoch.
+     * @param  k          maximal number of objects to return.
+     * @return the nearest objects with their time of closest approach and distance.
+     * @throws MismatchedDimensionException if the point does not have the number of dimensions of the trajectories.
+     */
+    public List<Hit> nearest(final double[] point, final double startTime, final double endTime, final int k) {
+        ensureDimensionMatches("point", point);
+        if (k < 0) {
+            throw new IllegalArgumentException("Number of neighbors shall not be negative.");
+        }
+        final var hits = new ArrayList<Hit>(Math.min(k, 100));
+        if (k == 0 || segmentStart.length == 0) {
+            return hits;
+        }
+        /*
+         * Best-first traversal: nodes and segments are visited in increasing order of distance.
+         * The distance of a node is a lower bound of the distances of all its segments, so a
+         * segment taken from the queue is nearer than everything remaining in the queue.
+         */
+        final int length = boxLength();
+        final var found  = new BitSet(trajectories.length);
+        final var queue  = new Queue();
+        final double[] closest = new double[1];
+        queue.add(nodeDistance(bounds[bounds.length - 1], 0, point, startTime, endTime), bounds.length, 0);
+        while (queue.size != 0) {
+            final double distance = queue.distance[0];
+            final int level = queue.levels[0];
+            final int index = queue.indices[0];
+            queue.remove();
+            if (level == 0) {
+                final int f = segmentTrajectory[index];
+                if (!found.get(f)) {
+                    found.set(f);
+                    final double time = closestTime(index, point, startTime, endTime);
+                    hits.add(new Hit(trajectories[f].identifier, time, time, Math.sqrt(distance)));
+                    if (hits.size() >= k) break;
+                }
+                continue;
+            }
+            final int node  = level - 1;              // Level in the tree, 0 for leaves.
+            final int first = index * NODE_CAPACITY;
+            final int count = numChildren(node, index);
+            for (int c = first; c < first + count; c++) {
+                if (node == 0) {
+                    if (found.get(segmentTrajectory[c])) continue;
+                    final double d = segmentDistance(c, point, startTime, endTime, closest);
+                    if (d >= 0) queue.add(d, 0, c);
+                } else {
+                    final double d = nodeDistance(bounds[node - 1], c * length, point, startTime, endTime);
+                    if (d >= 0) queue.add(d, node, c);
+                }
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Returns the square of the minimal distance between the point and the box at the given offset,
+     * or -1 if the box does not overlap the period.
+     */
+    private double nodeDistance(final double[] boxes, final int offset, final double[] point,
+                                final double startTime, final double endTime)
+    {
+        final int ndim = dimension + 1;
+        if (boxes[offset + dimension] > endTime || boxes[offset + ndim + dimension] < startTime) {
+            return -1;
+        }
+        double sum = 0;
+        for (int k=0; k<dimension; k++) {
+            final double p = point[k];
+            final double d = Math.max(boxes[offset + k] - p, p - boxes[offset + ndim + k]);
+            if (d > 0) sum += d * d;
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the square of the minimal distance between the point and the part of segment {@code s}
+     * in the given period, or -1 if the segment does not overlap the period. The segment parameter
+     * (0 at the first sample and 1 at the second sample) of the closest point is stored in {@code closest}.
+     */
+    private double segmentDistance(final int s, final double[] point, final double startTime, final double endTime,
+                                   final double[] closest)
+    {
+        final Trajectory t = trajectories[segmentTrajectory[s]];
+        final int i = segmentStart[s];
+        final int j = Math.min(i + 1, t.size() - 1);
+        final double t0 = t.times[i];
+        final double dt = t.times[j] - t0;
+        double lo = 0, hi = 1;
+        if (dt > 0) {
+            lo = Math.max(lo, (startTime - t0) / dt);
+            hi = Math.min(hi, (endTime   - t0) / dt);
+            if (!(lo <= hi)) return -1;
+        } else if (t0 < startTime || t0 > endTime) {
+            return -1;
+        }
+        final int p0 = i * dimension;
+        final int p1 = j * dimension;
+        double dot = 0, norm = 0;
+        for (int k=0; k<dimension; k++) {
+            final double a = t.coordinates[p0 + k];
+            final double d = t.coordinates[p1 + k] - a;
+            dot  += (point[k] - a) * d;
+            norm += d * d;
+        }
+        final double c = (norm > 0) ? Math.max(lo, Math.min(hi, dot / norm)) : lo;
+        double sum = 0;
+        for (int k=0; k<dimension; k++) {
+            final double a = t.coordinates[p0 + k];
+            final double d = a + c * (t.coordinates[p1 + k] - a) - point[k];
+            sum += d * d;
+        }
+        closest[0] = c;
+        return sum;
+    }
+
+    /**
+     * Returns the time of closest approach of segment {@code s} to the given point in the given period.
+     */
+    private double closestTime(final int s, final double[] point, final double startTime, final double endTime) {
+        final double[] closest = new double[1];
+        segmentDistance(s, point, startTime, endTime, closest);
+        final Trajectory t = trajectories[segmentTrajectory[s]];
+        final int i = segmentStart[s];
+        final int j = Math.min(i + 1, t.size() - 1);
+        return t.times[i] + closest[0] * (t.times[j] - t.times[i]);
+    }
+
+    /**
+     * A period during which an object is inside the box of a range query, before merging.
+     *
+     * @param trajectory  index of the trajectory in {@link TrajectoryIndex#trajectories}.
+     * @param start       start of the period.
+     * @param end         end of the period.
+     */
+    private record Part(int trajectory, double start, double end) implements Comparable<Part> {
+        /** Orders by trajectory, then by start time. */
+        @Override public int compareTo(final Part other) {
+            final int c = Integer.compare(trajectory, other.trajectory);
+            return (c != 0) ? c : Double.compare(start, other.start);
+        }
+
+        /** Converts this part to a hit for the user. */
+        Hit toHit(final Trajectory[] trajectories) {
+            return new Hit(trajectories[trajectory].identifier, start, end, 0);
+        }
+    }
+
+    /**
+     * Priority queue of nodes and segments ordered by increasing distance.
+     * This is a binary heap in arrays of primitive values.
+     */
+    private static final class Queue {
+        /** Square of the distance of each entry. */
+        double[] distance = new double[64];
+
+        /** Tree level + 1 of each node entry, or 0 for segment entries. */
+        int[] levels = new int[64];
+
+        /** Index of the node in its level, or index of the segment. */
+        int[] indices = new int[64];
+
+        /** Number of entries. */
+        int size;
+
+        /** Adds an entry. */
+        void add(final double d, final int level, final int index) {
+            if (size == distance.length) {
+                distance = Arrays.copyOf(distance, size * 2);
+                levels   = Arrays.copyOf(levels,   size * 2);
+                indices  = Arrays.copyOf(indices,  size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                final int parent = (i - 1) >>> 1;
+                if (distance[parent] <= d) break;
+                set(i, parent);
+                i = parent;
+            }
+            distance[i] = d;
+            levels  [i] = level;
+            indices [i] = index;
+        }
+
+        /** Removes the entry of smallest distance. */
+        void remove() {
+            final int last = --size;
+            final double d = distance[last];
+            int i = 0;
+            while (true) {
+                int child = 2*i + 1;
+                if (child >= last) break;
+                if (child + 1 < last && distance[child + 1] < distance[child]) child++;
+                if (d <= distance[child]) break;
+                set(i, child);
+                i = child;
+            }
+            distance[i] = d;
+            levels  [i] = levels [last];
+            indices [i] = indices[last];
+        }
+
+        /** Copies the entry at index {@code src} to index {@code dst}. */
+        private void set(final int dst, final int src) {
+            distance[dst] = distance[src];
+            levels  [dst] = levels  [src];
+            indices [dst] = indices [src];
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial.internal;
+
+
+/**
+ * Computes the values of a time series at arbitrary times by interpolation between samples.
+ * The sample index is given by a {@link TimeCursor}, which returns the first sample at a time
+ * equal or greater than the requested time. Interpolation is done between that sample and the
+ * previous one. No table is precomputed, so the memory usage is the same as without interpolation.
+ * Samples can be stored in compact form, in which case they are decoded when needed.
+ *
+ * <p>Instances of this class are immutable and thread-safe.</p>
+ */
+final class TrajectoryInterpolator {
+    /**
+     * The time and values of each sample, with times in increasing order.
+     */
+    final TrajectoryColumns samples;
+
+    /**
+     * Number of values for each time.
+     */
+    final int dimension;
+
+    /**
+     * The interpolation method.
+     */
+    final TimeInterpolation method;
+
+    /**
+     * Creates a new interpolator.
+     *
+     * @param  samples  the time and values of each sample, with times in increasing order.
+     * @param  method   the interpolation method.
+     */
+    TrajectoryInterpolator(final TrajectoryColumns samples, final TimeInterpolation method) {
+        this.samples   = samples;
+        this.dimension = samples.dimension;
+        this.method    = method;
+    }
+
+    /**
+     * Computes the values at the given time.
+     *
+     * @param  i       index of the first sample at a time equal or greater than {@code t}, as given by {@link TimeCursor}.
+     * @param  t       the time where to interpolate.
+     * @param  dst     where to store the {@link #dimension} interpolated values.
+     * @param  dstOff  index of the first value to store in {@code dst}.
+     */
+    void interpolate(final int i, final double t, final double[] dst, final int dstOff) {
+        for (int k=0; k<dimension; k++) {
+            dst[dstOff + k] = interpolate(i, t, k);
+        }
+    }
+
+    /**
+     * Computes the value at index {@code k} at the given time.
+     * This method allocates nothing, which makes it suitable for transforming a single point.
+     *
+     * @param  i  index of the first sample at a time equal or greater than {@code t}, as given by {@link TimeCursor}.
+     * @param  t  the time where to interpolate.
+     * @param  k  index of the value to interpolate, from 0 inclusive to {@link #dimension} exclusive.
+     * @return the interpolated value.
+     */
+    double interpolate(final int i, final double t, final int k) {
+        final TrajectoryColumns c = samples;
+        if (i == 0 || method == TimeInterpolation.NONE) {
+            return c.value(i, k);
+        }
+        final int j  = i - 1;
+        final double tj = c.time(j);
+        final double h  = c.time(i) - tj;
+        final double s  = (t - tj) / h;
+        if (method == TimeInterpolation.LINEAR) {
+            final double v0 = c.value(j, k);
+            return v0 + s * (c.value(i, k) - v0);
+        }
+        /*
+         * Cubic Hermite basis functions, with tangents scaled by the interval length.
+         */
+        final double s2  = s * s;
+        final double s3  = s2 * s;
+        final double h00 = 2*s3 - 3*s2 + 1;
+        final double h10 = (s3 - 2*s2 + s) * h;
+        final double h01 = 3*s2 - 2*s3;
+        final double h11 = (s3 - s2) * h;
+        return h00 * c.value(j, k) + h10 * tangent(j, k)
+             + h01 * c.value(i, k) + h11 * tangent(i, k);
+    }
+
+    /**
+     * Adds the values interpolated at the time of each tuple to the other coordinates of that tuple.
+     * Each tuple has {@link #dimension} coordinates followed by a time. The loop is delegated to the samples,
+     * which read their arrays directly instead of invoking {@link TrajectoryColumns#value(int, int)} for each value.
+     *
+     * @param  index   for each tuple, index of the first sample at a time equal or greater, or -1 if out of range.
+     * @param  tuples  the tuples to translate in-place. Coordinates are set to NaN if the time is out of range.
+     * @param  count   number of tuples to translate.
+     */
+    void translate(final int[] index, final double[] tuples, final int count) {
+        samples.translate(method, index, tuples, count);
+    }
+
+    /**
+     * Computes the derivatives of the values with respect to time at the given time.
+     * The derivatives are zero if there is no interpolation.
+     *
+     * @param  i       index of the first sample at a time equal or greater than {@code t}.
+     * @param  t       the time where to compute the derivative.
+     * @param  dst     where to store the {@link #dimension} derivative values.
+     * @param  dstOff  index of the first value to store in {@code dst}.
+     */
+    void derivative(final int i, final double t, final double[] dst, final int dstOff) {
+        for (int k=0; k<dimension; k++) {
+            dst[dstOff + k] = derivative(i, t, k);
+        }
+    }
+
+    /**
+     * Computes the derivative of the value at index {@code k} with respect to time at the given time.
+     * The derivative is zero if there is no interpolation. This method allocates nothing.
+     *
+     * @param  i  index of the first sample at a time equal or greater than {@code t}.
+     * @param  t  the time where to compute the derivative.
+     * @param  k  index of the value, from 0 inclusive to {@link #dimension} exclusive.
+     * @return the derivative of the interpolated value.
+     */
+    double derivative(final int i, final double t, final int k) {
+        final TrajectoryColumns c = samples;
+        if (method == TimeInterpolation.NONE || c.size() < 2) {
+            return 0;
+        }
+        final int j  = Math.max(i - 1, 0);
+        final double tj = c.time(j);
+        final double h  = c.time(j+1) - tj;
+        if (method == TimeInterpolation.LINEAR) {
+            return (c.value(j+1, k) - c.value(j, k)) / h;
+        }
+        final double s   = (t - tj) / h;
+        final double s2  = s * s;
+        final double d00 = (6*s2 - 6*s) / h;
+        final double d10 = 3*s2 - 4*s + 1;
+        final double d01 = -d00;
+        final double d11 = 3*s2 - 2*s;
+        return d00 * c.value(j, k) + d10 * tangent(j, k)
+             + d01 * c.value(j+1, k) + d11 * tangent(j+1, k);
+    }
+
+    /**
+     * Returns the tangent (derivative with respect to time) at sample {@code i} for the value at index {@code k}.
+     * Computed by centered finite difference, or one-sided difference at the trajectory ends.
+     */
+    private double tangent(final int i, final int k) {
+        final TrajectoryColumns c = samples;
+        final int lo = Math.max(i - 1, 0);
+        final int hi = Math.min(i + 1, c.size() - 1);
+        return (c.value(hi, k) - c.value(lo, k)) / (c.time(hi) - c.time(lo));
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial.internal;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Binary copy of parsed trajectories, saved next to the cache of an application for fast loading.
+ * The binary file contains the primitive arrays of all {@link Trajectory} instances of a file
+ * in little-endian order, preceded by a header recording the modification time and length of
+ * the source file. Each trajectory starts with the length of its header (identifier, CRS and attribute names),
+ * so headers of any size can be read back.
+ * The file is read with memory-mapped buffers, which is much faster than parsing the CSV file again.
+ * The sidecar is ignored if the source file has been modified since the sidecar was written.
+ *
+ * <p>Sidecars are disabled by default. They are enabled by setting the
+ * {@value #DIRECTORY_PROPERTY} system property to the directory where to write the files.</p>
+ */
+final class TrajectorySidecar {
+    /**
+     * Name of the system property specifying the directory where to store sidecar files.
+     */
+    static final String DIRECTORY_PROPERTY = "mycompany.geospatial.sidecarDirectory";
+
+    /**
+     * Magic number identifying the file format, including a version number in the last byte.
+     */
+    private static final long MAGIC = 0x4D46_5452_414A_0004L;
+
+    /**
+     * Maximal number of bytes to map in a single buffer.
+     */
+    private static final int MAX_MAPPING = 1 << 30;
+
+    /**
+     * Do not allow instantiation of this class.
+     */
+    private TrajectorySidecar() {
+    }
+
+    /**
+     * Returns the path to the sidecar file for the given source, or {@code null} if sidecars are disabled.
+     *
+     * @param  source  the Moving Features file.
+     * @return path to the sidecar file, or {@code null} if none.
+     */
+    static Path location(final URL source) {
+        final String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if (directory == null || directory.isBlank()) {
+            return null;
+        }
+        String name = source.getPath();
+        name = name.substring(name.lastIndexOf('/') + 1);
+        return Paths.get(directory, name + '-' + Integer.toHexString(source.toString().hashCode()) + ".trajectory");
+    }
+
+    /**
+     * Reads the trajectories from the given sidecar file if it is up to date.
+     *
+     * @param  file          the sidecar file.
+     * @param  sourceStamp   last modification time of the source file.
+     * @param  sourceLength  length in bytes of the source file.
+     * @return the trajectories, or {@code null} if the file does not exist or is not up to date.
+     * @throws IOException if an error occurred while reading the file.
+     */
+    static Map<String, Trajectory> read(final Path file, final long sourceStamp, final long sourceLength)
+            throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(28).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < 28 || header.getLong() != MAGIC
+                    || header.getLong() != sourceStamp || header.getLong() != sourceLength)
+            {
+                return null;
+            }
+            final int featureCount = header.getInt();
+            final var features = new LinkedHashMap<String, Trajectory>();
+            long position = header.position();
+            for (int f=0; f<featureCount; f++) {
+                header.clear().limit(Integer.BYTES);
+                channel.read(header, position);
+                header.flip();
+                position += Integer.BYTES;
+                final int headerLength = (header.remaining() == Integer.BYTES) ? header.getInt() : -1;
+                if (headerLength < 3 * Integer.BYTES || headerLength > channel.size() - position) {
+                    throw new IOException("Corrupted trajectory sidecar: " + file);
+                }
+                final ByteBuffer entry = channel.map(FileChannel.MapMode.READ_ONLY, position, headerLength)
+                                                .order(ByteOrder.LITTLE_ENDIAN);
+                final int dimension      = entry.getInt();
+                final int size           = entry.getInt();
+                final int attributeCount = entry.getInt();
+                final String identifier  = readString(entry);
+                final String crs         = readString(entry);
+                final String[] names = new String[attributeCount];
+                for (int i=0; i<attributeCount; i++) {
+                    names[i] = readString(entry);
+                }
+                position = align(position + headerLength);
+                final double[] times = new double[size];
+                position = readDoubles(channel, position, times);
+                final double[] coordinates = new double[Math.multiplyExact(size, dimension)];
+                position = readDoubles(channel, position, coordinates);
+                final var attributes = new LinkedHashMap<String, double[]>();
+                for (final String name : names) {
+                    final double[] values = new double[size];
+                    position = readDoubles(channel, position, values);
+                    attributes.put(name, values);
+                }
+                features.put(identifier, new Trajectory(identifier, crs.isEmpty() ? null : crs,
+                                                        dimension, times, coordinates, attributes));
+            }
+            return Collections.unmodifiableMap(features);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the trajectories in the given sidecar file. The file is first written under a temporary name,
+     * then renamed, so that concurrent readers never see a partially written file.
+     *
+     * @param  file          the sidecar file.
+     * @param  features      the trajectories to write.
+     * @param  sourceStamp   last modification time of the source file.
+     * @param  sourceLength  length in bytes of the source file.
+     * @throws IOException if an error occurred while writing the file.
+     */
+    static void write(final Path file, final Map<String, Trajectory> features, final long sourceStamp,
+                      final long sourceLength) throws IOException
+    {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        final Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), "trajectory", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putLong(MAGIC).putLong(sourceStamp).putLong(sourceLength).putInt(features.size());
+                for (final Trajectory trajectory : features.values()) {
+                    final ByteBuffer entry = header(trajectory);
+                    flush(channel, buffer, entry.remaining());
+                    if (entry.remaining() <= buffer.remaining()) {
+                        buffer.put(entry);
+                    } else {
+                        flush(channel, buffer, buffer.capacity());      // Header larger than the buffer.
+                        while (entry.hasRemaining()) channel.write(entry);
+                    }
+                    while (((channel.position() + buffer.position()) & 7) != 0) buffer.put((byte) 0);
+                    writeDoubles(channel, buffer, trajectory.times);
+                    writeDoubles(channel, buffer, trajectory.coordinates);
+                    for (final String name : trajectory.attributeNames()) {
+                        writeDoubles(channel, buffer, trajectory.attribute(name));
+                    }
+                }
+                flush(channel, buffer, buffer.capacity());
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Writes the buffer content to the channel if the space remaining in the buffer is less than the given amount.
+     */
+    private static void flush(final FileChannel channel, final ByteBuffer buffer, final int required) throws IOException {
+        if (buffer.remaining() < required) {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Encodes the header of the given trajectory, preceded by the header length.
+     * The header contains the dimension, the number of samples, the number of attributes,
+     * the identifier, the CRS (empty if unknown) and the attribute names.
+     *
+     * @param  trajectory  the trajectory for which to encode the header.
+     * @return the encoded header, ready to be written.
+     */
+    private static ByteBuffer header(final Trajectory trajectory) {
+        final var strings = new byte[trajectory.attributeNames().size() + 2][];
+        strings[0] = trajectory.identifier.getBytes(StandardCharsets.UTF_8);
+        strings[1] = (trajectory.crs != null ? trajectory.crs : "").getBytes(StandardCharsets.UTF_8);
+        int i = 1, length = 3 * Integer.BYTES;
+        for (final String name : trajectory.attributeNames()) {
+            strings[++i] = name.getBytes(StandardCharsets.UTF_8);
+        }
+        for (final byte[] bytes : strings) {
+            length = Math.addExact(length, Integer.BYTES + bytes.length);
+        }
+        final ByteBuffer entry = ByteBuffer.allocate(Integer.BYTES + length).order(ByteOrder.LITTLE_ENDIAN);
+        entry.putInt(length).putInt(trajectory.dimension).putInt(trajectory.size()).putInt(strings.length - 2);
+        for (final byte[] bytes : strings) {
+            entry.putInt(bytes.length).put(bytes);
+        }
+        return entry.flip();
+    }
+
+    /**
+     * Reads a string encoded as a length followed by UTF-8 bytes.
+     */
+    private static String readString(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Rounds the given position to the next multiple of 8.
+     */
+    private static long align(final long position) {
+        return (position + 7) & ~7L;
+    }
+
+    /**
+     * Reads an array of doubles starting at the given position, using memory-mapped buffers.
+     *
+     * @param  channel   the channel to read.
+     * @param  position  position in the file of the first value.
+     * @param  target    where to store the values. The array length determines the number of values to read.
+     * @return position after the last value read.
+     * @throws IOException if an error occurred while mapping the file.
+     */
+    private static long readDoubles(final FileChannel channel, long position, final double[] target) throws IOException {
+        int offset = 0;
+        while (offset < target.length) {
+            final int n = Math.min(target.length - offset, MAX_MAPPING / Double.BYTES);
+            final DoubleBuffer values = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) n * Double.BYTES)
+                                               .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            values.get(target, offset, n);
+            offset   += n;
+            position += (long) n * Double.BYTES;
+        }
+        return position;
+    }
+
+    /**
+     * Writes an array of doubles through the given buffer, flushing the buffer to the channel when full.
+     */
+    private static void writeDoubles(final FileChannel channel, final ByteBuffer buffer, final double[] values)
+            throws IOException
+    {
+        int offset = 0;
+        while (offset < values.length) {
+            final int n = Math.min(values.length - offset, buffer.remaining() / Double.BYTES);
+            if (n == 0) {
+                flush(channel, buffer, Double.BYTES);
+                continue;
+            }
+            final DoubleBuffer view = buffer.asDoubleBuffer();      // Inherits the little-endian order.
+            view.put(values, offset, n);
+            buffer.position(buffer.position() + n * Double.BYTES);
+            offset += n;
+        }
+    }
+}
@@ -6,37 +6,42 @@ package mycompany.geospatial.internal;
 import java.net.URI;
 import java.net.URL;
 import java.util.Map;
-import java.util.Collection;
 import java.util.Arrays;
-import java.time.Instant;
+import javax.measure.Unit;
+import javax.measure.IncommensurableException;
+import java.io.Serializable;
+import java.io.ObjectStreamException;
+import java.io.InvalidObjectException;
 import java.io.FileNotFoundException;
-import mycompany.geospatial.VoyagerToObservatory;
 
 // Implementation-neutral
 import org.opengis.util.FactoryException;
 import org.opengis.parameter.ParameterValueGroup;
 import org.opengis.parameter.ParameterDescriptorGroup;
+import org.opengis.referencing.crs.GeodeticCRS;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.cs.CoordinateSystem;
+import org.opengis.referencing.datum.Ellipsoid;
 import org.opengis.referencing.operation.Matrix;
 import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.MathTransformFactory;
+import org.opengis.referencing.operation.NoninvertibleTransformException;
 import org.opengis.referencing.operation.TransformException;
 
-// Temporarily implementation-specific, to be replaced by GeoAPI interfaces in future GeoAPI version.
-import org.apache.sis.feature.AbstractFeature;
-import org.apache.sis.feature.AbstractAttribute;
-
 // Implementation-specific
 import org.apache.sis.parameter.ParameterBuilder;
+import org.apache.sis.referencing.CRS;
 import org.apache.sis.metadata.iso.citation.Citations;
 import org.apache.sis.referencing.ImmutableIdentifier;
 import org.apache.sis.referencing.operation.DefaultOperationMethod;
 import org.apache.sis.referencing.operation.transform.MathTransformProvider;
 import org.apache.sis.referencing.operation.transform.AbstractMathTransform;
+import org.apache.sis.referencing.operation.transform.IterationStrategy;
+import org.apache.sis.referencing.operation.transform.MathTransforms;
+import org.apache.sis.referencing.operation.matrix.Matrix4;
 import org.apache.sis.storage.DataStoreException;
-import org.apache.sis.storage.DataStores;
-import org.apache.sis.storage.DataStore;
-import org.apache.sis.storage.FeatureSet;
-import org.locationtech.jts.geom.LineString;
+import org.apache.sis.util.ComparisonMode;
+import org.apache.sis.measure.Units;
 
 
 /**
@@ -61,7 +66,31 @@ public class TrajectoryToECEF extends DefaultOperationMethod implements MathTran
     private static ParameterDescriptorGroup parameters() {
         var b    = new ParameterBuilder();
         var file = b.addName("Feature trajectory file").create(URI.class, null);
-        return b.addName("TrajectoryToECEF").createGroup(file);
+        var feature = b.addName("Moving feature identifier")
+                .setDescription("Value of the mfidref column of the feature to use. An empty value means the first feature in the file.")
+                .setRequired(false)
+                .create(String.class, "");
+        var search = b.addName("Time search")
+                .setDescription("Strategy for finding the trajectory sample at a given time: binary, cursor or adaptive.")
+                .setRequired(false)
+                .createEnumerated(String.class, new String[] {
+                        TimeSearch.BINARY.parameterValue(),
+                        TimeSearch.CURSOR.parameterValue(),
+                        TimeSearch.ADAPTIVE.parameterValue()}, TimeSearch.ADAPTIVE.parameterValue());
+        var interpolation = b.addName("Time interpolation")
+                .setDescription("Interpolation of trajectory values between two samples: none, linear or cubic.")
+                .setRequired(false)
+                .createEnumerated(String.class, new String[] {
+                        TimeInterpolation.NONE.parameterValue(),
+                        TimeInterpolation.LINEAR.parameterValue(),
+                        TimeInterpolation.CUBIC.parameterValue()}, TimeInterpolation.LINEAR.parameterValue());
+        var precision = b.addName("Position precision")
+                .setDescription("Maximal distance between stored and actual trajectory positions "
+                              + "for storing them in a compact form. Converted to the unit of each axis "
+                              + "of the trajectory CRS. Zero for lossless storage.")
+                .setRequired(false)
+                .createBounded(0, Double.POSITIVE_INFINITY, 0, Units.METRE);
+        return b.addName("TrajectoryToECEF").createGroup(file, feature, search, interpolation, precision);
     }
 
     /**
@@ -83,10 +112,44 @@ public class TrajectoryToECEF extends DefaultOperationMethod implements MathTran
         }
     }
 
+    /**
+     * Computes the yaw, pitch and roll angles of a moving feature at the given time.
+     * The given transform shall have been created by this operation method,
+     * either directly or as a step of a concatenated transform.
+     *
+     * @param  transform  a transform created by this operation method, or a concatenation containing such transform.
+     * @param  t          the time, in days since the Truncated Julian epoch.
+     * @return the yaw, pitch and roll angles in degrees, between −180° and 180°.
+     * @throws IllegalArgumentException if the given transform does not contain a trajectory transform.
+     * @throws TransformException if the time is out of range or if the attributes cannot be loaded.
+     */
+    public static double[] attitude(final MathTransform transform, final double t) throws TransformException {
+        for (final MathTransform step : MathTransforms.getSteps(transform)) {
+            if (step instanceof Transform) {
+                final double[] angles = new double[3];
+                ((Transform) step).attitude(t, angles);
+                return angles;
+            }
+        }
+        throw new IllegalArgumentException("Not a transform created by the \"TrajectoryToECEF\" operation method.");
+    }
+
     /**
      * The transform operating on coordinate values.
+     * Transforms created from parameters are serialized as their parameter values, not as the trajectory arrays.
+     * The trajectory is loaded again on deserialization, which is fast if the file is in the trajectory cache
+     * or has a sidecar file.
+     *
+     * <p>The transform keeps only the times and positions needed by the {@code transform} methods,
+     * in compact form if the "Position precision" parameter is greater than zero.
+     * The yaw, pitch and roll attributes are loaded from the file only when first needed.</p>
      */
-    private static class Transform extends AbstractMathTransform {
+    static final class Transform extends AbstractMathTransform implements Serializable {
+        /**
+         * For cross-version compatibility.
+         */
+        private static final long serialVersionUID = 7049181268542357306L;
+
         /**
          * Number of dimensions of the CRS and of coordinate tuples.
          * This value should be fetched from the CRS definition.
@@ -95,100 +158,344 @@ public class TrajectoryToECEF extends DefaultOperationMethod implements MathTran
         private static final int TRAJECTORY_DIMENSION = 3;
 
         /**
-         * Values extracted from parameters declared in the moving features file.
-         * This is a sequence of (x, y, z) coordinate tuples.
+         * Number of dimensions of source and target coordinate tuples: the trajectory dimensions plus time.
+         */
+        private static final int DIMENSION = TRAJECTORY_DIMENSION + 1;
+
+        /**
+         * Maximal number of coordinate tuples copied in the work array of bulk transforms.
+         */
+        private static final int BLOCK_SIZE = 256;
+
+        /**
+         * Strategy for finding the index of the sample at the time of each point.
+         */
+        private final TimeSearch search;
+
+        /**
+         * Computes the trajectory position at times between two samples.
+         * The samples are the (x, y, z) coordinate tuples declared in the moving features file,
+         * together with their start times.
+         */
+        private final TrajectoryInterpolator position;
+
+        /**
+         * The "Position precision" parameter value in metres, or in the units of the trajectory coordinates
+         * if the transform has been created directly from arrays. Zero for lossless storage.
+         */
+        private final double precision;
+
+        /**
+         * Computes the yaw, pitch and roll at times between two samples, created when first needed.
+         * The attribute values are loaded from the moving features file only at that time.
          */
-        private final double[] trajectory;
+        private transient TrajectoryInterpolator attitude;
 
         /**
-         * The start time of each coordinate tuple in {@link #trajectory}.
+         * The file and feature identifier specified in parameters, or {@code null} if the transform
+         * has been created directly from arrays. Used for serialization.
          */
-        private final double[] startTimes;
+        private final URI filename;
+        private final String identifier;
 
         /**
-         * The yaw, pitch and roll attribute values found in the Moving Feature file.
-         * Not used in this simple demo.
+         * The version of the file from which the trajectory has been loaded, or {@code null} if the
+         * transform has been created directly from arrays. Used for comparing transforms in constant time.
          */
-        private final double[] yaw, pitch, roll;
+        private final TrajectoryCache.Key version;
 
         /**
          * Creates a math transform from the specified group of parameter values.
          *
          * @throws FileNotFoundException if the file specified in the parameters is not found.
          * @throws DataStoreException if the moving feature file cannot be parsed.
-         * @throws IllegalArgumentException if a required feature property is not found.
-         * @throws ClassCastException if a property value is not of the expected type.
-         * @throws ArrayIndexOutOfBoundsException if a property has more values than expected.
+         * @throws IllegalArgumentException if the requested feature or a required feature property is not found.
          */
         Transform(ParameterValueGroup parameters) throws FileNotFoundException, DataStoreException {
-            final URI filename = parameters.parameter("Feature trajectory file").valueFile();
+            filename   = parameters.parameter("Feature trajectory file").valueFile();
+            identifier = parameters.parameter("Moving feature identifier").stringValue();
+            precision  = parameters.parameter("Position precision").doubleValue(Units.METRE);
+            final URL file = locate(filename);
+            version = TrajectoryCache.version(file);
+            final Trajectory data = select(TrajectoryCache.get(file, version), filename, identifier);
+            if (data.dimension != TRAJECTORY_DIMENSION) {
+                throw new IllegalArgumentException("Expected a " + TRAJECTORY_DIMENSION + "D trajectory.");
+            }
+            /*
+             * The attributes are verified now for reporting errors early, but loaded only if needed.
+             * The remaining code in this constructor uses hard-coded property names.
+             * A more industrial code would do an analysis of the columns declared in the file.
+             */
+            for (final String name : new String[] {"yaw", "pitch", "roll"}) {
+                if (!data.attributeNames().contains(name)) {
+                    throw new IllegalArgumentException("No \"" + name + "\" attribute in the moving feature file.");
+                }
+            }
+            search = TimeSearch.parse(parameters.parameter("Time search").stringValue());
+            position = new TrajectoryInterpolator(TrajectoryColumns.compact(data.times, data.coordinates,
+                            TRAJECTORY_DIMENSION, axisPrecisions(data.crs, precision)),
+                    TimeInterpolation.parse(parameters.parameter("Time interpolation").stringValue()));
+        }
+
+        /**
+         * Returns the URL of the given moving features file, which is searched on the class path.
+         *
+         * @param  filename  the "Feature trajectory file" parameter value.
+         * @return URL of the file.
+         * @throws FileNotFoundException if the file is not found.
+         */
+        private static URL locate(final URI filename) throws FileNotFoundException {
             URL file = Transform.class.getClassLoader().getResource(filename.getPath());
             if (file == null) {
                 throw new FileNotFoundException(filename.getPath());
             }
-            /*
-             * The file should be a set of features containing only one feature.
-             * This is not verified for this demo application.
-             */
-            AbstractFeature feature;
-            try (DataStore ds = DataStores.open(file)) {
-                feature = ((FeatureSet) ds).features(false).findFirst().get();
+            return file;
+        }
+
+        /**
+         * Selects the trajectory of the given moving feature.
+         * The file is a set of features. All of them are loaded, then the feature
+         * identified by the "Moving feature identifier" parameter is selected.
+         *
+         * @param  features    all features of the file.
+         * @param  filename    the "Feature trajectory file" parameter value, for error message.
+         * @param  identifier  the "Moving feature identifier" parameter value, or empty for the first feature.
+         * @return the trajectory of the requested feature.
+         * @throws IllegalArgumentException if the requested feature is not found.
+         */
+        private static Trajectory select(final Map<String, Trajectory> features, final URI filename,
+                                         final String identifier)
+        {
+            if (identifier == null || identifier.isEmpty()) {
+                return features.values().iterator().next();
+            }
+            final Trajectory data = features.get(identifier);
+            if (data == null) {
+                throw new IllegalArgumentException("No moving feature \"" + identifier + "\" in " + filename);
+            }
+            return data;
+        }
+
+        /**
+         * Creates a math transform for the given trajectory, without reading any file.
+         * Arrays are not cloned. The yaw, pitch and roll angles are zero.
+         * This constructor is used for tests and benchmarks.
+         *
+         * @param  startTimes     the start time of each coordinate tuple, in increasing order.
+         * @param  trajectory     sequence of (x, y, z) coordinate tuples.
+         * @param  search         strategy for finding the index of the time of each point.
+         * @param  interpolation  method for computing positions between two samples.
+         * @param  precision      maximal error allowed on positions for storing them in compact form, or 0.
+         *                       In the units of the trajectory coordinates, the same for all axes.
+         */
+        Transform(final double[] startTimes, final double[] trajectory, final TimeSearch search,
+                  final TimeInterpolation interpolation, final double precision)
+        {
+            this.search    = search;
+            this.precision = precision;
+            final double[] axisPrecisions = new double[TRAJECTORY_DIMENSION];
+            Arrays.fill(axisPrecisions, precision);
+            position = new TrajectoryInterpolator(
+                    TrajectoryColumns.compact(startTimes, trajectory, TRAJECTORY_DIMENSION, axisPrecisions),
+                    interpolation);
+            filename   = null;
+            identifier = null;
+            version    = null;
+        }
+
+        /**
+         * Converts the "Position precision" parameter value to a precision in the unit of each axis.
+         * Linear axes get the precision converted to their unit. Angular axes get the angle subtended
+         * by the precision on the semi-major axis of the ellipsoid, which is conservative because
+         * parallels are shorter than the equator. Axes for which the conversion is not possible,
+         * for example because the CRS is unknown, get a precision of zero, which disables the compact form.
+         *
+         * @param  crs        identifier of the CRS declared in the moving feature file, or {@code null}.
+         * @param  precision  the "Position precision" parameter value, in metres.
+         * @return the precision in the unit of each axis of the trajectory CRS.
+         */
+        private static double[] axisPrecisions(final String crs, final double precision) {
+            final double[] result = new double[TRAJECTORY_DIMENSION];
+            if (precision <= 0 || crs == null) {
+                return result;
+            }
+            final CoordinateReferenceSystem definition;
+            try {
+                definition = CRS.forCode(crs);
+            } catch (FactoryException e) {
+                return result;
+            }
+            final CoordinateSystem cs = definition.getCoordinateSystem();
+            if (cs.getDimension() != TRAJECTORY_DIMENSION) {
+                return result;
+            }
+            double radius = Double.NaN;
+            if (definition instanceof GeodeticCRS) {
+                final Ellipsoid ellipsoid = ((GeodeticCRS) definition).getDatum().getEllipsoid();
+                radius = ellipsoid.getAxisUnit().getConverterTo(Units.METRE).convert(ellipsoid.getSemiMajorAxis());
+            }
+            for (int i=0; i<TRAJECTORY_DIMENSION; i++) {
+                final Unit<?> unit = cs.getAxis(i).getUnit();
+                try {
+                    if (Units.isLinear(unit)) {
+                        result[i] = Units.METRE.getConverterToAny(unit).convert(precision);
+                    } else if (Units.isAngular(unit) && radius > 0) {
+                        result[i] = Units.RADIAN.getConverterToAny(unit).convert(precision / radius);
+                    }
+                } catch (IncommensurableException e) {
+                    result[i] = 0;                          // Should not happen since units have been checked.
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Returns the value of given attribute as an array of floating point numbers.
+         *
+         * @param  data  the trajectory from which to get the attribute.
+         * @param  name  name of the attribute to get.
+         * @return the attribute values as an array of floating points.
+         * @throws IllegalArgumentException if the specified attribute is not found.
+         */
+        private static double[] toArray(final Trajectory data, final String name) {
+            final double[] values = data.attribute(name);
+            if (values == null) {
+                throw new IllegalArgumentException("No \"" + name + "\" attribute in the moving feature file.");
             }
-            /*
-             * The remaining code in this constructor use hard-coded property names and types.
-             * If an assumption does not hold, IllegalArgumentException or ClassCastException
-             * will be thrown. A more industrial code would do an analysis of feature type.
-             */
-            var attribute = (AbstractAttribute<?>) feature.getProperty("trajectory");
-            var datetimes = attribute.characteristics().get("datetimes").getValues();
-            var timeCount = datetimes.size();
-            var geometry  = (LineString) attribute.getValue();
-            startTimes = datetimes.stream().mapToDouble((t) -> VoyagerToObservatory.TIME_CRS.toValue((Instant) t)).toArray();
-            trajectory = new double[timeCount * TRAJECTORY_DIMENSION];
-            for (int i=0, c=0; i<timeCount; i++) {
-                var coords = geometry.getCoordinateN(i);
-                trajectory[c++] = coords.x;
-                trajectory[c++] = coords.y;
-                trajectory[c++] = coords.z;
-            }
-            yaw   = toArray(feature, "yaw",   timeCount);
-            pitch = toArray(feature, "pitch", timeCount);
-            roll  = toArray(feature, "roll",  timeCount);
-        }
-
-        /**
-         * Returns the value of given property as an array of floating point numbers.
-         *
-         * <h4>Limitations</h4>
-         * We should verify that the {@code MF:datetimes} characteristic of the specified property is the same
-         * as the one of the trajectory. For simplicity reason, we don't do this verification in this demo.
-         *
-         * @param  feature        the feature from which to get the property.
-         * @param  propertyName   name of the property to get.
-         * @param  expectedCount  expected number of values in the array.
-         * @return the property value as an array of floating points.
-         * @throws IllegalArgumentException if the specified feature property is not found.
-         * @throws ClassCastException if the property value is not of the expected type.
-         * @throws ArrayIndexOutOfBoundsException if the property has more values than expected.
-         */
-        private static double[] toArray(AbstractFeature feature, String propertyName, int expectedCount) {
-            double[] values = new double[expectedCount];
-            int actualCount = 0;
-            for (Object item : (Collection<?>) feature.getPropertyValue(propertyName)) {
-                values[actualCount++] = ((Number) item).doubleValue();
-            }
-            // If the array is shorter than expected, repeat the last value.
-            Arrays.fill(values, actualCount, expectedCount, values[actualCount - 1]);
             return values;
         }
 
+        /**
+         * Computes the yaw, pitch and roll angles at the given time, in degrees.
+         * Angles are interpolated with the same method than positions, taking the shortest way
+         * around the circle between two samples (for example from 350° to 10° through 0°).
+         *
+         * @param  t    the time, in days since the Truncated Julian epoch.
+         * @param  dst  where to store the yaw, pitch and roll angles. Length shall be at least 3.
+         * @throws TransformException if the time is out of range or if the attributes cannot be loaded.
+         */
+        void attitude(final double t, final double[] dst) throws TransformException {
+            TrajectoryInterpolator ypr;
+            synchronized (this) {
+                ypr = attitude;
+                if (ypr == null) {
+                    attitude = ypr = loadAttitude();
+                }
+            }
+            final int i = TimeCursor.binarySearch(ypr.samples, t);
+            if (i < 0) {
+                throw new TransformException("Time out of range.");
+            }
+            for (int c=0; c<3; c++) {
+                dst[c] = Math.IEEEremainder(ypr.interpolate(i, t, c), 360);
+            }
+        }
+
+        /**
+         * Loads the yaw, pitch and roll attributes and prepares their interpolation.
+         * Angles are unwrapped for making each sample continuous with the previous one.
+         * Transforms created directly from arrays have zero angles.
+         *
+         * @return the interpolator of yaw, pitch and roll angles.
+         * @throws TransformException if the attributes cannot be loaded.
+         */
+        private TrajectoryInterpolator loadAttitude() throws TransformException {
+            final double[] times;
+            final double[][] columns;
+            if (filename != null) {
+                final Trajectory data;
+                try {
+                    final URL file = locate(filename);
+                    if (!TrajectoryCache.version(file).equals(version)) {
+                        throw new TransformException("The moving feature file has been modified.");
+                    }
+                    data = select(TrajectoryCache.get(file, version), filename, identifier);
+                } catch (FileNotFoundException | DataStoreException | IllegalArgumentException e) {
+                    throw new TransformException("Cannot load the attitude of the moving feature.", e);
+                }
+                times   = data.times;
+                columns = new double[][] {toArray(data, "yaw"), toArray(data, "pitch"), toArray(data, "roll")};
+            } else {
+                final TrajectoryColumns samples = position.samples;
+                times = new double[samples.size()];
+                for (int k=0; k<times.length; k++) {
+                    times[k] = samples.time(k);
+                }
+                final double[] zeros = new double[times.length];
+                columns = new double[][] {zeros, zeros, zeros};
+            }
+            final int n = times.length;
+            final double[] angles = new double[n * 3];
+            for (int c=0; c<3; c++) {
+                final double[] column = columns[c];
+                double offset = 0;
+                for (int k=0; k<n; k++) {
+                    if (k != 0) {
+                        // Unwrap the angle for making it continuous with the previous sample.
+                        offset -= 360 * Math.rint((column[k] + offset - angles[(k-1)*3 + c]) / 360);
+                    }
+                    angles[k*3 + c] = column[k] + offset;
+                }
+            }
+            return new TrajectoryInterpolator(TrajectoryColumns.of(times, angles, 3), position.method);
+        }
+
         @Override public int getSourceDimensions() {return 4;}
         @Override public int getTargetDimensions() {return 4;}
 
         /**
-         * Transforms a single coordinate tuple in an array.
+         * Computes a hash code value for this transform from the file version and feature identifier,
+         * or from the identity of the samples if this transform has been created directly from arrays.
+         * Invoked by {@link #hashCode()} when first needed.
+         */
+        @Override
+        protected int computeHashCode() {
+            final int code = (version != null) ? version.hashCode() + 31 * identifier.hashCode()
+                                               : System.identityHashCode(position.samples);
+            return super.computeHashCode() + 31 * code + position.method.hashCode();
+        }
+
+        /**
+         * Compares this transform with the given object for equality. Two transforms are equal
+         * if they use the same trajectory. This method needs to be overridden because the
+         * default implementation compares only the classes and the parameter values, which would
+         * cause Apache SIS to consider transforms for different moving features as equal.
+         * The trajectory is identified by the version of the file and the feature identifier,
+         * so this comparison does not depend on the number of samples. Transforms created
+         * directly from arrays are equal only if they share the same samples.
+         *
+         * @param  object  the object to compare with this transform.
+         * @param  mode    the strictness level of the comparison.
+         * @return whether the given object is equal to this transform.
+         */
+        @Override
+        public boolean equals(final Object object, final ComparisonMode mode) {
+            if (object == this) {
+                return true;
+            }
+            if (super.equals(object, mode)) {
+                final var other = (Transform) object;
+                return search == other.search && position.method == other.position.method
+                        && Double.doubleToLongBits(precision) == Double.doubleToLongBits(other.precision)
+                        && (version != null ? version.equals(other.version) && identifier.equals(other.identifier)
+                                            : position.samples == other.position.samples);
+            }
+            return false;
+        }
+
+        /**
+         * Transforms a single coordinate tuple in an array and optionally computes the derivative at that location.
          * Time is measured in days since Truncated Julian epoch for both input and output coordinates.
          *
+         * <p>The (<var>x</var>, <var>y</var>, <var>z</var>) coordinates are divided by their norm <var>r</var>,
+         * then translated by the trajectory position <var>P</var>(<var>t</var>) interpolated at time <var>t</var>.
+         * The derivative is the derivative of the normalization:
+         * ∂(<var>x</var>/<var>r</var>)/∂<var>x</var> = (<var>r</var>² − <var>x</var>²)/<var>r</var>³ and
+         * ∂(<var>x</var>/<var>r</var>)/∂<var>y</var> = −<var>x</var><var>y</var>/<var>r</var>³ (similarly for other axes),
+         * plus the trajectory velocity d<var>P</var>/d<var>t</var> in the last column,
+         * with ∂<var>t</var>/∂<var>t</var> = 1 and all other terms equal to zero.
+         * The derivative matrix is singular, because all points on the same ray have the same image.</p>
+         *
          * @param  srcPts    the array containing the source coordinates (cannot be {@code null}).
          * @param  srcOff    the offset to the point to be transformed in the source array.
          * @param  dstPts    the array into which the transformed coordinates is returned.
@@ -206,36 +513,289 @@ public class TrajectoryToECEF extends DefaultOperationMethod implements MathTran
                                 final double[] dstPts, int dstOff, boolean derivate)
                 throws TransformException
         {
+            final double x = srcPts[  srcOff];
+            final double y = srcPts[++srcOff];
+            final double z = srcPts[++srcOff];
+            final double t = srcPts[++srcOff];
+            final int i = TimeCursor.binarySearch(position.samples, t);
+            if (i < 0) {
+                if (Metrics.recording()) Metrics.TIME_OUT_OF_RANGE.add(1);
+                throw new TransformException("Time out of range.");
+            }
+            final double r2 = x*x + y*y + z*z;
+            final double r  = Math.sqrt(r2);
+            Matrix derivative = null;
+            if (derivate) {
+                final double r3 = r2 * r;
+                final double xy = -x*y / r3;
+                final double xz = -x*z / r3;
+                final double yz = -y*z / r3;
+                derivative = new Matrix4((r2 - x*x) / r3, xy, xz, position.derivative(i, t, 0),
+                                         xy, (r2 - y*y) / r3, yz, position.derivative(i, t, 1),
+                                         xz, yz, (r2 - z*z) / r3, position.derivative(i, t, 2),
+                                         0,  0,  0,               1);
+            }
             if (dstPts != null) {
-                double x = srcPts[  srcOff];
-                double y = srcPts[++srcOff];
-                double z = srcPts[++srcOff];
-                double t = srcPts[++srcOff];
-                double r = Math.sqrt(x*x + y*y + z*z);
-                x /= r;    // Dummy operation just for getting small numbers.
-                y /= r;
-                z /= r;
-                int i = Arrays.binarySearch(startTimes, t);
-                if (i < 0) {
-                    i = ~i;
-                    if (i == 0 || i >= startTimes.length) {
-                        throw new TransformException("Time out of range.");
-                    }
-                    /*
-                     * We should interpolate `trajectory` values here.
-                     * For keeping this demo simple, we skip that step.
-                     */
-                }
-                i *= TRAJECTORY_DIMENSION;
-                x += trajectory[  i];           // A dummy operation.
-                y += trajectory[++i];
-                z += trajectory[++i];
-                dstPts[  dstOff] = x;
-                dstPts[++dstOff] = y;
-                dstPts[++dstOff] = z;
+                dstPts[  dstOff] = x/r + position.interpolate(i, t, 0);
+                dstPts[++dstOff] = y/r + position.interpolate(i, t, 1);
+                dstPts[++dstOff] = z/r + position.interpolate(i, t, 2);
                 dstPts[++dstOff] = t;
             }
-            return null;
+            return derivative;
+        }
+
+        /**
+         * Transforms a list of coordinate tuples. This method is provided for efficiently transforming many points.
+         * Contrarily to the inherited implementation, this method does not delegate to the single-tuple method.
+         * It allocates a time cursor and work arrays for each call, but nothing for each point.
+         * The source and target arrays may overlap. The index of the time of each point is searched with
+         * the strategy specified by the "Time search" parameter, which is efficient when points are sorted.
+         *
+         * <p>All bulk methods share the same loop. They differ only by the accessors used for copying
+         * coordinates between the given arrays and the work array, which is in double precision.</p>
+         *
+         * <p>If a point cannot be transformed because its time is out of range, the target coordinates are set to NaN
+         * and the transformation continues with other points. A {@link TransformException} is thrown after all points
+         * have been processed.</p>
+         *
+         * @param  srcPts  the array containing the source point coordinates.
+         * @param  srcOff  the offset to the first point to be transformed in the source array.
+         * @param  dstPts  the array into which the transformed point coordinates are returned.
+         * @param  dstOff  the offset to the location of the first transformed point that is stored in the destination array.
+         * @param  numPts  the number of point objects to be transformed.
+         * @throws TransformException if at least one point cannot be transformed.
+         */
+        @Override
+        public void transform(final double[] srcPts, int srcOff,
+                              final double[] dstPts, int dstOff, int numPts)
+                throws TransformException
+        {
+            transform(new DoubleArray(srcPts), srcOff, new DoubleArray(dstPts), dstOff, numPts, srcPts == dstPts);
+        }
+
+        /**
+         * Transforms a list of coordinate tuples stored as single-precision floating point numbers.
+         * Computation is done in double precision. The source and target arrays may overlap.
+         *
+         * @throws TransformException if at least one point cannot be transformed.
+         */
+        @Override
+        public void transform(final float[] srcPts, int srcOff,
+                              final float[] dstPts, int dstOff, int numPts)
+                throws TransformException
+        {
+            transform(new FloatArray(srcPts), srcOff, new FloatArray(dstPts), dstOff, numPts, srcPts == dstPts);
+        }
+
+        /**
+         * Transforms a list of coordinate tuples from double precision to single precision.
+         * Since the arrays are of different types, they cannot overlap.
+         *
+         * @throws TransformException if at least one point cannot be transformed.
+         */
+        @Override
+        public void transform(final double[] srcPts, int srcOff,
+                              final float [] dstPts, int dstOff, int numPts)
+                throws TransformException
+        {
+            transform(new DoubleArray(srcPts), srcOff, new FloatArray(dstPts), dstOff, numPts, false);
+        }
+
+        /**
+         * Transforms a list of coordinate tuples from single precision to double precision.
+         * Since the arrays are of different types, they cannot overlap.
+         *
+         * @throws TransformException if at least one point cannot be transformed.
+         */
+        @Override
+        public void transform(final float [] srcPts, int srcOff,
+                              final double[] dstPts, int dstOff, int numPts)
+                throws TransformException
+        {
+            transform(new FloatArray(srcPts), srcOff, new DoubleArray(dstPts), dstOff, numPts, false);
+        }
+
+        /**
+         * The loop shared by all bulk methods. Coordinates are copied by blocks of {@value #BLOCK_SIZE} tuples
+         * in a work array, transformed in that array, then copied to the destination. The positions of a block
+         * are interpolated in a single call to {@link TrajectoryInterpolator#translate(int[], double[], int)}.
+         * If the arrays overlap with the target after the source, blocks are processed from the end
+         * for not overwriting source coordinates before they are read.
+         *
+         * @param  srcPts   accessor to the source coordinates.
+         * @param  srcOff   the offset to the first point to be transformed in the source array.
+         * @param  dstPts   accessor to the destination coordinates.
+         * @param  dstOff   the offset to the location of the first transformed point in the destination array.
+         * @param  numPts   the number of point objects to be transformed.
+         * @param  overlap  whether the source and destination are the same array.
+         * @throws TransformException if at least one point cannot be transformed.
+         */
+        private void transform(final Coordinates srcPts, int srcOff,
+                               final Coordinates dstPts, int dstOff, int numPts, final boolean overlap)
+                throws TransformException
+        {
+            boolean descending = false;
+            if (overlap && IterationStrategy.suggest(srcOff, DIMENSION, dstOff, DIMENSION, numPts)
+                        == IterationStrategy.DESCENDING)
+            {
+                srcOff += numPts * DIMENSION;
+                dstOff += numPts * DIMENSION;
+                descending = true;
+            }
+            final var event = Metrics.recording() ? new Metrics.TrajectoryEvent() : null;
+            final int count = numPts;
+            final var cursor = new TimeCursor(position.samples, search);
+            final double[] buffer = new double[Math.min(numPts, BLOCK_SIZE) * DIMENSION];
+            final int[]    index  = new int[Math.min(numPts, BLOCK_SIZE)];
+            int failureCount = 0;
+            while (numPts > 0) {
+                final int n = Math.min(numPts, BLOCK_SIZE);
+                final int length = n * DIMENSION;
+                if (descending) {
+                    srcOff -= length;
+                    dstOff -= length;
+                }
+                srcPts.get(srcOff, buffer, length);
+                for (int j=0, k=0; j<n; j++, k += DIMENSION) {
+                    final double x = buffer[k  ];
+                    final double y = buffer[k+1];
+                    final double z = buffer[k+2];
+                    final double r = Math.sqrt(x*x + y*y + z*z);
+                    buffer[k  ] = x/r;
+                    buffer[k+1] = y/r;
+                    buffer[k+2] = z/r;
+                    final int i = cursor.indexOf(buffer[k+3]);
+                    if (i < 0) failureCount++;
+                    index[j] = i;
+                }
+                /*
+                 * Positions are interpolated and added for the whole block in a loop over the arrays of the samples.
+                 * Coordinates become NaN if the time is out of range.
+                 */
+                position.translate(index, buffer, n);
+                dstPts.set(dstOff, buffer, length);
+                if (!descending) {
+                    srcOff += length;
+                    dstOff += length;
+                }
+                numPts -= n;
+            }
+            if (event != null) Metrics.end(event, count, failureCount);
+            failed(failureCount);
+        }
+
+        /**
+         * Throws an exception because this transform is not invertible.
+         * The normalization of (<var>x</var>, <var>y</var>, <var>z</var>) to a unit vector discards
+         * the distance from origin, so different source points give the same target point.
+         *
+         * @return never returns.
+         * @throws NoninvertibleTransformException always thrown.
+         */
+        @Override
+        public MathTransform inverse() throws NoninvertibleTransformException {
+            throw new NoninvertibleTransformException("The trajectory transform discards the distance from origin.");
+        }
+
+        /**
+         * Throws an exception if the given number of failures is greater than zero.
+         * Invoked at the end of bulk transformations.
+         *
+         * @param  failureCount  number of points that could not be transformed.
+         * @throws TransformException if {@code failureCount} is greater than zero.
+         */
+        private static void failed(final int failureCount) throws TransformException {
+            if (failureCount != 0) {
+                throw new TransformException("Time out of range for " + failureCount + " points.");
+            }
+        }
+
+        /**
+         * Copies coordinates between an array of some primitive type and a work array in double precision.
+         * Used for sharing the same loop between all bulk methods.
+         */
+        private interface Coordinates {
+            /** Copies {@code length} coordinates starting at {@code offset} into {@code buffer}. */
+            void get(int offset, double[] buffer, int length);
+
+            /** Copies {@code length} coordinates from {@code buffer} to the array starting at {@code offset}. */
+            void set(int offset, double[] buffer, int length);
+        }
+
+        /**
+         * Accessor to coordinates stored in an array of double-precision values.
+         */
+        private record DoubleArray(double[] array) implements Coordinates {
+            @Override public void get(int offset, double[] buffer, int length) {
+                System.arraycopy(array, offset, buffer, 0, length);
+            }
+
+            @Override public void set(int offset, double[] buffer, int length) {
+                System.arraycopy(buffer, 0, array, offset, length);
+            }
+        }
+
+        /**
+         * Accessor to coordinates stored in an array of single-precision values.
+         */
+        private record FloatArray(float[] array) implements Coordinates {
+            @Override public void get(int offset, double[] buffer, int length) {
+                for (int i=0; i<length; i++) {
+                    buffer[i] = array[offset + i];
+                }
+            }
+
+            @Override public void set(int offset, double[] buffer, int length) {
+                for (int i=0; i<length; i++) {
+                    array[offset + i] = (float) buffer[i];
+                }
+            }
+        }
+
+        /**
+         * Replaces this transform by its parameter values on serialization.
+         * Transforms created directly from arrays are serialized with their arrays.
+         *
+         * @return the object to serialize in place of this transform.
+         */
+        private Object writeReplace() {
+            return (filename != null) ? new Serialized(filename, identifier, search.parameterValue(),
+                    position.method.parameterValue(), precision) : this;
+        }
+    }
+
+    /**
+     * The serialized form of a {@link Transform} created from parameters.
+     *
+     * @param filename       the "Feature trajectory file" parameter value.
+     * @param identifier     the "Moving feature identifier" parameter value.
+     * @param search         the "Time search" parameter value.
+     * @param interpolation  the "Time interpolation" parameter value.
+     * @param precision      the "Position precision" parameter value.
+     */
+    private record Serialized(URI filename, String identifier, String search, String interpolation, double precision)
+            implements Serializable
+    {
+        /**
+         * Creates the transform again from the parameter values.
+         *
+         * @return the transform.
+         * @throws ObjectStreamException if the trajectory file cannot be read.
+         */
+        private Object readResolve() throws ObjectStreamException {
+            final ParameterValueGroup parameters = new TrajectoryToECEF().getParameters().createValue();
+            parameters.parameter("Feature trajectory file").setValue(filename);
+            parameters.parameter("Moving feature identifier").setValue(identifier);
+            parameters.parameter("Time search").setValue(search);
+            parameters.parameter("Time interpolation").setValue(interpolation);
+            parameters.parameter("Position precision").setValue(precision, Units.METRE);
+            try {
+                return new Transform(parameters);
+            } catch (FileNotFoundException | DataStoreException | IllegalArgumentException e) {
+                var ex = new InvalidObjectException("Cannot read the moving feature file.");
+                ex.initCause(e);
+                throw ex;
+            }
         }
     }
 }
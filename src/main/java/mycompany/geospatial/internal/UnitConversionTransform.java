@@ -0,0 +1,149 @@
+/*
+ * This tutorial is in public domain.
+ */
+package mycompany.geospatial.internal;
+
+import java.util.Objects;
+import javax.measure.UnitConverter;
+import org.opengis.referencing.operation.MathTransform1D;
+
+// Implementation-dependent
+import org.apache.sis.measure.Units;
+import org.apache.sis.referencing.operation.transform.AbstractMathTransform1D;
+import org.apache.sis.util.ComparisonMode;
+
+
+/**
+ * A one-dimensional transform applying a non-linear unit conversion, for example a logarithmic scale.
+ * Linear conversions should use {@link org.apache.sis.referencing.operation.transform.MathTransforms#linear(double, double)}
+ * instead, because linear transforms can be merged with other linear steps of a transformation chain.
+ * This transform is used only for the conversions that cannot be represented by a scale and an offset.
+ *
+ * <p>The bulk methods are overridden for converting arrays in a single loop without the overhead
+ * of the point-by-point fallback inherited from {@link AbstractMathTransform1D}.</p>
+ */
+public final class UnitConversionTransform extends AbstractMathTransform1D {
+    /**
+     * The unit conversion to apply.
+     */
+    private final UnitConverter converter;
+
+    /**
+     * The inverse of this transform, created when first needed.
+     */
+    private UnitConversionTransform inverse;
+
+    /**
+     * Creates a new transform for the given unit converter.
+     *
+     * @param  converter  the unit conversion to apply.
+     */
+    public UnitConversionTransform(final UnitConverter converter) {
+        this.converter = Objects.requireNonNull(converter);
+    }
+
+    /**
+     * Converts the given value.
+     *
+     * @param  value  the value to convert.
+     * @return the converted value.
+     */
+    @Override
+    public double transform(final double value) {
+        return converter.convert(value);
+    }
+
+    /**
+     * Returns the derivative of the conversion at the given value.
+     *
+     * @param  value  the value where to evaluate the derivative.
+     * @return the derivative at the given value.
+     */
+    @Override
+    public double derivative(final double value) {
+        return Units.derivative(converter, value);
+    }
+
+    /**
+     * Converts a sequence of values. The source and destination arrays may overlap.
+     */
+    @Override
+    public void transform(final double[] srcPts, int srcOff, final double[] dstPts, int dstOff, final int numPts) {
+        if (srcPts == dstPts && srcOff < dstOff) {
+            for (int i=numPts; --i >= 0;) {
+                dstPts[dstOff + i] = converter.convert(srcPts[srcOff + i]);
+            }
+        } else {
+            for (int i=0; i<numPts; i++) {
+                dstPts[dstOff++] = converter.convert(srcPts[srcOff++]);
+            }
+        }
+    }
+
+    /**
+     * Converts a sequence of values. The source and destination arrays may overlap.
+     */
+    @Override
+    public void transform(final float[] srcPts, int srcOff, final float[] dstPts, int dstOff, final int numPts) {
+        if (srcPts == dstPts && srcOff < dstOff) {
+            for (int i=numPts; --i >= 0;) {
+                dstPts[dstOff + i] = (float) converter.convert(srcPts[srcOff + i]);
+            }
+        } else {
+            for (int i=0; i<numPts; i++) {
+                dstPts[dstOff++] = (float) converter.convert(srcPts[srcOff++]);
+            }
+        }
+    }
+
+    /**
+     * Converts a sequence of values from double precision to single precision.
+     */
+    @Override
+    public void transform(final double[] srcPts, int srcOff, final float[] dstPts, int dstOff, final int numPts) {
+        for (int i=0; i<numPts; i++) {
+            dstPts[dstOff++] = (float) converter.convert(srcPts[srcOff++]);
+        }
+    }
+
+    /**
+     * Converts a sequence of values from single precision to double precision.
+     */
+    @Override
+    public void transform(final float[] srcPts, int srcOff, final double[] dstPts, int dstOff, final int numPts) {
+        for (int i=0; i<numPts; i++) {
+            dstPts[dstOff++] = converter.convert(srcPts[srcOff++]);
+        }
+    }
+
+    /**
+     * Returns the inverse unit conversion.
+     *
+     * @return the inverse of this transform.
+     */
+    @Override
+    public synchronized MathTransform1D inverse() {
+        if (inverse == null) {
+            inverse = new UnitConversionTransform(converter.inverse());
+            inverse.inverse = this;
+        }
+        return inverse;
+    }
+
+    /**
+     * Computes a hash code value for this transform.
+     */
+    @Override
+    protected int computeHashCode() {
+        return super.computeHashCode() ^ converter.hashCode();
+    }
+
+    /**
+     * Compares this transform with the given object for equality.
+     */
+    @Override
+    public boolean equals(final Object object, final ComparisonMode mode) {
+        return (object instanceof UnitConversionTransform other) && super.equals(object, mode)
+                && converter.equals(other.converter);
+    }
+}